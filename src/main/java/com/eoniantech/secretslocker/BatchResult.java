@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The result of a batch operation. Each item in the batch either succeeded,
+ * and has a value, or failed, and has the exception that caused it to fail.
+ * A failed item does not abort the rest of the batch.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @param <T> The type of the values.
+ */
+public class BatchResult<T> {
+
+    private final Map<String, T> values;
+    private final Map<String, Throwable> failures;
+
+    /**
+     * Constructor.
+     *
+     * @param values The values of the items that succeeded, by name.
+     * @param failures The exceptions of the items that failed, by name.
+     */
+    public BatchResult(
+            final Map<String, T> values,
+            final Map<String, Throwable> failures) {
+
+        this.values
+                = Collections.unmodifiableMap(
+                        new LinkedHashMap<>(
+                                values));
+
+        this.failures
+                = Collections.unmodifiableMap(
+                        new LinkedHashMap<>(
+                                failures));
+    }
+
+    /**
+     * @return The values of the items that succeeded, by name, in the order
+     * the items were requested.
+     */
+    public Map<String, T> values() {
+        return values;
+    }
+
+    /**
+     * @return The exceptions of the items that failed, by name, in the order
+     * the items were requested.
+     */
+    public Map<String, Throwable> failures() {
+        return failures;
+    }
+
+    /**
+     * @param name The name of an item.
+     * @return The value of the item, or {@code null} if the item failed or
+     * was not in the batch.
+     */
+    public T get(final String name) {
+        return values.get(name);
+    }
+
+    /**
+     * @return {@code true} if every item succeeded, otherwise {@code false}.
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+}
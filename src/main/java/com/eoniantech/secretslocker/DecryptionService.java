@@ -16,6 +16,9 @@
 package com.eoniantech.secretslocker;
 
 import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Interface for a decryption service. The exact details on how files and 
@@ -66,6 +69,64 @@ public interface DecryptionService {
      */
     public String decryptFile(File encryptedFile);
 
+    /**
+     * Decrypts a file to bytes, without decoding the plaintext to text. Use
+     * this for binary files, such as keystores and DER encoded keys.
+     *
+     * @param encryptedFile The file to decrypt.
+     * @return The decrypted contents of the file.
+     * @since 1.3
+     */
+    public byte[] decryptFileToBytes(File encryptedFile);
+
+    /**
+     * Decrypts a file to bytes without blocking the caller.
+     *
+     * @param encryptedFile The file to decrypt.
+     * @param executor The {@link Executor} that runs the decryption.
+     * @return A {@link CompletableFuture} that completes with the decrypted
+     * contents of the file.
+     * @since 1.3
+     * @see #decryptFileToBytes(File)
+     */
+    public CompletableFuture<byte[]> decryptFileToBytesAsync(
+            File encryptedFile,
+            Executor executor);
+
+    /**
+     * Decrypts a file without blocking the caller.
+     *
+     * @param encryptedFile The file to decrypt.
+     * @param executor The {@link Executor} that runs the decryption.
+     * @return A {@link CompletableFuture} that completes with the decrypted
+     * contents of the file.
+     * @since 1.3
+     */
+    public CompletableFuture<String> decryptFileAsync(
+            File encryptedFile,
+            Executor executor);
+
+    /**
+     * Decrypts a file as a stream, so that large files can be consumed without
+     * holding all of the plaintext in memory. The caller must close the
+     * stream.
+     *
+     * @param encryptedFile The file to decrypt.
+     * @return An {@link InputStream} of the decrypted contents of the file.
+     * @since 1.3
+     */
+    public InputStream decryptFileAsStream(File encryptedFile);
+
+    /**
+     * Decrypts a stream of encrypted data, e.g., the content of an S3 object.
+     * Closing the returned stream closes the encrypted stream.
+     *
+     * @param encryptedStream The encrypted data.
+     * @return An {@link InputStream} of the decrypted data.
+     * @since 1.3
+     */
+    public InputStream decryptStream(InputStream encryptedStream);
+
     /**
      * Decrypts an encrypted value.
      * 
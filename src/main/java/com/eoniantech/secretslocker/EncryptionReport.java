@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The result of encrypting a batch of files. Files are named by their
+ * absolute path. The value of each file that was encrypted is its encrypted
+ * file, and the throughput of the whole batch is reported.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class EncryptionReport extends BatchResult<File> {
+
+    private final long bytes;
+    private final Duration elapsed;
+
+    /**
+     * Constructor.
+     *
+     * @param encryptedFiles The encrypted file of each file that was
+     * encrypted, by absolute path.
+     * @param failures The exceptions of the files that were not encrypted, by
+     * absolute path.
+     * @param bytes The number of plain-text bytes that were encrypted.
+     * @param elapsed How long the whole batch took.
+     */
+    public EncryptionReport(
+            final Map<String, File> encryptedFiles,
+            final Map<String, Throwable> failures,
+            final long bytes,
+            final Duration elapsed) {
+
+        super(encryptedFiles, failures);
+        this.bytes = bytes;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return The number of plain-text bytes that were encrypted.
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return How long the whole batch took.
+     */
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return The number of files encrypted per second.
+     */
+    public double filesPerSecond() {
+        return perSecond(values().size());
+    }
+
+    /**
+     * @return The number of plain-text bytes encrypted per second.
+     */
+    public double bytesPerSecond() {
+        return perSecond(bytes);
+    }
+
+    private double perSecond(final long count) {
+        long nanos = Math.max(1, elapsed.toNanos());
+        return count * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "encrypted %d files (%d bytes) in %d ms, %.1f files/s, "
+                        + "%.1f MB/s, %d failed",
+                values().size(),
+                bytes,
+                elapsed.toMillis(),
+                filesPerSecond(),
+                bytesPerSecond() / (1024 * 1024),
+                failures().size());
+    }
+}
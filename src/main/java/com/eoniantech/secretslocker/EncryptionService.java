@@ -16,6 +16,8 @@
 package com.eoniantech.secretslocker;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
 
 /**
  * Interface for an encryption service. The exact details on how files and 
@@ -51,6 +53,31 @@ public interface EncryptionService {
      */
     public String encryptValue(String value);
 
+    /**
+     * Encrypts a batch of files. Files are encrypted in parallel, and a file
+     * that can not be encrypted does not abort the batch.
+     *
+     * @param files The files to encrypt.
+     * @return The {@link EncryptionReport} with the encrypted file of each
+     * file that was encrypted, the exception of each file that was not, and
+     * the throughput of the batch.
+     * @since 1.3
+     */
+    public EncryptionReport encryptAll(Collection<File> files);
+
+    /**
+     * Encrypts the files in a directory, and its subdirectories, whose paths
+     * relative to the directory match a glob. Files are encrypted in parallel,
+     * and a file that can not be encrypted does not abort the batch.
+     *
+     * @param directory The directory.
+     * @param glob The glob. E.g., *.properties or **&#47;*.yml
+     * @return The {@link EncryptionReport}.
+     * @since 1.3
+     * @see java.nio.file.FileSystem#getPathMatcher(String)
+     */
+    public EncryptionReport encryptDirectory(Path directory, String glob);
+
     /**
      * Exception indicating a problem while encrypting. It is available to 
      * implementations to use as needed and ONLY allows for the underlying 
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for the executors that run asynchronous locker and
+ * decryption work. Decryption blocks on file I/O, S3 and KMS, so these
+ * executors are sized for blocking work and never use the common fork-join
+ * pool.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class LockerExecutors {
+
+    private static final String THREAD_NAME_PATTERN = "%s-%d";
+    private static final String DEFAULT_THREAD_NAME = "secrets-locker";
+    private static final String DEFAULT_SCHEDULER_THREAD_NAME
+            = "secrets-locker-scheduler";
+    private static final String VIRTUAL_THREAD_FACTORY_METHOD
+            = "newVirtualThreadPerTaskExecutor";
+
+    /**
+     * Default executor holder.
+     */
+    private static class Holder {
+        public static final ExecutorService INSTANCE
+                = newDaemonThreadPool(
+                        Math.max(
+                                4,
+                                2 * Runtime
+                                        .getRuntime()
+                                        .availableProcessors()),
+                        DEFAULT_THREAD_NAME);
+    }
+
+    /**
+     * Default scheduler holder.
+     */
+    private static class SchedulerHolder {
+        public static final ScheduledExecutorService INSTANCE
+                = newDaemonScheduler(
+                        1,
+                        DEFAULT_SCHEDULER_THREAD_NAME);
+    }
+
+    private LockerExecutors() {
+    }
+
+    /**
+     * The default executor, shared by all lockers. It is a fixed pool of
+     * daemon threads, sized at twice the number of processors (at least 4).
+     *
+     * @return The default {@link ExecutorService}.
+     */
+    public static ExecutorService defaultExecutor() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads. Daemon threads do not prevent
+     * the JVM from exiting.
+     *
+     * @param threads The number of threads.
+     * @param threadName The prefix of each thread's name.
+     * @return The new {@link ExecutorService}.
+     */
+    public static ExecutorService newDaemonThreadPool(
+            final int threads,
+            final String threadName) {
+
+        return Executors
+                .newFixedThreadPool(
+                        threads,
+                        daemonThreadFactory(
+                                threadName));
+    }
+
+    /**
+     * The default scheduler, shared by all lockers. It has a single daemon
+     * thread and is only used to time deadlines, so scheduled tasks must not
+     * block.
+     *
+     * @return The default {@link ScheduledExecutorService}.
+     */
+    public static ScheduledExecutorService defaultScheduler() {
+        return SchedulerHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a scheduler with a fixed pool of daemon threads. Cancelled tasks
+     * are removed from the scheduler's queue immediately.
+     *
+     * @param threads The number of threads.
+     * @param threadName The prefix of each thread's name.
+     * @return The new {@link ScheduledExecutorService}.
+     */
+    public static ScheduledExecutorService newDaemonScheduler(
+            final int threads,
+            final String threadName) {
+
+        ScheduledThreadPoolExecutor scheduler
+                = new ScheduledThreadPoolExecutor(
+                        threads,
+                        daemonThreadFactory(
+                                threadName));
+
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Creates a factory for named daemon threads.
+     *
+     * @param threadName The prefix of each thread's name.
+     * @return The new {@link ThreadFactory}.
+     */
+    public static ThreadFactory daemonThreadFactory(
+            final String threadName) {
+
+        final AtomicInteger count
+                = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread
+                    = new Thread(
+                            runnable,
+                            String.format(
+                                    THREAD_NAME_PATTERN,
+                                    threadName,
+                                    count.incrementAndGet()));
+
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return {@code true} if the running JVM supports virtual threads (JDK 21
+     * and later), otherwise {@code false}.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread. Blocking
+     * file, S3 and KMS calls then park a virtual thread rather than occupying a
+     * platform thread.
+     *
+     * @return The new {@link ExecutorService}.
+     * @throws UnsupportedOperationException If the running JVM does not
+     * support virtual threads.
+     * @see #isVirtualThreadSupported()
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        Method factoryMethod
+                = virtualThreadFactoryMethod();
+
+        if (factoryMethod == null)
+            throw new UnsupportedOperationException(
+                    "virtual threads require JDK 21 or later");
+
+        try {
+            return (ExecutorService) factoryMethod.invoke(null);
+
+        } catch (IllegalAccessException
+                | InvocationTargetException exception) {
+
+            throw new UnsupportedOperationException(
+                    "virtual threads are not available",
+                    exception);
+        }
+    }
+
+    private static Method virtualThreadFactoryMethod() {
+        try {
+            return Executors.class
+                    .getMethod(
+                            VIRTUAL_THREAD_FACTORY_METHOD);
+
+        } catch (NoSuchMethodException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The result of getting a batch of secrets as Java {@link Properties}. In
+ * addition to the properties of each secret, the result provides all of the
+ * properties merged into a single {@link Properties} object.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class PropertiesBatchResult extends BatchResult<Properties> {
+
+    private final Properties merged;
+
+    /**
+     * Constructor.
+     *
+     * @param values The properties of the secrets that were read, by name.
+     * @param failures The exceptions of the secrets that could not be read, by
+     * name.
+     */
+    public PropertiesBatchResult(
+            final Map<String, Properties> values,
+            final Map<String, Throwable> failures) {
+
+        super(values, failures);
+
+        this.merged
+                = new Properties();
+
+        for (Properties properties : values().values())
+            merged.putAll(properties);
+    }
+
+    /**
+     * The properties of every secret that was read, merged in the order the
+     * secrets were requested. If more than one secret has the same key, the
+     * value from the secret requested last wins.
+     *
+     * @return A new {@link Properties} object with the merged properties.
+     */
+    public Properties merged() {
+        Properties copy
+                = new Properties();
+
+        copy.putAll(merged);
+        return copy;
+    }
+}
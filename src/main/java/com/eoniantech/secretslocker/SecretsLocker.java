@@ -15,12 +15,19 @@
  */
 package com.eoniantech.secretslocker;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for a secrets locker. Lockers retrieve secrets by name. The exact
  * details of adding encrypted secrets to the locker and retrieving their
  * decrypted value is implementation-specific.
+ *
+ * <p>Implementations must document whether they are safe for use by multiple
+ * threads. All implementations provided by this library are thread-safe.
  * 
  * @author Michael Andrews <Michael.Andrews@eoniantech.com>
  * @since 1.0
@@ -52,6 +59,26 @@ public interface SecretsLocker {
      */
     public String get(String name);
 
+    /**
+     * Gets a decrypted secret as bytes, without decoding it to text. Use this
+     * for binary secrets, such as keystores and DER encoded keys.
+     *
+     * @param name The name of the secret to get.
+     * @return The secret's plaintext bytes. The caller may modify them.
+     * @since 1.3
+     */
+    public byte[] getBytes(String name);
+
+    /**
+     * Gets a decrypted secret as a read-only {@link ByteBuffer}, without
+     * decoding it to text. Implementations may avoid copying the plaintext.
+     *
+     * @param name The name of the secret to get.
+     * @return A read-only {@link ByteBuffer} of the secret's plaintext bytes.
+     * @since 1.3
+     */
+    public ByteBuffer getByteBuffer(String name);
+
     /**
      * Gets a decrypted secret as a Java {@link Properties} object.
      * @param name The name of the secret.
@@ -59,6 +86,67 @@ public interface SecretsLocker {
      */
     public Properties getAsProperties(String name);
 
+    /**
+     * Gets a decrypted secret as a stream, so that large secrets, such as
+     * keystores and certificate bundles, can be consumed without holding all
+     * of the plaintext in memory. The secret is decrypted as it is read and is
+     * not cached. The caller must close the stream.
+     *
+     * @param name The name of the secret.
+     * @return An {@link InputStream} of the secret's plain-text.
+     * @since 1.3
+     */
+    public InputStream getAsStream(String name);
+
+    /**
+     * Gets a decrypted secret from the locker without blocking the caller.
+     * File, network and decryption work is done by the locker's executor.
+     *
+     * @param name The name of the secret to get.
+     * @return A {@link CompletableFuture} that completes with the secret's
+     * plain-text, or exceptionally if the secret can not be decrypted.
+     * @since 1.3
+     */
+    public CompletableFuture<String> getAsync(String name);
+
+    /**
+     * Gets a decrypted secret as a Java {@link Properties} object without
+     * blocking the caller. File, network and decryption work is done by the
+     * locker's executor.
+     *
+     * @param name The name of the secret.
+     * @return A {@link CompletableFuture} that completes with the secret's
+     * plain-text as Java {@link Properties}, or exceptionally if the secret
+     * can not be decrypted.
+     * @since 1.3
+     */
+    public CompletableFuture<Properties> getAsPropertiesAsync(String name);
+
+    /**
+     * Gets a batch of decrypted secrets from the locker. Secrets are fetched
+     * and decrypted in parallel, and a secret that can not be decrypted does
+     * not abort the batch.
+     *
+     * @param names The names of the secrets to get.
+     * @return The {@link BatchResult} with the plain-text of each secret that
+     * was decrypted, and the exception of each secret that was not.
+     * @since 1.3
+     */
+    public BatchResult<String> getAll(Collection<String> names);
+
+    /**
+     * Gets a batch of decrypted secrets as Java {@link Properties} objects.
+     * Secrets are fetched and decrypted in parallel, and a secret that can not
+     * be decrypted does not abort the batch.
+     *
+     * @param names The names of the secrets to get.
+     * @return The {@link PropertiesBatchResult} with the properties of each
+     * secret that was decrypted, merged and by name, and the exception of each
+     * secret that was not.
+     * @since 1.3
+     */
+    public PropertiesBatchResult getAllAsProperties(Collection<String> names);
+
     /**
      * A class representing a locker exception. How this exception is used will
      * vary. It is available to implementations to use as needed.
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The result of warming up a locker. For each secret that was decrypted it
+ * records how long the secret took, and for each secret that was not it
+ * records the exception. Secrets that were not decrypted before the deadline
+ * fail with a {@link java.util.concurrent.TimeoutException}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class WarmUpReport extends BatchResult<Duration> {
+
+    private final Duration elapsed;
+
+    /**
+     * Constructor.
+     *
+     * @param timings How long each secret that was decrypted took, by name.
+     * @param failures The exceptions of the secrets that were not decrypted,
+     * by name.
+     * @param elapsed How long the whole warm-up took.
+     */
+    public WarmUpReport(
+            final Map<String, Duration> timings,
+            final Map<String, Throwable> failures,
+            final Duration elapsed) {
+
+        super(timings, failures);
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return How long the whole warm-up took.
+     */
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "warmed up %d secrets in %d ms, %d failed",
+                values().size(),
+                elapsed.toMillis(),
+                failures().size());
+    }
+}
@@ -15,29 +15,102 @@
  */
 package com.eoniantech.secretslocker.aws;
 
+import com.eoniantech.secretslocker.BatchResult;
+import com.eoniantech.secretslocker.LockerExecutors;
+import com.eoniantech.secretslocker.PropertiesBatchResult;
 import com.eoniantech.secretslocker.SecretsLocker;
 import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import com.eoniantech.secretslocker.WarmUpReport;
 import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotEmpty;
 import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.BATCH_CONCURRENCY;
+import static com.eoniantech.secretslocker.aws.Constants.CHARSET;
+import static com.eoniantech.secretslocker.aws.Constants.DEADLINE;
+import static com.eoniantech.secretslocker.aws.Constants.DEADLINE_EXCEEDED;
+import static com.eoniantech.secretslocker.aws.Constants.DECRYPTION_SERVICE;
 import static com.eoniantech.secretslocker.aws.Constants.DIRECTORY_DOES_NOT_EXIST_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.DIRECTORY_IS_NOT_READABLE;
+import static com.eoniantech.secretslocker.aws.Constants.EXECUTOR;
 import static com.eoniantech.secretslocker.aws.Constants.FILE_DOES_NOT_EXIST_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.FILE_NAME;
 import static com.eoniantech.secretslocker.aws.Constants.GET_AS_PROPERTIES_EXCEPTION;
 import static com.eoniantech.secretslocker.aws.Constants.LOCKER_PATH;
-import java.io.ByteArrayInputStream;
+import static com.eoniantech.secretslocker.aws.Constants.POLICY;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import static com.eoniantech.secretslocker.aws.Constants.NAME;
+import static com.eoniantech.secretslocker.aws.Constants.NAMES;
 import static com.eoniantech.secretslocker.aws.Constants.SECRET_NOT_FOUND;
+import static com.eoniantech.secretslocker.aws.Constants.TIMEOUT;
 
 /**
  * Abstract base class for file system backed {@link SecretsLocker} 
  * implementations.
+ *
+ * <p>By default every call to {@link #get} decrypts the secret. Caching of
+ * decrypted secrets can be enabled per locker with
+ * {@link #enableCaching(SecretCachePolicy)}. Cached secrets are invalidated
+ * when they expire, and whenever the encrypted file changes.
+ *
+ * <p>Lockers are thread-safe. Secrets are registered in a concurrent map, so
+ * {@link #add}, {@link #contains} and {@link #get} may be called from any
+ * number of threads without external synchronization, and reads never lock.
+ * Adding a secret under an existing name atomically replaces the registered
+ * file; callers see either the old file or the new one, never a mix.
+ * Concurrent calls to {@link #get} for the same secret share a single
+ * decryption, and every caller receives its result or its exception. Cached
+ * secrets are served without locking.
+ *
+ * <p>The asynchronous methods never block the caller on file I/O, S3 or KMS.
+ * That work is done by the locker's executor, which defaults to
+ * {@link LockerExecutors#defaultExecutor()} and can be replaced with
+ * {@link #setExecutor(Executor)}. Cached secrets are returned as completed
+ * futures.
+ *
+ * <p>{@link #getAll} and {@link #getAllAsProperties} get a batch of secrets
+ * with at most {@link #DEFAULT_BATCH_CONCURRENCY} secrets in flight at a time,
+ * which can be changed with {@link #setBatchConcurrency(int)}.
+ *
+ * <p>{@link #preload()} and {@link #warmUp(Duration)} decrypt every
+ * registered secret into the cache ahead of the first request, and
+ * {@link #warmUpAsync(Duration)} does so in the background. Health checks can
+ * use {@link #isReady()} or {@link #awaitReady(Duration)} to wait for the
+ * first warm-up to finish.
+ *
+ * <p>With {@link #enableRefreshAhead(RefreshPolicy)}, a cached secret that is
+ * read shortly before it expires is decrypted again in the background, so
+ * reads keep being served from the cache instead of waiting on KMS.
+ *
+ * <p>With {@link #enableStaleWhileRevalidate(StalePolicy)}, a cached secret
+ * that has expired can still be served for a grace period when decrypting it
+ * again fails, or takes longer than a latency deadline, e.g., during a KMS or
+ * S3 incident. The secret is revalidated in the background.
+ *
+ * <p>Secrets are decrypted, and cached, as bytes. {@link #getBytes} and
+ * {@link #getByteBuffer} return them as is, so binary secrets such as
+ * keystores are never decoded. The other methods decode the bytes with the
+ * locker's charset, UTF-8 unless set with {@link #setCharset(Charset)}, and
+ * cached secrets are decoded once.
  * 
  * @author Michael Andrews <Michael.Andrews@eoniantech.com>
  * @since 1.0
@@ -50,6 +123,21 @@ abstract class AbtractFileSystemSecretsLocker implements SecretsLocker {
     private File locker;
     private final boolean validateFiles;
     private final Map<String, File> secrets;
+    private final SingleFlight<String, byte[]> decryptions;
+    private volatile Charset charset;
+    private volatile SecretCache cache;
+    private volatile Refresher refresher;
+    private volatile Revalidator revalidator;
+    private volatile Executor executor;
+    private volatile int batchConcurrency;
+    private volatile KmsDecryptionService decryptionService;
+    private final CompletableFuture<WarmUpReport> readiness;
+
+    /**
+     * The default maximum number of secrets a batch fetches and decrypts at a
+     * time.
+     */
+    public static final int DEFAULT_BATCH_CONCURRENCY = 8;
 
     /**
      * Constructor.
@@ -65,7 +153,12 @@ abstract class AbtractFileSystemSecretsLocker implements SecretsLocker {
 
        setLocker(lockerPath); 
 
-       this.secrets = new HashMap<>();
+       this.secrets = new ConcurrentHashMap<>();
+       this.decryptions = new SingleFlight<>();
+       this.charset = StandardCharsets.UTF_8;
+       this.executor = LockerExecutors.defaultExecutor();
+       this.batchConcurrency = DEFAULT_BATCH_CONCURRENCY;
+       this.readiness = new CompletableFuture<>();
        this.validateFiles = validateFiles;
     }
     
@@ -90,7 +183,7 @@ abstract class AbtractFileSystemSecretsLocker implements SecretsLocker {
         if (validateFiles())
             validateFileExist(file);
 
-        secrets().put(name, file);
+        register(name, file);
     }
 
     @Override
@@ -99,65 +192,1140 @@ abstract class AbtractFileSystemSecretsLocker implements SecretsLocker {
                 NAME, 
                 name); 
         
-        return secrets().containsKey(name) 
-                && secrets().get(name).exists();
+        File file 
+                = secrets().get(name);
+
+        return file != null 
+                && file.exists();
     }
 
     @Override
     public String get(final String name) {
+        return decode(
+                        name,
+                        getRaw(name))
+                .text();
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * <p>The plaintext is never decoded. With caching enabled, each call
+     * copies the cached plaintext.
+     */
+    @Override
+    public byte[] getBytes(final String name) {
+        return getRaw(name)
+                .clone();
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * <p>The plaintext is never decoded or copied. With caching enabled, the
+     * buffer is a read-only view of the cached plaintext.
+     */
+    @Override
+    public ByteBuffer getByteBuffer(final String name) {
+        return ByteBuffer
+                .wrap(
+                        getRaw(name))
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * <p>The secret is always decrypted, even if caching is enabled, and the
+     * stream is not coalesced with concurrent calls.
+     */
+    @Override
+    public InputStream getAsStream(final String name) {
         assertArgumentNotEmpty(
-                NAME, 
-                name); 
+                NAME,
+                name);
 
         if (!contains(name))
             throw new SecretsLockerException(
                     SECRET_NOT_FOUND);
 
-        return decrypt(
-                secrets().get(
-                        name));
+        return decryptAsStream(
+                resolve(name));
     }
 
+    /**
+     * {@inheritDoc }
+     *
+     * <p>The properties are parsed from the plaintext decoded with the
+     * locker's charset, and are read-only: methods that would modify them
+     * throw an {@link UnsupportedOperationException}. With caching enabled,
+     * the parsed properties are cached with the secret and shared by every
+     * caller until the secret is invalidated.
+     */
     @Override
     public Properties getAsProperties(final String name) {
-        String value = get(name); 
+        return toProperties(
+                name,
+                getRaw(name));
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(final String name) {
+        return getRawAsync(name)
+                .thenApply(
+                        value -> decode(
+                                        name,
+                                        value)
+                                .text());
+    }
+
+    @Override
+    public CompletableFuture<Properties> getAsPropertiesAsync(
+            final String name) {
+
+        return getRawAsync(name)
+                .thenApply(
+                        value -> toProperties(
+                                name,
+                                value));
+    }
+
+    @Override
+    public BatchResult<String> getAll(
+            final Collection<String> names) {
+
+        return getAllAsync(names)
+                .join();
+    }
+
+    @Override
+    public PropertiesBatchResult getAllAsProperties(
+            final Collection<String> names) {
+
+        assertNames(names);
+
+        BatchResult<Properties> result
+                = Batch.run(
+                        names,
+                        batchConcurrency,
+                        this::getAsPropertiesAsync)
+                        .join();
+
+        return new PropertiesBatchResult(
+                result.values(),
+                result.failures());
+    }
+
+    /**
+     * Gets a batch of decrypted secrets without blocking the caller. At most
+     * the batch concurrency secrets are fetched and decrypted at a time, and
+     * each one starts as soon as an earlier one completes. For the
+     * {@link S3SecretsLocker} this overlaps the download of some secrets with
+     * the decryption of others.
+     *
+     * @param names The names of the secrets to get.
+     * @return A {@link CompletableFuture} that completes with the
+     * {@link BatchResult} once every secret has been decrypted or has failed.
+     * It never completes exceptionally.
+     */
+    public CompletableFuture<BatchResult<String>> getAllAsync(
+            final Collection<String> names) {
+
+        assertNames(names);
+
+        return Batch.run(
+                names,
+                batchConcurrency,
+                this::getAsync);
+    }
+
+    /**
+     * Decrypts every registered secret, in parallel, and waits for all of
+     * them. With caching enabled the secrets are then served from the cache.
+     * Without caching, S3 secrets are still downloaded and data keys are
+     * still cached if the decryption service caches them.
+     *
+     * @return The {@link WarmUpReport}.
+     */
+    public WarmUpReport preload() {
+        return warmUpAsync(null)
+                .join();
+    }
+
+    /**
+     * Decrypts every registered secret, in parallel, and waits for all of
+     * them or for the deadline, whichever comes first. Secrets that are not
+     * decrypted before the deadline are reported as failed with a
+     * {@link TimeoutException}, but continue to decrypt, and are cached, in
+     * the background.
+     *
+     * @param deadline How long to wait for the secrets.
+     * @return The {@link WarmUpReport}.
+     */
+    public WarmUpReport warmUp(final Duration deadline) {
+        assertArgumentNotNull(
+                DEADLINE,
+                deadline);
+
+        return warmUpAsync(deadline)
+                .join();
+    }
+
+    /**
+     * Decrypts every registered secret, in parallel, in the background. The
+     * first warm-up to finish completes the locker's readiness signal.
+     *
+     * @param deadline How long to wait for the secrets, or {@code null} to
+     * wait for all of them.
+     * @return A {@link CompletableFuture} that completes with the
+     * {@link WarmUpReport}. It never completes exceptionally.
+     * @see #warmUp(Duration)
+     */
+    public CompletableFuture<WarmUpReport> warmUpAsync(
+            final Duration deadline) {
+
+        final long start
+                = System.nanoTime();
+
+        return Batch.run(
+                new ArrayList<>(
+                        secrets().keySet()),
+                batchConcurrency,
+                name -> warmUp(
+                        name,
+                        start,
+                        deadline))
+                .thenApply(
+                        result -> {
+                            WarmUpReport report
+                                    = new WarmUpReport(
+                                            result.values(),
+                                            result.failures(),
+                                            Duration.ofNanos(
+                                                    System.nanoTime() - start));
+
+                            readiness.complete(report);
+                            return report;
+                        });
+    }
+
+    /**
+     * @return {@code true} once the first warm-up of the locker has finished,
+     * otherwise {@code false}.
+     */
+    public boolean isReady() {
+        return readiness.isDone();
+    }
+
+    /**
+     * Waits for the first warm-up of the locker to finish.
+     *
+     * @param timeout How long to wait.
+     * @return {@code true} if the warm-up finished, otherwise {@code false}.
+     * @throws InterruptedException If the current thread is interrupted while
+     * waiting.
+     */
+    public boolean awaitReady(final Duration timeout)
+            throws InterruptedException {
+
+        assertArgumentNotNull(
+                TIMEOUT,
+                timeout);
+
+        try {
+            readiness.get(
+                    timeout.toNanos(),
+                    TimeUnit.NANOSECONDS);
+
+            return true;
+
+        } catch (TimeoutException exception) {
+            return false;
+
+        } catch (ExecutionException exception) {
+            return true;
+        }
+    }
+
+    /**
+     * @return A {@link CompletableFuture} that completes with the report of
+     * the first warm-up of the locker to finish.
+     */
+    public CompletableFuture<WarmUpReport> readiness() {
+        return readiness.thenApply(Function.identity());
+    }
+
+    /**
+     * Sets the maximum number of secrets a batch fetches and decrypts at a
+     * time.
+     *
+     * @param batchConcurrency The maximum number of secrets in flight.
+     */
+    public void setBatchConcurrency(final int batchConcurrency) {
+        assertArgumentPositive(
+                BATCH_CONCURRENCY,
+                batchConcurrency);
+
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    /**
+     * Sets the executor that runs the asynchronous methods.
+     *
+     * @param executor The {@link Executor}. E.g.,
+     * {@link LockerExecutors#newVirtualThreadExecutor()} on JDK 21 and later.
+     */
+    public void setExecutor(final Executor executor) {
+        assertArgumentNotNull(
+                EXECUTOR,
+                executor);
+
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the service that decrypts the secrets, e.g., one from
+     * {@link KmsDecryptionService#builder()} with a connection pool sized for
+     * the threads that read secrets. Defaults to
+     * {@link KmsDecryptionService#instance()}.
+     *
+     * @param decryptionService The {@link KmsDecryptionService}.
+     */
+    public void setDecryptionService(final KmsDecryptionService decryptionService) {
+        assertArgumentNotNull(
+                DECRYPTION_SERVICE,
+                decryptionService);
+
+        this.decryptionService = decryptionService;
+    }
+
+    /**
+     * Sets the charset used to decode secrets to text. Cached secrets are
+     * decoded again with the new charset on their next read.
+     *
+     * @param charset The {@link Charset}. E.g.,
+     * {@link StandardCharsets#ISO_8859_1}.
+     */
+    public void setCharset(final Charset charset) {
+        assertArgumentNotNull(
+                CHARSET,
+                charset);
+
+        this.charset = charset;
+    }
+
+    /**
+     * @return The {@link Charset} used to decode secrets to text.
+     */
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * Enables caching of decrypted secrets. Replaces any previously enabled
+     * cache.
+     *
+     * @param policy The {@link SecretCachePolicy}.
+     */
+    public void enableCaching(final SecretCachePolicy policy) {
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        SecretCache secretCache
+                = new SecretCache(
+                        policy);
+
+        Revalidator current
+                = revalidator;
+
+        if (current != null)
+            secretCache.setGracePeriodNanos(
+                    current.policy().gracePeriodNanos());
+
+        this.cache = secretCache;
+    }
+
+    /**
+     * Disables caching. Every call to {@link #get} decrypts the secret.
+     */
+    public void disableCaching() {
+        this.cache = null;
+    }
+
+    /**
+     * @return {@code true} if caching is enabled, otherwise {@code false}.
+     */
+    public boolean isCachingEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Enables refresh-ahead of cached secrets. A cached secret that is read
+     * within the policy's refresh window before it expires is decrypted again
+     * on the refresh scheduler, and the cached value is served until the
+     * refreshed value replaces it. Has no effect unless caching is enabled.
+     * Replaces, and shuts down, any previously enabled refresh scheduler.
+     *
+     * @param policy The {@link RefreshPolicy}.
+     */
+    public synchronized void enableRefreshAhead(final RefreshPolicy policy) {
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        Refresher previous
+                = refresher;
+
+        this.refresher
+                = new Refresher(
+                        policy);
+
+        if (previous != null)
+            previous.shutdown();
+    }
+
+    /**
+     * Disables refresh-ahead and shuts down the refresh scheduler. Cached
+     * secrets are decrypted again on the first read after they expire.
+     */
+    public synchronized void disableRefreshAhead() {
+        Refresher previous
+                = refresher;
+
+        this.refresher = null;
+
+        if (previous != null)
+            previous.shutdown();
+    }
+
+    /**
+     * @return {@code true} if refresh-ahead is enabled, otherwise
+     * {@code false}.
+     */
+    public boolean isRefreshAheadEnabled() {
+        return refresher != null;
+    }
+
+    /**
+     * @return The number of background refreshes that succeeded since
+     * refresh-ahead was last enabled.
+     */
+    public long refreshSuccesses() {
+        Refresher current
+                = refresher;
+
+        return (current == null)
+                ? 0
+                : current.successes();
+    }
+
+    /**
+     * @return The number of background refreshes that failed since
+     * refresh-ahead was last enabled.
+     */
+    public long refreshFailures() {
+        Refresher current
+                = refresher;
+
+        return (current == null)
+                ? 0
+                : current.failures();
+    }
+
+    /**
+     * Enables serving expired cached secrets while they are revalidated. For
+     * the policy's grace period after a cached secret expires, a read waits
+     * at most the latency deadline for the secret to be decrypted again, and
+     * otherwise returns the expired value. Failed revalidations are retried in
+     * the background. Has no effect unless caching is enabled, and expired
+     * values are never served once the encrypted file has changed.
+     *
+     * @param policy The {@link StalePolicy}.
+     */
+    public synchronized void enableStaleWhileRevalidate(
+            final StalePolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        this.revalidator
+                = new Revalidator(
+                        policy);
+
+        SecretCache secretCache
+                = cache();
+
+        if (secretCache != null)
+            secretCache.setGracePeriodNanos(
+                    policy.gracePeriodNanos());
+    }
+
+    /**
+     * Disables serving expired cached secrets. Cached secrets are decrypted
+     * again on the first read after they expire.
+     */
+    public synchronized void disableStaleWhileRevalidate() {
+        this.revalidator = null;
+
+        SecretCache secretCache
+                = cache();
+
+        if (secretCache != null)
+            secretCache.setGracePeriodNanos(0);
+    }
+
+    /**
+     * @return {@code true} if expired cached secrets can be served while they
+     * are revalidated, otherwise {@code false}.
+     */
+    public boolean isStaleWhileRevalidateEnabled() {
+        return revalidator != null;
+    }
+
+    /**
+     * @return The number of reads that were served an expired secret since
+     * stale-while-revalidate was last enabled.
+     */
+    public long staleHits() {
+        Revalidator current
+                = revalidator;
+
+        return (current == null)
+                ? 0
+                : current.staleHits();
+    }
+
+    /**
+     * Removes a secret from the cache. The next call to {@link #get} will
+     * decrypt it.
+     *
+     * @param name The name of the secret.
+     */
+    public void invalidate(final String name) {
+        assertArgumentNotEmpty(
+                NAME,
+                name);
+
+        SecretCache secretCache
+                = cache();
+
+        if (secretCache != null)
+            secretCache.invalidate(name);
+    }
+
+    /**
+     * Removes all secrets from the cache.
+     */
+    public void invalidateAll() {
+        SecretCache secretCache
+                = cache();
+
+        if (secretCache != null)
+            secretCache.invalidateAll();
+    }
+
+    /**
+     * @return The number of calls to {@link #get} that were served from the
+     * cache since caching was last enabled.
+     */
+    public long cacheHits() {
+        SecretCache secretCache
+                = cache();
+
+        return (secretCache == null)
+                ? 0
+                : secretCache.hits();
+    }
+
+    /**
+     * @return The number of calls to {@link #get} that had to decrypt the
+     * secret since caching was last enabled.
+     */
+    public long cacheMisses() {
+        SecretCache secretCache
+                = cache();
+
+        return (secretCache == null)
+                ? 0
+                : secretCache.misses();
+    }
+
+    /**
+     * Gets the plaintext of a secret that is in the locker. Cached secrets are
+     * returned without locking. Otherwise the secret is decrypted, sharing
+     * the decryption with any concurrent callers for the same secret.
+     *
+     * @param name The name of the secret.
+     * @return The secret's plaintext bytes. Callers must not modify them.
+     */
+    protected byte[] load(final String name) {
+        SecretCache secretCache
+                = cache();
+
+        byte[] value
+                = cached(
+                        name,
+                        secretCache);
+
+        if (value != null)
+            return value;
+
+        Revalidator current
+                = revalidator;
+
+        byte[] staleValue
+                = stale(
+                        name,
+                        secretCache,
+                        current);
+
+        if (staleValue != null)
+            return awaitRevalidation(
+                    name,
+                    secretCache,
+                    current,
+                    staleValue);
+
+        return decryptions
+                .execute(
+                        name,
+                        () -> decryptAndCache(
+                                name,
+                                secretCache));
+    }
+
+    /**
+     * Resolves a secret to the local encrypted file that can be decrypted.
+     *
+     * @param name The name of the secret.
+     * @return The encrypted file.
+     */
+    protected File resolve(final String name) {
+        return secrets().get(name);
+    }
+
+    /**
+     * Resolves a secret to the local encrypted file that can be decrypted,
+     * without blocking the caller. By default the file is resolved by the
+     * locker's executor.
+     *
+     * @param name The name of the secret.
+     * @return A {@link CompletableFuture} that completes with the encrypted
+     * file.
+     */
+    protected CompletableFuture<File> resolveAsync(final String name) {
+        return CompletableFuture
+                .supplyAsync(
+                        () -> {
+                            if (!contains(name))
+                                throw new SecretsLockerException(
+                                        SECRET_NOT_FOUND);
+
+                            return resolve(name);
+                        },
+                        executor());
+    }
+
+    /**
+     * Registers the encrypted file for a secret, replacing and invalidating
+     * any previously registered file.
+     *
+     * @param name The name of the secret.
+     * @param file The encrypted file.
+     */
+    protected void register(
+            final String name,
+            final File file) {
+
+        secrets().put(name, file);
+
+        SecretCache secretCache
+                = cache();
+
+        if (secretCache != null)
+            secretCache.invalidate(name);
+    }
+
+    private byte[] cached(
+            final String name,
+            final SecretCache secretCache) {
+
+        if (secretCache == null)
+            return null;
+
+        File file
+                = secrets().get(name);
+
+        if (file == null)
+            return null;
+
+        byte[] value
+                = secretCache.get(
+                        name,
+                        FileVersion.of(file));
+
+        if (value != null)
+            refreshAhead(
+                    name,
+                    secretCache);
+
+        return value;
+    }
+
+    private byte[] stale(
+            final String name,
+            final SecretCache secretCache,
+            final Revalidator current) {
+
+        if (secretCache == null
+                || current == null)
+            return null;
+
+        File file
+                = secrets().get(name);
+
+        return (file == null)
+                ? null
+                : secretCache.stale(
+                        name,
+                        FileVersion.of(file));
+    }
+
+    private byte[] awaitRevalidation(
+            final String name,
+            final SecretCache secretCache,
+            final Revalidator current,
+            final byte[] staleValue) {
+
+        CompletableFuture<byte[]> revalidation
+                = revalidate(
+                        name,
+                        secretCache,
+                        current);
+
+        try {
+            return revalidation
+                    .get(
+                            current.policy().latencyDeadlineNanos(),
+                            TimeUnit.NANOSECONDS);
+
+        } catch (TimeoutException | ExecutionException exception) {
+            return current.serveStale(
+                    staleValue);
+
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            return current.serveStale(
+                    staleValue);
+        }
+    }
+
+    private CompletableFuture<byte[]> revalidateAsync(
+            final String name,
+            final SecretCache secretCache,
+            final Revalidator current,
+            final byte[] staleValue) {
+
+        CompletableFuture<byte[]> revalidation
+                = revalidate(
+                        name,
+                        secretCache,
+                        current);
+
+        return within(
+                        revalidation,
+                        current.policy().latencyDeadlineNanos())
+                .handle(
+                        (revalidated, exception) -> (exception == null)
+                                ? revalidated
+                                : current.serveStale(
+                                        staleValue));
+    }
+
+    private CompletableFuture<byte[]> revalidate(
+            final String name,
+            final SecretCache secretCache,
+            final Revalidator current) {
+
+        return current
+                .revalidate(
+                        name,
+                        () -> decryptions
+                                .executeAsync(
+                                        name,
+                                        () -> decryptAndCacheAsync(
+                                                name,
+                                                secretCache)));
+    }
+
+    private void refreshAhead(
+            final String name,
+            final SecretCache secretCache) {
+
+        Refresher current
+                = refresher;
+
+        if (current == null
+                || !secretCache.claimRefresh(
+                        name,
+                        current.policy().refreshWindowNanos()))
+            return;
+
+        current.submit(
+                () -> decryptions
+                        .execute(
+                                name,
+                                () -> refresh(
+                                        name,
+                                        secretCache)),
+                () -> secretCache.releaseRefresh(name));
+    }
+
+    private byte[] refresh(
+            final String name,
+            final SecretCache secretCache) {
+
+        File file
+                = resolve(name);
+
+        FileVersion version
+                = FileVersion.of(file);
+
+        byte[] value
+                = decrypt(file);
+
+        secretCache.put(
+                name,
+                version,
+                value);
+
+        return value;
+    }
+
+    private byte[] decryptAndCache(
+            final String name,
+            final SecretCache secretCache) {
+
+        File file
+                = resolve(name);
+
+        if (secretCache == null)
+            return decrypt(file);
+
+        FileVersion version
+                = FileVersion.of(file);
+
+        byte[] value
+                = secretCache.peek(
+                        name,
+                        version);
+
+        if (value == null) {
+            value = decrypt(file);
+
+            secretCache.put(
+                    name,
+                    version,
+                    value);
+        }
+
+        return value;
+    }
+
+    private CompletableFuture<byte[]> decryptAndCacheAsync(
+            final String name,
+            final SecretCache secretCache) {
+
+        return resolveAsync(name)
+                .thenCompose(
+                        file -> {
+                            if (secretCache == null)
+                                return decryptAsync(file);
+
+                            FileVersion version
+                                    = FileVersion.of(file);
+
+                            byte[] value
+                                    = secretCache.peek(
+                                            name,
+                                            version);
+
+                            if (value != null)
+                                return CompletableFuture
+                                        .completedFuture(
+                                                value);
+
+                            return decryptAsync(file)
+                                    .thenApply(
+                                            decrypted -> {
+                                                secretCache.put(
+                                                        name,
+                                                        version,
+                                                        decrypted);
+
+                                                return decrypted;
+                                            });
+                        });
+    }
+
+    private CompletableFuture<Duration> warmUp(
+            final String name,
+            final long warmUpStart,
+            final Duration deadline) {
+
+        final long start
+                = System.nanoTime();
+
+        if (deadline == null)
+            return timed(
+                    getAsync(name),
+                    start);
+
+        long remainingNanos
+                = deadline.toNanos() - (start - warmUpStart);
+
+        if (remainingNanos <= 0)
+            return failedFuture(
+                    new TimeoutException(
+                            DEADLINE_EXCEEDED));
+
+        return within(
+                timed(
+                        getAsync(name),
+                        start),
+                remainingNanos);
+    }
+
+    private static CompletableFuture<Duration> timed(
+            final CompletableFuture<?> future,
+            final long start) {
+
+        return future
+                .thenApply(
+                        value -> Duration.ofNanos(
+                                System.nanoTime() - start));
+    }
+
+    /**
+     * Completes with the result of the future, or with a
+     * {@link TimeoutException} if the future does not complete in time. The
+     * future itself is not cancelled.
+     *
+     * @param <T> The type of the future's value.
+     * @param future The future.
+     * @param timeoutNanos The timeout in nanoseconds.
+     * @return The new {@link CompletableFuture}.
+     */
+    static <T> CompletableFuture<T> within(
+            final CompletableFuture<T> future,
+            final long timeoutNanos) {
+
+        if (future.isDone())
+            return future;
+
+        final CompletableFuture<T> result
+                = new CompletableFuture<>();
+
+        final ScheduledFuture<?> timeout
+                = LockerExecutors
+                        .defaultScheduler()
+                        .schedule(
+                                () -> result.completeExceptionally(
+                                        new TimeoutException(
+                                                DEADLINE_EXCEEDED)),
+                                timeoutNanos,
+                                TimeUnit.NANOSECONDS);
+
+        future.whenComplete(
+                (value, exception) -> {
+                    timeout.cancel(false);
+
+                    if (exception == null)
+                        result.complete(value);
+                    else
+                        result.completeExceptionally(
+                                SingleFlight.unwrap(exception));
+                });
+
+        return result;
+    }
+
+    private static void assertNames(
+            final Collection<String> names) {
+
+        assertArgumentNotNull(
+                NAMES,
+                names);
+
+        for (String name : names)
+            assertArgumentNotEmpty(
+                    NAME,
+                    name);
+    }
+
+    private byte[] getRaw(final String name) {
+        assertArgumentNotEmpty(
+                NAME,
+                name);
+
+        if (!contains(name))
+            throw new SecretsLockerException(
+                    SECRET_NOT_FOUND);
+
+        return load(name);
+    }
+
+    private CompletableFuture<byte[]> getRawAsync(final String name) {
+        assertArgumentNotEmpty(
+                NAME,
+                name);
+
+        if (!secrets().containsKey(name))
+            return failedFuture(
+                    new SecretsLockerException(
+                            SECRET_NOT_FOUND));
+
+        SecretCache secretCache
+                = cache();
+
+        byte[] value
+                = cached(
+                        name,
+                        secretCache);
+
+        if (value != null)
+            return CompletableFuture
+                    .completedFuture(
+                            value);
+
+        Revalidator current
+                = revalidator;
+
+        byte[] staleValue
+                = stale(
+                        name,
+                        secretCache,
+                        current);
+
+        if (staleValue != null)
+            return revalidateAsync(
+                    name,
+                    secretCache,
+                    current,
+                    staleValue);
+
+        return decryptions
+                .executeAsync(
+                        name,
+                        () -> decryptAndCacheAsync(
+                                name,
+                                secretCache));
+    }
+
+    private DecodedSecret decode(
+            final String name,
+            final byte[] value) {
 
         if (value == null)
             throw new SecretsLockerException(
                     SECRET_NOT_FOUND);
 
-        Properties secretProperties
-                = new Properties();
+        SecretCache secretCache
+                = cache();
+
+        return (secretCache == null)
+                ? new DecodedSecret(
+                        value,
+                        charset)
+                : secretCache.decoded(
+                        name,
+                        value,
+                        charset);
+    }
+
+    private Properties toProperties(
+            final String name,
+            final byte[] value) {
 
-        try(InputStream inputStream
-                = new ByteArrayInputStream(
-                        value.getBytes())) {
+        return decode(
+                        name,
+                        value)
+                .properties(
+                        AbtractFileSystemSecretsLocker::parseProperties);
+    }
 
-            secretProperties.load(
-                    inputStream);
+    private static Properties parseProperties(final String value) {
+        try (Reader reader
+                = new StringReader(value)) {
 
-            return secretProperties;
+            return new ImmutableProperties(
+                    reader);
 
         } catch (IOException ioEx) {
             throw new SecretsLockerException(
-                    GET_AS_PROPERTIES_EXCEPTION, 
-                    ioEx); 
+                    GET_AS_PROPERTIES_EXCEPTION,
+                    ioEx);
         }
-    } 
-   
+    }
+
+    /**
+     * Creates a future that has already completed exceptionally.
+     *
+     * @param <T> The type of the future's value.
+     * @param exception The exception.
+     * @return The failed {@link CompletableFuture}.
+     */
+    static <T> CompletableFuture<T> failedFuture(
+            final Throwable exception) {
+
+        CompletableFuture<T> future
+                = new CompletableFuture<>();
+
+        future.completeExceptionally(exception);
+        return future;
+    }
+
     /**
      * Decrypts the file.
      * 
      * @param file The file to decrypt.
-     * @return The decrypted file contents as a Java String.
+     * @return The decrypted file contents as bytes.
      */
-    protected String decrypt(final File file) {
-        return KmsDecryptionService
-                .instance()
-                .decryptFile(
+    protected byte[] decrypt(final File file) {
+        return decryptionService()
+                .decryptFileToBytes(
                         file);
     }
 
+    /**
+     * Decrypts the file as a stream.
+     *
+     * @param file The file to decrypt.
+     * @return An {@link InputStream} of the decrypted file contents.
+     */
+    protected InputStream decryptAsStream(final File file) {
+        return decryptionService()
+                .decryptFileAsStream(
+                        file);
+    }
+
+    /**
+     * Decrypts the file without blocking the caller.
+     *
+     * @param file The file to decrypt.
+     * @return A {@link CompletableFuture} that completes with the decrypted
+     * file contents as bytes.
+     */
+    protected CompletableFuture<byte[]> decryptAsync(final File file) {
+        return decryptionService()
+                .decryptFileToBytesAsync(
+                        file,
+                        executor());
+    }
+
     /**
      * Validates the the lockerPath is a readable directory and returns the
      * lockerPath as a Java File object.
@@ -198,12 +1366,38 @@ abstract class AbtractFileSystemSecretsLocker implements SecretsLocker {
     }
 
     /**
-     * @return The secrets Map.
+     * @return The secrets Map. The map is safe for concurrent use.
      */
     protected Map<String, File> secrets() {
         return secrets;
     }
 
+    /**
+     * @return The executor that runs the asynchronous methods.
+     */
+    protected Executor executor() {
+        return executor;
+    }
+
+    /**
+     * @return The service that decrypts the secrets.
+     */
+    protected KmsDecryptionService decryptionService() {
+        KmsDecryptionService decryptionService
+                = this.decryptionService;
+
+        return (decryptionService == null)
+                ? KmsDecryptionService.instance()
+                : decryptionService;
+    }
+
+    /**
+     * @return The secret cache, or {@code null} if caching is disabled.
+     */
+    SecretCache cache() {
+        return cache;
+    }
+
     /**
      * @return {@code true} if files should be validated, otherwise 
      * {@code false).
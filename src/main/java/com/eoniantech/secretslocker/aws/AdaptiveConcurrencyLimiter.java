@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.AbortedException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of calls under way at the same time, with an additive
+ * increase, multiplicative decrease (AIMD) limit, see
+ * {@link ConcurrencyLimitPolicy}. Does not limit anything until a policy is
+ * set.
+ *
+ * <p>Calls over the limit wait in a fair queue: only the call at the head of
+ * the queue goes ahead when a slot opens, and a call arriving while others
+ * wait joins the tail, so it never overtakes them.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class AdaptiveConcurrencyLimiter {
+
+    private final ReentrantLock lock;
+    private final Condition released;
+    private final LongSupplier clock;
+
+    private ConcurrencyLimitPolicy policy;
+    private double limit;
+    private int inFlight;
+    private final Deque<Object> queue;
+    private long throttles;
+
+    /**
+     * Constructor.
+     */
+    AdaptiveConcurrencyLimiter() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param clock The source of the current time in nanoseconds.
+     */
+    AdaptiveConcurrencyLimiter(
+            final LongSupplier clock) {
+
+        this.lock = new ReentrantLock(true);
+        this.released = lock.newCondition();
+        this.clock = clock;
+        this.queue = new ArrayDeque<>();
+    }
+
+    /**
+     * Sets the policy, and resets the limit to its initial limit.
+     *
+     * @param policy The {@link ConcurrencyLimitPolicy}, or {@code null} to
+     * stop limiting. Waiting calls go ahead.
+     */
+    void setPolicy(
+            final ConcurrencyLimitPolicy policy) {
+
+        lock.lock();
+
+        try {
+            this.policy = policy;
+            this.limit = (policy == null)
+                    ? 0
+                    : policy.initialLimit();
+
+            released.signalAll();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if calls are limited, otherwise {@code false}.
+     */
+    boolean isEnabled() {
+        lock.lock();
+
+        try {
+            return policy != null;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return A {@link ConcurrencyMetrics} snapshot.
+     */
+    ConcurrencyMetrics metrics() {
+        lock.lock();
+
+        try {
+            return new ConcurrencyMetrics(
+                    (int) limit,
+                    inFlight,
+                    queue.size(),
+                    throttles);
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes a call once the limit allows it, and adjusts the limit by its
+     * latency.
+     *
+     * @param <T> The result type.
+     * @param call The call.
+     * @return The result of the call.
+     * @throws AbortedException If the thread is interrupted while waiting.
+     */
+    <T> T call(
+            final Supplier<T> call) {
+
+        ConcurrencyLimitPolicy acquired
+                = acquire();
+
+        long start = clock.getAsLong();
+        boolean succeeded = false;
+
+        try {
+            T result = call.get();
+            succeeded = true;
+            return result;
+
+        } finally {
+            release(
+                    acquired,
+                    succeeded,
+                    clock.getAsLong() - start);
+        }
+    }
+
+    /**
+     * Records a throttled call attempt, and multiplies the limit by the
+     * backoff ratio. Called for every attempt, including attempts the KMS
+     * client retries itself.
+     */
+    void onThrottled() {
+        lock.lock();
+
+        try {
+            throttles++;
+
+            if (policy != null)
+                limit = Math.max(
+                        1,
+                        limit * policy.backoffRatio());
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The policy the call was admitted under, or {@code null} if it
+     * was not limited.
+     */
+    private ConcurrencyLimitPolicy acquire() {
+        lock.lock();
+
+        try {
+            if (policy == null)
+                return null;
+
+            if (queue.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return policy;
+            }
+
+            Object waiter = new Object();
+            queue.addLast(waiter);
+
+            try {
+                while (policy != null
+                        && (queue.peekFirst() != waiter || inFlight >= (int) limit))
+                    released.await();
+
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException(exception);
+
+            } finally {
+                queue.remove(waiter);
+                released.signalAll();
+            }
+
+            if (policy == null)
+                return null;
+
+            inFlight++;
+            return policy;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(
+            final ConcurrencyLimitPolicy acquired,
+            final boolean succeeded,
+            final long latencyNanos) {
+
+        if (acquired == null)
+            return;
+
+        lock.lock();
+
+        try {
+            // Grow only while the limit is being used, so a quiet service
+            // does not build up a limit it never tested.
+            if (succeeded
+                    && policy == acquired
+                    && latencyNanos <= acquired.healthyLatencyNanos()
+                    && inFlight * 2 >= (int) limit)
+                limit = Math.min(
+                        acquired.maxLimit(),
+                        limit + 1 / limit);
+
+            inFlight--;
+            released.signalAll();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+}
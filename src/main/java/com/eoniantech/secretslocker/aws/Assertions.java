@@ -17,6 +17,9 @@ package com.eoniantech.secretslocker.aws;
 
 import static com.eoniantech.secretslocker.aws.Constants.CAN_NOT_BE_EMPTY_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.IS_REQUIRED_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.MUST_BE_A_PERCENTILE_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.MUST_BE_POSITIVE_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.MUST_NOT_BE_NEGATIVE_PATTERN;
 
 /**
  * Class containing methods for argument assertions.
@@ -86,4 +89,52 @@ abstract class Assertions {
                             parameter));
         }
     }
+
+    /**
+     * Asserts that an argument is greater than zero.
+     * @param parameter The parameter.
+     * @param argument The argument (value).
+     */
+    static void assertArgumentPositive(
+            final String parameter,
+            final long argument) {
+
+        if (argument <= 0)
+            throw new IllegalArgumentException(
+                    String.format(
+                            MUST_BE_POSITIVE_PATTERN,
+                            parameter));
+    }
+
+    /**
+     * Asserts that an argument is zero or greater.
+     * @param parameter The parameter.
+     * @param argument The argument (value).
+     */
+    static void assertArgumentNotNegative(
+            final String parameter,
+            final long argument) {
+
+        if (argument < 0)
+            throw new IllegalArgumentException(
+                    String.format(
+                            MUST_NOT_BE_NEGATIVE_PATTERN,
+                            parameter));
+    }
+
+    /**
+     * Asserts that an argument is greater than zero and less than 100.
+     * @param parameter The parameter.
+     * @param argument The argument (value).
+     */
+    static void assertArgumentPercentile(
+            final String parameter,
+            final double argument) {
+
+        if (!(argument > 0 && argument < 100))
+            throw new IllegalArgumentException(
+                    String.format(
+                            MUST_BE_A_PERCENTILE_PATTERN,
+                            parameter));
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.BatchResult;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs an asynchronous call for each name in a batch, with at most a fixed
+ * number of calls in flight at a time. Each call starts as soon as an earlier
+ * one completes, so a slow item only holds up its own slot. A failed call is
+ * recorded in the result and does not abort the batch.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @param <T> The type of the values.
+ */
+final class Batch<T> {
+
+    private static final Object NULL = new Object();
+
+    private final List<String> names;
+    private final Queue<String> pending;
+    private final Function<String, CompletableFuture<T>> call;
+    private final Map<String, Object> values;
+    private final Map<String, Throwable> failures;
+    private final AtomicInteger remaining;
+    private final CompletableFuture<BatchResult<T>> result;
+
+    private Batch(
+            final Collection<String> names,
+            final Function<String, CompletableFuture<T>> call) {
+
+        this.names = new ArrayList<>(new LinkedHashSet<>(names));
+        this.pending = new ConcurrentLinkedQueue<>(this.names);
+        this.call = call;
+        this.values = new ConcurrentHashMap<>();
+        this.failures = new ConcurrentHashMap<>();
+        this.remaining = new AtomicInteger(this.names.size());
+        this.result = new CompletableFuture<>();
+    }
+
+    /**
+     * Runs the call for each name. Duplicate names are only run once.
+     *
+     * @param <T> The type of the values.
+     * @param names The names.
+     * @param concurrency The maximum number of calls in flight.
+     * @param call The asynchronous call.
+     * @return A {@link CompletableFuture} that completes, never exceptionally,
+     * once every call has completed.
+     */
+    static <T> CompletableFuture<BatchResult<T>> run(
+            final Collection<String> names,
+            final int concurrency,
+            final Function<String, CompletableFuture<T>> call) {
+
+        Batch<T> batch
+                = new Batch<>(
+                        names,
+                        call);
+
+        if (batch.names.isEmpty())
+            batch.complete();
+
+        int lanes
+                = Math.min(
+                        concurrency,
+                        batch.names.size());
+
+        for (int i = 0; i < lanes; i++)
+            batch.next();
+
+        return batch.result;
+    }
+
+    /**
+     * Starts calls until one of them is still in flight, which then starts the
+     * next call when it completes. Calls that complete immediately, such as
+     * cached secrets, are handled in a loop rather than recursively.
+     */
+    private void next() {
+        String name;
+
+        while ((name = pending.poll()) != null) {
+            final String current = name;
+            CompletableFuture<T> future;
+
+            try {
+                future = call.apply(current);
+
+            } catch (RuntimeException | Error exception) {
+                record(current, null, exception);
+                continue;
+            }
+
+            if (future.isDone()) {
+                future.whenComplete(
+                        (value, exception) -> record(
+                                current,
+                                value,
+                                exception));
+                continue;
+            }
+
+            future.whenComplete(
+                    (value, exception) -> {
+                        record(current, value, exception);
+                        next();
+                    });
+
+            return;
+        }
+    }
+
+    private void record(
+            final String name,
+            final T value,
+            final Throwable exception) {
+
+        if (exception == null)
+            values.put(
+                    name,
+                    value == null ? NULL : value);
+        else
+            failures.put(
+                    name,
+                    SingleFlight.unwrap(exception));
+
+        if (remaining.decrementAndGet() == 0)
+            complete();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete() {
+        Map<String, T> orderedValues = new LinkedHashMap<>();
+        Map<String, Throwable> orderedFailures = new LinkedHashMap<>();
+
+        for (String name : names) {
+            Object value = values.get(name);
+
+            if (value != null)
+                orderedValues.put(
+                        name,
+                        value == NULL ? null : (T) value);
+            else
+                orderedFailures.put(
+                        name,
+                        failures.get(name));
+        }
+
+        result.complete(
+                new BatchResult<>(
+                        orderedValues,
+                        orderedFailures));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.FAILURE_THRESHOLD;
+import static com.eoniantech.secretslocker.aws.Constants.OPEN_DURATION;
+import static com.eoniantech.secretslocker.aws.Constants.OPEN_DURATION_UNIT;
+
+/**
+ * Immutable settings for the circuit breaker of each KMS region. After the
+ * failure threshold of consecutive failed calls, a region's circuit opens and
+ * the region is skipped for the open duration. Then a single trial call is let
+ * through: if it succeeds the circuit closes, otherwise it stays open for
+ * another open duration.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @see KmsDecryptionService#setCircuitBreakerPolicy(CircuitBreakerPolicy)
+ */
+public final class CircuitBreakerPolicy {
+
+    /**
+     * The default number of consecutive failures that opens a circuit.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The default time, in seconds, for which an open circuit skips its
+     * region.
+     */
+    public static final long DEFAULT_OPEN_DURATION_SECONDS = 30;
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    /**
+     * Constructor. Circuits open after {@link #DEFAULT_FAILURE_THRESHOLD}
+     * consecutive failures, for {@link #DEFAULT_OPEN_DURATION_SECONDS}.
+     */
+    public CircuitBreakerPolicy() {
+        this(DEFAULT_FAILURE_THRESHOLD,
+                DEFAULT_OPEN_DURATION_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param failureThreshold The number of consecutive failures that opens a
+     * circuit.
+     * @param openDuration How long an open circuit skips its region before a
+     * trial call is let through.
+     * @param openDurationUnit The {@link TimeUnit} of the openDuration.
+     */
+    public CircuitBreakerPolicy(
+            final int failureThreshold,
+            final long openDuration,
+            final TimeUnit openDurationUnit) {
+
+        assertArgumentPositive(
+                FAILURE_THRESHOLD,
+                failureThreshold);
+
+        assertArgumentNotNull(
+                OPEN_DURATION_UNIT,
+                openDurationUnit);
+
+        assertArgumentPositive(
+                OPEN_DURATION,
+                openDurationUnit.toNanos(openDuration));
+
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDurationUnit.toNanos(openDuration);
+    }
+
+    /**
+     * @return The number of consecutive failures that opens a circuit.
+     */
+    public int failureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @return How long an open circuit skips its region in nanoseconds.
+     */
+    public long openDurationNanos() {
+        return openDurationNanos;
+    }
+}
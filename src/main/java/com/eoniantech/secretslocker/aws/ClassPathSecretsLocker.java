@@ -28,6 +28,9 @@ import java.net.URL;
 /**
  * Implementation of {@link SecretsLocker} that requires each secret to exist 
  * on the class path.
+ *
+ * <p>This locker is thread-safe, with the guarantees described in
+ * {@link AbtractFileSystemSecretsLocker}.
  * 
  * @author Michael Andrews <Michael.Andrews@eoniantech.com>
  * @since 1.0
@@ -77,7 +80,7 @@ public final class ClassPathSecretsLocker
                     = new File(
                             fileUrl.toURI()); 
 
-            secrets().put(name, file);
+            register(name, file);
 
         } catch (SecurityException 
                 | URISyntaxException 
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.BACKOFF_RATIO;
+import static com.eoniantech.secretslocker.aws.Constants.HEALTHY_LATENCY;
+import static com.eoniantech.secretslocker.aws.Constants.HEALTHY_LATENCY_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.INITIAL_LIMIT;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_LIMIT;
+import static com.eoniantech.secretslocker.aws.Constants.MUST_BE_A_RATIO_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.MUST_NOT_BE_LESS_THAN_PATTERN;
+
+/**
+ * Immutable settings for limiting the number of KMS calls a service makes at
+ * the same time, with an additive increase, multiplicative decrease (AIMD)
+ * limit. The limit starts at the initial limit. While calls answer within the
+ * healthy latency and use most of the limit, it grows by one for every limit's
+ * worth of calls. Each throttled call attempt multiplies it by the backoff
+ * ratio, down to one. Calls over the limit wait in a first come, first served
+ * queue.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @see KmsDecryptionService#enableConcurrencyLimiting(ConcurrencyLimitPolicy)
+ * @see KmsEncryptionService#enableConcurrencyLimiting(ConcurrencyLimitPolicy)
+ */
+public final class ConcurrencyLimitPolicy {
+
+    /**
+     * The default number of concurrent calls allowed at first.
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+    /**
+     * The default largest number of concurrent calls the limit grows to.
+     */
+    public static final int DEFAULT_MAX_LIMIT = 200;
+
+    /**
+     * The default factor the limit is multiplied by on a throttled call.
+     */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+
+    /**
+     * The default latency, in milliseconds, up to which a call lets the limit
+     * grow.
+     */
+    public static final long DEFAULT_HEALTHY_LATENCY_MILLIS = 1000;
+
+    private final int initialLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long healthyLatencyNanos;
+
+    /**
+     * Constructor. The limit starts at {@link #DEFAULT_INITIAL_LIMIT} and
+     * grows to at most {@link #DEFAULT_MAX_LIMIT}.
+     */
+    public ConcurrencyLimitPolicy() {
+        this(DEFAULT_INITIAL_LIMIT,
+                DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Constructor. The limit is multiplied by
+     * {@link #DEFAULT_BACKOFF_RATIO} on a throttled call, and grows on calls
+     * within {@link #DEFAULT_HEALTHY_LATENCY_MILLIS}.
+     *
+     * @param initialLimit The number of concurrent calls allowed at first.
+     * @param maxLimit The largest number of concurrent calls the limit grows
+     * to.
+     */
+    public ConcurrencyLimitPolicy(
+            final int initialLimit,
+            final int maxLimit) {
+
+        this(initialLimit,
+                maxLimit,
+                DEFAULT_BACKOFF_RATIO,
+                DEFAULT_HEALTHY_LATENCY_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param initialLimit The number of concurrent calls allowed at first.
+     * @param maxLimit The largest number of concurrent calls the limit grows
+     * to.
+     * @param backoffRatio The factor the limit is multiplied by on a
+     * throttled call, greater than 0 and less than 1.
+     * @param healthyLatency The latency up to which a call lets the limit
+     * grow. Slower calls leave it as it is.
+     * @param healthyLatencyUnit The {@link TimeUnit} of the healthyLatency.
+     */
+    public ConcurrencyLimitPolicy(
+            final int initialLimit,
+            final int maxLimit,
+            final double backoffRatio,
+            final long healthyLatency,
+            final TimeUnit healthyLatencyUnit) {
+
+        assertArgumentPositive(
+                INITIAL_LIMIT,
+                initialLimit);
+
+        if (maxLimit < initialLimit)
+            throw new IllegalArgumentException(
+                    String.format(
+                            MUST_NOT_BE_LESS_THAN_PATTERN,
+                            MAX_LIMIT,
+                            INITIAL_LIMIT));
+
+        if (!(backoffRatio > 0 && backoffRatio < 1))
+            throw new IllegalArgumentException(
+                    String.format(
+                            MUST_BE_A_RATIO_PATTERN,
+                            BACKOFF_RATIO));
+
+        assertArgumentNotNull(
+                HEALTHY_LATENCY_UNIT,
+                healthyLatencyUnit);
+
+        assertArgumentPositive(
+                HEALTHY_LATENCY,
+                healthyLatencyUnit.toNanos(healthyLatency));
+
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.healthyLatencyNanos = healthyLatencyUnit.toNanos(healthyLatency);
+    }
+
+    /**
+     * @return The number of concurrent calls allowed at first.
+     */
+    public int initialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * @return The largest number of concurrent calls the limit grows to.
+     */
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return The factor the limit is multiplied by on a throttled call.
+     */
+    public double backoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * @return The latency up to which a call lets the limit grow in
+     * nanoseconds.
+     */
+    public long healthyLatencyNanos() {
+        return healthyLatencyNanos;
+    }
+}
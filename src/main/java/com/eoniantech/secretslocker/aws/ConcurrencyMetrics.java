@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+/**
+ * Immutable snapshot of the concurrency limiter of the KMS calls of a
+ * service.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @see ConcurrencyLimitPolicy
+ */
+public final class ConcurrencyMetrics {
+
+    private final int limit;
+    private final int inFlight;
+    private final int queueDepth;
+    private final long throttles;
+
+    /**
+     * Constructor.
+     *
+     * @param limit The number of concurrent calls currently allowed, or 0 if
+     * calls are not limited.
+     * @param inFlight The number of calls under way.
+     * @param queueDepth The number of calls waiting for the limit.
+     * @param throttles The number of throttled call attempts so far.
+     */
+    ConcurrencyMetrics(
+            final int limit,
+            final int inFlight,
+            final int queueDepth,
+            final long throttles) {
+
+        this.limit = limit;
+        this.inFlight = inFlight;
+        this.queueDepth = queueDepth;
+        this.throttles = throttles;
+    }
+
+    /**
+     * @return The number of concurrent calls currently allowed, or 0 if
+     * calls are not limited.
+     */
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * @return The number of calls under way.
+     */
+    public int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return The number of calls waiting for the limit.
+     */
+    public int queueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return The number of throttled call attempts so far, including
+     * attempts that were retried.
+     */
+    public long throttles() {
+        return throttles;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "limit %d, %d in flight, %d queued, %d throttles",
+                limit,
+                inFlight,
+                queueDepth,
+                throttles);
+    }
+}
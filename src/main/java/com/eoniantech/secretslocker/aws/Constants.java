@@ -27,6 +27,8 @@ interface Constants {
     // General
     static final String COLON = ":";
     static final String SUFFIX = ".encrypted";
+    static final String DOWNLOAD_SUFFIX = ".download";
+    static final String DECRYPTION_SUFFIX = ".decrypting";
     static final String EMPTY = "";
 
     // Paramter names
@@ -38,12 +40,80 @@ interface Constants {
     static final String NAMES = "names";
     static final String LOCKER_PATH = "lockerPath";
     static final String ACCOUNT_ID = "accountId";
+    static final String KEY_ARN = "keyArn";
+    static final String KEY_ARNS = "keyArns";
     static final String ALIAS = "alias";
     static final String REGIONS = "regions";
     static final String REGION = "region";
     static final String FILE_NAME = "fileName";
+    static final String FILE = "file";
+    static final String FILES = "files";
+    static final String DIRECTORY = "directory";
+    static final String GLOB = "glob";
     static final String BUCKET_NAME = "bucketName";
     static final String BUCKET_PATH = "bucketPath";
+    static final String CAPACITY = "capacity";
+    static final String MAX_AGE = "maxAge";
+    static final String MAX_AGE_UNIT = "maxAgeUnit";
+    static final String MESSAGE_USE_LIMIT = "messageUseLimit";
+    static final String BYTE_USE_LIMIT = "byteUseLimit";
+    static final String POLICY = "policy";
+    static final String MAX_ENTRIES = "maxEntries";
+    static final String MAX_BYTES = "maxBytes";
+    static final String TIME_TO_LIVE = "timeToLive";
+    static final String TIME_TO_LIVE_UNIT = "timeToLiveUnit";
+    static final String EXECUTOR = "executor";
+    static final String ENCRYPTED_FILE = "encryptedFile";
+    static final String DECRYPTED_FILE = "decryptedFile";
+    static final String VALUE = "value";
+    static final String ENCRYPTED_VALUE = "encryptedValue";
+    static final String ENCRYPTED_STREAM = "encryptedStream";
+    static final String BATCH_CONCURRENCY = "batchConcurrency";
+    static final String DEADLINE = "deadline";
+    static final String TIMEOUT = "timeout";
+    static final String REFRESH_WINDOW = "refreshWindow";
+    static final String REFRESH_WINDOW_UNIT = "refreshWindowUnit";
+    static final String SCHEDULER_THREADS = "schedulerThreads";
+    static final String GRACE_PERIOD = "gracePeriod";
+    static final String GRACE_PERIOD_UNIT = "gracePeriodUnit";
+    static final String LATENCY_DEADLINE = "latencyDeadline";
+    static final String LATENCY_DEADLINE_UNIT = "latencyDeadlineUnit";
+    static final String MAX_RETRIES = "maxRetries";
+    static final String RETRY_DELAY = "retryDelay";
+    static final String RETRY_DELAY_UNIT = "retryDelayUnit";
+    static final String CHARSET = "charset";
+    static final String BUFFER_SIZE = "bufferSize";
+    static final String ALGORITHM_SUITE = "algorithmSuite";
+    static final String FRAME_SIZE = "frameSize";
+    static final String PARALLELISM = "parallelism";
+    static final String MINIMUM_SIZE = "minimumSize";
+    static final String TASK_SIZE = "taskSize";
+    static final String PERCENTILE = "percentile";
+    static final String MINIMUM_DELAY = "minimumDelay";
+    static final String MAXIMUM_DELAY = "maximumDelay";
+    static final String DELAY_UNIT = "delayUnit";
+    static final String FAILURE_THRESHOLD = "failureThreshold";
+    static final String OPEN_DURATION = "openDuration";
+    static final String OPEN_DURATION_UNIT = "openDurationUnit";
+    static final String MAX_CONNECTIONS = "maxConnections";
+    static final String CONNECTION_TTL = "connectionTtl";
+    static final String CONNECTION_TTL_UNIT = "connectionTtlUnit";
+    static final String CONNECTION_TIMEOUT = "connectionTimeout";
+    static final String CONNECTION_TIMEOUT_UNIT = "connectionTimeoutUnit";
+    static final String SOCKET_TIMEOUT = "socketTimeout";
+    static final String SOCKET_TIMEOUT_UNIT = "socketTimeoutUnit";
+    static final String REQUEST_TIMEOUT = "requestTimeout";
+    static final String REQUEST_TIMEOUT_UNIT = "requestTimeoutUnit";
+    static final String RETRY_POLICY = "retryPolicy";
+    static final String MAX_ERROR_RETRY = "maxErrorRetry";
+    static final String CREDENTIALS = "credentials";
+    static final String ENDPOINT = "endpoint";
+    static final String DECRYPTION_SERVICE = "decryptionService";
+    static final String INITIAL_LIMIT = "initialLimit";
+    static final String MAX_LIMIT = "maxLimit";
+    static final String BACKOFF_RATIO = "backoffRatio";
+    static final String HEALTHY_LATENCY = "healthyLatency";
+    static final String HEALTHY_LATENCY_UNIT = "healthyLatencyUnit";
 
     // Message Patters
     static final String FILE_DOES_NOT_EXIST_PATTERN 
@@ -52,6 +122,8 @@ interface Constants {
             = "file is not readable: %s";
     static final String FILE_IS_NOT_A_NORMAL_FILE_PATTERN 
             = "file is not a normal file: %s";
+    static final String FILE_IS_TOO_LARGE_PATTERN
+            = "file is too large to read into memory: %s";
     static final String DIRECTORY_DOES_NOT_EXIST_PATTERN
             = "directory does not exist: %s";
     static final String DIRECTORY_IS_NOT_READABLE
@@ -64,12 +136,26 @@ interface Constants {
             = "%s is required";
     static final String CAN_NOT_BE_EMPTY_PATTERN
             = "%s can not be empty";
+    static final String MUST_BE_POSITIVE_PATTERN
+            = "%s must be greater than zero";
+    static final String MUST_NOT_BE_NEGATIVE_PATTERN
+            = "%s can not be negative";
+    static final String MUST_BE_A_PERCENTILE_PATTERN
+            = "%s must be greater than zero and less than 100";
+    static final String MUST_NOT_BE_LESS_THAN_PATTERN
+            = "%s can not be less than %s";
+    static final String MUST_BE_A_RATIO_PATTERN
+            = "%s must be greater than zero and less than one";
 
     // AWS
     static final String S3_BUCKET_DOES_NOT_EXIST_PATTERN
             = "the bucket does not exists: %s";
+    static final String DOWNLOAD_NOT_COMPLETED_PATTERN
+            = "the download was %s: %s";
      static final String INVALID_REGION_PATTERN
             = "invlid region: %s"; 
+     static final String INVALID_KEY_ARN_PATTERN
+            = "invalid key ARN: %s";
      static final String S3_PATH_SEPARATOR = "/";
 
     // Error Messages
@@ -77,4 +163,6 @@ interface Constants {
             = "could not create properties from decrypted secret";
     static final String SECRET_NOT_FOUND
             = "The secret was not found in the locker.";
+    static final String DEADLINE_EXCEEDED
+            = "The secret was not decrypted before the deadline.";
 }
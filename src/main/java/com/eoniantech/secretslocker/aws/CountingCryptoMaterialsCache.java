@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.caching.CryptoMaterialsCache;
+import com.amazonaws.encryptionsdk.caching.LocalCryptoMaterialsCache;
+import com.amazonaws.encryptionsdk.model.DecryptionMaterials;
+import com.amazonaws.encryptionsdk.model.EncryptionMaterials;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link CryptoMaterialsCache} that delegates to a
+ * {@link LocalCryptoMaterialsCache} and counts cache hits and misses.
+ *
+ * <p>On the decrypt side a lookup is a miss if it finds no entry. On the
+ * encrypt side the caching materials manager discards an entry that has
+ * exceeded its use limits and generates a new data key, so a miss is counted
+ * each time a new data key is put in the cache, and the remaining lookups are
+ * hits.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class CountingCryptoMaterialsCache implements CryptoMaterialsCache {
+
+    private final CryptoMaterialsCache delegate;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong encryptLookups;
+    private final AtomicLong encryptPuts;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The maximum number of cached entries.
+     */
+    CountingCryptoMaterialsCache(final int capacity) {
+        this.delegate = new LocalCryptoMaterialsCache(capacity);
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.encryptLookups = new AtomicLong();
+        this.encryptPuts = new AtomicLong();
+    }
+
+    @Override
+    public EncryptCacheEntry getEntryForEncrypt(
+            final byte[] cacheId,
+            final UsageStats usageIncrement) {
+
+        encryptLookups.incrementAndGet();
+
+        return delegate
+                .getEntryForEncrypt(
+                        cacheId,
+                        usageIncrement);
+    }
+
+    @Override
+    public EncryptCacheEntry putEntryForEncrypt(
+            final byte[] cacheId,
+            final EncryptionMaterials encryptionMaterials,
+            final CacheHint hint,
+            final UsageStats initialUsage) {
+
+        encryptPuts.incrementAndGet();
+
+        return delegate
+                .putEntryForEncrypt(
+                        cacheId,
+                        encryptionMaterials,
+                        hint,
+                        initialUsage);
+    }
+
+    @Override
+    public DecryptCacheEntry getEntryForDecrypt(
+            final byte[] cacheId) {
+
+        return count(
+                delegate.getEntryForDecrypt(
+                        cacheId));
+    }
+
+    @Override
+    public void putEntryForDecrypt(
+            final byte[] cacheId,
+            final DecryptionMaterials decryptionMaterials,
+            final CacheHint hint) {
+
+        delegate.putEntryForDecrypt(
+                cacheId,
+                decryptionMaterials,
+                hint);
+    }
+
+    /**
+     * @return The number of lookups that found a usable entry.
+     */
+    long hits() {
+        return hits.get()
+                + Math.max(
+                        0,
+                        encryptLookups.get() - encryptPuts.get());
+    }
+
+    /**
+     * @return The number of lookups that did not find a usable entry.
+     */
+    long misses() {
+        return misses.get()
+                + encryptPuts.get();
+    }
+
+    private <T> T count(final T entry) {
+        if (entry == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+
+        return entry;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.BYTE_USE_LIMIT;
+import static com.eoniantech.secretslocker.aws.Constants.CAPACITY;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_AGE;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_AGE_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.MESSAGE_USE_LIMIT;
+
+/**
+ * Immutable settings for caching KMS data keys. A data key cache allows
+ * messages that share a data key to be processed without a round trip to
+ * KMS.
+ *
+ * <p>The capacity and max age apply to both encryption and decryption. The
+ * message and byte use limits only apply to encryption, where they bound how
+ * much plaintext is protected by a single data key. Cached entries used for
+ * decryption are not subject to use limits.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class DataKeyCachePolicy {
+
+    /**
+     * The maximum number of messages a data key may encrypt, as allowed by
+     * the AWS Encryption SDK.
+     */
+    public static final long MAX_MESSAGE_USE_LIMIT = 1L << 32;
+
+    private final int capacity;
+    private final long maxAgeMillis;
+    private final long messageUseLimit;
+    private final long byteUseLimit;
+
+    /**
+     * Constructor. Use limits are set to the maximum allowed values.
+     *
+     * @param capacity The maximum number of cached data keys.
+     * @param maxAge The maximum time a data key may be used after it is
+     * cached.
+     * @param maxAgeUnit The {@link TimeUnit} of the maxAge.
+     */
+    public DataKeyCachePolicy(
+            final int capacity,
+            final long maxAge,
+            final TimeUnit maxAgeUnit) {
+
+        this(capacity,
+                maxAge,
+                maxAgeUnit,
+                MAX_MESSAGE_USE_LIMIT,
+                Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The maximum number of cached data keys.
+     * @param maxAge The maximum time a data key may be used after it is
+     * cached.
+     * @param maxAgeUnit The {@link TimeUnit} of the maxAge.
+     * @param messageUseLimit The maximum number of messages a cached data key
+     * may encrypt.
+     * @param byteUseLimit The maximum number of plaintext bytes a cached data
+     * key may encrypt.
+     */
+    public DataKeyCachePolicy(
+            final int capacity,
+            final long maxAge,
+            final TimeUnit maxAgeUnit,
+            final long messageUseLimit,
+            final long byteUseLimit) {
+
+        assertArgumentPositive(
+                CAPACITY,
+                capacity);
+
+        assertArgumentNotNull(
+                MAX_AGE_UNIT,
+                maxAgeUnit);
+
+        assertArgumentPositive(
+                MAX_AGE,
+                maxAgeUnit.toMillis(maxAge));
+
+        assertArgumentPositive(
+                MESSAGE_USE_LIMIT,
+                messageUseLimit);
+
+        assertArgumentPositive(
+                BYTE_USE_LIMIT,
+                byteUseLimit);
+
+        this.capacity = capacity;
+        this.maxAgeMillis = maxAgeUnit.toMillis(maxAge);
+        this.messageUseLimit = Math.min(messageUseLimit, MAX_MESSAGE_USE_LIMIT);
+        this.byteUseLimit = byteUseLimit;
+    }
+
+    /**
+     * @return The maximum number of cached data keys.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The maximum age of a cached data key in milliseconds.
+     */
+    public long maxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @return The maximum number of messages a cached data key may encrypt.
+     */
+    public long messageUseLimit() {
+        return messageUseLimit;
+    }
+
+    /**
+     * @return The maximum number of bytes a cached data key may encrypt.
+     */
+    public long byteUseLimit() {
+        return byteUseLimit;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * The text of a decrypted secret, decoded with a given charset, and the
+ * properties parsed from it on first use. Lockers keep secrets as bytes, and
+ * cache the decoded text with the bytes so that each cached secret is decoded
+ * at most once per charset.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class DecodedSecret {
+
+    private final Charset charset;
+    private final String text;
+    private volatile Properties properties;
+
+    /**
+     * Constructor.
+     *
+     * @param value The plaintext bytes.
+     * @param charset The {@link Charset} used to decode them.
+     */
+    DecodedSecret(
+            final byte[] value,
+            final Charset charset) {
+
+        this.charset = charset;
+        this.text = new String(value, charset);
+    }
+
+    /**
+     * @return The {@link Charset} the text was decoded with.
+     */
+    Charset charset() {
+        return charset;
+    }
+
+    /**
+     * @return The decoded text.
+     */
+    String text() {
+        return text;
+    }
+
+    /**
+     * Gets the properties parsed from the text, parsing them on first use.
+     *
+     * @param parser Parses the text. Must return immutable properties.
+     * @return The parsed properties.
+     */
+    Properties properties(
+            final Function<String, Properties> parser) {
+
+        Properties parsed
+                = properties;
+
+        if (parsed == null) {
+            parsed = parser.apply(text);
+            properties = parsed;
+        }
+
+        return parsed;
+    }
+}
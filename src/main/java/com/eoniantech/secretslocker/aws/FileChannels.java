@@ -0,0 +1,370 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Adapts {@link FileChannel}s to the streams the AWS Encryption SDK reads and
+ * writes, according to a {@link FileIoPolicy}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class FileChannels {
+
+    private FileChannels() {
+    }
+
+    /**
+     * Creates a stream that reads a channel from its current position. Closing
+     * the stream does not close the channel.
+     *
+     * @param channel The channel to read.
+     * @param policy The {@link FileIoPolicy}.
+     * @return The new {@link InputStream}.
+     * @throws IOException If the channel's position can not be read.
+     */
+    static InputStream newInputStream(
+            final FileChannel channel,
+            final FileIoPolicy policy) throws IOException {
+
+        return newInputStream(
+                channel,
+                policy,
+                FileIoPolicy.MAX_MAP_WINDOW);
+    }
+
+    /**
+     * Creates a stream that reads a channel from its current position. Closing
+     * the stream does not close the channel.
+     *
+     * @param channel The channel to read.
+     * @param policy The {@link FileIoPolicy}.
+     * @param mapWindow The maximum number of bytes mapped at a time.
+     * @return The new {@link InputStream}.
+     * @throws IOException If the channel's position can not be read.
+     */
+    static InputStream newInputStream(
+            final FileChannel channel,
+            final FileIoPolicy policy,
+            final int mapWindow) throws IOException {
+
+        return policy.memoryMappedReads()
+                ? new MappedInputStream(
+                        channel,
+                        channel.position(),
+                        mapWindow)
+                : new ChannelInputStream(
+                        channel,
+                        allocate(policy));
+    }
+
+    /**
+     * Creates a stream that writes to a channel through a buffer. Closing the
+     * stream flushes the buffer, but does not close the channel.
+     *
+     * @param channel The channel to write.
+     * @param policy The {@link FileIoPolicy}.
+     * @return The new {@link OutputStream}.
+     */
+    static OutputStream newOutputStream(
+            final FileChannel channel,
+            final FileIoPolicy policy) {
+
+        return new ChannelOutputStream(
+                channel,
+                allocate(policy));
+    }
+
+    /**
+     * Copies a stream to another stream in chunks of the policy's buffer
+     * size.
+     *
+     * @param source The stream to read.
+     * @param target The stream to write.
+     * @param policy The {@link FileIoPolicy}.
+     * @return The number of bytes copied.
+     * @throws IOException If either stream fails.
+     */
+    static long copy(
+            final InputStream source,
+            final OutputStream target,
+            final FileIoPolicy policy) throws IOException {
+
+        byte[] chunk
+                = new byte[policy.bufferSize()];
+
+        long copied = 0;
+        int read;
+
+        while ((read = source.read(chunk)) != -1) {
+            target.write(chunk, 0, read);
+            copied += read;
+        }
+
+        return copied;
+    }
+
+    private static ByteBuffer allocate(
+            final FileIoPolicy policy) {
+
+        return policy.directBuffers()
+                ? ByteBuffer.allocateDirect(
+                        policy.bufferSize())
+                : ByteBuffer.allocate(
+                        policy.bufferSize());
+    }
+
+    /**
+     * Reads a channel through windows that are mapped into memory.
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final int mapWindow;
+        private long position;
+        private MappedByteBuffer window;
+
+        private MappedInputStream(
+                final FileChannel channel,
+                final long position,
+                final int mapWindow) {
+
+            this.channel = channel;
+            this.position = position;
+            this.mapWindow = mapWindow;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!next())
+                return -1;
+
+            return window.get() & 0xff;
+        }
+
+        @Override
+        public int read(
+                final byte[] bytes,
+                final int offset,
+                final int length) throws IOException {
+
+            if (length == 0)
+                return 0;
+
+            if (!next())
+                return -1;
+
+            int read
+                    = Math.min(
+                            length,
+                            window.remaining());
+
+            window.get(
+                    bytes,
+                    offset,
+                    read);
+
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (window == null)
+                    ? 0
+                    : window.remaining();
+        }
+
+        private boolean next() throws IOException {
+            if (window != null
+                    && window.hasRemaining())
+                return true;
+
+            long remaining
+                    = channel.size() - position;
+
+            if (remaining <= 0)
+                return false;
+
+            long size
+                    = Math.min(
+                            remaining,
+                            mapWindow);
+
+            window = channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    position,
+                    size);
+
+            position += size;
+            return true;
+        }
+    }
+
+    /**
+     * Reads a channel through a buffer.
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean endOfStream;
+
+        private ChannelInputStream(
+                final FileChannel channel,
+                final ByteBuffer buffer) {
+
+            this.channel = channel;
+            this.buffer = buffer;
+            this.buffer.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill())
+                return -1;
+
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(
+                final byte[] bytes,
+                final int offset,
+                final int length) throws IOException {
+
+            if (length == 0)
+                return 0;
+
+            if (!fill())
+                return -1;
+
+            int read
+                    = Math.min(
+                            length,
+                            buffer.remaining());
+
+            buffer.get(
+                    bytes,
+                    offset,
+                    read);
+
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        private boolean fill() throws IOException {
+            while (!buffer.hasRemaining()) {
+                if (endOfStream)
+                    return false;
+
+                buffer.clear();
+
+                if (channel.read(buffer) == -1)
+                    endOfStream = true;
+
+                buffer.flip();
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Writes to a channel through a buffer.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean closed;
+
+        private ChannelOutputStream(
+                final FileChannel channel,
+                final ByteBuffer buffer) {
+
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            if (!buffer.hasRemaining())
+                drain();
+
+            buffer.put((byte) value);
+        }
+
+        @Override
+        public void write(
+                final byte[] bytes,
+                final int offset,
+                final int length) throws IOException {
+
+            int written = 0;
+
+            while (written < length) {
+                if (!buffer.hasRemaining())
+                    drain();
+
+                int chunk
+                        = Math.min(
+                                length - written,
+                                buffer.remaining());
+
+                buffer.put(
+                        bytes,
+                        offset + written,
+                        chunk);
+
+                written += chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+
+            buffer.clear();
+        }
+    }
+}
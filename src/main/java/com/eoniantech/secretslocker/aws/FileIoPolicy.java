@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.BUFFER_SIZE;
+
+/**
+ * Immutable settings for encrypting and decrypting files through NIO
+ * {@link java.nio.channels.FileChannel}s instead of streams.
+ *
+ * <p>Reads and writes are staged in buffers of the given size, so large files
+ * are copied with few system calls. Direct buffers let the channel read and
+ * write them without an extra copy through the heap. Memory-mapped reads map
+ * the source file, in windows of at most {@link #MAX_MAP_WINDOW} bytes, so
+ * that it is read straight from the page cache.
+ *
+ * <p>Memory-mapped files are only unmapped when their buffers are garbage
+ * collected. On some platforms, e.g. Windows, the source file can not be
+ * deleted until then.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class FileIoPolicy {
+
+    /**
+     * The default buffer size, 1 MiB.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The maximum number of bytes mapped at a time, 64 MiB.
+     */
+    public static final int MAX_MAP_WINDOW = 1 << 26;
+
+    private final int bufferSize;
+    private final boolean directBuffers;
+    private final boolean memoryMappedReads;
+
+    /**
+     * Constructor. Uses direct buffers of {@link #DEFAULT_BUFFER_SIZE} and
+     * memory-mapped reads.
+     */
+    public FileIoPolicy() {
+        this(DEFAULT_BUFFER_SIZE,
+                true,
+                true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize The size of the read and write buffers in bytes.
+     * @param directBuffers {@code true} to allocate direct buffers, otherwise
+     * {@code false} to allocate heap buffers.
+     * @param memoryMappedReads {@code true} to map the source file into
+     * memory, otherwise {@code false} to read it through a buffer.
+     */
+    public FileIoPolicy(
+            final int bufferSize,
+            final boolean directBuffers,
+            final boolean memoryMappedReads) {
+
+        assertArgumentPositive(
+                BUFFER_SIZE,
+                bufferSize);
+
+        this.bufferSize = bufferSize;
+        this.directBuffers = directBuffers;
+        this.memoryMappedReads = memoryMappedReads;
+    }
+
+    /**
+     * @return The size of the read and write buffers in bytes.
+     */
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return {@code true} if direct buffers are allocated, otherwise
+     * {@code false}.
+     */
+    public boolean directBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * @return {@code true} if the source file is mapped into memory, otherwise
+     * {@code false}.
+     */
+    public boolean memoryMappedReads() {
+        return memoryMappedReads;
+    }
+}
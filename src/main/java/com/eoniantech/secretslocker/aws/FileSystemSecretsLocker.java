@@ -21,6 +21,9 @@ import com.eoniantech.secretslocker.SecretsLocker;
  * An implementation of the {@link SecretsLocker} that requires each secret to 
  * exist in the specified local directory. The directory must exist and be 
  * readable.
+ *
+ * <p>This locker is thread-safe, with the guarantees described in
+ * {@link AbtractFileSystemSecretsLocker}.
  * 
  * @author Michael Andrews <Michael.Andrews@eoniantech.com>
  * @since 1.0
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Identifies the version of a file by its modification time, size and file
+ * key (the inode on most file systems). If any of these change, the file is
+ * considered to have changed.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class FileVersion {
+
+    private final long lastModified;
+    private final long size;
+    private final Object fileKey;
+
+    private FileVersion(
+            final long lastModified,
+            final long size,
+            final Object fileKey) {
+
+        this.lastModified = lastModified;
+        this.size = size;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * Reads the current version of a file.
+     *
+     * @param file The file.
+     * @return The {@link FileVersion}, or {@code null} if the file's
+     * attributes can not be read.
+     */
+    static FileVersion of(final File file) {
+        try {
+            BasicFileAttributes attributes
+                    = Files.readAttributes(
+                            file.toPath(),
+                            BasicFileAttributes.class);
+
+            return new FileVersion(
+                    attributes
+                            .lastModifiedTime()
+                            .toMillis(),
+                    attributes.size(),
+                    attributes.fileKey());
+
+        } catch (IOException | SecurityException exception) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object)
+            return true;
+
+        if (!(object instanceof FileVersion))
+            return false;
+
+        FileVersion other = (FileVersion) object;
+
+        return lastModified == other.lastModified
+                && size == other.size
+                && Objects.equals(fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(
+                lastModified,
+                size,
+                fileKey);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPercentile;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.DELAY_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.MAXIMUM_DELAY;
+import static com.eoniantech.secretslocker.aws.Constants.MINIMUM_DELAY;
+import static com.eoniantech.secretslocker.aws.Constants.MUST_NOT_BE_LESS_THAN_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.PERCENTILE;
+
+/**
+ * Immutable settings for hedging KMS decrypt calls across regions. When a
+ * call to one region has not answered within the hedging delay, the data key
+ * is also decrypted in the next region, and the first success is used. The
+ * delay is the given percentile of the region's recent latencies, clamped to
+ * the minimum and maximum delay, or the maximum delay until the region has
+ * enough recent calls to estimate the percentile.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @see KmsDecryptionService#enableHedging(HedgingPolicy)
+ */
+public final class HedgingPolicy {
+
+    /**
+     * The default latency percentile after which a call is hedged.
+     */
+    public static final double DEFAULT_PERCENTILE = 95;
+
+    /**
+     * The default minimum hedging delay in milliseconds.
+     */
+    public static final long DEFAULT_MINIMUM_DELAY_MILLIS = 10;
+
+    /**
+     * The default maximum hedging delay in milliseconds.
+     */
+    public static final long DEFAULT_MAXIMUM_DELAY_MILLIS = 500;
+
+    private final double percentile;
+    private final long minimumDelayNanos;
+    private final long maximumDelayNanos;
+
+    /**
+     * Constructor. Calls are hedged after the {@link #DEFAULT_PERCENTILE}th
+     * percentile latency, clamped to {@link #DEFAULT_MINIMUM_DELAY_MILLIS} and
+     * {@link #DEFAULT_MAXIMUM_DELAY_MILLIS}.
+     */
+    public HedgingPolicy() {
+        this(DEFAULT_PERCENTILE,
+                DEFAULT_MINIMUM_DELAY_MILLIS,
+                DEFAULT_MAXIMUM_DELAY_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param percentile The latency percentile after which a call is hedged,
+     * greater than 0 and less than 100.
+     * @param minimumDelay The shortest time to wait before hedging.
+     * @param maximumDelay The longest time to wait before hedging, and the
+     * delay while a region's percentile can not be estimated yet.
+     * @param delayUnit The {@link TimeUnit} of the minimumDelay and
+     * maximumDelay.
+     */
+    public HedgingPolicy(
+            final double percentile,
+            final long minimumDelay,
+            final long maximumDelay,
+            final TimeUnit delayUnit) {
+
+        assertArgumentPercentile(
+                PERCENTILE,
+                percentile);
+
+        assertArgumentNotNull(
+                DELAY_UNIT,
+                delayUnit);
+
+        assertArgumentPositive(
+                MINIMUM_DELAY,
+                delayUnit.toNanos(minimumDelay));
+
+        if (maximumDelay < minimumDelay)
+            throw new IllegalArgumentException(
+                    String.format(
+                            MUST_NOT_BE_LESS_THAN_PATTERN,
+                            MAXIMUM_DELAY,
+                            MINIMUM_DELAY));
+
+        this.percentile = percentile;
+        this.minimumDelayNanos = delayUnit.toNanos(minimumDelay);
+        this.maximumDelayNanos = delayUnit.toNanos(maximumDelay);
+    }
+
+    /**
+     * @return The latency percentile after which a call is hedged.
+     */
+    public double percentile() {
+        return percentile;
+    }
+
+    /**
+     * @return The shortest time to wait before hedging in nanoseconds.
+     */
+    public long minimumDelayNanos() {
+        return minimumDelayNanos;
+    }
+
+    /**
+     * @return The longest time to wait before hedging in nanoseconds.
+     */
+    public long maximumDelayNanos() {
+        return maximumDelayNanos;
+    }
+}
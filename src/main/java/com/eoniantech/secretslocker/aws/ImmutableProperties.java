@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Read-only {@link Properties}. The properties are loaded once, when the
+ * object is created, and every method that would modify them throws an
+ * {@link UnsupportedOperationException}. Instances can therefore be cached
+ * and shared between threads.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class ImmutableProperties extends Properties {
+
+    private static final long serialVersionUID = 6183464217304585624L;
+
+    private static final String READ_ONLY
+            = "the secret's properties are read-only";
+
+    private final boolean loaded;
+    private final Map<Object, Object> view;
+
+    /**
+     * Constructor.
+     *
+     * @param reader The reader to load the properties from.
+     * @throws IOException If the properties can not be read.
+     */
+    ImmutableProperties(final Reader reader) throws IOException {
+        super.load(reader);
+        this.loaded = true;
+        this.view = Collections.unmodifiableMap(new HashMap<>(this));
+    }
+
+    @Override
+    public synchronized Object put(
+            final Object key,
+            final Object value) {
+
+        assertNotLoaded();
+        return super.put(key, value);
+    }
+
+    @Override
+    public synchronized Object setProperty(
+            final String key,
+            final String value) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized void load(final Reader reader) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized void load(final InputStream inStream) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized void loadFromXML(final InputStream in) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized void putAll(final Map<?, ?> t) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized Object remove(final Object key) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized boolean remove(
+            final Object key,
+            final Object value) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized void clear() {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized Object putIfAbsent(
+            final Object key,
+            final Object value) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized boolean replace(
+            final Object key,
+            final Object oldValue,
+            final Object newValue) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized Object replace(
+            final Object key,
+            final Object value) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized void replaceAll(
+            final BiFunction<? super Object, ? super Object, ?> function) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized Object computeIfAbsent(
+            final Object key,
+            final Function<? super Object, ?> mappingFunction) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized Object computeIfPresent(
+            final Object key,
+            final BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized Object compute(
+            final Object key,
+            final BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public synchronized Object merge(
+            final Object key,
+            final Object value,
+            final BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public Set<Object> keySet() {
+        return (view == null)
+                ? super.keySet()
+                : view.keySet();
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return (view == null)
+                ? super.entrySet()
+                : view.entrySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return (view == null)
+                ? super.values()
+                : view.values();
+    }
+
+    private void assertNotLoaded() {
+        if (loaded)
+            throw new UnsupportedOperationException(READ_ONLY);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.encryptionsdk.kms.KmsMasterKeyProvider;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.AWSKMSClientBuilder;
+import com.amazonaws.services.kms.AbstractAWSKMS;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.EncryptRequest;
+import com.amazonaws.services.kms.model.EncryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates, and caches, one KMS client per region for a
+ * {@link KmsMasterKeyProvider}. Every call the clients make, i.e., the
+ * GenerateDataKey, Encrypt and Decrypt calls of the AWS Encryption SDK, goes
+ * through the factory's {@link AdaptiveConcurrencyLimiter}, and every
+ * throttled attempt, including attempts the client retries itself, is
+ * reported to it.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class KmsClientFactory
+        implements KmsMasterKeyProvider.RegionalClientSupplier {
+
+    private final ClientConfiguration clientConfiguration;
+    private final AWSCredentialsProvider credentials;
+    private final String endpoint;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Map<String, AWSKMS> clients;
+
+    /**
+     * Constructor.
+     *
+     * @param clientConfiguration The {@link ClientConfiguration} of every
+     * client.
+     * @param credentials The {@link AWSCredentialsProvider}.
+     * @param endpoint The endpoint of every client, or {@code null} for the
+     * regional endpoints.
+     * @param limiter The {@link AdaptiveConcurrencyLimiter} of every call.
+     */
+    KmsClientFactory(
+            final ClientConfiguration clientConfiguration,
+            final AWSCredentialsProvider credentials,
+            final String endpoint,
+            final AdaptiveConcurrencyLimiter limiter) {
+
+        this.clientConfiguration = clientConfiguration;
+        this.credentials = credentials;
+        this.endpoint = endpoint;
+        this.limiter = limiter;
+        this.clients = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return The {@link AdaptiveConcurrencyLimiter} of every call.
+     */
+    AdaptiveConcurrencyLimiter limiter() {
+        return limiter;
+    }
+
+    @Override
+    public AWSKMS getClient(
+            final String region) {
+
+        return clients.computeIfAbsent(
+                region,
+                this::newClient);
+    }
+
+    private AWSKMS newClient(
+            final String region) {
+
+        AWSKMSClientBuilder clientBuilder
+                = AWSKMSClientBuilder
+                        .standard()
+                        .withClientConfiguration(
+                                clientConfiguration)
+                        .withCredentials(
+                                credentials)
+                        .withRequestHandlers(
+                                new ThrottleListener(
+                                        limiter));
+
+        AWSKMS client = (endpoint == null)
+                ? clientBuilder
+                        .withRegion(region)
+                        .build()
+                : clientBuilder
+                        .withEndpointConfiguration(
+                                new EndpointConfiguration(
+                                        endpoint,
+                                        region))
+                        .build();
+
+        return new LimitedKmsClient(
+                client,
+                limiter);
+    }
+
+    /**
+     * Reports every throttled attempt to the limiter.
+     */
+    private static final class ThrottleListener
+            extends RequestHandler2 {
+
+        private final AdaptiveConcurrencyLimiter limiter;
+
+        ThrottleListener(
+                final AdaptiveConcurrencyLimiter limiter) {
+
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void afterAttempt(
+                final HandlerAfterAttemptContext context) {
+
+            Exception exception = context.getException();
+
+            if (exception instanceof SdkBaseException
+                    && RetryUtils.isThrottlingException((SdkBaseException) exception))
+                limiter.onThrottled();
+        }
+    }
+
+    /**
+     * KMS client that makes the calls of the AWS Encryption SDK through the
+     * limiter. Other operations are not supported.
+     */
+    private static final class LimitedKmsClient
+            extends AbstractAWSKMS {
+
+        private final AWSKMS client;
+        private final AdaptiveConcurrencyLimiter limiter;
+
+        LimitedKmsClient(
+                final AWSKMS client,
+                final AdaptiveConcurrencyLimiter limiter) {
+
+            this.client = client;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public GenerateDataKeyResult generateDataKey(
+                final GenerateDataKeyRequest request) {
+
+            return limiter.call(
+                    () -> client.generateDataKey(request));
+        }
+
+        @Override
+        public EncryptResult encrypt(
+                final EncryptRequest request) {
+
+            return limiter.call(
+                    () -> client.encrypt(request));
+        }
+
+        @Override
+        public DecryptResult decrypt(
+                final DecryptRequest request) {
+
+            return limiter.call(
+                    () -> client.decrypt(request));
+        }
+
+        @Override
+        public void shutdown() {
+            client.shutdown();
+        }
+    }
+}
@@ -15,12 +15,19 @@
  */
 package com.eoniantech.secretslocker.aws;
 
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.encryptionsdk.AwsCrypto;
 import com.amazonaws.encryptionsdk.CryptoInputStream;
+import com.amazonaws.encryptionsdk.CryptoMaterialsManager;
+import com.amazonaws.encryptionsdk.DefaultCryptoMaterialsManager;
+import com.amazonaws.encryptionsdk.MasterKeyProvider;
+import com.amazonaws.encryptionsdk.caching.CachingCryptoMaterialsManager;
 import com.amazonaws.encryptionsdk.kms.KmsMasterKeyProvider;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.util.IOUtils;
 import com.eoniantech.secretslocker.DecryptionService;
 import com.eoniantech.secretslocker.DecryptionService.DecryptionException;
@@ -28,12 +35,100 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotEmpty;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNegative;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.CHARSET;
+import static com.eoniantech.secretslocker.aws.Constants.CONNECTION_TIMEOUT;
+import static com.eoniantech.secretslocker.aws.Constants.CONNECTION_TIMEOUT_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.CONNECTION_TTL;
+import static com.eoniantech.secretslocker.aws.Constants.CONNECTION_TTL_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.CREDENTIALS;
+import static com.eoniantech.secretslocker.aws.Constants.DECRYPTED_FILE;
+import static com.eoniantech.secretslocker.aws.Constants.DECRYPTION_SUFFIX;
+import static com.eoniantech.secretslocker.aws.Constants.ENCRYPTED_FILE;
+import static com.eoniantech.secretslocker.aws.Constants.ENCRYPTED_STREAM;
+import static com.eoniantech.secretslocker.aws.Constants.ENCRYPTED_VALUE;
+import static com.eoniantech.secretslocker.aws.Constants.ENDPOINT;
+import static com.eoniantech.secretslocker.aws.Constants.EXECUTOR;
+import static com.eoniantech.secretslocker.aws.Constants.FILE_IS_TOO_LARGE_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.INVALID_REGION_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_CONNECTIONS;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_ERROR_RETRY;
+import static com.eoniantech.secretslocker.aws.Constants.POLICY;
+import static com.eoniantech.secretslocker.aws.Constants.REGION;
+import static com.eoniantech.secretslocker.aws.Constants.REQUEST_TIMEOUT;
+import static com.eoniantech.secretslocker.aws.Constants.REQUEST_TIMEOUT_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.RETRY_POLICY;
+import static com.eoniantech.secretslocker.aws.Constants.SOCKET_TIMEOUT;
+import static com.eoniantech.secretslocker.aws.Constants.SOCKET_TIMEOUT_UNIT;
 
 /**
  * Implementation of {@link DecryptionService} that uses AWS KMS Multi-region
  * envelope decryption. AWS credentials are required. KMS keys with the same
  * alias must be created in each of the desired regions.
  *
+ * <p>{@link #instance()} calls KMS with the default client settings. A
+ * service with its own KMS clients, e.g., with a connection pool sized for
+ * many decrypting threads, or shorter timeouts, is created with
+ * {@link #builder()}.
+ *
+ * <p>By default every decryption makes a KMS call to decrypt the message's
+ * data key. Data key caching can be enabled with
+ * {@link #enableDataKeyCaching(DataKeyCachePolicy)}, after which messages that
+ * share a data key are decrypted without a round trip to KMS.
+ *
+ * <p>A message from {@link KmsEncryptionService} has a copy of its data key
+ * for each of the service's regions. The copies are tried in the fastest
+ * healthy region first, from a rolling estimate of the latency and error rate
+ * of each region, see {@link #regionHealth()}. A region that keeps failing
+ * has its circuit opened, and is skipped for a while, see
+ * {@link #setCircuitBreakerPolicy(CircuitBreakerPolicy)}. With
+ * {@link #enableHedging(HedgingPolicy)}, a region that is slow to answer is
+ * hedged with a call to the next region, and the first answer is used.
+ *
+ * <p>To keep a fleet under the KMS request quota, the number of KMS calls
+ * under way can be limited with
+ * {@link #enableConcurrencyLimiting(ConcurrencyLimitPolicy)}.
+ *
+ * <p>The methods that return a String decode the plaintext with the
+ * service's charset, UTF-8 unless set with {@link #setCharset(Charset)}.
+ * {@link #decryptFileToBytes(File)} returns the plaintext as is.
+ *
+ * <p>{@link #decryptFile(String, String)} copies through streams by default.
+ * With {@link #enableNioFileIo(FileIoPolicy)} it copies through
+ * {@link FileChannel}s, with large, optionally direct, buffers and
+ * memory-mapped reads of the encrypted file.
+ * {@link #decryptFile(File, File)} always copies through channels, and
+ * atomically replaces the decrypted file.
+ *
+ * <p>Large framed files can be decrypted with their frames decrypted in
+ * parallel, with {@link #enableParallelDecryption(ParallelDecryptionPolicy)}.
+ * The data key is still decrypted once per file, and the header, every frame
+ * and any trailing signature are authenticated before the plaintext is
+ * returned or moved into place.
+ *
  * @author Michael Andrews <Michael.Andrews@eoniantech.com>
  * @since 1.0
  * @see DefaultAWSCredentialsProviderChain
@@ -48,6 +143,18 @@ public final class KmsDecryptionService implements DecryptionService {
                 = new KmsDecryptionService();
     }
 
+    /**
+     * The {@link FileIoPolicy} used by {@link #decryptFile(File, File)} when
+     * NIO file I/O is not enabled. Direct buffers without memory mapping, so
+     * multi-GB files do not leave mapped windows behind until they are
+     * garbage collected.
+     */
+    private static final FileIoPolicy DEFAULT_FILE_IO_POLICY
+            = new FileIoPolicy(
+                    FileIoPolicy.DEFAULT_BUFFER_SIZE,
+                    true,
+                    false);
+
     /**
      * Static factory method.
      *
@@ -56,24 +163,445 @@ public final class KmsDecryptionService implements DecryptionService {
     public static KmsDecryptionService instance() {
         return Holder.INSTANCE;
     }
+
+    /**
+     * Static factory method.
+     *
+     * @return A {@link Builder} for a KmsDecryptionService with its own KMS
+     * clients.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
   
     private AwsCrypto awsCrypto;
-    private KmsMasterKeyProvider kmsMasterKeyProvider;
+    private MasterKeyProvider<?> masterKeyProvider;
+    private volatile CryptoMaterialsManager materialsManager;
+    private volatile CountingCryptoMaterialsCache dataKeyCache;
+    private volatile Charset charset;
+    private volatile FileIoPolicy fileIoPolicy;
+    private volatile ParallelFrameDecryptor parallelFrameDecryptor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
 
     /**
      * Private constructor.
      */
     private KmsDecryptionService() {
+        this(new AdaptiveConcurrencyLimiter());
+    }
+
+    /**
+     * Private constructor.
+     *
+     * @param concurrencyLimiter The {@link AdaptiveConcurrencyLimiter} of the
+     * KMS calls.
+     */
+    private KmsDecryptionService(
+            final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+
+        this(kmsMasterKeyProvider(concurrencyLimiter),
+                concurrencyLimiter);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param masterKeyProvider The {@link MasterKeyProvider} used to decrypt
+     * data keys.
+     */
+    KmsDecryptionService(
+            final MasterKeyProvider<?> masterKeyProvider) {
+
+        this(masterKeyProvider,
+                new AdaptiveConcurrencyLimiter());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param masterKeyProvider The {@link MasterKeyProvider} used to decrypt
+     * data keys.
+     * @param concurrencyLimiter The {@link AdaptiveConcurrencyLimiter} the
+     * master key provider's KMS calls go through.
+     */
+    KmsDecryptionService(
+            final MasterKeyProvider<?> masterKeyProvider,
+            final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+
+        this.concurrencyLimiter = concurrencyLimiter;
         setAwsCrypto();
-        setKmsMasterKeyProvider();
+        setMasterKeyProvider(masterKeyProvider);
+        setCharset(StandardCharsets.UTF_8);
+        disableDataKeyCaching();
+    }
+
+    /**
+     * Sets the charset used to decode plaintext to text.
+     *
+     * @param charset The {@link Charset}.
+     */
+    public void setCharset(final Charset charset) {
+        assertArgumentNotNull(
+                CHARSET,
+                charset);
+
+        this.charset = charset;
+    }
+
+    /**
+     * @return The {@link Charset} used to decode plaintext to text.
+     */
+    public Charset charset() {
+        return this.charset;
+    }
+
+    /**
+     * Enables data key caching. Decrypted data keys are cached according to
+     * the given policy, and messages that share a cached data key are
+     * decrypted without calling KMS. Replaces any previously enabled cache.
+     *
+     * @param policy The {@link DataKeyCachePolicy}.
+     */
+    public synchronized void enableDataKeyCaching(
+            final DataKeyCachePolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        CountingCryptoMaterialsCache cache
+                = new CountingCryptoMaterialsCache(
+                        policy.capacity());
+
+        this.materialsManager
+                = CachingCryptoMaterialsManager
+                        .newBuilder()
+                        .withMasterKeyProvider(
+                                masterKeyProvider())
+                        .withCache(
+                                cache)
+                        .withMaxAge(
+                                policy.maxAgeMillis(),
+                                TimeUnit.MILLISECONDS)
+                        .withMessageUseLimit(
+                                policy.messageUseLimit())
+                        .withByteUseLimit(
+                                policy.byteUseLimit())
+                        .build();
+
+        this.dataKeyCache
+                = cache;
+    }
+
+    /**
+     * Disables data key caching. Every decryption calls KMS.
+     */
+    public synchronized void disableDataKeyCaching() {
+        this.materialsManager
+                = new DefaultCryptoMaterialsManager(
+                        masterKeyProvider());
+
+        this.dataKeyCache
+                = null;
+    }
+
+    /**
+     * @return {@code true} if data key caching is enabled, otherwise
+     * {@code false}.
+     */
+    public boolean isDataKeyCachingEnabled() {
+        return dataKeyCache != null;
+    }
+
+    /**
+     * @return The number of decryptions that used a cached data key since
+     * caching was last enabled.
+     */
+    public long dataKeyCacheHits() {
+        CountingCryptoMaterialsCache cache
+                = this.dataKeyCache;
+
+        return (cache == null)
+                ? 0
+                : cache.hits();
+    }
+
+    /**
+     * @return The number of decryptions that had to call KMS since caching was
+     * last enabled.
+     */
+    public long dataKeyCacheMisses() {
+        CountingCryptoMaterialsCache cache
+                = this.dataKeyCache;
+
+        return (cache == null)
+                ? 0
+                : cache.misses();
+    }
+
+    /**
+     * Enables decrypting files to files through {@link FileChannel}s. The
+     * policy also replaces the default policy of
+     * {@link #decryptFile(File, File)}.
+     *
+     * @param policy The {@link FileIoPolicy}.
+     */
+    public void enableNioFileIo(final FileIoPolicy policy) {
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        this.fileIoPolicy = policy;
+    }
+
+    /**
+     * Disables decrypting files to files through {@link FileChannel}s.
+     * {@link #decryptFile(String, String)} copies through streams.
+     */
+    public void disableNioFileIo() {
+        this.fileIoPolicy = null;
+    }
+
+    /**
+     * @return {@code true} if files are decrypted to files through
+     * {@link FileChannel}s, otherwise {@code false}.
+     */
+    public boolean isNioFileIoEnabled() {
+        return fileIoPolicy != null;
+    }
+
+    /**
+     * Enables decrypting the frames of large framed files in parallel, with
+     * {@link #decryptFile(File, File)} and {@link #decryptFileToBytes(File)},
+     * and so also {@link #decryptFile(String)}. Files smaller than the
+     * policy's minimum size, and unframed messages, are decrypted one frame
+     * after another, as is every message if the AWS Encryption SDK on the
+     * class path is not the version parallel decryption was written for.
+     * Replaces any previously enabled policy, and stops its threads once the
+     * decryptions under way have finished.
+     *
+     * @param policy The {@link ParallelDecryptionPolicy}.
+     */
+    public synchronized void enableParallelDecryption(
+            final ParallelDecryptionPolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        ParallelFrameDecryptor previous
+                = this.parallelFrameDecryptor;
+
+        this.parallelFrameDecryptor
+                = new ParallelFrameDecryptor(
+                        policy);
+
+        if (previous != null)
+            previous.shutdown();
+    }
+
+    /**
+     * Disables decrypting frames in parallel. Every file is decrypted one
+     * frame after another.
+     */
+    public synchronized void disableParallelDecryption() {
+        ParallelFrameDecryptor previous
+                = this.parallelFrameDecryptor;
+
+        this.parallelFrameDecryptor
+                = null;
+
+        if (previous != null)
+            previous.shutdown();
+    }
+
+    /**
+     * @return {@code true} if the frames of large framed files are decrypted
+     * in parallel, otherwise {@code false}.
+     */
+    public boolean isParallelDecryptionEnabled() {
+        return parallelFrameDecryptor != null;
+    }
+
+    /**
+     * Returns the latency and error estimates of the regions KMS has been
+     * called in, in the order in which the next decryption would call them.
+     * Empty unless the service decrypts data keys with the
+     * {@link KmsMasterKeyProvider} of {@link #instance()} or
+     * {@link #builder()}.
+     *
+     * @return The {@link RegionHealth} of each region, by region name.
+     */
+    public Map<String, RegionHealth> regionHealth() {
+        RegionAwareMasterKeyProvider<?> provider
+                = regionAwareMasterKeyProvider();
+
+        return (provider == null)
+                ? Collections.emptyMap()
+                : provider.regionHealth();
+    }
+
+    /**
+     * Enables hedging KMS calls across regions. When the call to a region has
+     * not answered within the policy's delay, the data key is also decrypted
+     * in the next region, the first success is used, and the other call is
+     * cancelled. Only messages with a data key for more than one region are
+     * hedged. Replaces any previously enabled policy. Has no effect unless the
+     * service decrypts data keys with the {@link KmsMasterKeyProvider} of
+     * {@link #instance()} or {@link #builder()}.
+     *
+     * @param policy The {@link HedgingPolicy}.
+     */
+    public void enableHedging(
+            final HedgingPolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        RegionAwareMasterKeyProvider<?> provider
+                = regionAwareMasterKeyProvider();
+
+        if (provider != null)
+            provider.setHedgingPolicy(policy);
+    }
+
+    /**
+     * Disables hedging. Regions are called one at a time.
+     */
+    public void disableHedging() {
+        RegionAwareMasterKeyProvider<?> provider
+                = regionAwareMasterKeyProvider();
+
+        if (provider != null)
+            provider.setHedgingPolicy(null);
+    }
+
+    /**
+     * @return {@code true} if KMS calls are hedged across regions, otherwise
+     * {@code false}.
+     */
+    public boolean isHedgingEnabled() {
+        RegionAwareMasterKeyProvider<?> provider
+                = regionAwareMasterKeyProvider();
+
+        return provider != null
+                && provider.hedgingPolicy() != null;
+    }
+
+    /**
+     * @return The number of hedged KMS calls made so far.
+     */
+    public long hedgedRequests() {
+        RegionAwareMasterKeyProvider<?> provider
+                = regionAwareMasterKeyProvider();
+
+        return (provider == null)
+                ? 0
+                : provider.hedgedRequests();
+    }
+
+    /**
+     * Enables limiting the number of KMS calls the service makes at the same
+     * time, with an adaptive limit that grows while calls are fast and backs
+     * off when KMS throttles them. Calls over the limit wait in a first come,
+     * first served queue. Replaces any previously enabled policy, and resets
+     * the limit to the policy's initial limit. Has no effect unless the
+     * service calls KMS through the clients of {@link #instance()} or
+     * {@link #builder()}.
+     *
+     * @param policy The {@link ConcurrencyLimitPolicy}.
+     */
+    public void enableConcurrencyLimiting(
+            final ConcurrencyLimitPolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        concurrencyLimiter.setPolicy(policy);
+    }
+
+    /**
+     * Disables limiting KMS calls. Calls waiting for the limit go ahead.
+     */
+    public void disableConcurrencyLimiting() {
+        concurrencyLimiter.setPolicy(null);
+    }
+
+    /**
+     * @return {@code true} if KMS calls are limited, otherwise
+     * {@code false}.
+     */
+    public boolean isConcurrencyLimitingEnabled() {
+        return concurrencyLimiter.isEnabled();
+    }
+
+    /**
+     * @return The current limit, calls under way, queue depth and throttles
+     * of the KMS calls.
+     */
+    public ConcurrencyMetrics concurrencyMetrics() {
+        return concurrencyLimiter.metrics();
+    }
+
+    /**
+     * Sets when the circuit of a region opens, and how long the region is
+     * then skipped. Circuits use the {@link CircuitBreakerPolicy} defaults
+     * unless set. Has no effect unless the service decrypts data keys with
+     * the {@link KmsMasterKeyProvider} of {@link #instance()} or
+     * {@link #builder()}.
+     *
+     * @param policy The {@link CircuitBreakerPolicy}.
+     */
+    public void setCircuitBreakerPolicy(
+            final CircuitBreakerPolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        RegionAwareMasterKeyProvider<?> provider
+                = regionAwareMasterKeyProvider();
+
+        if (provider != null)
+            provider.setCircuitBreakerPolicy(policy);
+    }
+
+    /**
+     * Stops the threads hedged KMS calls run on, once the calls under way
+     * have finished. The service can still be used: regions are then called
+     * one at a time, in the caller's thread. There is no need to call this
+     * method for {@link #instance()}, whose threads are daemon threads that
+     * stop when idle.
+     */
+    public void shutdown() {
+        RegionAwareMasterKeyProvider<?> provider
+                = regionAwareMasterKeyProvider();
+
+        if (provider != null)
+            provider.shutdown();
     }
 
     private AwsCrypto awsCrypto() {
         return this.awsCrypto;
     }
 
-    private KmsMasterKeyProvider kmsMasterKeyProvider() {
-        return this.kmsMasterKeyProvider;
+    private MasterKeyProvider<?> masterKeyProvider() {
+        return this.masterKeyProvider;
+    }
+
+    private RegionAwareMasterKeyProvider<?> regionAwareMasterKeyProvider() {
+        MasterKeyProvider<?> provider
+                = masterKeyProvider();
+
+        return (provider instanceof RegionAwareMasterKeyProvider)
+                ? (RegionAwareMasterKeyProvider<?>) provider
+                : null;
+    }
+
+    private CryptoMaterialsManager materialsManager() {
+        return this.materialsManager;
     }
 
     private void setAwsCrypto() {
@@ -81,21 +609,42 @@ public final class KmsDecryptionService implements DecryptionService {
                 = new AwsCrypto();
     }
 
-    private void setKmsMasterKeyProvider() {
+    private void setMasterKeyProvider(
+            final MasterKeyProvider<?> masterKeyProvider) {
+
+        this.masterKeyProvider
+                = masterKeyProvider;
+    }
+
+    private static String currentRegionName() {
         Region region 
                 = Regions.getCurrentRegion(); 
 
+        return (region == null)
+                ? null
+                : region.getName();
+    }
+
+    private static MasterKeyProvider<?> kmsMasterKeyProvider(
+            final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+
         String regionName 
-                = (region == null) 
-                        ? null 
-                        : region.getName(); 
+                = currentRegionName();
 
-        this.kmsMasterKeyProvider 
-                = KmsMasterKeyProvider
+        return new RegionAwareMasterKeyProvider<>(
+                KmsMasterKeyProvider
                         .builder()
                         .withDefaultRegion(
                                 regionName)
-                        .build();
+                        .withCustomClientFactory(
+                                new KmsClientFactory(
+                                        new ClientConfiguration(),
+                                        new DefaultAWSCredentialsProviderChain(),
+                                        null,
+                                        concurrencyLimiter))
+                        .build(),
+                new RegionLatencyTracker(
+                        regionName));
     } 
 
     /**
@@ -106,6 +655,18 @@ public final class KmsDecryptionService implements DecryptionService {
             final String encryptedFilename, 
             final String decryptedFilename) {
 
+        FileIoPolicy policy
+                = this.fileIoPolicy;
+
+        if (policy != null) {
+            decryptFile(
+                    new File(encryptedFilename),
+                    new File(decryptedFilename),
+                    policy);
+
+            return;
+        }
+
         try (final FileInputStream fileInputStream
                 = new FileInputStream(
                         encryptedFilename); 
@@ -117,7 +678,7 @@ public final class KmsDecryptionService implements DecryptionService {
                 final CryptoInputStream<?> decryptingStream
                         = awsCrypto()
                                 .createDecryptingStream(
-                                        kmsMasterKeyProvider(),
+                                        materialsManager(),
                                         fileInputStream)) {
 
             IOUtils.copy(
@@ -142,13 +703,71 @@ public final class KmsDecryptionService implements DecryptionService {
 
     /**
      * {@inheritDoc }
+     *
+     * <p>The file is decrypted through {@link FileChannel}s, with fixed size
+     * buffers, into a temporary file in the decrypted file's directory. Only
+     * once the whole file has been decrypted and authenticated is it moved
+     * into place, atomically, so readers never see a partial file. Memory use
+     * does not depend on the size of the file. The temporary file, and so the
+     * decrypted file, is only readable and writable by its owner on file
+     * systems that support POSIX permissions. With parallel decryption
+     * enabled, the frames of large framed files are decrypted in parallel and
+     * written at their positions in the temporary file.
      */
     @Override
     public void decryptFile(
             final File encryptedFile,
             final File decryptedFile) {
 
-        throw new UnsupportedOperationException("Not supported yet.");
+        assertArgumentNotNull(
+                ENCRYPTED_FILE,
+                encryptedFile);
+
+        assertArgumentNotNull(
+                DECRYPTED_FILE,
+                decryptedFile);
+
+        FileIoPolicy policy
+                = this.fileIoPolicy;
+
+        File targetFile
+                = decryptedFile.getAbsoluteFile();
+
+        Path tempFile = null;
+
+        try {
+            tempFile
+                    = Files.createTempFile(
+                            targetFile.getParentFile().toPath(),
+                            targetFile.getName(),
+                            DECRYPTION_SUFFIX);
+
+            boolean decryptedInParallel
+                    = decryptFileInParallel(
+                            encryptedFile,
+                            tempFile.toFile());
+
+            if (!decryptedInParallel)
+                decryptFile(
+                        encryptedFile,
+                        tempFile.toFile(),
+                        (policy == null)
+                                ? DEFAULT_FILE_IO_POLICY
+                                : policy);
+
+            Files.move(
+                    tempFile,
+                    targetFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException exception) {
+            throw new DecryptionException(exception);
+
+        } finally {
+            if (tempFile != null)
+                tempFile.toFile().delete();
+        }
     }
 
     /**
@@ -158,41 +777,729 @@ public final class KmsDecryptionService implements DecryptionService {
     public String decryptFile(
             final String encryptedFilename) {
 
-        try (final FileInputStream fileInputStream
-                = new FileInputStream(
-                        encryptedFilename);
+        return decode(
+                decryptFileToBytes(
+                        new File(
+                                encryptedFilename)));
+    }
 
-                final CryptoInputStream<?> decryptingStream
-                        = awsCrypto()
-                                .createDecryptingStream(
-                                        kmsMasterKeyProvider(),
-                                        fileInputStream)) {
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String decryptFile(
+            final File encryptedFile) {
+
+        return decryptFile(encryptedFile.getAbsolutePath());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * <p>The encrypted file is read in full and decrypted in a single call,
+     * so the plaintext is allocated once. With parallel decryption enabled,
+     * large framed files are instead read and decrypted a run of frames at a
+     * time, straight into the plaintext.
+     */
+    @Override
+    public byte[] decryptFileToBytes(
+            final File encryptedFile) {
+
+        assertArgumentNotNull(
+                ENCRYPTED_FILE,
+                encryptedFile);
+
+        final byte[] ciphertext;
 
-            return IOUtils.toString(
-                    decryptingStream);
+        try {
+            byte[] plaintext
+                    = decryptFileToBytesInParallel(
+                            encryptedFile);
+
+            if (plaintext != null)
+                return plaintext;
+
+            ciphertext = Files.readAllBytes(
+                    encryptedFile.toPath());
 
         } catch (IOException exception) {
             throw new DecryptionException(exception);
         }
+
+        return decryptBytes(
+                ciphertext);
     }
 
     /**
      * {@inheritDoc }
+     *
+     * <p>Plaintext is released one frame at a time, as each frame is
+     * authenticated. For algorithm suites with a signature, the signature is
+     * verified when the end of the stream is reached, and the final read
+     * throws if it is invalid.
      */
     @Override
-    public String decryptFile(
+    public InputStream decryptFileAsStream(
             final File encryptedFile) {
 
-        return decryptFile(encryptedFile.getAbsolutePath());
+        assertArgumentNotNull(
+                ENCRYPTED_FILE,
+                encryptedFile);
+
+        final FileInputStream fileInputStream;
+
+        try {
+            fileInputStream
+                    = new FileInputStream(
+                            encryptedFile);
+
+        } catch (IOException exception) {
+            throw new DecryptionException(exception);
+        }
+
+        try {
+            return decryptStream(
+                    fileInputStream);
+
+        } catch (RuntimeException exception) {
+            IOUtils.closeQuietly(
+                    fileInputStream,
+                    null);
+
+            throw exception;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @see #decryptFileAsStream(File)
+     */
+    @Override
+    public InputStream decryptStream(
+            final InputStream encryptedStream) {
+
+        assertArgumentNotNull(
+                ENCRYPTED_STREAM,
+                encryptedStream);
+
+        return awsCrypto()
+                .createDecryptingStream(
+                        materialsManager(),
+                        encryptedStream);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @see #decryptFileToBytesAsync(File, Executor)
+     */
+    @Override
+    public CompletableFuture<String> decryptFileAsync(
+            final File encryptedFile,
+            final Executor executor) {
+
+        return decryptFileToBytesAsync(
+                        encryptedFile,
+                        executor)
+                .thenApply(
+                        this::decode);
     }
 
     /**
      * {@inheritDoc }
+     *
+     * <p>The encrypted file is read with an {@link AsynchronousFileChannel}, so
+     * the read happens off the caller's thread. The decryption, including any
+     * KMS call to decrypt the data key, then runs on the given executor.
+     */
+    @Override
+    public CompletableFuture<byte[]> decryptFileToBytesAsync(
+            final File encryptedFile,
+            final Executor executor) {
+
+        assertArgumentNotNull(
+                ENCRYPTED_FILE,
+                encryptedFile);
+
+        assertArgumentNotNull(
+                EXECUTOR,
+                executor);
+
+        return readFileAsync(
+                        encryptedFile.toPath())
+                .thenApplyAsync(
+                        this::decryptBytes,
+                        executor);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * <p>The encrypted value is a base64 encoded AWS Encryption SDK message,
+     * e.g., from {@link KmsEncryptionService#encryptValue(String)}, so it can
+     * be kept in a configuration map or an environment variable. Leading and
+     * trailing whitespace is ignored. The value is decrypted in memory, with
+     * the same data key cache as files.
      */
     @Override
     public String decryptValue(
             final String encryptedValue) {
 
-        throw new UnsupportedOperationException("Not supported yet.");
+        assertArgumentNotEmpty(
+                ENCRYPTED_VALUE,
+                encryptedValue);
+
+        final byte[] ciphertext;
+
+        try {
+            ciphertext = Base64
+                    .getDecoder()
+                    .decode(
+                            encryptedValue.trim());
+
+        } catch (IllegalArgumentException exception) {
+            throw new DecryptionException(exception);
+        }
+
+        return decode(
+                decryptBytes(
+                        ciphertext));
+    }
+
+    private void decryptFile(
+            final File encryptedFile,
+            final File decryptedFile,
+            final FileIoPolicy policy) {
+
+        try (final FileChannel encryptedChannel
+                = FileChannel.open(
+                        encryptedFile.toPath(),
+                        StandardOpenOption.READ);
+
+                final FileChannel decryptedChannel
+                        = FileChannel.open(
+                                decryptedFile.toPath(),
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING);
+
+                final CryptoInputStream<?> decryptingStream
+                        = awsCrypto()
+                                .createDecryptingStream(
+                                        materialsManager(),
+                                        FileChannels.newInputStream(
+                                                encryptedChannel,
+                                                policy));
+
+                final OutputStream outputStream
+                        = FileChannels.newOutputStream(
+                                decryptedChannel,
+                                policy)) {
+
+            FileChannels.copy(
+                    decryptingStream,
+                    outputStream,
+                    policy);
+
+        } catch (IOException exception) {
+            throw new DecryptionException(exception);
+        }
+    }
+
+    /**
+     * @return {@code true} if the file was decrypted in parallel, otherwise
+     * {@code false} if parallel decryption is not enabled, the file is too
+     * small, or the message is not framed.
+     */
+    private boolean decryptFileInParallel(
+            final File encryptedFile,
+            final File decryptedFile) throws IOException {
+
+        ParallelFrameDecryptor decryptor
+                = this.parallelFrameDecryptor;
+
+        if (decryptor == null
+                || encryptedFile.length() < decryptor.policy().minimumSize())
+            return false;
+
+        try (final FileChannel encryptedChannel
+                = FileChannel.open(
+                        encryptedFile.toPath(),
+                        StandardOpenOption.READ);
+
+                final FileChannel decryptedChannel
+                        = FileChannel.open(
+                                decryptedFile.toPath(),
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            return decryptor.decrypt(
+                    encryptedChannel,
+                    decryptedChannel,
+                    materialsManager());
+
+        } catch (RejectedExecutionException exception) {
+            // parallel decryption was disabled or replaced meanwhile.
+            return false;
+        }
+    }
+
+    /**
+     * @return The plaintext, or {@code null} if parallel decryption is not
+     * enabled, the file is too small, or the message is not framed.
+     */
+    private byte[] decryptFileToBytesInParallel(
+            final File encryptedFile) throws IOException {
+
+        ParallelFrameDecryptor decryptor
+                = this.parallelFrameDecryptor;
+
+        if (decryptor == null
+                || encryptedFile.length() < decryptor.policy().minimumSize())
+            return null;
+
+        if (encryptedFile.length() > Integer.MAX_VALUE)
+            throw new IOException(
+                    String.format(
+                            FILE_IS_TOO_LARGE_PATTERN,
+                            encryptedFile));
+
+        try (final FileChannel encryptedChannel
+                = FileChannel.open(
+                        encryptedFile.toPath(),
+                        StandardOpenOption.READ)) {
+
+            return decryptor.decryptToBytes(
+                    encryptedChannel,
+                    materialsManager());
+
+        } catch (RejectedExecutionException exception) {
+            // parallel decryption was disabled or replaced meanwhile.
+            return null;
+        }
+    }
+
+    private byte[] decryptBytes(
+            final byte[] ciphertext) {
+
+        return awsCrypto()
+                .decryptData(
+                        materialsManager(),
+                        ciphertext)
+                .getResult();
+    }
+
+    private String decode(
+            final byte[] plaintext) {
+
+        return new String(
+                plaintext,
+                charset());
+    }
+
+    private static CompletableFuture<byte[]> readFileAsync(
+            final Path path) {
+
+        final CompletableFuture<byte[]> result
+                = new CompletableFuture<>();
+
+        final AsynchronousFileChannel channel;
+        final ByteBuffer buffer;
+
+        try {
+            channel = AsynchronousFileChannel
+                    .open(
+                            path,
+                            StandardOpenOption.READ);
+
+        } catch (IOException exception) {
+            result.completeExceptionally(
+                    new DecryptionException(exception));
+
+            return result;
+        }
+
+        try {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(
+                        String.format(
+                                FILE_IS_TOO_LARGE_PATTERN,
+                                path));
+
+            buffer = ByteBuffer.allocate((int) size);
+
+        } catch (IOException | RuntimeException | OutOfMemoryError exception) {
+            close(channel);
+
+            result.completeExceptionally(
+                    new DecryptionException(exception));
+
+            return result;
+        }
+
+        channel.read(
+                buffer,
+                0,
+                null,
+                new CompletionHandler<Integer, Void>() {
+
+                    @Override
+                    public void completed(
+                            final Integer read,
+                            final Void attachment) {
+
+                        if (read >= 0 && buffer.hasRemaining()) {
+                            channel.read(
+                                    buffer,
+                                    buffer.position(),
+                                    null,
+                                    this);
+                            return;
+                        }
+
+                        close(channel);
+
+                        result.complete(
+                                Arrays.copyOf(
+                                        buffer.array(),
+                                        buffer.position()));
+                    }
+
+                    @Override
+                    public void failed(
+                            final Throwable exception,
+                            final Void attachment) {
+
+                        close(channel);
+
+                        result.completeExceptionally(
+                                new DecryptionException(exception));
+                    }
+                });
+
+        return result;
+    }
+
+    private static void close(
+            final AsynchronousFileChannel channel) {
+
+        try {
+            channel.close();
+
+        } catch (IOException exception) {
+            // nothing more to read.
+        }
+    }
+
+    /**
+     * Builds a {@link KmsDecryptionService} with its own KMS clients, one per
+     * region, that share the builder's client settings. Settings that are not
+     * set keep the defaults of {@link ClientConfiguration}, e.g., 50
+     * connections per region. Each region's client has its own connection
+     * pool, so a data key decrypted in a second region does not wait for a
+     * connection to the first.
+     *
+     * <p>Size the connection pool for the number of threads that decrypt at
+     * the same time. With data key caching enabled, far fewer connections are
+     * needed, since most decryptions make no KMS call at all.
+     *
+     * @since 1.3
+     */
+    public static final class Builder {
+
+        private final ClientConfiguration clientConfiguration;
+        private AWSCredentialsProvider credentials;
+        private String region;
+        private String endpoint;
+
+        private Builder() {
+            this.clientConfiguration = new ClientConfiguration();
+            this.credentials = new DefaultAWSCredentialsProviderChain();
+        }
+
+        /**
+         * Sets the region whose data key copies are decrypted first, until
+         * every region has been measured. Defaults to the region the
+         * application runs in, if known.
+         *
+         * @param region The region name, e.g., us-east-1.
+         * @return This builder.
+         */
+        public Builder withRegion(
+                final String region) {
+
+            assertArgumentNotNull(
+                    REGION,
+                    region);
+
+            try {
+                Regions.fromName(region);
+
+            } catch (IllegalArgumentException exception) {
+                throw new IllegalArgumentException(
+                        String.format(
+                                INVALID_REGION_PATTERN,
+                                region),
+                        exception);
+            }
+
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * @param credentials The {@link AWSCredentialsProvider}. Defaults to
+         * the {@link DefaultAWSCredentialsProviderChain}.
+         * @return This builder.
+         */
+        public Builder withCredentials(
+                final AWSCredentialsProvider credentials) {
+
+            assertArgumentNotNull(
+                    CREDENTIALS,
+                    credentials);
+
+            this.credentials = credentials;
+            return this;
+        }
+
+        /**
+         * Sends every KMS call to the given endpoint instead of the regional
+         * endpoint, e.g., an interface VPC endpoint. Only suitable for
+         * messages whose data keys are decrypted in a single region.
+         *
+         * @param endpoint The endpoint URL, e.g.,
+         * https://vpce-0123-abcd.kms.us-east-1.vpce.amazonaws.com
+         * @return This builder.
+         */
+        public Builder withEndpoint(
+                final String endpoint) {
+
+            assertArgumentNotEmpty(
+                    ENDPOINT,
+                    endpoint);
+
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        /**
+         * @param maxConnections The maximum number of open HTTP connections
+         * to KMS, per region.
+         * @return This builder.
+         */
+        public Builder withMaxConnections(
+                final int maxConnections) {
+
+            assertArgumentPositive(
+                    MAX_CONNECTIONS,
+                    maxConnections);
+
+            this.clientConfiguration.setMaxConnections(
+                    maxConnections);
+            return this;
+        }
+
+        /**
+         * @param connectionTtl How long a pooled connection is kept open
+         * before it is replaced. Lets a long running application follow
+         * changes to the KMS endpoint's addresses.
+         * @param connectionTtlUnit The {@link TimeUnit} of the connectionTtl.
+         * @return This builder.
+         */
+        public Builder withConnectionTtl(
+                final long connectionTtl,
+                final TimeUnit connectionTtlUnit) {
+
+            assertArgumentNotNull(
+                    CONNECTION_TTL_UNIT,
+                    connectionTtlUnit);
+
+            assertArgumentPositive(
+                    CONNECTION_TTL,
+                    connectionTtlUnit.toMillis(connectionTtl));
+
+            this.clientConfiguration.setConnectionTTL(
+                    connectionTtlUnit.toMillis(
+                            connectionTtl));
+            return this;
+        }
+
+        /**
+         * @param connectionTimeout How long to wait for a connection to be
+         * established. Zero waits indefinitely.
+         * @param connectionTimeoutUnit The {@link TimeUnit} of the
+         * connectionTimeout.
+         * @return This builder.
+         */
+        public Builder withConnectionTimeout(
+                final long connectionTimeout,
+                final TimeUnit connectionTimeoutUnit) {
+
+            assertArgumentNotNull(
+                    CONNECTION_TIMEOUT_UNIT,
+                    connectionTimeoutUnit);
+
+            assertArgumentNotNegative(
+                    CONNECTION_TIMEOUT,
+                    connectionTimeout);
+
+            this.clientConfiguration.setConnectionTimeout(
+                    millis(
+                            connectionTimeout,
+                            connectionTimeoutUnit));
+            return this;
+        }
+
+        /**
+         * @param socketTimeout How long to wait for data on an open
+         * connection. Zero waits indefinitely.
+         * @param socketTimeoutUnit The {@link TimeUnit} of the socketTimeout.
+         * @return This builder.
+         */
+        public Builder withSocketTimeout(
+                final long socketTimeout,
+                final TimeUnit socketTimeoutUnit) {
+
+            assertArgumentNotNull(
+                    SOCKET_TIMEOUT_UNIT,
+                    socketTimeoutUnit);
+
+            assertArgumentNotNegative(
+                    SOCKET_TIMEOUT,
+                    socketTimeout);
+
+            this.clientConfiguration.setSocketTimeout(
+                    millis(
+                            socketTimeout,
+                            socketTimeoutUnit));
+            return this;
+        }
+
+        /**
+         * @param requestTimeout How long a single HTTP request, one attempt
+         * of a KMS call, may take in total. Zero disables the timeout.
+         * @param requestTimeoutUnit The {@link TimeUnit} of the
+         * requestTimeout.
+         * @return This builder.
+         */
+        public Builder withRequestTimeout(
+                final long requestTimeout,
+                final TimeUnit requestTimeoutUnit) {
+
+            assertArgumentNotNull(
+                    REQUEST_TIMEOUT_UNIT,
+                    requestTimeoutUnit);
+
+            assertArgumentNotNegative(
+                    REQUEST_TIMEOUT,
+                    requestTimeout);
+
+            this.clientConfiguration.setRequestTimeout(
+                    millis(
+                            requestTimeout,
+                            requestTimeoutUnit));
+            return this;
+        }
+
+        /**
+         * @param retryPolicy The {@link RetryPolicy} of failed KMS calls.
+         * @return This builder.
+         */
+        public Builder withRetryPolicy(
+                final RetryPolicy retryPolicy) {
+
+            assertArgumentNotNull(
+                    RETRY_POLICY,
+                    retryPolicy);
+
+            this.clientConfiguration.setRetryPolicy(
+                    retryPolicy);
+            return this;
+        }
+
+        /**
+         * @param maxErrorRetry The maximum number of times a failed KMS call
+         * is retried. Overrides the retry policy's own maximum.
+         * @return This builder.
+         */
+        public Builder withMaxErrorRetry(
+                final int maxErrorRetry) {
+
+            assertArgumentNotNegative(
+                    MAX_ERROR_RETRY,
+                    maxErrorRetry);
+
+            this.clientConfiguration.setMaxErrorRetry(
+                    maxErrorRetry);
+            return this;
+        }
+
+        /**
+         * @param tcpKeepAlive {@code true} to send TCP keep-alive probes on
+         * idle pooled connections.
+         * @return This builder.
+         */
+        public Builder withTcpKeepAlive(
+                final boolean tcpKeepAlive) {
+
+            this.clientConfiguration.setUseTcpKeepAlive(
+                    tcpKeepAlive);
+            return this;
+        }
+
+        /**
+         * @return A copy of the client settings built so far.
+         */
+        ClientConfiguration clientConfiguration() {
+            return new ClientConfiguration(
+                    clientConfiguration);
+        }
+
+        /**
+         * Builds the service. No KMS client is created until the first data
+         * key of a region is decrypted.
+         *
+         * @return The {@link KmsDecryptionService}.
+         */
+        public KmsDecryptionService build() {
+            String regionName
+                    = (region == null)
+                            ? currentRegionName()
+                            : region;
+
+            AdaptiveConcurrencyLimiter concurrencyLimiter
+                    = new AdaptiveConcurrencyLimiter();
+
+            return new KmsDecryptionService(
+                    new RegionAwareMasterKeyProvider<>(
+                            KmsMasterKeyProvider
+                                    .builder()
+                                    .withDefaultRegion(
+                                            regionName)
+                                    .withCustomClientFactory(
+                                            new KmsClientFactory(
+                                                    clientConfiguration(),
+                                                    credentials,
+                                                    endpoint,
+                                                    concurrencyLimiter))
+                                    .build(),
+                            new RegionLatencyTracker(
+                                    regionName)),
+                    concurrencyLimiter);
+        }
+
+        private static int millis(
+                final long duration,
+                final TimeUnit unit) {
+
+            return (int) Math.min(
+                    unit.toMillis(duration),
+                    Integer.MAX_VALUE);
+        }
     }
 }
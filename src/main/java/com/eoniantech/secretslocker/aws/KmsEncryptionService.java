@@ -15,10 +15,15 @@
  */
 package com.eoniantech.secretslocker.aws;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.encryptionsdk.AwsCrypto;
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.CryptoMaterialsManager;
 import com.amazonaws.encryptionsdk.CryptoOutputStream;
+import com.amazonaws.encryptionsdk.DefaultCryptoMaterialsManager;
 import com.amazonaws.encryptionsdk.MasterKeyProvider;
+import com.amazonaws.encryptionsdk.caching.CachingCryptoMaterialsManager;
 import com.amazonaws.encryptionsdk.kms.KmsMasterKeyProvider;
 import com.amazonaws.encryptionsdk.multi.MultipleProviderFactory;
 import com.amazonaws.regions.Regions;
@@ -27,30 +32,112 @@ import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder
 import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
 import com.amazonaws.services.securitytoken.model.GetCallerIdentityResult;
 import com.amazonaws.util.IOUtils;
+import com.eoniantech.secretslocker.EncryptionReport;
 import com.eoniantech.secretslocker.EncryptionService;
 import com.eoniantech.secretslocker.EncryptionService.EncryptionException;
+import com.eoniantech.secretslocker.LockerExecutors;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotEmpty;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNegative;
 import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.ACCOUNT_ID;
+import static com.eoniantech.secretslocker.aws.Constants.ALGORITHM_SUITE;
 import static com.eoniantech.secretslocker.aws.Constants.ALIAS;
+import static com.eoniantech.secretslocker.aws.Constants.BATCH_CONCURRENCY;
+import static com.eoniantech.secretslocker.aws.Constants.DIRECTORY;
+import static com.eoniantech.secretslocker.aws.Constants.DIRECTORY_DOES_NOT_EXIST_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.DIRECTORY_IS_NOT_READABLE;
+import static com.eoniantech.secretslocker.aws.Constants.EXECUTOR;
+import static com.eoniantech.secretslocker.aws.Constants.FILE;
+import static com.eoniantech.secretslocker.aws.Constants.FILES;
 import static com.eoniantech.secretslocker.aws.Constants.FILE_DOES_NOT_EXIST_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.FILE_IS_NOT_A_NORMAL_FILE_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.FILE_IS_NOT_READABLE_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.FRAME_SIZE;
+import static com.eoniantech.secretslocker.aws.Constants.GLOB;
+import static com.eoniantech.secretslocker.aws.Constants.INVALID_KEY_ARN_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.INVALID_REGION_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.KEY_ARN;
+import static com.eoniantech.secretslocker.aws.Constants.KEY_ARNS;
+import static com.eoniantech.secretslocker.aws.Constants.POLICY;
 import static com.eoniantech.secretslocker.aws.Constants.REGION;
 import static com.eoniantech.secretslocker.aws.Constants.REGIONS;
 import static com.eoniantech.secretslocker.aws.Constants.SUFFIX;
+import static com.eoniantech.secretslocker.aws.Constants.VALUE;
 
 /**
  * Implementation of {@link EncryptionService} that uses AWS KMS Multi-region
  * envelope encryption. AWS credentials are required. KMS keys with the same
  * alias must be created in each of the desired regions.
  *
+ * <p>Files are copied through streams by default. With
+ * {@link #enableNioFileIo(FileIoPolicy)} they are copied through
+ * {@link FileChannel}s, with large, optionally direct, buffers and
+ * memory-mapped reads of the source file.
+ *
+ * <p>The service is thread-safe. The {@link AwsCrypto} instance and the
+ * regional KMS master key providers, with their KMS clients, are built once
+ * per service and shared by every call. The {@link AwsCrypto} instance is
+ * replaced, never modified, when the algorithm suite or frame size is set.
+ *
+ * <p>Messages are encrypted with the AWS Encryption SDK's default algorithm
+ * suite, AES-256-GCM with HKDF and an ECDSA P-384 signature, in 4 KiB frames.
+ * {@link #setAlgorithmSuite(CryptoAlgorithm)} selects another suite, e.g. a
+ * non-signing suite whose messages are cheaper to decrypt, and
+ * {@link #setFrameSize(int)} another frame size. Decryption reads both from
+ * the message header, so no decryption setting is needed.
+ *
+ * <p>By default every encryption generates a new data key with KMS in every
+ * region. Data key caching can be enabled with
+ * {@link #enableDataKeyCaching(DataKeyCachePolicy)}, after which data keys
+ * are reused within the policy's limits.
+ *
+ * <p>{@link #encryptAll(Collection)} and
+ * {@link #encryptDirectory(Path, String)} encrypt a batch of files in
+ * parallel, by default at most {@value #DEFAULT_BATCH_CONCURRENCY} at a time,
+ * which can be changed with {@link #setBatchConcurrency(int)}.
+ *
+ * <p>To keep a fleet under the KMS request quota, the number of KMS calls
+ * under way can be limited with
+ * {@link #enableConcurrencyLimiting(ConcurrencyLimitPolicy)}.
+ *
+ * <p>Construction makes no network calls. When only an alias is given, the
+ * AWS account ID is looked up with STS on first use, or in the background
+ * with {@link #resolveKeysAsync()}. Use
+ * {@link #withAccountId(String, String, String...)} or
+ * {@link #withKeyArns(String...)} to avoid the STS call altogether.
+ *
  * @author Michael Andrews <Michael.Andrews@eoniantech.com>
  * @since 1.0
  * @see DefaultAWSCredentialsProviderChain
@@ -60,23 +147,510 @@ public final class KmsEncryptionService implements EncryptionService {
     private static final String ALIAS_ARN_FORMAT 
             = "arn:aws:kms:%s:%s:%s"; 
 
-    private String alias;
-    private String[] regions;
-    private String account;
+    private static final String GLOB_SYNTAX
+            = "glob:";
+
+    private static final Pattern KEY_ARN_PATTERN
+            = Pattern.compile(
+                    "arn:aws[a-z-]*:kms:([a-z0-9-]+):\\d{12}:(key|alias)/.+");
+
+    private volatile AwsCrypto awsCrypto;
+    private final Supplier<MasterKeyProvider<?>> masterKeyProviderFactory;
+    private final AtomicReference<Resolution> masterKeyProvider;
+    private volatile CryptoMaterialsManager materialsManager;
+    private volatile DataKeyCachePolicy dataKeyCachePolicy;
+    private volatile CountingCryptoMaterialsCache dataKeyCache;
+    private volatile FileIoPolicy fileIoPolicy;
+    private volatile Executor executor;
+    private volatile int batchConcurrency;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
 
     /**
-     * Constructor.
-     * *
+     * The default maximum number of files a batch encrypts at a time. Each
+     * file makes one GenerateDataKey call, and one Encrypt call per
+     * additional region, to KMS.
+     */
+    public static final int DEFAULT_BATCH_CONCURRENCY = 8;
+
+    /**
+     * Constructor. The AWS account ID that owns the alias is not known, so it
+     * is looked up with STS, once, the first time the keys are needed. The
+     * constructor itself makes no network calls.
+     *
      * @param alias The alias that exists in all the regions. E.g., alias/myKey
      * @param regions The regions where the alias exists.
+     * @see #resolveKeysAsync()
+     * @see #withAccountId(String, String, String...)
      */
     public KmsEncryptionService(
             final String alias,
             final String... regions) {
 
-        setAlias(alias);
-        setRegions(regions);
-        setAccountId();
+        this(
+                alias,
+                KmsEncryptionService::callerAccountId,
+                regions);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param alias The alias that exists in all the regions.
+     * @param accountIdResolver Looks up the AWS account ID that owns the
+     * alias. It is called on first use, not by the constructor.
+     * @param regions The regions where the alias exists.
+     */
+    KmsEncryptionService(
+            final String alias,
+            final Supplier<String> accountIdResolver,
+            final String... regions) {
+
+        validateAlias(alias);
+        validateRegions(regions);
+
+        final String[] aliasRegions
+                = regions.clone();
+
+        final AdaptiveConcurrencyLimiter aliasConcurrencyLimiter
+                = new AdaptiveConcurrencyLimiter();
+
+        this.awsCrypto
+                = new AwsCrypto();
+
+        this.concurrencyLimiter
+                = aliasConcurrencyLimiter;
+
+        this.masterKeyProviderFactory
+                = () -> kmsMasterKeyProvider(
+                        alias,
+                        accountIdResolver.get(),
+                        aliasConcurrencyLimiter,
+                        aliasRegions);
+
+        this.masterKeyProvider
+                = new AtomicReference<>();
+
+        this.executor
+                = LockerExecutors.defaultExecutor();
+
+        this.batchConcurrency
+                = DEFAULT_BATCH_CONCURRENCY;
+    }
+
+    /**
+     * Constructor. The master key provider is built the first time the keys
+     * are needed.
+     *
+     * @param masterKeyProviderFactory Builds the {@link MasterKeyProvider}
+     * used to generate and encrypt data keys.
+     * @param concurrencyLimiter The {@link AdaptiveConcurrencyLimiter} the
+     * master key provider's KMS calls go through.
+     */
+    KmsEncryptionService(
+            final Supplier<MasterKeyProvider<?>> masterKeyProviderFactory,
+            final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+
+        this.awsCrypto
+                = new AwsCrypto();
+
+        this.concurrencyLimiter
+                = concurrencyLimiter;
+
+        this.masterKeyProviderFactory
+                = masterKeyProviderFactory;
+
+        this.masterKeyProvider
+                = new AtomicReference<>();
+
+        this.executor
+                = LockerExecutors.defaultExecutor();
+
+        this.batchConcurrency
+                = DEFAULT_BATCH_CONCURRENCY;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param masterKeyProvider The {@link MasterKeyProvider} used to generate
+     * and encrypt data keys.
+     */
+    KmsEncryptionService(
+            final MasterKeyProvider<?> masterKeyProvider) {
+
+        this(masterKeyProvider,
+                new AdaptiveConcurrencyLimiter());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param masterKeyProvider The {@link MasterKeyProvider} used to generate
+     * and encrypt data keys.
+     * @param concurrencyLimiter The {@link AdaptiveConcurrencyLimiter} the
+     * master key provider's KMS calls go through.
+     */
+    KmsEncryptionService(
+            final MasterKeyProvider<?> masterKeyProvider,
+            final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+
+        this.awsCrypto
+                = new AwsCrypto();
+
+        this.concurrencyLimiter
+                = concurrencyLimiter;
+
+        this.masterKeyProviderFactory
+                = () -> masterKeyProvider;
+
+        this.masterKeyProvider
+                = new AtomicReference<>(
+                        new Resolution(
+                                masterKeyProvider));
+
+        this.executor
+                = LockerExecutors.defaultExecutor();
+
+        this.batchConcurrency
+                = DEFAULT_BATCH_CONCURRENCY;
+    }
+
+    /**
+     * Creates a service for an alias in an account that is already known.
+     * The key ARNs are built from the arguments, so no STS call is ever made.
+     *
+     * @param accountId The AWS account ID that owns the alias.
+     * @param alias The alias that exists in all the regions. E.g., alias/myKey
+     * @param regions The regions where the alias exists.
+     * @return The {@link KmsEncryptionService}.
+     */
+    public static KmsEncryptionService withAccountId(
+            final String accountId,
+            final String alias,
+            final String... regions) {
+
+        assertArgumentNotEmpty(
+                ACCOUNT_ID,
+                accountId);
+
+        validateAlias(alias);
+        validateRegions(regions);
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter
+                = new AdaptiveConcurrencyLimiter();
+
+        return new KmsEncryptionService(
+                kmsMasterKeyProvider(
+                        alias,
+                        accountId,
+                        concurrencyLimiter,
+                        regions),
+                concurrencyLimiter);
+    }
+
+    /**
+     * Creates a service for fully qualified KMS key or alias ARNs. E.g.,
+     * arn:aws:kms:us-east-1:111122223333:alias/myKey. Each data key is
+     * encrypted under every ARN, in the region named by the ARN. No STS call
+     * is ever made.
+     *
+     * @param keyArns The key or alias ARNs.
+     * @return The {@link KmsEncryptionService}.
+     */
+    public static KmsEncryptionService withKeyArns(
+            final String... keyArns) {
+
+        assertArgumentNotEmpty(
+                KEY_ARNS,
+                keyArns);
+
+        for (String keyArn : keyArns)
+            validateKeyArn(keyArn);
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter
+                = new AdaptiveConcurrencyLimiter();
+
+        return new KmsEncryptionService(
+                kmsMasterKeyProvider(
+                        Arrays.asList(
+                                keyArns),
+                        concurrencyLimiter),
+                concurrencyLimiter);
+    }
+
+    /**
+     * Starts resolving the KMS keys in the background, unless they are
+     * already resolved or being resolved. Only a service constructed with an
+     * alias alone has anything to resolve: the AWS account ID is looked up
+     * with STS. Calling this method after construction takes that call off
+     * the path of the first encryption. A failed resolution is not cached;
+     * the next call, or the next encryption, tries again.
+     *
+     * @return A {@link CompletableFuture} that completes when the keys are
+     * resolved, or completes exceptionally if they can not be resolved.
+     */
+    public CompletableFuture<Void> resolveKeysAsync() {
+        Resolution resolution
+                = resolution();
+
+        if (!resolution.isStarted())
+            LockerExecutors
+                    .defaultExecutor()
+                    .execute(
+                            resolution::run);
+
+        return resolution
+                .future()
+                .thenApply(masterKeyProvider -> null);
+    }
+
+    /**
+     * Sets the algorithm suite new messages are encrypted with. Suites
+     * without a key derivation function are never cached by data key
+     * caching.
+     *
+     * @param algorithmSuite The {@link CryptoAlgorithm}. E.g.,
+     * {@link CryptoAlgorithm#ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA256}, which
+     * has no signature to verify on decryption.
+     */
+    public synchronized void setAlgorithmSuite(
+            final CryptoAlgorithm algorithmSuite) {
+
+        assertArgumentNotNull(
+                ALGORITHM_SUITE,
+                algorithmSuite);
+
+        this.awsCrypto
+                = awsCrypto(
+                        algorithmSuite,
+                        frameSize());
+    }
+
+    /**
+     * @return The {@link CryptoAlgorithm} new messages are encrypted with.
+     */
+    public CryptoAlgorithm algorithmSuite() {
+        CryptoAlgorithm algorithmSuite
+                = awsCrypto()
+                        .getEncryptionAlgorithm();
+
+        return (algorithmSuite == null)
+                ? AwsCrypto.getDefaultCryptoAlgorithm()
+                : algorithmSuite;
+    }
+
+    /**
+     * Sets the frame size new messages are encrypted with. Larger frames
+     * mean fewer authentication tags to compute and verify, but a decrypting
+     * stream buffers a whole frame before releasing its plaintext.
+     *
+     * @param frameSize The frame size in bytes, or 0 for messages that are
+     * not framed and must be decrypted whole.
+     */
+    public synchronized void setFrameSize(
+            final int frameSize) {
+
+        assertArgumentNotNegative(
+                FRAME_SIZE,
+                frameSize);
+
+        this.awsCrypto
+                = awsCrypto(
+                        awsCrypto()
+                                .getEncryptionAlgorithm(),
+                        frameSize);
+    }
+
+    /**
+     * @return The frame size in bytes new messages are encrypted with.
+     */
+    public int frameSize() {
+        return awsCrypto()
+                .getEncryptionFrameSize();
+    }
+
+    /**
+     * Enables data key caching. Data keys are cached according to the given
+     * policy, and each one encrypts messages until it reaches the policy's
+     * maximum age, message use limit or byte use limit, so a batch of files
+     * makes a few KMS calls rather than one per file. Files encrypted under a
+     * shared data key can then share a cached data key when they are
+     * decrypted, see
+     * {@link KmsDecryptionService#enableDataKeyCaching(DataKeyCachePolicy)}.
+     * Replaces any previously enabled cache.
+     *
+     * <p>Concurrent misses are not coalesced. While the cache is cold, every
+     * encryption that misses at the same time generates a data key of its
+     * own, so a batch started on a cold cache can generate up to its batch
+     * concurrency data keys. Encrypt one file before the batch to have the
+     * whole batch share a single data key.
+     *
+     * @param policy The {@link DataKeyCachePolicy}.
+     */
+    public synchronized void enableDataKeyCaching(
+            final DataKeyCachePolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        this.dataKeyCachePolicy
+                = policy;
+
+        this.dataKeyCache
+                = new CountingCryptoMaterialsCache(
+                        policy.capacity());
+
+        this.materialsManager
+                = null;
+    }
+
+    /**
+     * Disables data key caching. Every encryption generates a new data key.
+     */
+    public synchronized void disableDataKeyCaching() {
+        this.dataKeyCachePolicy
+                = null;
+
+        this.dataKeyCache
+                = null;
+
+        this.materialsManager
+                = null;
+    }
+
+    /**
+     * @return {@code true} if data key caching is enabled, otherwise
+     * {@code false}.
+     */
+    public boolean isDataKeyCachingEnabled() {
+        return dataKeyCache != null;
+    }
+
+    /**
+     * @return The number of encryptions that used a cached data key since
+     * caching was last enabled.
+     */
+    public long dataKeyCacheHits() {
+        CountingCryptoMaterialsCache cache
+                = this.dataKeyCache;
+
+        return (cache == null)
+                ? 0
+                : cache.hits();
+    }
+
+    /**
+     * @return The number of encryptions that had to generate a data key since
+     * caching was last enabled.
+     */
+    public long dataKeyCacheMisses() {
+        CountingCryptoMaterialsCache cache
+                = this.dataKeyCache;
+
+        return (cache == null)
+                ? 0
+                : cache.misses();
+    }
+
+    /**
+     * Enables limiting the number of KMS calls the service makes at the same
+     * time, with an adaptive limit that grows while calls are fast and backs
+     * off when KMS throttles them. Calls over the limit wait in a first come,
+     * first served queue. Replaces any previously enabled policy, and resets
+     * the limit to the policy's initial limit. Has no effect on a service
+     * that was not given an alias or KMS key ARNs.
+     *
+     * @param policy The {@link ConcurrencyLimitPolicy}.
+     */
+    public void enableConcurrencyLimiting(
+            final ConcurrencyLimitPolicy policy) {
+
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        concurrencyLimiter.setPolicy(policy);
+    }
+
+    /**
+     * Disables limiting KMS calls. Calls waiting for the limit go ahead.
+     */
+    public void disableConcurrencyLimiting() {
+        concurrencyLimiter.setPolicy(null);
+    }
+
+    /**
+     * @return {@code true} if KMS calls are limited, otherwise
+     * {@code false}.
+     */
+    public boolean isConcurrencyLimitingEnabled() {
+        return concurrencyLimiter.isEnabled();
+    }
+
+    /**
+     * @return The current limit, calls under way, queue depth and throttles
+     * of the KMS calls.
+     */
+    public ConcurrencyMetrics concurrencyMetrics() {
+        return concurrencyLimiter.metrics();
+    }
+
+    /**
+     * Enables encrypting files through {@link FileChannel}s.
+     *
+     * @param policy The {@link FileIoPolicy}.
+     */
+    public void enableNioFileIo(final FileIoPolicy policy) {
+        assertArgumentNotNull(
+                POLICY,
+                policy);
+
+        this.fileIoPolicy = policy;
+    }
+
+    /**
+     * Disables encrypting files through {@link FileChannel}s. Files are
+     * copied through streams.
+     */
+    public void disableNioFileIo() {
+        this.fileIoPolicy = null;
+    }
+
+    /**
+     * @return {@code true} if files are encrypted through
+     * {@link FileChannel}s, otherwise {@code false}.
+     */
+    public boolean isNioFileIoEnabled() {
+        return fileIoPolicy != null;
+    }
+
+    /**
+     * Sets the maximum number of files a batch encrypts at a time, which
+     * bounds the number of concurrent requests to KMS.
+     *
+     * @param batchConcurrency The maximum number of files in flight.
+     */
+    public void setBatchConcurrency(final int batchConcurrency) {
+        assertArgumentPositive(
+                BATCH_CONCURRENCY,
+                batchConcurrency);
+
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    /**
+     * Sets the executor that encrypts the files of a batch.
+     *
+     * @param executor The {@link Executor}. E.g.,
+     * {@link LockerExecutors#newVirtualThreadExecutor()} on JDK 21 and later.
+     */
+    public void setExecutor(final Executor executor) {
+        assertArgumentNotNull(
+                EXECUTOR,
+                executor);
+
+        this.executor = executor;
     }
 
     /**
@@ -125,8 +699,23 @@ public final class KmsEncryptionService implements EncryptionService {
                                 .append(SUFFIX)
                                 .toString());
 
-        final AwsCrypto awsCrypto
-                = new AwsCrypto();
+        // Resolve the keys before the encrypted file is created, so a failed
+        // resolution does not leave an empty file behind.
+        CryptoMaterialsManager materialsManager
+                = materialsManager();
+
+        FileIoPolicy policy
+                = this.fileIoPolicy;
+
+        if (policy != null) {
+            encryptFile(
+                    file,
+                    encryptedFile,
+                    materialsManager,
+                    policy);
+
+            return encryptedFile;
+        }
 
         try (final FileInputStream fileInputStream
                 = new FileInputStream(file);
@@ -136,11 +725,20 @@ public final class KmsEncryptionService implements EncryptionService {
                         encryptedFile);
 
                 final CryptoOutputStream<?> encryptingStream
-                        = awsCrypto
+                        = awsCrypto()
                                 .createEncryptingStream(
-                                        masterKeyProvider(),
+                                        materialsManager,
                                        fileOutputStram)) {
 
+            // A caching materials manager only reuses data keys for messages
+            // of known size. Without one, the size is left open, so a file
+            // that grows while it is read still encrypts.
+            if (materialsManager instanceof CachingCryptoMaterialsManager)
+                encryptingStream.setMaxInputLength(
+                        fileInputStream
+                                .getChannel()
+                                .size());
+
             IOUtils.copy(
                     fileInputStream,
                     encryptingStream);
@@ -154,29 +752,399 @@ public final class KmsEncryptionService implements EncryptionService {
 
     /**
      * {@inheritDoc }
+     *
+     * <p>The value is encoded as UTF-8 and encrypted in memory. The encrypted
+     * value is the base64 encoded AWS Encryption SDK message, so it can be
+     * kept in a configuration map or an environment variable, and decrypted
+     * with {@link KmsDecryptionService#decryptValue(String)}.
      */
     @Override
     public String encryptValue(
             final String value) {
-        
-        throw new UnsupportedOperationException("Not supported yet.");
+
+        assertArgumentNotEmpty(
+                VALUE,
+                value);
+
+        CryptoMaterialsManager materialsManager
+                = materialsManager();
+
+        try {
+            return Base64
+                    .getEncoder()
+                    .encodeToString(
+                            awsCrypto()
+                                    .encryptData(
+                                            materialsManager,
+                                            value.getBytes(
+                                                    StandardCharsets.UTF_8))
+                                    .getResult());
+
+        } catch (RuntimeException exception) {
+            throw new EncryptionException(exception);
+        }
     }
 
+    /**
+     * {@inheritDoc }
+     *
+     * <p>At most the batch concurrency files are encrypted at a time, on the
+     * service's executor. Duplicate files are only encrypted once.
+     */
+    @Override
+    public EncryptionReport encryptAll(
+            final Collection<File> files) {
+
+        return encryptAllAsync(files)
+                .join();
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * <p>Files that already have the encrypted file suffix are skipped, so the
+     * directory can be encrypted again without encrypting the output of the
+     * last run.
+     */
+    @Override
+    public EncryptionReport encryptDirectory(
+            final Path directory,
+            final String glob) {
+
+        assertArgumentNotNull(
+                DIRECTORY,
+                directory);
+
+        assertArgumentNotEmpty(
+                GLOB,
+                glob);
+
+        if (!Files.isDirectory(directory))
+            throw new IllegalArgumentException(
+                    String.format(
+                            DIRECTORY_DOES_NOT_EXIST_PATTERN,
+                            directory.toAbsolutePath()));
+
+        PathMatcher matcher
+                = directory
+                        .getFileSystem()
+                        .getPathMatcher(
+                                GLOB_SYNTAX + glob);
+
+        List<File> files;
+
+        try (Stream<Path> paths
+                = Files.walk(directory)) {
+
+            files
+                    = paths
+                            .filter(Files::isRegularFile)
+                            .filter(path -> matcher.matches(
+                                    directory.relativize(path)))
+                            .filter(path -> !path.toString().endsWith(SUFFIX))
+                            .sorted()
+                            .map(Path::toFile)
+                            .collect(Collectors.toList());
+
+        } catch (IOException | UncheckedIOException exception) {
+            throw new EncryptionException(exception);
+        }
+
+        return encryptAll(files);
+    }
+
+    /**
+     * Encrypts a batch of files without blocking the caller. At most the
+     * batch concurrency files are encrypted at a time, on the service's
+     * executor, and each one starts as soon as an earlier one completes.
+     *
+     * @param files The files to encrypt.
+     * @return A {@link CompletableFuture} that completes with the
+     * {@link EncryptionReport} once every file has been encrypted or has
+     * failed. It never completes exceptionally.
+     */
+    public CompletableFuture<EncryptionReport> encryptAllAsync(
+            final Collection<File> files) {
+
+        assertArgumentNotNull(
+                FILES,
+                files);
+
+        final Map<String, File> filesByPath
+                = new LinkedHashMap<>();
+
+        for (File file : files) {
+            assertArgumentNotNull(
+                    FILE,
+                    file);
+
+            filesByPath.put(
+                    file.getAbsolutePath(),
+                    file);
+        }
+
+        final Executor batchExecutor
+                = this.executor;
+
+        final long start
+                = System.nanoTime();
+
+        return Batch.run(
+                filesByPath.keySet(),
+                batchConcurrency,
+                path -> CompletableFuture
+                        .supplyAsync(
+                                () -> encryptFile(
+                                        filesByPath.get(path)),
+                                batchExecutor))
+                .thenApply(
+                        result -> new EncryptionReport(
+                                result.values(),
+                                result.failures(),
+                                plaintextBytes(
+                                        result.values().keySet(),
+                                        filesByPath),
+                                Duration.ofNanos(
+                                        System.nanoTime() - start)));
+    }
+
+    private static long plaintextBytes(
+            final Collection<String> paths,
+            final Map<String, File> filesByPath) {
+
+        long bytes = 0;
+
+        for (String path : paths)
+            bytes += filesByPath.get(path).length();
+
+        return bytes;
+    }
+
+    private void encryptFile(
+            final File file,
+            final File encryptedFile,
+            final CryptoMaterialsManager materialsManager,
+            final FileIoPolicy policy) {
+
+        try (final FileChannel fileChannel
+                = FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.READ);
+
+                final FileChannel encryptedChannel
+                        = FileChannel.open(
+                                encryptedFile.toPath(),
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING);
+
+                final InputStream inputStream
+                        = FileChannels.newInputStream(
+                                fileChannel,
+                                policy);
+
+                final CryptoOutputStream<?> encryptingStream
+                        = awsCrypto()
+                                .createEncryptingStream(
+                                        materialsManager,
+                                        FileChannels.newOutputStream(
+                                                encryptedChannel,
+                                                policy))) {
+
+            if (materialsManager instanceof CachingCryptoMaterialsManager)
+                encryptingStream.setMaxInputLength(
+                        fileChannel.size());
+
+            FileChannels.copy(
+                    inputStream,
+                    encryptingStream,
+                    policy);
+
+        } catch (Exception exception) {
+            throw new EncryptionException(exception);
+        }
+    }
+
+    private AwsCrypto awsCrypto() {
+        return awsCrypto;
+    }
+
+    private static AwsCrypto awsCrypto(
+            final CryptoAlgorithm algorithmSuite,
+            final int frameSize) {
+
+        AwsCrypto awsCrypto
+                = new AwsCrypto();
+
+        // Without a suite, the materials manager chooses the default suite.
+        if (algorithmSuite != null)
+            awsCrypto.setEncryptionAlgorithm(
+                    algorithmSuite);
+
+        awsCrypto.setEncryptionFrameSize(
+                frameSize);
+
+        return awsCrypto;
+    }
+
+    private CryptoMaterialsManager materialsManager() {
+        CryptoMaterialsManager current
+                = this.materialsManager;
+
+        if (current != null)
+            return current;
+
+        MasterKeyProvider<?> resolved
+                = masterKeyProvider();
+
+        synchronized (this) {
+            if (this.materialsManager == null)
+                this.materialsManager
+                        = materialsManager(
+                                resolved,
+                                dataKeyCachePolicy,
+                                dataKeyCache);
+
+            return this.materialsManager;
+        }
+    }
+
+    private static CryptoMaterialsManager materialsManager(
+            final MasterKeyProvider<?> masterKeyProvider,
+            final DataKeyCachePolicy policy,
+            final CountingCryptoMaterialsCache cache) {
+
+        if (policy == null)
+            return new DefaultCryptoMaterialsManager(
+                    masterKeyProvider);
+
+        return CachingCryptoMaterialsManager
+                .newBuilder()
+                .withMasterKeyProvider(
+                        masterKeyProvider)
+                .withCache(
+                        cache)
+                .withMaxAge(
+                        policy.maxAgeMillis(),
+                        TimeUnit.MILLISECONDS)
+                .withMessageUseLimit(
+                        policy.messageUseLimit())
+                .withByteUseLimit(
+                        policy.byteUseLimit())
+                .build();
+    }
+
+    /**
+     * @return The resolved master key provider. If the keys are not being
+     * resolved yet, they are resolved in the calling thread, so a caller on
+     * the executor never waits for a resolution queued behind it.
+     */
     private MasterKeyProvider<?> masterKeyProvider() {
+        Resolution resolution
+                = resolution();
+
+        resolution.run();
+
+        try {
+            return resolution
+                    .future()
+                    .join();
+
+        } catch (CompletionException exception) {
+            throw new EncryptionException(
+                    SingleFlight.unwrap(
+                            exception));
+        }
+    }
+
+    /**
+     * @return The current resolution, or a new one if there is none yet or
+     * the last one failed. It is not started.
+     */
+    private Resolution resolution() {
+        Resolution current
+                = masterKeyProvider.get();
+
+        if (current != null
+                && !current.future().isCompletedExceptionally())
+            return current;
+
+        Resolution next
+                = new Resolution(
+                        masterKeyProviderFactory);
+
+        if (!masterKeyProvider.compareAndSet(current, next))
+            return resolution();
+
+        return next;
+    }
+
+    /**
+     * Builds a master key provider that encrypts each data key under the
+     * alias in every region. Each regional provider has its own KMS client.
+     *
+     * @param alias The alias that exists in all the regions.
+     * @param account The AWS account ID that owns the alias.
+     * @param concurrencyLimiter The {@link AdaptiveConcurrencyLimiter} of the
+     * KMS calls.
+     * @param regions The regions where the alias exists.
+     * @return The {@link MasterKeyProvider}.
+     */
+    static MasterKeyProvider<?> kmsMasterKeyProvider(
+            final String alias,
+            final String account,
+            final AdaptiveConcurrencyLimiter concurrencyLimiter,
+            final String... regions) {
 
-        List<KmsMasterKeyProvider> kmsMasterKeyProviders 
+        List<String> keyArns
                 = new LinkedList<>();
 
-        for (String region : regions()) { 
+        for (String region : regions) {
+            keyArns.add(
+                    String.format(
+                            ALIAS_ARN_FORMAT,
+                            region,
+                            account,
+                            alias));
+        }
+
+        return kmsMasterKeyProvider(
+                keyArns,
+                concurrencyLimiter);
+    }
+
+    /**
+     * Builds a master key provider that encrypts each data key under every
+     * key ARN. Each ARN has its own provider. They share one KMS client per
+     * region, for the region named by the ARN.
+     *
+     * @param keyArns The key or alias ARNs.
+     * @param concurrencyLimiter The {@link AdaptiveConcurrencyLimiter} of the
+     * KMS calls.
+     * @return The {@link MasterKeyProvider}.
+     */
+    static MasterKeyProvider<?> kmsMasterKeyProvider(
+            final List<String> keyArns,
+            final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+
+        KmsClientFactory kmsClientFactory
+                = new KmsClientFactory(
+                        new ClientConfiguration(),
+                        new DefaultAWSCredentialsProviderChain(),
+                        null,
+                        concurrencyLimiter);
+
+        List<KmsMasterKeyProvider> kmsMasterKeyProviders
+                = new LinkedList<>();
+
+        for (String keyArn : keyArns) {
             kmsMasterKeyProviders.add(
                     KmsMasterKeyProvider
                             .builder() 
                             .withKeysForEncryption(
-                                    String.format(
-                                            ALIAS_ARN_FORMAT, 
-                                            region,
-                                            account(),
-                                            alias()))
+                                    keyArn)
+                            .withCustomClientFactory(
+                                    kmsClientFactory)
                             .build());
         } 
 
@@ -185,18 +1153,15 @@ public final class KmsEncryptionService implements EncryptionService {
                         kmsMasterKeyProviders);
     }
 
-    private void setAlias(
+    private static void validateAlias(
             final String alias) {
 
         assertArgumentNotEmpty(
                 ALIAS,
                 alias);
-
-        this.alias 
-                = alias;
     }
 
-    private void setRegions(
+    private static void validateRegions(
             final String... regions) {
 
         assertArgumentNotEmpty(
@@ -205,12 +1170,30 @@ public final class KmsEncryptionService implements EncryptionService {
 
         for (String region : regions)
             validateRegion(region);
+    }
+
+    private static void validateKeyArn(
+            final String keyArn) {
+
+        assertArgumentNotEmpty(
+                KEY_ARN,
+                keyArn);
 
-        this.regions 
-                = regions;
+        Matcher matcher
+                = KEY_ARN_PATTERN.matcher(
+                        keyArn);
+
+        if (!matcher.matches())
+            throw new IllegalArgumentException(
+                    String.format(
+                            INVALID_KEY_ARN_PATTERN,
+                            keyArn));
+
+        validateRegion(
+                matcher.group(1));
     }
 
-    private void validateRegion(
+    private static void validateRegion(
             final String region) {
 
         assertArgumentNotNull(
@@ -229,7 +1212,7 @@ public final class KmsEncryptionService implements EncryptionService {
         }
     }
 
-    private void setAccountId() {
+    private static String callerAccountId() {
         AWSSecurityTokenService stsService 
                 = AWSSecurityTokenServiceClientBuilder
                         .standard()
@@ -242,20 +1225,61 @@ public final class KmsEncryptionService implements EncryptionService {
                         .getCallerIdentity(
                                 new GetCallerIdentityRequest());
 
-        this.account 
-                = callerIdentity
-                        .getAccount();
+        return callerIdentity
+                .getAccount();
     }
 
-    private String alias() {
-        return alias;
-    }
+    /**
+     * One attempt to resolve the master key provider. It runs at most once,
+     * in whichever thread gets to it first, and every other caller waits for
+     * that thread.
+     */
+    private static final class Resolution {
 
-    private String[] regions() {
-        return regions;
-    }
+        private final Supplier<MasterKeyProvider<?>> factory;
+        private final CompletableFuture<MasterKeyProvider<?>> future;
+        private final AtomicBoolean started;
+
+        Resolution(
+                final Supplier<MasterKeyProvider<?>> factory) {
+
+            this.factory = factory;
+            this.future = new CompletableFuture<>();
+            this.started = new AtomicBoolean();
+        }
 
-    private String account() {
-        return account;
+        Resolution(
+                final MasterKeyProvider<?> masterKeyProvider) {
+
+            this.factory = () -> masterKeyProvider;
+            this.future = CompletableFuture.completedFuture(masterKeyProvider);
+            this.started = new AtomicBoolean(true);
+        }
+
+        CompletableFuture<MasterKeyProvider<?>> future() {
+            return future;
+        }
+
+        boolean isStarted() {
+            return started.get();
+        }
+
+        /**
+         * Resolves the master key provider, unless another thread already
+         * started to.
+         */
+        void run() {
+            if (!started.compareAndSet(false, true))
+                return;
+
+            try {
+                future.complete(
+                        factory.get());
+
+            } catch (Throwable exception) {
+                future.completeExceptionally(
+                        exception);
+            }
+        }
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNegative;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.MINIMUM_SIZE;
+import static com.eoniantech.secretslocker.aws.Constants.PARALLELISM;
+import static com.eoniantech.secretslocker.aws.Constants.TASK_SIZE;
+
+/**
+ * Immutable settings for decrypting large framed files with their frames
+ * decrypted in parallel.
+ *
+ * <p>Files smaller than the minimum size are decrypted one frame after
+ * another, as are unframed messages, since the cost of splitting them up is
+ * larger than the gain. Each task decrypts about task size bytes of
+ * consecutive frames, so frames much smaller than the task size are not
+ * scheduled one at a time.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class ParallelDecryptionPolicy {
+
+    /**
+     * The default minimum size of a file decrypted in parallel, 8 MiB.
+     */
+    public static final long DEFAULT_MINIMUM_SIZE = 1 << 23;
+
+    /**
+     * The default number of ciphertext bytes decrypted by a single task,
+     * 1 MiB.
+     */
+    public static final int DEFAULT_TASK_SIZE = 1 << 20;
+
+    private final int parallelism;
+    private final long minimumSize;
+    private final int taskSize;
+
+    /**
+     * Constructor. Decrypts files of at least {@link #DEFAULT_MINIMUM_SIZE}
+     * with one thread per available processor.
+     */
+    public ParallelDecryptionPolicy() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor. Decrypts files of at least {@link #DEFAULT_MINIMUM_SIZE}.
+     *
+     * @param parallelism The number of threads that decrypt frames.
+     */
+    public ParallelDecryptionPolicy(final int parallelism) {
+        this(parallelism,
+                DEFAULT_MINIMUM_SIZE,
+                DEFAULT_TASK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism The number of threads that decrypt frames.
+     * @param minimumSize The minimum size in bytes of an encrypted file
+     * decrypted in parallel. Zero decrypts every framed file in parallel.
+     * @param taskSize The number of ciphertext bytes decrypted by a single
+     * task. A task always decrypts at least one frame.
+     */
+    public ParallelDecryptionPolicy(
+            final int parallelism,
+            final long minimumSize,
+            final int taskSize) {
+
+        assertArgumentPositive(
+                PARALLELISM,
+                parallelism);
+
+        assertArgumentNotNegative(
+                MINIMUM_SIZE,
+                minimumSize);
+
+        assertArgumentPositive(
+                TASK_SIZE,
+                taskSize);
+
+        this.parallelism = parallelism;
+        this.minimumSize = minimumSize;
+        this.taskSize = taskSize;
+    }
+
+    /**
+     * @return The number of threads that decrypt frames.
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return The minimum size in bytes of an encrypted file decrypted in
+     * parallel.
+     */
+    public long minimumSize() {
+        return minimumSize;
+    }
+
+    /**
+     * @return The number of ciphertext bytes decrypted by a single task.
+     */
+    public int taskSize() {
+        return taskSize;
+    }
+}
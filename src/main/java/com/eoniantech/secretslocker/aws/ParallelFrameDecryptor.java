@@ -0,0 +1,1023 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.AwsCrypto;
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.CryptoMaterialsManager;
+import com.amazonaws.encryptionsdk.exception.AwsCryptoException;
+import com.amazonaws.encryptionsdk.exception.BadCiphertextException;
+import com.amazonaws.encryptionsdk.internal.TrailingSignatureAlgorithm;
+import com.amazonaws.encryptionsdk.model.CiphertextHeaders;
+import com.amazonaws.encryptionsdk.model.CiphertextType;
+import com.amazonaws.encryptionsdk.model.ContentType;
+import com.amazonaws.encryptionsdk.model.DecryptionMaterials;
+import com.amazonaws.encryptionsdk.model.DecryptionMaterialsRequest;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import static com.amazonaws.encryptionsdk.internal.Constants.ENDFRAME_SEQUENCE_NUMBER;
+import static com.amazonaws.encryptionsdk.internal.Constants.FINAL_FRAME_STRING_ID;
+import static com.amazonaws.encryptionsdk.internal.Constants.FRAME_STRING_ID;
+
+/**
+ * Decrypts framed AWS Encryption SDK messages with their frames decrypted in
+ * parallel on a {@link ForkJoinPool}.
+ *
+ * <p>The header is parsed and the data key decrypted once, through the given
+ * {@link CryptoMaterialsManager}, and the header is authenticated before any
+ * frame is decrypted. Every frame of a message has the same length, except the
+ * final frame, so the position of each frame follows from the header. Each
+ * task reads a run of consecutive frames with a single positional read,
+ * checks their sequence numbers, authenticates and decrypts them with their
+ * own cipher, and writes the plaintext at its position in the output, so the
+ * order of the plaintext does not depend on the order in which tasks finish.
+ *
+ * <p>The final frame is located before the data key is decrypted, and the
+ * message must end exactly after it, or after the trailing signature for
+ * algorithm suites with one. The signature is verified over the whole message
+ * by a task of its own, in parallel with the frames. Nothing written to the
+ * output may be used unless decryption returns normally.
+ *
+ * <p>This class re-implements the SDK's message parsing, frame AAD and
+ * trailing signature verification, and uses SDK internals to do so, so it is
+ * pinned to {@link #SUPPORTED_SDK_VERSION}. With any other SDK version on the
+ * class path, or without the Bouncy Castle provider the SDK's signature keys
+ * need, nothing is decrypted here, and callers fall back to the SDK's own
+ * sequential decryption. Check the SDK's message format before moving the
+ * pin along with the dependency in pom.xml.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class ParallelFrameDecryptor {
+
+    /**
+     * The AWS Encryption SDK version this class was written and tested
+     * against.
+     */
+    static final String SUPPORTED_SDK_VERSION = "1.3.2";
+
+    private static final String SDK_POM_PROPERTIES
+            = "/META-INF/maven/com.amazonaws/aws-encryption-sdk-java/pom.properties";
+
+    private static final String VERSION_PROPERTY = "version";
+
+    private static final byte VERSION = 1;
+    private static final int HEADER_READ_SIZE = 4096;
+    private static final int INT_LENGTH = Integer.BYTES;
+    private static final int SIGNATURE_LENGTH_LENGTH = Short.BYTES;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String SIGNATURE_PROVIDER = "BC";
+
+    private static final byte[] FRAME_ID
+            = FRAME_STRING_ID.getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] FINAL_FRAME_ID
+            = FINAL_FRAME_STRING_ID.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Writes plaintext at a position in the output.
+     */
+    @FunctionalInterface
+    private interface Sink {
+        void write(
+                long position,
+                byte[] plaintext,
+                int length) throws IOException;
+    }
+
+    /**
+     * SDK version holder.
+     */
+    private static class SdkVersionHolder {
+        public static final String VERSION
+                = sdkVersion();
+    }
+
+    private final ParallelDecryptionPolicy policy;
+    private final ForkJoinPool pool;
+    private int decryptions;
+    private boolean shutdown;
+
+    /**
+     * Constructor.
+     *
+     * @param policy The {@link ParallelDecryptionPolicy}.
+     */
+    ParallelFrameDecryptor(
+            final ParallelDecryptionPolicy policy) {
+
+        this.policy = policy;
+        this.pool = new ForkJoinPool(policy.parallelism());
+    }
+
+    /**
+     * @return The {@link ParallelDecryptionPolicy}.
+     */
+    ParallelDecryptionPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * @return {@code true} if the AWS Encryption SDK on the class path is the
+     * {@link #SUPPORTED_SDK_VERSION}, otherwise {@code false}.
+     */
+    static boolean isSupported() {
+        return SUPPORTED_SDK_VERSION.equals(
+                SdkVersionHolder.VERSION);
+    }
+
+    /**
+     * Stops the pool once the decryptions already under way have finished.
+     * Until then they keep using it. Later decryptions are rejected.
+     */
+    synchronized void shutdown() {
+        this.shutdown = true;
+
+        if (decryptions == 0)
+            pool.shutdown();
+    }
+
+    private synchronized void acquire() {
+        if (shutdown)
+            throw new RejectedExecutionException(
+                    "parallel decryption has been shut down");
+
+        this.decryptions++;
+    }
+
+    private synchronized void release() {
+        this.decryptions--;
+
+        if (shutdown && decryptions == 0)
+            pool.shutdown();
+    }
+
+    /**
+     * Decrypts a message from one file to another.
+     *
+     * @param encryptedChannel The encrypted file, read with positional reads.
+     * @param decryptedChannel The decrypted file, written with positional
+     * writes.
+     * @param materialsManager Supplies the data key.
+     * @return {@code true} if the message was decrypted, otherwise
+     * {@code false} if it is not framed or not supported, and nothing was
+     * decrypted.
+     * @throws IOException If the files can not be read or written.
+     * @throws java.util.concurrent.RejectedExecutionException If the pool has
+     * been shut down, before anything was decrypted.
+     */
+    boolean decrypt(
+            final FileChannel encryptedChannel,
+            final FileChannel decryptedChannel,
+            final CryptoMaterialsManager materialsManager) throws IOException {
+
+        if (!isSupported())
+            return false;
+
+        Message message
+                = Message.parse(
+                        encryptedChannel);
+
+        if (!isSupported(message))
+            return false;
+
+        decrypt(
+                message,
+                encryptedChannel,
+                materialsManager,
+                (position, plaintext, length) -> write(
+                        decryptedChannel,
+                        ByteBuffer.wrap(plaintext, 0, length),
+                        position));
+
+        return true;
+    }
+
+    /**
+     * Decrypts a message from a file into memory.
+     *
+     * @param encryptedChannel The encrypted file, read with positional reads.
+     * @param materialsManager Supplies the data key.
+     * @return The plaintext, or {@code null} if the message is not framed or
+     * not supported, and nothing was decrypted.
+     * @throws IOException If the file can not be read, or the plaintext is too
+     * large for an array.
+     * @throws java.util.concurrent.RejectedExecutionException If the pool has
+     * been shut down, before anything was decrypted.
+     */
+    byte[] decryptToBytes(
+            final FileChannel encryptedChannel,
+            final CryptoMaterialsManager materialsManager) throws IOException {
+
+        if (!isSupported())
+            return null;
+
+        Message message
+                = Message.parse(
+                        encryptedChannel);
+
+        if (!isSupported(message))
+            return null;
+
+        if (message.plaintextLength() > MAX_ARRAY_LENGTH)
+            throw new IOException(
+                    "plaintext is too large for an array: "
+                            + message.plaintextLength());
+
+        final byte[] result
+                = new byte[(int) message.plaintextLength()];
+
+        decrypt(
+                message,
+                encryptedChannel,
+                materialsManager,
+                (position, plaintext, length) -> System.arraycopy(
+                        plaintext,
+                        0,
+                        result,
+                        (int) position,
+                        length));
+
+        return result;
+    }
+
+    private void decrypt(
+            final Message message,
+            final FileChannel encryptedChannel,
+            final CryptoMaterialsManager materialsManager,
+            final Sink sink) throws IOException {
+
+        acquire();
+
+        try {
+            decryptMessage(
+                    message,
+                    encryptedChannel,
+                    materialsManager,
+                    sink);
+
+        } finally {
+            release();
+        }
+    }
+
+    private void decryptMessage(
+            final Message message,
+            final FileChannel encryptedChannel,
+            final CryptoMaterialsManager materialsManager,
+            final Sink sink) throws IOException {
+
+        CryptoAlgorithm algorithm
+                = message.headers.getCryptoAlgoId();
+
+        DecryptionMaterials materials
+                = materialsManager
+                        .decryptMaterials(
+                                DecryptionMaterialsRequest
+                                        .fromCiphertextHeaders(
+                                                message.headers));
+
+        final SecretKey key;
+
+        try {
+            key = algorithm
+                    .getEncryptionKeyFromDataKey(
+                            materials.getDataKey().getKey(),
+                            message.headers);
+
+        } catch (InvalidKeyException exception) {
+            throw new AwsCryptoException(exception);
+        }
+
+        PublicKey signatureKey
+                = materials.getTrailingSignatureKey();
+
+        if (message.signed() && signatureKey == null)
+            throw new AwsCryptoException(
+                    "missing trailing signature key");
+
+        verifyHeader(
+                message,
+                key);
+
+        ForkJoinTask<?> signatureTask
+                = message.signed()
+                        ? pool.submit(() -> verifySignature(
+                                message,
+                                encryptedChannel,
+                                signatureKey))
+                        : null;
+
+        try {
+            pool.invoke(
+                    new FrameTask(
+                            message,
+                            encryptedChannel,
+                            key,
+                            sink,
+                            framesPerTask(message),
+                            1,
+                            message.finalFrameNumber() + 1));
+
+            if (signatureTask != null)
+                signatureTask.join();
+
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+
+        } finally {
+            if (signatureTask != null)
+                signatureTask.cancel(false);
+        }
+    }
+
+    /**
+     * @return {@code true} if the message is framed, and its trailing
+     * signature, if any, can be verified, otherwise {@code false}.
+     */
+    private static boolean isSupported(
+            final Message message) {
+
+        return message != null
+                && (!message.signed()
+                        || Security.getProvider(SIGNATURE_PROVIDER) != null);
+    }
+
+    /**
+     * @return The version of the AWS Encryption SDK on the class path, or
+     * {@code null} if it is not known.
+     */
+    private static String sdkVersion() {
+        try (final InputStream inputStream
+                = AwsCrypto.class.getResourceAsStream(
+                        SDK_POM_PROPERTIES)) {
+
+            if (inputStream == null)
+                return null;
+
+            Properties properties
+                    = new Properties();
+
+            properties.load(
+                    inputStream);
+
+            return properties.getProperty(
+                    VERSION_PROPERTY);
+
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    private long framesPerTask(
+            final Message message) {
+
+        return Math.max(
+                1,
+                policy.taskSize() / message.regularFrameLength());
+    }
+
+    private static void verifyHeader(
+            final Message message,
+            final SecretKey key) {
+
+        CiphertextHeaders headers
+                = message.headers;
+
+        try {
+            Cipher cipher
+                    = Cipher.getInstance(
+                            CIPHER_TRANSFORMATION);
+
+            cipher.init(
+                    Cipher.DECRYPT_MODE,
+                    key,
+                    new GCMParameterSpec(
+                            message.tagLength * Byte.SIZE,
+                            headers.getHeaderNonce()));
+
+            cipher.updateAAD(
+                    headers.serializeAuthenticatedFields());
+
+            cipher.doFinal(
+                    headers.getHeaderTag());
+
+        } catch (AEADBadTagException exception) {
+            throw new BadCiphertextException(
+                    "Header integrity check failed",
+                    exception);
+
+        } catch (GeneralSecurityException exception) {
+            throw new AwsCryptoException(exception);
+        }
+    }
+
+    private void verifySignature(
+            final Message message,
+            final FileChannel encryptedChannel,
+            final PublicKey signatureKey) {
+
+        try {
+            Signature signature
+                    = Signature.getInstance(
+                            TrailingSignatureAlgorithm
+                                    .forCryptoAlgorithm(
+                                            message.headers.getCryptoAlgoId())
+                                    .getHashAndSignAlgorithm(),
+                            SIGNATURE_PROVIDER);
+
+            signature.initVerify(
+                    signatureKey);
+
+            ByteBuffer buffer
+                    = ByteBuffer.allocate(
+                            (int) Math.min(
+                                    policy.taskSize(),
+                                    message.signaturePosition));
+
+            for (long position = 0; position < message.signaturePosition; ) {
+                buffer.clear();
+                buffer.limit(
+                        (int) Math.min(
+                                buffer.capacity(),
+                                message.signaturePosition - position));
+
+                read(
+                        encryptedChannel,
+                        buffer,
+                        position);
+
+                signature.update(
+                        buffer.array(),
+                        0,
+                        buffer.limit());
+
+                position += buffer.limit();
+            }
+
+            if (!signature.verify(message.signature))
+                throw new BadCiphertextException(
+                        "Bad trailing signature");
+
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+
+        } catch (SignatureException exception) {
+            throw new BadCiphertextException(
+                    "Bad trailing signature",
+                    exception);
+
+        } catch (GeneralSecurityException exception) {
+            throw new AwsCryptoException(exception);
+        }
+    }
+
+    private static void read(
+            final FileChannel channel,
+            final ByteBuffer buffer,
+            final long position) throws IOException {
+
+        long offset = position;
+
+        while (buffer.hasRemaining()) {
+            int read = channel.read(
+                    buffer,
+                    offset);
+
+            if (read < 0)
+                throw new EOFException();
+
+            offset += read;
+        }
+    }
+
+    private static void write(
+            final FileChannel channel,
+            final ByteBuffer buffer,
+            final long position) throws IOException {
+
+        long offset = position;
+
+        while (buffer.hasRemaining())
+            offset += channel.write(
+                    buffer,
+                    offset);
+    }
+
+    /**
+     * Decrypts the frames from a frame number, inclusive, to a frame number,
+     * exclusive. Splits the range in two until it holds no more than the
+     * frames of a single task.
+     */
+    private static final class FrameTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Message message;
+        private final transient FileChannel encryptedChannel;
+        private final transient SecretKey key;
+        private final transient Sink sink;
+        private final long framesPerTask;
+        private final long from;
+        private final long to;
+
+        FrameTask(
+                final Message message,
+                final FileChannel encryptedChannel,
+                final SecretKey key,
+                final Sink sink,
+                final long framesPerTask,
+                final long from,
+                final long to) {
+
+            this.message = message;
+            this.encryptedChannel = encryptedChannel;
+            this.key = key;
+            this.sink = sink;
+            this.framesPerTask = framesPerTask;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > framesPerTask) {
+                long middle = from + (to - from) / 2;
+
+                invokeAll(
+                        new FrameTask(
+                                message,
+                                encryptedChannel,
+                                key,
+                                sink,
+                                framesPerTask,
+                                from,
+                                middle),
+                        new FrameTask(
+                                message,
+                                encryptedChannel,
+                                key,
+                                sink,
+                                framesPerTask,
+                                middle,
+                                to));
+
+                return;
+            }
+
+            try {
+                decryptFrames();
+
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+
+            } catch (AEADBadTagException exception) {
+                throw new BadCiphertextException(
+                        "Tag mismatch",
+                        exception);
+
+            } catch (GeneralSecurityException exception) {
+                throw new AwsCryptoException(exception);
+            }
+        }
+
+        private void decryptFrames()
+                throws IOException, GeneralSecurityException {
+
+            long start = message.frameStart(from);
+
+            ByteBuffer ciphertext
+                    = ByteBuffer.allocate(
+                            (int) (message.frameEnd(to - 1) - start));
+
+            read(
+                    encryptedChannel,
+                    ciphertext,
+                    start);
+
+            ciphertext.flip();
+
+            byte[] plaintext
+                    = new byte[(int) ((to - from) * message.frameLength)];
+
+            Cipher cipher
+                    = Cipher.getInstance(
+                            CIPHER_TRANSFORMATION);
+
+            int plaintextLength = 0;
+
+            for (long frameNumber = from; frameNumber < to; frameNumber++) {
+                boolean finalFrame
+                        = frameNumber == message.finalFrameNumber();
+
+                if (finalFrame
+                        && ciphertext.getInt() != ENDFRAME_SEQUENCE_NUMBER)
+                    throw new BadCiphertextException(
+                            "Final frame not found");
+
+                if (ciphertext.getInt() != (int) frameNumber)
+                    throw new BadCiphertextException(
+                            "Invalid frame sequence number");
+
+                int nonceOffset = ciphertext.position();
+                ciphertext.position(nonceOffset + message.nonceLength);
+
+                int contentLength
+                        = finalFrame
+                                ? ciphertext.getInt()
+                                : message.frameLength;
+
+                cipher.init(
+                        Cipher.DECRYPT_MODE,
+                        key,
+                        new GCMParameterSpec(
+                                message.tagLength * Byte.SIZE,
+                                ciphertext.array(),
+                                nonceOffset,
+                                message.nonceLength));
+
+                cipher.updateAAD(
+                        message.contentAad(
+                                frameNumber,
+                                finalFrame,
+                                contentLength));
+
+                plaintextLength += cipher.doFinal(
+                        ciphertext.array(),
+                        ciphertext.position(),
+                        contentLength + message.tagLength,
+                        plaintext,
+                        plaintextLength);
+
+                ciphertext.position(
+                        ciphertext.position()
+                                + contentLength
+                                + message.tagLength);
+            }
+
+            sink.write(
+                    (from - 1) * message.frameLength,
+                    plaintext,
+                    plaintextLength);
+        }
+    }
+
+    /**
+     * The parsed header of a framed message and the layout of its frames.
+     */
+    private static final class Message {
+
+        private final CiphertextHeaders headers;
+        private final int headerLength;
+        private final int frameLength;
+        private final int nonceLength;
+        private final int tagLength;
+        private final long regularFrames;
+        private final int finalContentLength;
+        private final long signaturePosition;
+        private final byte[] signature;
+
+        private Message(
+                final CiphertextHeaders headers,
+                final int headerLength,
+                final long regularFrames,
+                final int finalContentLength,
+                final long signaturePosition,
+                final byte[] signature) {
+
+            CryptoAlgorithm algorithm
+                    = headers.getCryptoAlgoId();
+
+            this.headers = headers;
+            this.headerLength = headerLength;
+            this.frameLength = headers.getFrameLength();
+            this.nonceLength = algorithm.getNonceLen();
+            this.tagLength = algorithm.getTagLen();
+            this.regularFrames = regularFrames;
+            this.finalContentLength = finalContentLength;
+            this.signaturePosition = signaturePosition;
+            this.signature = signature;
+        }
+
+        /**
+         * Parses the header of a message, and locates its final frame.
+         *
+         * @return The message, or {@code null} if it is not framed.
+         */
+        static Message parse(
+                final FileChannel channel) throws IOException {
+
+            long size = channel.size();
+
+            int length
+                    = (int) Math.min(
+                            size,
+                            HEADER_READ_SIZE);
+
+            while (true) {
+                ByteBuffer bytes
+                        = ByteBuffer.allocate(
+                                length);
+
+                read(
+                        channel,
+                        bytes,
+                        0);
+
+                CiphertextHeaders headers
+                        = new CiphertextHeaders();
+
+                int headerLength
+                        = headers.deserialize(
+                                bytes.array(),
+                                0);
+
+                if (headers.isComplete())
+                    return (headers.getContentType() == ContentType.FRAME)
+                            ? locateFinalFrame(
+                                    channel,
+                                    size,
+                                    validate(headers),
+                                    headerLength)
+                            : null;
+
+                if (length == size)
+                    throw new BadCiphertextException(
+                            "Incomplete header");
+
+                length
+                        = (int) Math.min(
+                                size,
+                                2L * length);
+            }
+        }
+
+        private static CiphertextHeaders validate(
+                final CiphertextHeaders headers) {
+
+            if (headers.getVersion() != VERSION)
+                throw new BadCiphertextException(
+                        "Invalid version in ciphertext.");
+
+            if (headers.getType()
+                    != CiphertextType.CUSTOMER_AUTHENTICATED_ENCRYPTED_DATA)
+                throw new BadCiphertextException(
+                        "Invalid type in ciphertext.");
+
+            if (headers.getFrameLength() <= 0)
+                throw new BadCiphertextException(
+                        "Invalid frame length in ciphertext.");
+
+            return headers;
+        }
+
+        /**
+         * Finds the number of regular frames. Only the final frame starts with
+         * the end frame marker where a regular frame would start, and the
+         * message must end exactly after the final frame and any signature.
+         * The lengths of the final frame content and of the signature bound
+         * the number of places to look.
+         */
+        private static Message locateFinalFrame(
+                final FileChannel channel,
+                final long size,
+                final CiphertextHeaders headers,
+                final int headerLength) throws IOException {
+
+            CryptoAlgorithm algorithm
+                    = headers.getCryptoAlgoId();
+
+            boolean signed
+                    = algorithm.getTrailingSignatureLength() > 0;
+
+            int frameLength = headers.getFrameLength();
+            int nonceLength = algorithm.getNonceLen();
+            int tagLength = algorithm.getTagLen();
+
+            long regularFrameLength
+                    = INT_LENGTH
+                            + nonceLength
+                            + frameLength
+                            + tagLength;
+
+            int finalFrameFields
+                    = INT_LENGTH
+                            + INT_LENGTH
+                            + nonceLength
+                            + INT_LENGTH;
+
+            long trailerLength
+                    = signed
+                            ? SIGNATURE_LENGTH_LENGTH
+                                    + algorithm.getTrailingSignatureLength()
+                            : 0;
+
+            long contentSize = size - headerLength;
+            long smallestFinalFrame = finalFrameFields + tagLength;
+
+            // The fewest regular frames that leave no more than a full final
+            // frame and the trailer, rounded up.
+            long first
+                    = Math.max(
+                            0,
+                            (contentSize
+                                    - smallestFinalFrame
+                                    - frameLength
+                                    - trailerLength
+                                    + regularFrameLength
+                                    - 1)
+                                    / regularFrameLength);
+
+            long last
+                    = (contentSize - smallestFinalFrame)
+                            / regularFrameLength;
+
+            ByteBuffer fields
+                    = ByteBuffer.allocate(
+                            finalFrameFields);
+
+            ByteBuffer signatureLength
+                    = ByteBuffer.allocate(
+                            SIGNATURE_LENGTH_LENGTH);
+
+            for (long frames = first;
+                    frames <= last && contentSize >= smallestFinalFrame;
+                    frames++) {
+
+                long position
+                        = headerLength
+                                + frames * regularFrameLength;
+
+                fields.clear();
+
+                read(
+                        channel,
+                        fields,
+                        position);
+
+                fields.flip();
+
+                if (fields.getInt() != ENDFRAME_SEQUENCE_NUMBER)
+                    continue;
+
+                fields.position(
+                        fields.position()
+                                + INT_LENGTH
+                                + nonceLength);
+
+                long contentLength
+                        = fields.getInt() & 0xFFFFFFFFL;
+
+                if (contentLength > frameLength)
+                    continue;
+
+                long end
+                        = position
+                                + smallestFinalFrame
+                                + contentLength;
+
+                if (!signed) {
+                    if (end == size)
+                        return new Message(
+                                headers,
+                                headerLength,
+                                frames,
+                                (int) contentLength,
+                                end,
+                                null);
+
+                    continue;
+                }
+
+                if (end + SIGNATURE_LENGTH_LENGTH > size)
+                    continue;
+
+                signatureLength.clear();
+
+                read(
+                        channel,
+                        signatureLength,
+                        end);
+
+                signatureLength.flip();
+
+                int length
+                        = signatureLength.getShort() & 0xFFFF;
+
+                if (end + SIGNATURE_LENGTH_LENGTH + length != size)
+                    continue;
+
+                ByteBuffer signature
+                        = ByteBuffer.allocate(
+                                length);
+
+                read(
+                        channel,
+                        signature,
+                        end + SIGNATURE_LENGTH_LENGTH);
+
+                return new Message(
+                        headers,
+                        headerLength,
+                        frames,
+                        (int) contentLength,
+                        end,
+                        signature.array());
+            }
+
+            throw new BadCiphertextException(
+                    "Final frame not found");
+        }
+
+        boolean signed() {
+            return signature != null;
+        }
+
+        long regularFrameLength() {
+            return INT_LENGTH + nonceLength + frameLength + tagLength;
+        }
+
+        long finalFrameNumber() {
+            return regularFrames + 1;
+        }
+
+        long plaintextLength() {
+            return regularFrames * frameLength + finalContentLength;
+        }
+
+        long frameStart(
+                final long frameNumber) {
+
+            return headerLength + (frameNumber - 1) * regularFrameLength();
+        }
+
+        long frameEnd(
+                final long frameNumber) {
+
+            return (frameNumber == finalFrameNumber())
+                    ? signaturePosition
+                    : frameStart(frameNumber) + regularFrameLength();
+        }
+
+        byte[] contentAad(
+                final long frameNumber,
+                final boolean finalFrame,
+                final int contentLength) {
+
+            byte[] messageId
+                    = headers.getMessageId();
+
+            byte[] frameId
+                    = finalFrame
+                            ? FINAL_FRAME_ID
+                            : FRAME_ID;
+
+            return ByteBuffer
+                    .allocate(
+                            messageId.length
+                                    + frameId.length
+                                    + Integer.BYTES
+                                    + Long.BYTES)
+                    .put(messageId)
+                    .put(frameId)
+                    .putInt((int) frameNumber)
+                    .putLong(contentLength)
+                    .array();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.REFRESH_WINDOW;
+import static com.eoniantech.secretslocker.aws.Constants.REFRESH_WINDOW_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.SCHEDULER_THREADS;
+
+/**
+ * Immutable settings for refreshing cached secrets ahead of their expiry. A
+ * cached secret that is read within the refresh window before it expires is
+ * decrypted again in the background, on a dedicated scheduler, while the
+ * cached value continues to be served. The refresh window should be shorter
+ * than the cache's time to live.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @see AbtractFileSystemSecretsLocker#enableRefreshAhead(RefreshPolicy)
+ */
+public final class RefreshPolicy {
+
+    private final long refreshWindowNanos;
+    private final int schedulerThreads;
+
+    /**
+     * Constructor.
+     *
+     * @param refreshWindow The time before expiry in which a read refreshes
+     * the secret.
+     * @param refreshWindowUnit The {@link TimeUnit} of the refreshWindow.
+     * @param schedulerThreads The number of threads that refresh secrets.
+     */
+    public RefreshPolicy(
+            final long refreshWindow,
+            final TimeUnit refreshWindowUnit,
+            final int schedulerThreads) {
+
+        assertArgumentNotNull(
+                REFRESH_WINDOW_UNIT,
+                refreshWindowUnit);
+
+        assertArgumentPositive(
+                REFRESH_WINDOW,
+                refreshWindowUnit.toNanos(refreshWindow));
+
+        assertArgumentPositive(
+                SCHEDULER_THREADS,
+                schedulerThreads);
+
+        this.refreshWindowNanos = refreshWindowUnit.toNanos(refreshWindow);
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    /**
+     * @return The time before expiry in which a read refreshes the secret in
+     * nanoseconds.
+     */
+    public long refreshWindowNanos() {
+        return refreshWindowNanos;
+    }
+
+    /**
+     * @return The number of threads that refresh secrets.
+     */
+    public int schedulerThreads() {
+        return schedulerThreads;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.LockerExecutors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs background refreshes of cached secrets on its own scheduler, and
+ * counts the refreshes that succeeded and failed.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class Refresher {
+
+    private static final String THREAD_NAME = "secrets-locker-refresh";
+
+    private final RefreshPolicy policy;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong successes;
+    private final AtomicLong failures;
+
+    /**
+     * Constructor.
+     *
+     * @param policy The {@link RefreshPolicy}.
+     */
+    Refresher(final RefreshPolicy policy) {
+        this.policy = policy;
+        this.scheduler
+                = LockerExecutors
+                        .newDaemonScheduler(
+                                policy.schedulerThreads(),
+                                THREAD_NAME);
+        this.successes = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * @return The {@link RefreshPolicy}.
+     */
+    RefreshPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Runs a refresh on the scheduler. The refresh counts as a success unless
+     * it throws.
+     *
+     * @param refresh The refresh.
+     * @param onFailure Run if the refresh throws, or can not be scheduled
+     * because the refresher was shut down.
+     */
+    void submit(
+            final Runnable refresh,
+            final Runnable onFailure) {
+
+        try {
+            scheduler.execute(
+                    () -> {
+                        try {
+                            refresh.run();
+                            successes.incrementAndGet();
+
+                        } catch (RuntimeException exception) {
+                            onFailure.run();
+                            failures.incrementAndGet();
+                        }
+                    });
+
+        } catch (RejectedExecutionException exception) {
+            onFailure.run();
+        }
+    }
+
+    /**
+     * @return The number of refreshes that succeeded.
+     */
+    long successes() {
+        return successes.get();
+    }
+
+    /**
+     * @return The number of refreshes that failed.
+     */
+    long failures() {
+        return failures.get();
+    }
+
+    /**
+     * Stops the scheduler. Refreshes already running are allowed to finish.
+     */
+    void shutdown() {
+        scheduler.shutdown();
+    }
+}
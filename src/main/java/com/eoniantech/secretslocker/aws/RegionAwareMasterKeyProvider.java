@@ -0,0 +1,583 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.DataKey;
+import com.amazonaws.encryptionsdk.EncryptedDataKey;
+import com.amazonaws.encryptionsdk.MasterKey;
+import com.amazonaws.encryptionsdk.MasterKeyProvider;
+import com.amazonaws.encryptionsdk.MasterKeyRequest;
+import com.amazonaws.encryptionsdk.exception.CannotUnwrapDataKeyException;
+import com.eoniantech.secretslocker.LockerExecutors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link MasterKeyProvider} that decrypts data keys in the fastest healthy
+ * region first.
+ *
+ * <p>A ciphertext from {@link KmsEncryptionService} has a copy of its data key
+ * encrypted under a KMS key in each region. The region of each copy is read
+ * from its key ARN, and the copies are passed to the wrapped provider one
+ * region at a time, in the order of a {@link RegionLatencyTracker}, until one
+ * is decrypted. The latency or failure of each call is recorded. Data keys
+ * that are not encrypted by KMS are passed on last, in their original order.
+ *
+ * <p>Regions whose circuit is open are skipped, and only called if every
+ * other region fails. With a {@link HedgingPolicy}, a call that has not
+ * answered within the hedging delay is hedged with a call to the next region
+ * whose circuit is closed, on the provider's own daemon threads. The first
+ * success is used, and the other call is cancelled. The threads are bounded:
+ * when none is free, the hedge is skipped, and a call with nothing else under
+ * way is made in the caller's thread.
+ *
+ * @param <K> The master key type.
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class RegionAwareMasterKeyProvider<K extends MasterKey<K>>
+        extends MasterKeyProvider<K> {
+
+    /**
+     * The provider ID of data keys encrypted by KMS.
+     */
+    static final String KMS_PROVIDER_ID = "aws-kms";
+
+    /**
+     * The default maximum number of threads hedged calls run on.
+     */
+    static final int DEFAULT_MAX_THREADS = 64;
+
+    private static final String THREAD_NAME = "secrets-locker-kms";
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final Pattern KEY_ARN_REGION
+            = Pattern.compile("arn:aws[a-z-]*:kms:([a-z0-9-]+):");
+
+    private final MasterKeyProvider<K> masterKeyProvider;
+    private final RegionLatencyTracker tracker;
+    private final ExecutorService executor;
+    private final LongAdder hedgedRequests;
+    private volatile HedgingPolicy hedgingPolicy;
+
+    /**
+     * Constructor.
+     *
+     * @param masterKeyProvider The {@link MasterKeyProvider} that decrypts the
+     * data keys.
+     * @param tracker The {@link RegionLatencyTracker}.
+     */
+    RegionAwareMasterKeyProvider(
+            final MasterKeyProvider<K> masterKeyProvider,
+            final RegionLatencyTracker tracker) {
+
+        this(masterKeyProvider,
+                tracker,
+                DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param masterKeyProvider The {@link MasterKeyProvider} that decrypts the
+     * data keys.
+     * @param tracker The {@link RegionLatencyTracker}.
+     * @param maxThreads The maximum number of threads hedged calls run on.
+     * Idle threads stop after a minute.
+     */
+    RegionAwareMasterKeyProvider(
+            final MasterKeyProvider<K> masterKeyProvider,
+            final RegionLatencyTracker tracker,
+            final int maxThreads) {
+
+        this.masterKeyProvider = masterKeyProvider;
+        this.tracker = tracker;
+        this.executor = new ThreadPoolExecutor(
+                0,
+                maxThreads,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                LockerExecutors.daemonThreadFactory(
+                        THREAD_NAME),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.hedgedRequests = new LongAdder();
+    }
+
+    /**
+     * Stops the threads hedged calls run on, once the calls under way have
+     * finished. Decryptions go on, one region at a time, in the caller's
+     * thread.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return The health of every region called so far, in the order in which
+     * they would be called.
+     */
+    Map<String, RegionHealth> regionHealth() {
+        return tracker.health();
+    }
+
+    /**
+     * @param hedgingPolicy The {@link HedgingPolicy}, or {@code null} to call
+     * one region at a time.
+     */
+    void setHedgingPolicy(
+            final HedgingPolicy hedgingPolicy) {
+
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * @return The {@link HedgingPolicy}, or {@code null} if calls are not
+     * hedged.
+     */
+    HedgingPolicy hedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * @param circuitBreakerPolicy The {@link CircuitBreakerPolicy} of every
+     * region.
+     */
+    void setCircuitBreakerPolicy(
+            final CircuitBreakerPolicy circuitBreakerPolicy) {
+
+        tracker.setCircuitBreakerPolicy(circuitBreakerPolicy);
+    }
+
+    /**
+     * @return The number of hedged calls made so far.
+     */
+    long hedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    @Override
+    public String getDefaultProviderId() {
+        return masterKeyProvider.getDefaultProviderId();
+    }
+
+    @Override
+    public boolean canProvide(
+            final String provider) {
+
+        return masterKeyProvider.canProvide(provider);
+    }
+
+    @Override
+    public K getMasterKey(
+            final String provider,
+            final String keyId) {
+
+        return masterKeyProvider.getMasterKey(
+                provider,
+                keyId);
+    }
+
+    @Override
+    public List<K> getMasterKeysForEncryption(
+            final MasterKeyRequest request) {
+
+        return masterKeyProvider.getMasterKeysForEncryption(request);
+    }
+
+    @Override
+    public DataKey<K> decryptDataKey(
+            final CryptoAlgorithm algorithm,
+            final Collection<? extends EncryptedDataKey> encryptedDataKeys,
+            final Map<String, String> encryptionContext) {
+
+        Map<String, List<EncryptedDataKey>> byRegion = new LinkedHashMap<>();
+        List<EncryptedDataKey> others = new ArrayList<>();
+
+        for (EncryptedDataKey encryptedDataKey : encryptedDataKeys) {
+            String region = regionOf(encryptedDataKey);
+
+            if (region == null)
+                others.add(encryptedDataKey);
+            else
+                byRegion.computeIfAbsent(region, key -> new ArrayList<>())
+                        .add(encryptedDataKey);
+        }
+
+        List<RuntimeException> failures = new ArrayList<>();
+
+        Regions regions
+                = new Regions(
+                        tracker.order(
+                                new ArrayList<>(byRegion.keySet())));
+
+        HedgingPolicy policy = this.hedgingPolicy;
+
+        DataKey<K> dataKey = (policy == null)
+                ? decryptInTurn(algorithm, byRegion, encryptionContext, regions, failures)
+                : decryptHedged(algorithm, byRegion, encryptionContext, regions, failures, policy);
+
+        if (dataKey != null)
+            return dataKey;
+
+        if (!others.isEmpty()) {
+            try {
+                return masterKeyProvider.decryptDataKey(
+                        algorithm,
+                        others,
+                        encryptionContext);
+
+            } catch (RuntimeException exception) {
+                failures.add(exception);
+            }
+        }
+
+        CannotUnwrapDataKeyException exception
+                = new CannotUnwrapDataKeyException(
+                        "Unable to decrypt any data keys");
+
+        for (RuntimeException failure : failures)
+            exception.addSuppressed(failure);
+
+        throw exception;
+    }
+
+    private DataKey<K> decryptInTurn(
+            final CryptoAlgorithm algorithm,
+            final Map<String, List<EncryptedDataKey>> byRegion,
+            final Map<String, String> encryptionContext,
+            final Regions regions,
+            final List<RuntimeException> failures) {
+
+        for (String region = regions.next(true); region != null; region = regions.next(true)) {
+            try {
+                return decryptInRegion(
+                        algorithm,
+                        byRegion.get(region),
+                        encryptionContext,
+                        region,
+                        new AtomicBoolean());
+
+            } catch (RuntimeException exception) {
+                failures.add(exception);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Calls the first region, and when it has not answered within the hedging
+     * delay, the next region too. A failed call is followed by a call to the
+     * next region straight away. Calls are only hedged with regions whose
+     * circuit allows it. Returns the first success and cancels the calls
+     * still under way.
+     */
+    private DataKey<K> decryptHedged(
+            final CryptoAlgorithm algorithm,
+            final Map<String, List<EncryptedDataKey>> byRegion,
+            final Map<String, String> encryptionContext,
+            final Regions regions,
+            final List<RuntimeException> failures,
+            final HedgingPolicy policy) {
+
+        CompletionService<DataKey<K>> completionService
+                = new ExecutorCompletionService<>(
+                        executor);
+
+        List<Future<DataKey<K>>> calls = new ArrayList<>();
+        AtomicBoolean decided = new AtomicBoolean();
+        int underWay = 0;
+
+        try {
+            String region = regions.next(true);
+            boolean hedged = false;
+            boolean hedge = false;
+
+            while (region != null || underWay > 0) {
+                if (region != null) {
+                    Future<DataKey<K>> submitted
+                            = submit(
+                                    completionService,
+                                    algorithm,
+                                    byRegion.get(region),
+                                    encryptionContext,
+                                    region,
+                                    decided);
+
+                    if (submitted != null) {
+                        calls.add(submitted);
+                        underWay++;
+
+                        if (hedge)
+                            hedgedRequests.increment();
+
+                    } else if (underWay == 0) {
+                        // No thread is free, and there is no other call to
+                        // wait for, so call the region in this thread.
+                        try {
+                            return decryptInRegion(
+                                    algorithm,
+                                    byRegion.get(region),
+                                    encryptionContext,
+                                    region,
+                                    decided);
+
+                        } catch (RuntimeException exception) {
+                            failures.add(exception);
+                            region = regions.next(true);
+                            continue;
+                        }
+
+                    } else {
+                        // No thread is free for the hedge. Skip it, and keep
+                        // the region in case the calls under way fail.
+                        regions.putBack(region);
+                        hedged = true;
+                    }
+
+                    hedge = false;
+                }
+
+                Future<DataKey<K>> call = hedged || region == null
+                        ? completionService.take()
+                        : completionService.poll(
+                                hedgingDelayNanos(region, policy),
+                                TimeUnit.NANOSECONDS);
+
+                if (call == null) {
+                    hedged = true;
+                    region = regions.next(false);
+                    hedge = region != null;
+                    continue;
+                }
+
+                underWay--;
+
+                try {
+                    return call.get();
+
+                } catch (ExecutionException exception) {
+                    failures.add(runtimeException(exception.getCause()));
+                    region = regions.next(true);
+                }
+            }
+
+            return null;
+
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            throw new CannotUnwrapDataKeyException(
+                    "Interrupted while decrypting the data key",
+                    exception);
+
+        } finally {
+            decided.set(true);
+
+            for (Future<DataKey<K>> call : calls)
+                call.cancel(true);
+        }
+    }
+
+    /**
+     * @return The submitted call, or {@code null} if no thread is free.
+     */
+    private Future<DataKey<K>> submit(
+            final CompletionService<DataKey<K>> completionService,
+            final CryptoAlgorithm algorithm,
+            final List<EncryptedDataKey> encryptedDataKeys,
+            final Map<String, String> encryptionContext,
+            final String region,
+            final AtomicBoolean decided) {
+
+        try {
+            return completionService.submit(
+                    () -> decryptInRegion(
+                            algorithm,
+                            encryptedDataKeys,
+                            encryptionContext,
+                            region,
+                            decided));
+
+        } catch (RejectedExecutionException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Calls one region, and records the latency or failure of the call. The
+     * failure of a call that lost a race, and was cancelled, is not recorded.
+     */
+    private DataKey<K> decryptInRegion(
+            final CryptoAlgorithm algorithm,
+            final List<EncryptedDataKey> encryptedDataKeys,
+            final Map<String, String> encryptionContext,
+            final String region,
+            final AtomicBoolean decided) {
+
+        long start = tracker.now();
+
+        try {
+            DataKey<K> dataKey
+                    = masterKeyProvider.decryptDataKey(
+                            algorithm,
+                            encryptedDataKeys,
+                            encryptionContext);
+
+            tracker.recordSuccess(
+                    region,
+                    tracker.now() - start);
+
+            return dataKey;
+
+        } catch (RuntimeException exception) {
+            if (!decided.get())
+                tracker.recordFailure(region);
+
+            throw exception;
+        }
+    }
+
+    private long hedgingDelayNanos(
+            final String region,
+            final HedgingPolicy policy) {
+
+        long percentile
+                = tracker.latencyPercentileNanos(
+                        region,
+                        policy.percentile());
+
+        if (percentile < 0)
+            return policy.maximumDelayNanos();
+
+        return Math.min(
+                policy.maximumDelayNanos(),
+                Math.max(
+                        policy.minimumDelayNanos(),
+                        percentile));
+    }
+
+    private static RuntimeException runtimeException(
+            final Throwable cause) {
+
+        if (cause instanceof RuntimeException)
+            return (RuntimeException) cause;
+
+        if (cause instanceof Error)
+            throw (Error) cause;
+
+        return new CannotUnwrapDataKeyException(cause);
+    }
+
+    /**
+     * @param encryptedDataKey An {@link EncryptedDataKey}.
+     * @return The region of the KMS key that encrypted the data key, or
+     * {@code null} if it was not encrypted by KMS.
+     */
+    static String regionOf(
+            final EncryptedDataKey encryptedDataKey) {
+
+        if (!KMS_PROVIDER_ID.equals(encryptedDataKey.getProviderId()))
+            return null;
+
+        Matcher matcher
+                = KEY_ARN_REGION.matcher(
+                        new String(
+                                encryptedDataKey.getProviderInformation(),
+                                StandardCharsets.UTF_8));
+
+        return matcher.lookingAt()
+                ? matcher.group(1)
+                : null;
+    }
+
+    /**
+     * The regions of one decryption, in the tracker's order. Regions whose
+     * circuit breaker does not allow a call are held back until every other
+     * region has been called. The circuit breaker is asked just before a
+     * region is called, so a half-open region's trial is not used up by a
+     * decryption that never reaches it.
+     */
+    private final class Regions {
+
+        private final Iterator<String> ordered;
+        private final Deque<String> skipped;
+        private final Deque<String> returned;
+
+        Regions(final List<String> ordered) {
+            this.ordered = ordered.iterator();
+            this.skipped = new ArrayDeque<>();
+            this.returned = new ArrayDeque<>();
+        }
+
+        /**
+         * @param region A region that was returned by {@link #next(boolean)}
+         * but not called. It is returned again, first.
+         */
+        void putBack(
+                final String region) {
+
+            returned.push(region);
+        }
+
+        /**
+         * @param includeSkipped {@code true} to return a held back region
+         * once every other region has been called.
+         * @return The next region to call, or {@code null} if there is none.
+         */
+        String next(
+                final boolean includeSkipped) {
+
+            if (!returned.isEmpty())
+                return returned.pop();
+
+            while (ordered.hasNext()) {
+                String region = ordered.next();
+
+                if (tracker.tryAcquire(region))
+                    return region;
+
+                skipped.add(region);
+            }
+
+            return includeSkipped
+                    ? skipped.poll()
+                    : null;
+        }
+    }
+}
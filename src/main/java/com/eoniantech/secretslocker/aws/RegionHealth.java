@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+/**
+ * Immutable snapshot of the latency and error estimates of the KMS calls made
+ * to one region.
+ *
+ * <p>Both estimates are exponentially weighted moving averages, so recent
+ * calls count for more than older ones. The error rate also decays while the
+ * region is not called, so a region that failed is eventually tried again.
+ * A region whose circuit is open is skipped while other regions can be
+ * called, see {@link CircuitBreakerPolicy}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class RegionHealth {
+
+    private final String region;
+    private final double latencyMillis;
+    private final double errorRate;
+    private final long calls;
+    private final boolean healthy;
+    private final boolean circuitOpen;
+
+    /**
+     * Constructor.
+     *
+     * @param region The region name.
+     * @param latencyMillis The estimated latency of a successful call, or
+     * {@link Double#NaN} if no call has succeeded yet.
+     * @param errorRate The estimated fraction of calls that fail.
+     * @param calls The number of calls made to the region.
+     * @param healthy {@code true} if the region is tried before unhealthy
+     * regions.
+     * @param circuitOpen {@code true} if the region's circuit is open.
+     */
+    RegionHealth(
+            final String region,
+            final double latencyMillis,
+            final double errorRate,
+            final long calls,
+            final boolean healthy,
+            final boolean circuitOpen) {
+
+        this.region = region;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.calls = calls;
+        this.healthy = healthy;
+        this.circuitOpen = circuitOpen;
+    }
+
+    /**
+     * @return The region name, e.g., us-east-1.
+     */
+    public String region() {
+        return region;
+    }
+
+    /**
+     * @return The estimated latency of a successful call in milliseconds, or
+     * {@link Double#NaN} if no call has succeeded yet.
+     */
+    public double latencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * @return The estimated fraction of calls that fail, from 0 to 1.
+     */
+    public double errorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @return The number of calls made to the region.
+     */
+    public long calls() {
+        return calls;
+    }
+
+    /**
+     * @return {@code true} if the region is tried before unhealthy regions,
+     * otherwise {@code false}.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * @return {@code true} if the region's circuit is open, and the region is
+     * skipped while other regions can be called, otherwise {@code false}.
+     */
+    public boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: %.1f ms, %.0f%% errors, %d calls%s%s",
+                region,
+                latencyMillis,
+                errorRate * 100,
+                calls,
+                healthy ? "" : ", unhealthy",
+                circuitOpen ? ", circuit open" : "");
+    }
+}
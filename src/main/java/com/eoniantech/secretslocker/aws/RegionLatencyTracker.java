@@ -0,0 +1,395 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a rolling estimate of the latency and error rate of the KMS calls
+ * made to each region, and orders regions by them.
+ *
+ * <p>Healthy regions come before unhealthy ones, and within each group
+ * regions without a successful call yet come first, so every region a
+ * ciphertext is wrapped for is measured once, then the fastest is called.
+ * The preferred region, usually the region the application runs in, is
+ * measured before other unmeasured regions. Otherwise the order of the
+ * ciphertext's regions is kept.
+ *
+ * <p>It also keeps the recent latencies of each region, from which the
+ * hedging delay is estimated, and a circuit breaker per region, see
+ * {@link CircuitBreakerPolicy}. A region whose circuit is open is unhealthy.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class RegionLatencyTracker {
+
+    /**
+     * The weight of the newest call in the latency and error rate averages.
+     */
+    static final double WEIGHT = 0.2;
+
+    /**
+     * The error rate from which a region is unhealthy.
+     */
+    static final double UNHEALTHY_ERROR_RATE = 0.5;
+
+    /**
+     * The time in which the error rate of a region that is not called halves.
+     */
+    static final long ERROR_RATE_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * The number of recent latencies kept per region.
+     */
+    static final int LATENCY_SAMPLES = 100;
+
+    /**
+     * The number of recent latencies from which a percentile is estimated.
+     */
+    static final int MIN_LATENCY_SAMPLES = 10;
+
+    private final String preferredRegion;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, Estimate> estimates;
+    private volatile CircuitBreakerPolicy circuitBreakerPolicy;
+
+    /**
+     * Constructor.
+     *
+     * @param preferredRegion The region measured before other unmeasured
+     * regions, or {@code null}.
+     */
+    RegionLatencyTracker(
+            final String preferredRegion) {
+
+        this(preferredRegion,
+                System::nanoTime);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param preferredRegion The region measured before other unmeasured
+     * regions, or {@code null}.
+     * @param clock The source of the current time in nanoseconds.
+     */
+    RegionLatencyTracker(
+            final String preferredRegion,
+            final LongSupplier clock) {
+
+        this.preferredRegion = preferredRegion;
+        this.clock = clock;
+        this.estimates = new ConcurrentHashMap<>();
+        this.circuitBreakerPolicy = new CircuitBreakerPolicy();
+    }
+
+    /**
+     * @param circuitBreakerPolicy The {@link CircuitBreakerPolicy} of every
+     * region.
+     */
+    void setCircuitBreakerPolicy(
+            final CircuitBreakerPolicy circuitBreakerPolicy) {
+
+        this.circuitBreakerPolicy = circuitBreakerPolicy;
+    }
+
+    /**
+     * @return The current time in nanoseconds, from the tracker's clock.
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Records a successful call.
+     *
+     * @param region The region called.
+     * @param latencyNanos How long the call took.
+     */
+    void recordSuccess(
+            final String region,
+            final long latencyNanos) {
+
+        estimate(region).record(
+                latencyNanos,
+                false,
+                now(),
+                circuitBreakerPolicy);
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @param region The region called.
+     */
+    void recordFailure(
+            final String region) {
+
+        estimate(region).record(
+                0,
+                true,
+                now(),
+                circuitBreakerPolicy);
+    }
+
+    /**
+     * Asks the region's circuit breaker whether the region can be called now.
+     * A closed circuit always allows the call. An open circuit allows a single
+     * trial call once its open duration has passed, and then waits another
+     * open duration before allowing the next one.
+     *
+     * @param region The region to call.
+     * @return {@code true} if the region can be called, otherwise
+     * {@code false}.
+     */
+    boolean tryAcquire(
+            final String region) {
+
+        Estimate estimate = estimates.get(region);
+
+        return (estimate == null)
+                || estimate.tryAcquire(
+                        now(),
+                        circuitBreakerPolicy);
+    }
+
+    /**
+     * @param region A region.
+     * @param percentile A percentile, greater than 0 and less than 100.
+     * @return The percentile of the region's recent successful latencies in
+     * nanoseconds, or -1 if the region has fewer than
+     * {@link #MIN_LATENCY_SAMPLES} of them.
+     */
+    long latencyPercentileNanos(
+            final String region,
+            final double percentile) {
+
+        Estimate estimate = estimates.get(region);
+
+        return (estimate == null)
+                ? -1
+                : estimate.latencyPercentile(percentile);
+    }
+
+    /**
+     * @param regions Regions, in the order of the ciphertext.
+     * @return The regions, in the order in which to call them.
+     */
+    List<String> order(
+            final List<String> regions) {
+
+        long now = now();
+        Map<String, RegionHealth> health = new LinkedHashMap<>();
+
+        for (String region : regions)
+            health.put(
+                    region,
+                    health(region, now));
+
+        List<String> ordered = new ArrayList<>(health.keySet());
+
+        ordered.sort(
+                Comparator
+                        .comparing((String region) -> !health.get(region).isHealthy())
+                        .thenComparing(region -> isMeasured(health.get(region)))
+                        .thenComparingDouble(region -> rank(health.get(region))));
+
+        return ordered;
+    }
+
+    /**
+     * @return The health of every region called so far, in the order in which
+     * they would be called.
+     */
+    Map<String, RegionHealth> health() {
+        long now = now();
+        Map<String, RegionHealth> health = new LinkedHashMap<>();
+
+        for (String region : order(new ArrayList<>(estimates.keySet())))
+            health.put(
+                    region,
+                    health(region, now));
+
+        return Collections.unmodifiableMap(health);
+    }
+
+    private RegionHealth health(
+            final String region,
+            final long now) {
+
+        Estimate estimate = estimates.get(region);
+
+        return (estimate == null)
+                ? new RegionHealth(region, Double.NaN, 0, 0, true, false)
+                : estimate.health(region, now, circuitBreakerPolicy);
+    }
+
+    private Estimate estimate(
+            final String region) {
+
+        return estimates.computeIfAbsent(
+                region,
+                key -> new Estimate());
+    }
+
+    /**
+     * @return The latency of a measured region, otherwise 0 for the preferred
+     * region and 1 for others.
+     */
+    private double rank(
+            final RegionHealth health) {
+
+        if (isMeasured(health))
+            return health.latencyMillis();
+
+        return health.region().equals(preferredRegion)
+                ? 0
+                : 1;
+    }
+
+    private static boolean isMeasured(
+            final RegionHealth health) {
+
+        return !Double.isNaN(health.latencyMillis());
+    }
+
+    /**
+     * The moving averages, recent latencies and circuit breaker of one
+     * region.
+     */
+    private static final class Estimate {
+
+        private double latencyNanos = Double.NaN;
+        private double errorRate;
+        private long updated;
+        private long calls;
+
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int latencyCount;
+        private int nextLatency;
+
+        private int consecutiveFailures;
+        private boolean open;
+        private long openedAt;
+
+        synchronized boolean tryAcquire(
+                final long now,
+                final CircuitBreakerPolicy policy) {
+
+            if (!open)
+                return true;
+
+            if (now - openedAt < policy.openDurationNanos())
+                return false;
+
+            // Half open. Re-arm, so only this call is a trial, and a trial
+            // that never reports back expires with the next open duration.
+            this.openedAt = now;
+            return true;
+        }
+
+        synchronized long latencyPercentile(
+                final double percentile) {
+
+            if (latencyCount < MIN_LATENCY_SAMPLES)
+                return -1;
+
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+
+            return sorted[Math.max(rank, 1) - 1];
+        }
+
+        synchronized void record(
+                final long latencyNanos,
+                final boolean failed,
+                final long now,
+                final CircuitBreakerPolicy policy) {
+
+            double error = failed ? 1 : 0;
+
+            this.errorRate = (calls == 0)
+                    ? error
+                    : decayedErrorRate(now) * (1 - WEIGHT) + error * WEIGHT;
+
+            if (!failed)
+                this.latencyNanos = Double.isNaN(this.latencyNanos)
+                        ? latencyNanos
+                        : this.latencyNanos * (1 - WEIGHT) + latencyNanos * WEIGHT;
+
+            this.updated = now;
+            this.calls++;
+
+            if (failed) {
+                this.consecutiveFailures++;
+
+                if (open || consecutiveFailures >= policy.failureThreshold()) {
+                    this.open = true;
+                    this.openedAt = now;
+                }
+
+            } else {
+                this.latencies[nextLatency] = latencyNanos;
+                this.nextLatency = (nextLatency + 1) % latencies.length;
+                this.latencyCount = Math.min(latencyCount + 1, latencies.length);
+
+                this.consecutiveFailures = 0;
+                this.open = false;
+            }
+        }
+
+        synchronized RegionHealth health(
+                final String region,
+                final long now,
+                final CircuitBreakerPolicy policy) {
+
+            double decayedErrorRate = decayedErrorRate(now);
+
+            boolean circuitOpen
+                    = open
+                            && now - openedAt < policy.openDurationNanos();
+
+            return new RegionHealth(
+                    region,
+                    latencyNanos / TimeUnit.MILLISECONDS.toNanos(1),
+                    decayedErrorRate,
+                    calls,
+                    decayedErrorRate < UNHEALTHY_ERROR_RATE && !circuitOpen,
+                    circuitOpen);
+        }
+
+        private double decayedErrorRate(
+                final long now) {
+
+            return errorRate * Math.pow(
+                    0.5,
+                    (double) (now - updated) / ERROR_RATE_HALF_LIFE_NANOS);
+        }
+    }
+}
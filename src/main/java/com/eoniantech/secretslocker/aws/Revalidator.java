@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.LockerExecutors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Revalidates expired secrets in the background. There is at most one
+ * revalidation per secret at a time, and a failed revalidation is retried
+ * with exponential backoff. Counts the expired values that were served.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class Revalidator {
+
+    private static final int MAX_BACKOFF_SHIFT = 16;
+
+    private final StalePolicy policy;
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> revalidations;
+    private final AtomicLong staleHits;
+
+    /**
+     * Constructor.
+     *
+     * @param policy The {@link StalePolicy}.
+     */
+    Revalidator(final StalePolicy policy) {
+        this.policy = policy;
+        this.revalidations = new ConcurrentHashMap<>();
+        this.staleHits = new AtomicLong();
+    }
+
+    /**
+     * @return The {@link StalePolicy}.
+     */
+    StalePolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Starts revalidating a secret, or joins the revalidation already in
+     * progress.
+     *
+     * @param name The name of the secret.
+     * @param attempt Decrypts and caches the secret. Called once per attempt.
+     * @return A {@link CompletableFuture} that completes with the revalidated
+     * value, or exceptionally once every retry has failed.
+     */
+    CompletableFuture<byte[]> revalidate(
+            final String name,
+            final Supplier<CompletableFuture<byte[]>> attempt) {
+
+        CompletableFuture<byte[]> revalidation
+                = new CompletableFuture<>();
+
+        CompletableFuture<byte[]> inProgress
+                = revalidations.putIfAbsent(
+                        name,
+                        revalidation);
+
+        if (inProgress != null)
+            return inProgress;
+
+        revalidation.whenComplete(
+                (value, exception) -> revalidations.remove(
+                        name,
+                        revalidation));
+
+        attempt(attempt, revalidation, 0);
+        return revalidation;
+    }
+
+    /**
+     * Serves an expired value and counts it.
+     *
+     * @param value The expired value.
+     * @return The value.
+     */
+    byte[] serveStale(final byte[] value) {
+        staleHits.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * @return The number of reads that were served an expired value.
+     */
+    long staleHits() {
+        return staleHits.get();
+    }
+
+    private void attempt(
+            final Supplier<CompletableFuture<byte[]>> attempt,
+            final CompletableFuture<byte[]> revalidation,
+            final int retry) {
+
+        CompletableFuture<byte[]> result;
+
+        try {
+            result = attempt.get();
+
+        } catch (RuntimeException exception) {
+            result = AbtractFileSystemSecretsLocker.failedFuture(exception);
+        }
+
+        result.whenComplete(
+                (value, exception) -> {
+                    if (exception == null)
+                        revalidation.complete(value);
+
+                    else if (retry >= policy.maxRetries())
+                        revalidation.completeExceptionally(
+                                SingleFlight.unwrap(exception));
+
+                    else
+                        LockerExecutors
+                                .defaultScheduler()
+                                .schedule(
+                                        () -> attempt(
+                                                attempt,
+                                                revalidation,
+                                                retry + 1),
+                                        policy.retryDelayNanos()
+                                                << Math.min(retry, MAX_BACKOFF_SHIFT),
+                                        TimeUnit.NANOSECONDS);
+                });
+    }
+}
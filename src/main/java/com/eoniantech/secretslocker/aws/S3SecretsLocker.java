@@ -15,30 +15,58 @@
  */
 package com.eoniantech.secretslocker.aws;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.event.ProgressEventType;
+import com.amazonaws.event.ProgressListener;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.transfer.Download;
+import com.amazonaws.services.s3.transfer.Transfer.TransferState;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.amazonaws.util.IOUtils;
+import com.eoniantech.secretslocker.LockerExecutors;
 import com.eoniantech.secretslocker.SecretsLocker;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotEmpty;
 import static com.eoniantech.secretslocker.aws.Constants.BUCKET_NAME;
 import static com.eoniantech.secretslocker.aws.Constants.BUCKET_PATH;
+import static com.eoniantech.secretslocker.aws.Constants.DOWNLOAD_NOT_COMPLETED_PATTERN;
+import static com.eoniantech.secretslocker.aws.Constants.DOWNLOAD_SUFFIX;
 import static com.eoniantech.secretslocker.aws.Constants.LOCKER_PATH_NOT_WRITEABLE;
 import static com.eoniantech.secretslocker.aws.Constants.NAME;
+import static com.eoniantech.secretslocker.aws.Constants.SECRET_NOT_FOUND;
 import static com.eoniantech.secretslocker.aws.Constants.S3_BUCKET_DOES_NOT_EXIST_PATTERN;
 import static com.eoniantech.secretslocker.aws.Constants.S3_PATH_SEPARATOR;
-import static com.eoniantech.secretslocker.aws.Constants.SECRET_NOT_FOUND;
 
 /**
  * An implementation of the {@link SecretsLocker} that is backed by Amazon S3. 
  * Encrypted secrets do not need to exists locally and are only downloaded
  * when needed. AWS credentials are required.
+ *
+ * <p>This locker is thread-safe, with the guarantees described in
+ * {@link AbtractFileSystemSecretsLocker}. Each encrypted secret is downloaded
+ * to the local locker at most once at a time, into a temporary file that is
+ * atomically moved into place, so concurrent readers never see a partially
+ * downloaded file.
+ *
+ * <p>The asynchronous methods download encrypted secrets with a
+ * {@link TransferManager}, which is created on first use and has its own
+ * small pool of daemon threads, so a download does not occupy one of the
+ * locker's executor threads while it waits on S3.
  * 
  * @author Michael Andrews <Michael.Andrews@eoniantech.com>
  * @since 1.0
@@ -49,6 +77,11 @@ public class S3SecretsLocker extends AbtractFileSystemSecretsLocker {
     private String bucketName;
     private String bucketPath;
     private AmazonS3 s3Client; 
+    private volatile TransferManager transferManager;
+
+    private static final int TRANSFER_THREADS = 4;
+    private static final String TRANSFER_THREAD_NAME = "secrets-locker-s3";
+    private static final int NOT_FOUND = 404;
 
     /**
      * Constructor.
@@ -92,19 +125,11 @@ public class S3SecretsLocker extends AbtractFileSystemSecretsLocker {
     }
 
     @Override
-    public String get(
+    protected File resolve(
             final String name) {
 
-        assertArgumentNotEmpty(
-                NAME, 
-                name); 
-
-        if (!contains(name))
-            throw new SecretsLockerException(
-                    SECRET_NOT_FOUND);
-
         File localFile 
-                = secrets().get(
+                = super.resolve(
                         name);
 
         if (!localFile.exists()) 
@@ -113,45 +138,96 @@ public class S3SecretsLocker extends AbtractFileSystemSecretsLocker {
                             localFile.getName()),
                     localFile);
 
-        return decrypt(
+        return localFile;
+    }
+
+    @Override
+    protected CompletableFuture<File> resolveAsync(
+            final String name) {
+
+        File localFile
+                = secrets().get(name);
+
+        if (localFile == null)
+            return failedFuture(
+                    new SecretsLockerException(
+                            SECRET_NOT_FOUND));
+
+        if (localFile.exists())
+            return CompletableFuture
+                    .completedFuture(
+                            localFile);
+
+        return downloadAsync(
                 localFile);
     }
 
+    /**
+     * {@inheritDoc }
+     *
+     * <p>If the encrypted secret is not in the local locker, it is decrypted
+     * directly from the content of the S3 object, and is not written to the
+     * local locker.
+     */
     @Override
-    public boolean contains(
+    public InputStream getAsStream(
             final String name) {
-        
+
         assertArgumentNotEmpty(
-                NAME, 
+                NAME,
                 name);
 
-        return containsName(name) 
-                && (containsLocalFile(name) 
-                || containsRemoteFile(name));
-        }
+        File localFile
+                = secrets().get(name);
 
-    private boolean containsName(
-            final String name) {
+        if (localFile == null)
+            throw new SecretsLockerException(
+                    SECRET_NOT_FOUND);
 
-        return secrets().containsKey(name);
+        if (localFile.exists())
+            return decryptAsStream(
+                    localFile);
+
+        S3ObjectInputStream objectContent
+                = downloadS3Object(
+                        localFile.getName())
+                        .getObjectContent();
+
+        try {
+            return decryptionService()
+                    .decryptStream(
+                            objectContent);
+
+        } catch (RuntimeException exception) {
+            objectContent.abort();
+            throw exception;
+        }
     }
 
-    private boolean containsLocalFile(
+    @Override
+    public boolean contains(
             final String name) {
+        
+        assertArgumentNotEmpty(
+                NAME, 
+                name);
 
-        return secrets().get(name).exists();
-    }
+        File localFile 
+                = secrets().get(name);
+
+        return localFile != null 
+                && (localFile.exists() 
+                || containsRemoteFile(localFile));
+        }
 
     private boolean containsRemoteFile(
-            final String name) {
+            final File localFile) {
 
         return s3Client
                 .doesObjectExist(
                         bucketName, 
                         buildS3ObjectName(
-                                secrets()
-                                        .get(name)
-                                        .getName()));
+                                localFile.getName()));
     }
 
     private S3Object downloadS3Object(
@@ -165,6 +241,176 @@ public class S3SecretsLocker extends AbtractFileSystemSecretsLocker {
                                         fileName)));
     }
 
+    private CompletableFuture<File> downloadAsync(
+            final File localFile) {
+
+        File tempFile;
+        Download download;
+
+        try {
+            tempFile
+                    = Files.createTempFile(
+                            localFile.getParentFile().toPath(),
+                            localFile.getName(),
+                            DOWNLOAD_SUFFIX)
+                            .toFile();
+
+        } catch (IOException ioException) {
+            return failedFuture(
+                    new SecretsLockerException(
+                            ioException));
+
+        } catch (RuntimeException exception) {
+            return failedFuture(
+                    exception);
+        }
+
+        try {
+            download
+                    = transferManager()
+                            .download(
+                                    new GetObjectRequest(
+                                            bucketName,
+                                            buildS3ObjectName(
+                                                    localFile.getName())),
+                                    tempFile);
+
+        } catch (RuntimeException exception) {
+            tempFile.delete();
+            return failedFuture(
+                    exception);
+        }
+
+        CompletableFuture<File> result
+                = new CompletableFuture<>();
+
+        AtomicBoolean finished
+                = new AtomicBoolean();
+
+        // Terminal events are raised on transfer threads, which must not
+        // block on the download, so the download is finished by the
+        // locker's executor. The listener may miss a download that completed
+        // before it was added, hence the isDone check.
+        Runnable finish
+                = () -> {
+                    if (finished.compareAndSet(false, true))
+                        executor()
+                                .execute(
+                                        () -> finishDownload(
+                                                download,
+                                                tempFile,
+                                                localFile,
+                                                result));
+                };
+
+        download.addProgressListener(
+                terminalEventListener(
+                        finish));
+
+        if (download.isDone())
+            finish.run();
+
+        return result;
+    }
+
+    private static ProgressListener terminalEventListener(
+            final Runnable onTerminalEvent) {
+
+        return progressEvent -> {
+            ProgressEventType eventType
+                    = progressEvent.getEventType();
+
+            if (eventType == ProgressEventType.TRANSFER_COMPLETED_EVENT
+                    || eventType == ProgressEventType.TRANSFER_FAILED_EVENT
+                    || eventType == ProgressEventType.TRANSFER_CANCELED_EVENT)
+                onTerminalEvent.run();
+        };
+    }
+
+    private void finishDownload(
+            final Download download,
+            final File tempFile,
+            final File localFile,
+            final CompletableFuture<File> result) {
+
+        try {
+            AmazonClientException exception
+                    = download.waitForException();
+
+            if (exception != null)
+                throw exception;
+
+            if (download.getState() != TransferState.Completed)
+                throw new SecretsLockerException(
+                        String.format(
+                                DOWNLOAD_NOT_COMPLETED_PATTERN,
+                                download.getState(),
+                                localFile.getName()));
+
+            Files.move(
+                    tempFile.toPath(),
+                    localFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            localFile.deleteOnExit();
+            result.complete(localFile);
+
+        } catch (AmazonS3Exception s3Exception) {
+            result.completeExceptionally(
+                    s3Exception.getStatusCode() == NOT_FOUND
+                            ? new SecretsLockerException(
+                                    SECRET_NOT_FOUND,
+                                    s3Exception)
+                            : s3Exception);
+
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(
+                    new SecretsLockerException(
+                            interruptedException));
+
+        } catch (IOException ioException) {
+            result.completeExceptionally(
+                    new SecretsLockerException(
+                            ioException));
+
+        } catch (RuntimeException exception) {
+            result.completeExceptionally(
+                    exception);
+
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private TransferManager transferManager() {
+        TransferManager manager
+                = transferManager;
+
+        if (manager != null)
+            return manager;
+
+        synchronized (this) {
+            if (transferManager == null)
+                transferManager
+                        = TransferManagerBuilder
+                                .standard()
+                                .withS3Client(
+                                        s3Client)
+                                .withExecutorFactory(
+                                        () -> LockerExecutors
+                                                .newDaemonThreadPool(
+                                                        TRANSFER_THREADS,
+                                                        TRANSFER_THREAD_NAME))
+                                .withShutDownThreadPools(
+                                        true)
+                                .build();
+
+            return transferManager;
+        }
+    }
+
     private String buildS3ObjectName(
             final String fileName) {
         
@@ -179,16 +425,39 @@ public class S3SecretsLocker extends AbtractFileSystemSecretsLocker {
             final S3Object s3Object, 
             final File file) {
 
-        try(FileOutputStream fileOutputStream 
-                = new FileOutputStream(file)) {
+        File tempFile = null;
+
+        try (S3ObjectInputStream objectContent 
+                = s3Object.getObjectContent()) {
 
-            IOUtils.copy(
-                    s3Object.getObjectContent(), 
-                    fileOutputStream);
+            tempFile
+                    = Files.createTempFile(
+                            file.getParentFile().toPath(),
+                            file.getName(),
+                            DOWNLOAD_SUFFIX)
+                            .toFile();
+
+            try (FileOutputStream fileOutputStream 
+                    = new FileOutputStream(tempFile)) {
+
+                IOUtils.copy(
+                        objectContent, 
+                        fileOutputStream);
+            }
+
+            Files.move(
+                    tempFile.toPath(), 
+                    file.toPath(), 
+                    StandardCopyOption.REPLACE_EXISTING, 
+                    StandardCopyOption.ATOMIC_MOVE);
             
         } catch (IOException ioException) {
             throw new SecretsLockerException(
                     ioException);
+
+        } finally {
+            if (tempFile != null)
+                tempFile.delete();
         }
 
         file.deleteOnExit();
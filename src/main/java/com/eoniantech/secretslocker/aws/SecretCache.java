@@ -0,0 +1,388 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of decrypted secrets keyed by secret name. Secrets are cached
+ * as bytes, together with their decoded text once it is first read. Each entry records
+ * the {@link FileVersion} of the encrypted file it was decrypted from, and is
+ * only returned while that version is current and the entry has not expired.
+ * When the cache exceeds its bounds, the least recently used entries are
+ * evicted.
+ *
+ * <p>With a grace period, expired entries are kept for that long after they
+ * expire, and can still be read with {@link #stale}.
+ *
+ * <p>Reads do not lock. Lockers hold a small number of secrets, so eviction
+ * scans the entries rather than maintaining an ordered structure.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class SecretCache {
+
+    private final SecretCachePolicy policy;
+    private final ConcurrentMap<String, Entry> entries;
+    private final AtomicLong bytes;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private volatile long gracePeriodNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param policy The {@link SecretCachePolicy}.
+     */
+    SecretCache(final SecretCachePolicy policy) {
+        this.policy = policy;
+        this.entries = new ConcurrentHashMap<>();
+        this.bytes = new AtomicLong();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Gets a cached secret and records a hit or a miss.
+     *
+     * @param name The name of the secret.
+     * @param version The current version of the secret's encrypted file.
+     * @return The cached plaintext, or {@code null} if the secret is not
+     * cached, has expired, or was decrypted from a different version.
+     */
+    byte[] get(
+            final String name,
+            final FileVersion version) {
+
+        byte[] value
+                = peek(
+                        name,
+                        version);
+
+        if (value == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+
+        return value;
+    }
+
+    /**
+     * Gets a cached secret without recording a hit or a miss.
+     *
+     * @param name The name of the secret.
+     * @param version The current version of the secret's encrypted file.
+     * @return The cached plaintext, or {@code null} if the secret is not
+     * cached, has expired, or was decrypted from a different version.
+     */
+    byte[] peek(
+            final String name,
+            final FileVersion version) {
+
+        Entry entry
+                = entries.get(name);
+
+        if (entry == null)
+            return null;
+
+        long now
+                = System.nanoTime();
+
+        if (version == null
+                || !version.equals(entry.version)
+                || now - entry.loadedNanos
+                        >= policy.timeToLiveNanos() + gracePeriodNanos) {
+
+            remove(name, entry);
+            return null;
+        }
+
+        if (now - entry.loadedNanos >= policy.timeToLiveNanos())
+            return null;
+
+        entry.lastAccessNanos = now;
+        return entry.value;
+    }
+
+    /**
+     * Gets a cached secret that has expired, but is still within the grace
+     * period, without recording a hit or a miss.
+     *
+     * @param name The name of the secret.
+     * @param version The current version of the secret's encrypted file.
+     * @return The expired plaintext, or {@code null} if the secret is not
+     * cached, has not expired, is past the grace period, or was decrypted
+     * from a different version.
+     */
+    byte[] stale(
+            final String name,
+            final FileVersion version) {
+
+        Entry entry
+                = entries.get(name);
+
+        if (entry == null
+                || version == null
+                || !version.equals(entry.version))
+            return null;
+
+        long age
+                = System.nanoTime() - entry.loadedNanos;
+
+        return (age >= policy.timeToLiveNanos()
+                && age < policy.timeToLiveNanos() + gracePeriodNanos)
+                        ? entry.value
+                        : null;
+    }
+
+    /**
+     * @param gracePeriodNanos How long expired entries are kept, in
+     * nanoseconds. Zero removes entries as soon as they expire.
+     */
+    void setGracePeriodNanos(final long gracePeriodNanos) {
+        this.gracePeriodNanos = gracePeriodNanos;
+    }
+
+    /**
+     * Caches a secret, then evicts the least recently used entries until the
+     * cache is within its bounds. Secrets larger than the cache are not
+     * cached.
+     *
+     * @param name The name of the secret.
+     * @param version The version of the encrypted file the secret was
+     * decrypted from.
+     * @param value The plaintext.
+     */
+    void put(
+            final String name,
+            final FileVersion version,
+            final byte[] value) {
+
+        if (version == null)
+            return;
+
+        Entry entry
+                = new Entry(
+                        version,
+                        value);
+
+        if (entry.size > policy.maxBytes()) {
+            invalidate(name);
+            return;
+        }
+
+        Entry previous
+                = entries.put(
+                        name,
+                        entry);
+
+        bytes.addAndGet(
+                entry.size
+                        - ((previous == null)
+                                ? 0
+                                : previous.size));
+
+        evict();
+    }
+
+    /**
+     * Gets the decoded text of a cached secret, decoding and caching it with
+     * the entry on first use. Because the text is cached with the entry, it is
+     * invalidated together with the bytes.
+     *
+     * @param name The name of the secret.
+     * @param value The plaintext the caller read. If the cached entry has been
+     * replaced since, the plaintext is decoded but not cached.
+     * @param charset The {@link Charset} used to decode the plaintext. Text
+     * decoded with a different charset is decoded again.
+     * @return The {@link DecodedSecret}.
+     */
+    DecodedSecret decoded(
+            final String name,
+            final byte[] value,
+            final Charset charset) {
+
+        Entry entry
+                = entries.get(name);
+
+        if (entry == null
+                || entry.value != value)
+            return new DecodedSecret(
+                    value,
+                    charset);
+
+        DecodedSecret decoded
+                = entry.decoded;
+
+        if (decoded == null
+                || !decoded.charset().equals(charset)) {
+
+            decoded = new DecodedSecret(
+                    value,
+                    charset);
+
+            entry.decoded = decoded;
+        }
+
+        return decoded;
+    }
+
+    /**
+     * Claims the refresh of a cached secret that is within the refresh window
+     * of its expiry. Only one caller can claim the refresh of an entry, until
+     * the entry is replaced or the claim is released.
+     *
+     * @param name The name of the secret.
+     * @param refreshWindowNanos The refresh window in nanoseconds.
+     * @return {@code true} if the caller should refresh the secret, otherwise
+     * {@code false}.
+     */
+    boolean claimRefresh(
+            final String name,
+            final long refreshWindowNanos) {
+
+        Entry entry
+                = entries.get(name);
+
+        return entry != null
+                && System.nanoTime() - entry.loadedNanos
+                        >= policy.timeToLiveNanos() - refreshWindowNanos
+                && entry.refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * Releases a claim on the refresh of a cached secret, so that a later read
+     * can claim it again. E.g., when the refresh failed.
+     *
+     * @param name The name of the secret.
+     */
+    void releaseRefresh(final String name) {
+        Entry entry
+                = entries.get(name);
+
+        if (entry != null)
+            entry.refreshing.set(false);
+    }
+
+    /**
+     * Removes a secret from the cache.
+     *
+     * @param name The name of the secret.
+     */
+    void invalidate(final String name) {
+        Entry entry
+                = entries.get(name);
+
+        if (entry != null)
+            remove(name, entry);
+    }
+
+    /**
+     * Removes all secrets from the cache.
+     */
+    void invalidateAll() {
+        for (Map.Entry<String, Entry> entry : entries.entrySet())
+            remove(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * @return The number of cached secrets.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The approximate size of the cached plaintext in bytes.
+     */
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return The number of lookups that returned a cached secret.
+     */
+    long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that did not return a cached secret.
+     */
+    long misses() {
+        return misses.get();
+    }
+
+    private void evict() {
+        while (entries.size() > policy.maxEntries()
+                || bytes.get() > policy.maxBytes()) {
+
+            Map.Entry<String, Entry> eldest = null;
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (eldest == null
+                        || entry.getValue().lastAccessNanos
+                                - eldest.getValue().lastAccessNanos < 0)
+                    eldest = entry;
+            }
+
+            if (eldest == null)
+                return;
+
+            remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void remove(
+            final String name,
+            final Entry entry) {
+
+        if (entries.remove(name, entry))
+            bytes.addAndGet(-entry.size);
+    }
+
+    /**
+     * A cached secret.
+     */
+    private static final class Entry {
+
+        private final FileVersion version;
+        private final byte[] value;
+        private final long size;
+        private final long loadedNanos;
+        private volatile long lastAccessNanos;
+        private final AtomicBoolean refreshing;
+        private volatile DecodedSecret decoded;
+
+        private Entry(
+                final FileVersion version,
+                final byte[] value) {
+
+            this.version = version;
+            this.value = value;
+            this.size = value.length;
+            this.loadedNanos = System.nanoTime();
+            this.lastAccessNanos = loadedNanos;
+            this.refreshing = new AtomicBoolean();
+        }
+    }
+}
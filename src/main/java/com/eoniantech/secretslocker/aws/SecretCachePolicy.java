@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_BYTES;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_ENTRIES;
+import static com.eoniantech.secretslocker.aws.Constants.TIME_TO_LIVE;
+import static com.eoniantech.secretslocker.aws.Constants.TIME_TO_LIVE_UNIT;
+
+/**
+ * Immutable settings for caching decrypted secrets in a locker. The cache is
+ * bounded by the number of entries and by the total size of the cached
+ * plaintext. Entries expire after the time to live, and are invalidated
+ * whenever the encrypted file they were decrypted from changes.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @see AbtractFileSystemSecretsLocker#enableCaching(SecretCachePolicy)
+ */
+public final class SecretCachePolicy {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long timeToLiveNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries The maximum number of cached secrets.
+     * @param maxBytes The maximum total size of the cached plaintext in bytes.
+     * @param timeToLive The time a decrypted secret is cached for.
+     * @param timeToLiveUnit The {@link TimeUnit} of the timeToLive.
+     */
+    public SecretCachePolicy(
+            final int maxEntries,
+            final long maxBytes,
+            final long timeToLive,
+            final TimeUnit timeToLiveUnit) {
+
+        assertArgumentPositive(
+                MAX_ENTRIES,
+                maxEntries);
+
+        assertArgumentPositive(
+                MAX_BYTES,
+                maxBytes);
+
+        assertArgumentNotNull(
+                TIME_TO_LIVE_UNIT,
+                timeToLiveUnit);
+
+        assertArgumentPositive(
+                TIME_TO_LIVE,
+                timeToLiveUnit.toNanos(timeToLive));
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.timeToLiveNanos = timeToLiveUnit.toNanos(timeToLive);
+    }
+
+    /**
+     * @return The maximum number of cached secrets.
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return The maximum total size of the cached plaintext in bytes.
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The time a decrypted secret is cached for in nanoseconds.
+     */
+    public long timeToLiveNanos() {
+        return timeToLiveNanos;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key. The first caller for a key
+ * runs the call, and every caller that arrives while it is in flight waits
+ * for, and receives, the same result or exception. Once the call completes
+ * the next caller for the key starts a new call. Blocking and asynchronous
+ * callers for the same key share the same call.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @param <K> The type of the keys.
+ * @param <V> The type of the results.
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls;
+
+    /**
+     * Constructor.
+     */
+    SingleFlight() {
+        this.calls = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Runs the call for the key, or waits for the call already in flight.
+     *
+     * @param key The key.
+     * @param call The call.
+     * @return The result of the call.
+     */
+    V execute(
+            final K key,
+            final Supplier<V> call) {
+
+        CompletableFuture<V> flight
+                = new CompletableFuture<>();
+
+        CompletableFuture<V> inFlight
+                = calls.putIfAbsent(
+                        key,
+                        flight);
+
+        if (inFlight != null)
+            return await(inFlight);
+
+        try {
+            V value = call.get();
+            flight.complete(value);
+            return value;
+
+        } catch (RuntimeException | Error exception) {
+            flight.completeExceptionally(exception);
+            throw exception;
+
+        } finally {
+            calls.remove(key, flight);
+        }
+    }
+
+    /**
+     * Starts the asynchronous call for the key, or joins the call already in
+     * flight. Each caller receives its own dependent future, so cancelling or
+     * completing it does not affect other callers.
+     *
+     * @param key The key.
+     * @param call The asynchronous call.
+     * @return A {@link CompletableFuture} that completes with the result of
+     * the call.
+     */
+    CompletableFuture<V> executeAsync(
+            final K key,
+            final Supplier<CompletableFuture<V>> call) {
+
+        CompletableFuture<V> flight
+                = new CompletableFuture<>();
+
+        CompletableFuture<V> inFlight
+                = calls.putIfAbsent(
+                        key,
+                        flight);
+
+        if (inFlight != null)
+            return inFlight.thenApply(Function.identity());
+
+        try {
+            call.get()
+                    .whenComplete((value, exception) -> {
+                        calls.remove(key, flight);
+
+                        if (exception == null)
+                            flight.complete(value);
+                        else
+                            flight.completeExceptionally(
+                                    unwrap(exception));
+                    });
+
+        } catch (RuntimeException | Error exception) {
+            calls.remove(key, flight);
+            flight.completeExceptionally(exception);
+        }
+
+        return flight.thenApply(Function.identity());
+    }
+
+    /**
+     * @param exception An exception thrown by a {@link CompletableFuture}.
+     * @return The cause of the exception if it only wraps the cause,
+     * otherwise the exception.
+     */
+    static Throwable unwrap(final Throwable exception) {
+        if (exception instanceof CompletionException
+                && exception.getCause() != null)
+            return exception.getCause();
+
+        return exception;
+    }
+
+    private V await(final CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+
+        } catch (CompletionException exception) {
+            Throwable cause = unwrap(exception);
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new SecretsLockerException(cause);
+        }
+    }
+}
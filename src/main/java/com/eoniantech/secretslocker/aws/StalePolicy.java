@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.util.concurrent.TimeUnit;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNegative;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentNotNull;
+import static com.eoniantech.secretslocker.aws.Assertions.assertArgumentPositive;
+import static com.eoniantech.secretslocker.aws.Constants.GRACE_PERIOD;
+import static com.eoniantech.secretslocker.aws.Constants.GRACE_PERIOD_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.LATENCY_DEADLINE;
+import static com.eoniantech.secretslocker.aws.Constants.LATENCY_DEADLINE_UNIT;
+import static com.eoniantech.secretslocker.aws.Constants.MAX_RETRIES;
+import static com.eoniantech.secretslocker.aws.Constants.RETRY_DELAY;
+import static com.eoniantech.secretslocker.aws.Constants.RETRY_DELAY_UNIT;
+
+/**
+ * Immutable settings for serving expired cached secrets while they are
+ * revalidated. For the grace period after a cached secret expires, a read
+ * starts decrypting the secret again and waits for it for at most the latency
+ * deadline. If the decryption fails or is slower than the deadline, the
+ * expired value is returned instead, and the decryption is retried in the
+ * background with exponential backoff.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ * @see AbtractFileSystemSecretsLocker#enableStaleWhileRevalidate(StalePolicy)
+ */
+public final class StalePolicy {
+
+    /**
+     * The default number of times a failed revalidation is retried.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * The default delay, in milliseconds, before the first retry of a failed
+     * revalidation.
+     */
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+    private final long gracePeriodNanos;
+    private final long latencyDeadlineNanos;
+    private final int maxRetries;
+    private final long retryDelayNanos;
+
+    /**
+     * Constructor. Failed revalidations are retried
+     * {@link #DEFAULT_MAX_RETRIES} times, starting after
+     * {@link #DEFAULT_RETRY_DELAY_MILLIS}.
+     *
+     * @param gracePeriod How long after expiry a secret can be served.
+     * @param gracePeriodUnit The {@link TimeUnit} of the gracePeriod.
+     * @param latencyDeadline How long a read waits for the revalidation
+     * before it returns the expired value. Zero returns the expired value
+     * immediately.
+     * @param latencyDeadlineUnit The {@link TimeUnit} of the latencyDeadline.
+     */
+    public StalePolicy(
+            final long gracePeriod,
+            final TimeUnit gracePeriodUnit,
+            final long latencyDeadline,
+            final TimeUnit latencyDeadlineUnit) {
+
+        this(gracePeriod,
+                gracePeriodUnit,
+                latencyDeadline,
+                latencyDeadlineUnit,
+                DEFAULT_MAX_RETRIES,
+                DEFAULT_RETRY_DELAY_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param gracePeriod How long after expiry a secret can be served.
+     * @param gracePeriodUnit The {@link TimeUnit} of the gracePeriod.
+     * @param latencyDeadline How long a read waits for the revalidation
+     * before it returns the expired value. Zero returns the expired value
+     * immediately.
+     * @param latencyDeadlineUnit The {@link TimeUnit} of the latencyDeadline.
+     * @param maxRetries The number of times a failed revalidation is retried.
+     * @param retryDelay The delay before the first retry. Each further retry
+     * waits twice as long as the one before it.
+     * @param retryDelayUnit The {@link TimeUnit} of the retryDelay.
+     */
+    public StalePolicy(
+            final long gracePeriod,
+            final TimeUnit gracePeriodUnit,
+            final long latencyDeadline,
+            final TimeUnit latencyDeadlineUnit,
+            final int maxRetries,
+            final long retryDelay,
+            final TimeUnit retryDelayUnit) {
+
+        assertArgumentNotNull(
+                GRACE_PERIOD_UNIT,
+                gracePeriodUnit);
+
+        assertArgumentPositive(
+                GRACE_PERIOD,
+                gracePeriodUnit.toNanos(gracePeriod));
+
+        assertArgumentNotNull(
+                LATENCY_DEADLINE_UNIT,
+                latencyDeadlineUnit);
+
+        assertArgumentNotNegative(
+                LATENCY_DEADLINE,
+                latencyDeadline);
+
+        assertArgumentNotNegative(
+                MAX_RETRIES,
+                maxRetries);
+
+        assertArgumentNotNull(
+                RETRY_DELAY_UNIT,
+                retryDelayUnit);
+
+        assertArgumentPositive(
+                RETRY_DELAY,
+                retryDelayUnit.toNanos(retryDelay));
+
+        this.gracePeriodNanos = gracePeriodUnit.toNanos(gracePeriod);
+        this.latencyDeadlineNanos = latencyDeadlineUnit.toNanos(latencyDeadline);
+        this.maxRetries = maxRetries;
+        this.retryDelayNanos = retryDelayUnit.toNanos(retryDelay);
+    }
+
+    /**
+     * @return How long after expiry a secret can be served in nanoseconds.
+     */
+    public long gracePeriodNanos() {
+        return gracePeriodNanos;
+    }
+
+    /**
+     * @return How long a read waits for the revalidation in nanoseconds.
+     */
+    public long latencyDeadlineNanos() {
+        return latencyDeadlineNanos;
+    }
+
+    /**
+     * @return The number of times a failed revalidation is retried.
+     */
+    public int maxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @return The delay before the first retry in nanoseconds.
+     */
+    public long retryDelayNanos() {
+        return retryDelayNanos;
+    }
+}
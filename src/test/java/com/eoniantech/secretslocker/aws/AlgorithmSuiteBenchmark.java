@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures the CPU time of decrypting a message with each algorithm suite,
+ * for a small secret and for a 1 MiB file, and for the 1 MiB file with
+ * several frame sizes. CPU time is measured on the decrypting thread. Data
+ * keys are decrypted with an in-process master key, which costs the same for
+ * every suite, so no AWS access is required and the KMS call that a real
+ * decryption also makes is not measured. Not run by the build; run the main
+ * method with the number of small secrets to decrypt per suite as an optional
+ * argument.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class AlgorithmSuiteBenchmark {
+
+    private static final int DEFAULT_SMALL_MESSAGES = 500;
+    private static final int LARGE_MESSAGES = 10;
+    private static final int SMALL_SIZE = 1024;
+    private static final int LARGE_SIZE = 1 << 20;
+    private static final int[] FRAME_SIZES = {1024, 4096, 65536, 1 << 20, 0};
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private AlgorithmSuiteBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of small secrets to decrypt per suite. Defaults
+     * to 500.
+     * @throws IOException If the files can not be written or read.
+     */
+    public static void main(final String[] args) throws IOException {
+        int smallMessages = (args.length > 0)
+                ? Integer.parseInt(args[0])
+                : DEFAULT_SMALL_MESSAGES;
+
+        JceMasterKey masterKey = LocalMasterKeys.masterKey();
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        Random random = new Random(smallMessages);
+
+        char[] secret = new char[SMALL_SIZE];
+        for (int i = 0; i < secret.length; i++)
+            secret[i] = (char) ('a' + random.nextInt(26));
+
+        byte[] largePlaintext = new byte[LARGE_SIZE];
+        random.nextBytes(largePlaintext);
+
+        File largeFile = File.createTempFile("algorithm-suite-benchmark", ".bin");
+        largeFile.deleteOnExit();
+        Files.write(largeFile.toPath(), largePlaintext);
+
+        System.out.println(String.format(
+                "decrypt CPU time, %d x %d byte secret, %d x %d byte file",
+                smallMessages,
+                SMALL_SIZE,
+                LARGE_MESSAGES,
+                LARGE_SIZE));
+
+        System.out.println(String.format("%-52s %14s %14s", "algorithm suite", "us/secret", "ms/file"));
+
+        String[] encryptedValues = new String[CryptoAlgorithm.values().length];
+        File[] encryptedFiles = new File[CryptoAlgorithm.values().length];
+
+        for (CryptoAlgorithm algorithmSuite : CryptoAlgorithm.values()) {
+            KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+            encryptionService.setAlgorithmSuite(algorithmSuite);
+
+            encryptedValues[algorithmSuite.ordinal()] = encryptionService.encryptValue(new String(secret));
+            encryptedFiles[algorithmSuite.ordinal()] = encryptionService.encryptFile(largeFile);
+            encryptedFiles[algorithmSuite.ordinal()].deleteOnExit();
+
+            // Warm up every suite before measuring any of them.
+            decryptValues(decryptionService, encryptedValues[algorithmSuite.ordinal()], smallMessages / 5 + 1);
+            decryptFiles(decryptionService, encryptedFiles[algorithmSuite.ordinal()], 2);
+        }
+
+        for (CryptoAlgorithm algorithmSuite : CryptoAlgorithm.values()) {
+            String encryptedValue = encryptedValues[algorithmSuite.ordinal()];
+            File encryptedFile = encryptedFiles[algorithmSuite.ordinal()];
+
+            long valueNanos = decryptValues(decryptionService, encryptedValue, smallMessages);
+            long fileNanos = decryptFiles(decryptionService, encryptedFile, LARGE_MESSAGES);
+
+            System.out.println(String.format(
+                    "%-52s %14.1f %14.2f",
+                    algorithmSuite,
+                    valueNanos / 1e3 / smallMessages,
+                    fileNanos / 1e6 / LARGE_MESSAGES));
+        }
+
+        System.out.println();
+        System.out.println(String.format("%-52s %14s", "frame size, " + CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA256, "ms/file"));
+
+        for (int frameSize : FRAME_SIZES) {
+            KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+            encryptionService.setAlgorithmSuite(CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA256);
+            encryptionService.setFrameSize(frameSize);
+
+            File encryptedFile = encryptionService.encryptFile(largeFile);
+            encryptedFile.deleteOnExit();
+
+            decryptFiles(decryptionService, encryptedFile, 2);
+            long fileNanos = decryptFiles(decryptionService, encryptedFile, LARGE_MESSAGES);
+
+            System.out.println(String.format(
+                    "%-52s %14.2f",
+                    (frameSize == 0) ? "unframed" : frameSize + " bytes",
+                    fileNanos / 1e6 / LARGE_MESSAGES));
+        }
+    }
+
+    private static long decryptValues(
+            final KmsDecryptionService decryptionService,
+            final String encryptedValue,
+            final int messages) {
+
+        long start = THREADS.getCurrentThreadCpuTime();
+
+        for (int i = 0; i < messages; i++)
+            decryptionService.decryptValue(encryptedValue);
+
+        return THREADS.getCurrentThreadCpuTime() - start;
+    }
+
+    private static long decryptFiles(
+            final KmsDecryptionService decryptionService,
+            final File encryptedFile,
+            final int messages) {
+
+        long start = THREADS.getCurrentThreadCpuTime();
+
+        for (int i = 0; i < messages; i++)
+            decryptionService.decryptFileToBytes(encryptedFile);
+
+        return THREADS.getCurrentThreadCpuTime() - start;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.DataKey;
+import com.amazonaws.encryptionsdk.EncryptedDataKey;
+import com.amazonaws.encryptionsdk.MasterKeyProvider;
+import com.amazonaws.encryptionsdk.MasterKeyRequest;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.EncryptionReport;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encrypting a directory of small files one after another, against
+ * {@link KmsEncryptionService#encryptDirectory(Path, String)} at several batch
+ * concurrencies, with and without data key caching. Files are encrypted with an in-process master key that
+ * sleeps for a simulated KMS round trip each time a data key is generated, so
+ * no AWS access is required. Not run by the build; run the main method with
+ * the number of files and the simulated KMS latency in milliseconds as
+ * optional arguments.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class BulkEncryptionBenchmark {
+
+    private static final int DEFAULT_FILES = 200;
+    private static final long DEFAULT_LATENCY_MILLIS = 20;
+    private static final int FILE_SIZE = 4096;
+    private static final int[] CONCURRENCIES = {1, 4, 8, 16, 32};
+
+    private BulkEncryptionBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of files, defaults to 200, and the simulated KMS
+     * latency in milliseconds, defaults to 20.
+     * @throws IOException If the files can not be written.
+     */
+    public static void main(final String[] args) throws IOException {
+        int files = (args.length > 0)
+                ? Integer.parseInt(args[0])
+                : DEFAULT_FILES;
+
+        long latencyMillis = (args.length > 1)
+                ? Long.parseLong(args[1])
+                : DEFAULT_LATENCY_MILLIS;
+
+        Path directory = Files.createTempDirectory("bulk-encryption-benchmark");
+        Random random = new Random(files);
+        byte[] plaintext = new byte[FILE_SIZE];
+
+        for (int i = 0; i < files; i++) {
+            random.nextBytes(plaintext);
+            Files.write(directory.resolve("secret" + i + ".properties"), plaintext);
+        }
+
+        KmsEncryptionService encryptionService
+                = new KmsEncryptionService(
+                        new SlowMasterKeyProvider(
+                                LocalMasterKeys.masterKey(),
+                                latencyMillis));
+
+        System.out.println(String.format(
+                "%d files of %d bytes, %d ms simulated KMS latency",
+                files,
+                FILE_SIZE,
+                latencyMillis));
+
+        long start = System.nanoTime();
+
+        for (File file : directory.toFile().listFiles())
+            encryptionService.encryptFile(file);
+
+        System.out.println(String.format(
+                "%-22s %8d ms",
+                "one after another",
+                (System.nanoTime() - start) / 1_000_000));
+
+        for (int concurrency : CONCURRENCIES) {
+            encryptionService.setBatchConcurrency(concurrency);
+
+            EncryptionReport report
+                    = encryptionService.encryptDirectory(
+                            directory,
+                            "*.properties");
+
+            System.out.println(String.format(
+                    "%-22s %8d ms  %s",
+                    "batch concurrency " + concurrency,
+                    report.elapsed().toMillis(),
+                    report));
+        }
+
+        encryptionService.setBatchConcurrency(8);
+        encryptionService.enableDataKeyCaching(
+                new DataKeyCachePolicy(
+                        1,
+                        5,
+                        TimeUnit.MINUTES,
+                        files,
+                        Long.MAX_VALUE));
+
+        EncryptionReport cached
+                = encryptionService.encryptDirectory(
+                        directory,
+                        "*.properties");
+
+        System.out.println(String.format(
+                "%-22s %8d ms  %s, %d data keys generated",
+                "8 + data key caching",
+                cached.elapsed().toMillis(),
+                cached,
+                encryptionService.dataKeyCacheMisses()));
+
+        for (File file : directory.toFile().listFiles())
+            file.delete();
+
+        Files.delete(directory);
+    }
+
+    /**
+     * Master key provider that sleeps before each data key is generated or
+     * decrypted, to stand in for a KMS round trip.
+     */
+    private static final class SlowMasterKeyProvider
+            extends MasterKeyProvider<JceMasterKey> {
+
+        private final JceMasterKey masterKey;
+        private final long latencyMillis;
+
+        SlowMasterKeyProvider(
+                final JceMasterKey masterKey,
+                final long latencyMillis) {
+
+            this.masterKey = masterKey;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public String getDefaultProviderId() {
+            return masterKey.getProviderId();
+        }
+
+        @Override
+        public JceMasterKey getMasterKey(
+                final String provider,
+                final String keyId) {
+
+            return masterKey.getMasterKey(provider, keyId);
+        }
+
+        @Override
+        public List<JceMasterKey> getMasterKeysForEncryption(
+                final MasterKeyRequest request) {
+
+            sleep();
+            return Collections.singletonList(masterKey);
+        }
+
+        @Override
+        public DataKey<JceMasterKey> decryptDataKey(
+                final CryptoAlgorithm algorithm,
+                final Collection<? extends EncryptedDataKey> encryptedDataKeys,
+                final Map<String, String> encryptionContext) {
+
+            sleep();
+            return masterKey.decryptDataKey(algorithm, encryptedDataKeys, encryptionContext);
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(latencyMillis);
+
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
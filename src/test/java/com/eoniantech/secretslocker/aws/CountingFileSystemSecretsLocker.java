@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link FileSystemSecretsLocker} for unit tests. Files are "decrypted" by
+ * reading their bytes as is, so no AWS access is required, and every
+ * decryption is counted.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+class CountingFileSystemSecretsLocker extends FileSystemSecretsLocker {
+
+    private final AtomicInteger decryptions = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long decryptDelayMillis;
+    private volatile RuntimeException decryptFailure;
+
+    /**
+     * Constructor.
+     *
+     * @param lockerPath The absolute path to the local locker.
+     */
+    CountingFileSystemSecretsLocker(final String lockerPath) {
+        super(lockerPath);
+    }
+
+    /**
+     * Creates a temporary locker directory that is deleted on exit.
+     *
+     * @return The locker directory.
+     * @throws IOException If the directory can not be created.
+     */
+    static File createLockerDirectory() throws IOException {
+        File directory
+                = Files.createTempDirectory("locker")
+                        .toFile();
+
+        directory.deleteOnExit();
+
+        return directory;
+    }
+
+    /**
+     * Writes a plain-text "encrypted" file into the locker directory.
+     *
+     * @param directory The locker directory.
+     * @param fileName The name of the file.
+     * @param contents The contents of the file.
+     * @return The file.
+     * @throws IOException If the file can not be written.
+     */
+    static File writeSecret(
+            final File directory,
+            final String fileName,
+            final String contents) throws IOException {
+
+        File file
+                = new File(
+                        directory,
+                        fileName);
+
+        Files.write(
+                file.toPath(),
+                contents.getBytes(StandardCharsets.UTF_8));
+
+        file.deleteOnExit();
+
+        return file;
+    }
+
+    /**
+     * @return The number of decryptions.
+     */
+    int decryptions() {
+        return decryptions.get();
+    }
+
+    /**
+     * @return The largest number of decryptions that were in flight at the
+     * same time.
+     */
+    int maxDecryptionsInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * @param decryptDelayMillis The time each decryption takes.
+     */
+    void setDecryptDelayMillis(final long decryptDelayMillis) {
+        this.decryptDelayMillis = decryptDelayMillis;
+    }
+
+    /**
+     * @param decryptFailure The exception every decryption throws, or
+     * {@code null} to decrypt normally.
+     */
+    void setDecryptFailure(final RuntimeException decryptFailure) {
+        this.decryptFailure = decryptFailure;
+    }
+
+    @Override
+    protected byte[] decrypt(final File file) {
+        decryptions.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+        try {
+            return decryptFile(file);
+
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private byte[] decryptFile(final File file) {
+        if (decryptDelayMillis > 0) {
+            try {
+                Thread.sleep(decryptDelayMillis);
+
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new SecretsLockerException(exception);
+            }
+        }
+
+        if (decryptFailure != null)
+            throw decryptFailure;
+
+        try {
+            return Files.readAllBytes(file.toPath());
+
+        } catch (IOException exception) {
+            throw new SecretsLockerException(exception);
+        }
+    }
+
+    @Override
+    protected CompletableFuture<byte[]> decryptAsync(final File file) {
+        return CompletableFuture
+                .supplyAsync(
+                        () -> decrypt(file),
+                        executor());
+    }
+
+    @Override
+    protected InputStream decryptAsStream(final File file) {
+        decryptions.incrementAndGet();
+
+        try {
+            return new FileInputStream(file);
+
+        } catch (IOException exception) {
+            throw new SecretsLockerException(exception);
+        }
+    }
+}
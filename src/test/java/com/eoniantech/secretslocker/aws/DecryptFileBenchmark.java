@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import static com.eoniantech.secretslocker.aws.StreamingDecryptionBenchmark.peakHeapUsed;
+import static com.eoniantech.secretslocker.aws.StreamingDecryptionBenchmark.resetPeaks;
+
+/**
+ * Measures the throughput and peak heap of
+ * {@link KmsDecryptionService#decryptFile(File, File)} against the stream
+ * based {@link KmsDecryptionService#decryptFile(String, String)}, across file
+ * sizes. Uses an in-process master key, so no AWS access is required. Not run
+ * by the build; run the main method with the file sizes in MB as arguments,
+ * e.g., 16 256 1024, and, e.g., -Xmx256m to show that memory use does not
+ * depend on the file size.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class DecryptFileBenchmark {
+
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int[] DEFAULT_SIZES_MB = {16, 128, 512};
+
+    private DecryptFileBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The file sizes in MB. Defaults to 16, 128 and 512.
+     * @throws IOException If the files can not be written or read.
+     */
+    public static void main(final String[] args) throws IOException {
+        int[] sizesMb = DEFAULT_SIZES_MB;
+
+        if (args.length > 0) {
+            sizesMb = new int[args.length];
+
+            for (int i = 0; i < args.length; i++)
+                sizesMb[i] = Integer.parseInt(args[i]);
+        }
+
+        JceMasterKey masterKey = LocalMasterKeys.masterKey();
+        KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+        encryptionService.enableNioFileIo(new FileIoPolicy());
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+
+        File directory = Files.createTempDirectory("decrypt-file-benchmark").toFile();
+        File decryptedFile = new File(directory, "decrypted.bin");
+
+        System.out.println(String.format("%8s %24s %12s %12s", "size", "path", "MB/s", "peak heap")
+                + " (heap above the post-GC baseline)");
+
+        for (int sizeMb : sizesMb) {
+            File file = new File(directory, "plaintext.bin");
+            writeRandom(file, sizeMb);
+            File encryptedFile = encryptionService.encryptFile(file);
+            file.delete();
+
+            // Warm up both paths before measuring.
+            decryptionService.decryptFile(encryptedFile, decryptedFile);
+            decryptionService.decryptFile(encryptedFile.getAbsolutePath(), decryptedFile.getAbsolutePath());
+
+            long baseline = resetPeaks();
+            long start = System.nanoTime();
+            decryptionService.decryptFile(encryptedFile, decryptedFile);
+            report(sizeMb, "decryptFile(File, File)", System.nanoTime() - start, peakHeapUsed() - baseline);
+
+            baseline = resetPeaks();
+            start = System.nanoTime();
+            decryptionService.decryptFile(encryptedFile.getAbsolutePath(), decryptedFile.getAbsolutePath());
+            report(sizeMb, "decryptFile(String, ..)", System.nanoTime() - start, peakHeapUsed() - baseline);
+
+            encryptedFile.delete();
+            decryptedFile.delete();
+        }
+
+        directory.delete();
+    }
+
+    private static void report(
+            final int sizeMb,
+            final String path,
+            final long nanos,
+            final long peakHeap) {
+
+        System.out.println(String.format(
+                "%6d MB %24s %12.1f %9d MB",
+                sizeMb,
+                path,
+                sizeMb / (nanos / 1e9),
+                peakHeap / MEGABYTE));
+    }
+
+    private static void writeRandom(
+            final File file,
+            final int sizeMb) throws IOException {
+
+        Random random = new Random(sizeMb);
+        byte[] chunk = new byte[MEGABYTE];
+
+        try (OutputStream outputStream = Files.newOutputStream(file.toPath())) {
+            for (int i = 0; i < sizeMb; i++) {
+                random.nextBytes(chunk);
+                outputStream.write(chunk);
+            }
+        }
+    }
+}
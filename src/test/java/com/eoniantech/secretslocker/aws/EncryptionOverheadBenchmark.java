@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.AwsCrypto;
+import com.amazonaws.encryptionsdk.CryptoOutputStream;
+import com.amazonaws.encryptionsdk.MasterKeyProvider;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.amazonaws.util.IOUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures the per-file overhead of encrypting many small files with one
+ * {@link KmsEncryptionService}, against the previous behaviour of building a
+ * new {@link AwsCrypto} and new regional KMS master key providers, with their
+ * KMS clients, for every file. The KMS providers are only built, never
+ * called, and files are encrypted with an in-process master key, so no AWS
+ * access is required, and the saving on KMS connections that are reused
+ * rather than opened for every file is not measured. Not run by the build;
+ * run the main method with the number of files as an optional argument.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class EncryptionOverheadBenchmark {
+
+    private static final int DEFAULT_FILES = 500;
+    private static final int FILE_SIZE = 1024;
+    private static final String ALIAS = "alias/benchmark";
+    private static final String ACCOUNT = "123456789012";
+    private static final String[] REGIONS = {"us-east-1", "us-west-2", "eu-west-1"};
+
+    private EncryptionOverheadBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of files. Defaults to 500.
+     * @throws IOException If the files can not be written or read.
+     */
+    public static void main(final String[] args) throws IOException {
+        int files = (args.length > 0)
+                ? Integer.parseInt(args[0])
+                : DEFAULT_FILES;
+
+        JceMasterKey masterKey = LocalMasterKeys.masterKey();
+        File directory = Files.createTempDirectory("encryption-overhead-benchmark").toFile();
+        File[] plaintextFiles = new File[files];
+        Random random = new Random(files);
+        byte[] plaintext = new byte[FILE_SIZE];
+
+        for (int i = 0; i < files; i++) {
+            random.nextBytes(plaintext);
+            plaintextFiles[i] = new File(directory, "secret" + i + ".txt");
+            Files.write(plaintextFiles[i].toPath(), plaintext);
+        }
+
+        // Warm up both paths before measuring.
+        rebuildPerFile(masterKey, plaintextFiles);
+        reusePerService(masterKey, plaintextFiles);
+
+        long before = rebuildPerFile(masterKey, plaintextFiles);
+        long after = reusePerService(masterKey, plaintextFiles);
+        long build = buildOnly(files);
+
+        System.out.println(String.format("%d files of %d bytes, %d regions", files, FILE_SIZE, REGIONS.length));
+        System.out.println(String.format("%-28s %10.1f us/file", "rebuild per file (before)", before / 1e3 / files));
+        System.out.println(String.format("%-28s %10.1f us/file", "reuse per service (after)", after / 1e3 / files));
+        System.out.println(String.format("%-28s %10.1f us/file", "building providers alone", build / 1e3 / files));
+
+        for (File file : directory.listFiles())
+            file.delete();
+
+        directory.delete();
+    }
+
+    private static long rebuildPerFile(
+            final JceMasterKey masterKey,
+            final File[] plaintextFiles) throws IOException {
+
+        long start = System.nanoTime();
+
+        for (File file : plaintextFiles) {
+            MasterKeyProvider<?> kmsProviders = KmsEncryptionService.kmsMasterKeyProvider(ALIAS, ACCOUNT, new AdaptiveConcurrencyLimiter(), REGIONS);
+
+            if (kmsProviders.getDefaultProviderId() == null)
+                throw new IllegalStateException();
+
+            AwsCrypto awsCrypto = new AwsCrypto();
+
+            try (FileInputStream fileInputStream = new FileInputStream(file);
+                    CryptoOutputStream<?> encryptingStream = awsCrypto.createEncryptingStream(
+                            masterKey,
+                            new FileOutputStream(file.getAbsolutePath() + ".encrypted"))) {
+
+                IOUtils.copy(fileInputStream, encryptingStream);
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long buildOnly(final int files) {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < files; i++) {
+            new AwsCrypto();
+
+            if (KmsEncryptionService.kmsMasterKeyProvider(ALIAS, ACCOUNT, new AdaptiveConcurrencyLimiter(), REGIONS).getDefaultProviderId() == null)
+                throw new IllegalStateException();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long reusePerService(
+            final JceMasterKey masterKey,
+            final File[] plaintextFiles) {
+
+        long start = System.nanoTime();
+        KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+
+        for (File file : plaintextFiles)
+            encryptionService.encryptFile(file);
+
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the throughput of {@link KmsEncryptionService#encryptFile(File)}
+ * and {@link KmsDecryptionService#decryptFile(String, String)} through
+ * streams against the {@link FileIoPolicy} NIO paths, across file sizes.
+ * Uses an in-process master key, so no AWS access is required. Not run by the
+ * build; run the main method with the file sizes in MB as arguments, e.g.,
+ * 16 64 256.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class FileIoBenchmark {
+
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int[] DEFAULT_SIZES_MB = {16, 64, 256};
+    private static final int RUNS = 3;
+
+    private static final String[] LABELS = {
+        "streams",
+        "nio heap",
+        "nio direct",
+        "nio direct mmap"};
+
+    private static final FileIoPolicy[] POLICIES = {
+        null,
+        new FileIoPolicy(FileIoPolicy.DEFAULT_BUFFER_SIZE, false, false),
+        new FileIoPolicy(FileIoPolicy.DEFAULT_BUFFER_SIZE, true, false),
+        new FileIoPolicy()};
+
+    private FileIoBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The file sizes in MB. Defaults to 16, 64 and 256.
+     * @throws IOException If the files can not be written or read.
+     */
+    public static void main(final String[] args) throws IOException {
+        int[] sizesMb = DEFAULT_SIZES_MB;
+
+        if (args.length > 0) {
+            sizesMb = new int[args.length];
+
+            for (int i = 0; i < args.length; i++)
+                sizesMb[i] = Integer.parseInt(args[i]);
+        }
+
+        JceMasterKey masterKey = LocalMasterKeys.masterKey();
+        File directory = Files.createTempDirectory("file-io-benchmark").toFile();
+
+        System.out.println(String.format("%8s %16s %14s %14s", "size", "path", "encrypt MB/s", "decrypt MB/s")
+                + " (best of " + RUNS + " runs)");
+
+        for (int sizeMb : sizesMb) {
+            File file = new File(directory, "plaintext-" + sizeMb + ".bin");
+            writeRandom(file, sizeMb);
+
+            for (int i = 0; i < POLICIES.length; i++) {
+                KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+                KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+
+                if (POLICIES[i] != null) {
+                    encryptionService.enableNioFileIo(POLICIES[i]);
+                    decryptionService.enableNioFileIo(POLICIES[i]);
+                }
+
+                File decryptedFile = new File(directory, "decrypted-" + sizeMb + ".bin");
+                long encryptNanos = Long.MAX_VALUE;
+                long decryptNanos = Long.MAX_VALUE;
+
+                // The first run warms up the path and is not measured.
+                for (int run = 0; run <= RUNS; run++) {
+                    long start = System.nanoTime();
+                    File encryptedFile = encryptionService.encryptFile(file);
+                    long encrypted = System.nanoTime();
+                    decryptionService.decryptFile(encryptedFile.getAbsolutePath(), decryptedFile.getAbsolutePath());
+                    long decrypted = System.nanoTime();
+
+                    if (run > 0) {
+                        encryptNanos = Math.min(encryptNanos, encrypted - start);
+                        decryptNanos = Math.min(decryptNanos, decrypted - encrypted);
+                    }
+
+                    encryptedFile.delete();
+                }
+
+                System.out.println(String.format(
+                        "%6d MB %16s %14.1f %14.1f",
+                        sizeMb,
+                        LABELS[i],
+                        throughput(sizeMb, encryptNanos),
+                        throughput(sizeMb, decryptNanos)));
+
+                decryptedFile.delete();
+            }
+
+            file.delete();
+        }
+
+        directory.delete();
+    }
+
+    private static void writeRandom(
+            final File file,
+            final int sizeMb) throws IOException {
+
+        Random random = new Random(sizeMb);
+        byte[] chunk = new byte[MEGABYTE];
+
+        try (OutputStream outputStream = Files.newOutputStream(file.toPath())) {
+            for (int i = 0; i < sizeMb; i++) {
+                random.nextBytes(chunk);
+                outputStream.write(chunk);
+            }
+        }
+    }
+
+    private static double throughput(
+            final int sizeMb,
+            final long nanos) {
+
+        return sizeMb / (nanos / 1e9);
+    }
+}
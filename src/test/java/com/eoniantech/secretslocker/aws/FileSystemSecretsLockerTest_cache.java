@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for caching in the {@link FileSystemSecretsLocker}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_cache extends AbstractTest {
+
+    private File directory;
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        directory = createLockerDirectory();
+        writeSecret(directory, "one.txt", "one");
+        writeSecret(directory, "two.txt", "two");
+        writeSecret(directory, "three.txt", "three");
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.add("One", "one.txt");
+        secretsLocker.add("Two", "two.txt");
+        secretsLocker.add("Three", "three.txt");
+    }
+
+    @Test
+    public void testCache_disabledByDefault() {
+        assertFalse(secretsLocker.isCachingEnabled());
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testCache_hit() {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals(1, secretsLocker.decryptions());
+        assertEquals(2, secretsLocker.cacheHits());
+        assertEquals(1, secretsLocker.cacheMisses());
+    }
+
+    @Test
+    public void testCache_fileChanged() throws IOException {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        assertEquals("one", secretsLocker.get("One"));
+        writeSecret(directory, "one.txt", "changed");
+
+        assertEquals("changed", secretsLocker.get("One"));
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testCache_expired() throws InterruptedException {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 50, TimeUnit.MILLISECONDS));
+
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(100);
+
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testCache_maxEntries() {
+        secretsLocker.enableCaching(new SecretCachePolicy(2, 1024, 1, TimeUnit.MINUTES));
+
+        secretsLocker.get("One");
+        secretsLocker.get("Two");
+        secretsLocker.get("Two");
+        secretsLocker.get("Three");
+        assertEquals(3, secretsLocker.decryptions());
+
+        // One was the least recently used, so it was evicted.
+        secretsLocker.get("Two");
+        secretsLocker.get("Three");
+        assertEquals(3, secretsLocker.decryptions());
+        secretsLocker.get("One");
+        assertEquals(4, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testCache_maxBytes() {
+        // "three" is 5 bytes, which does not fit with "one" and "two".
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 7, 1, TimeUnit.MINUTES));
+
+        secretsLocker.get("One");
+        secretsLocker.get("Two");
+        secretsLocker.get("Three");
+        secretsLocker.get("Three");
+        assertEquals(3, secretsLocker.decryptions());
+
+        secretsLocker.get("One");
+        assertEquals(4, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testCache_replacedSecretIsInvalidated() throws IOException {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        assertEquals("one", secretsLocker.get("One"));
+        secretsLocker.add("One", "two.txt");
+
+        assertEquals("two", secretsLocker.get("One"));
+    }
+
+    @Test
+    public void testCache_invalidate() {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        secretsLocker.get("One");
+        secretsLocker.invalidate("One");
+        secretsLocker.get("One");
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCache_nullPolicy() {
+        secretsLocker.enableCaching(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCachePolicy_zeroMaxEntries() {
+        new SecretCachePolicy(0, 1024, 1, TimeUnit.MINUTES);
+    }
+}
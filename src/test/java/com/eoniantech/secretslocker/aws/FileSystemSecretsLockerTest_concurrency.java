@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Multi-threaded stress tests that mix calls to the add, get and contains
+ * methods of the {@link FileSystemSecretsLocker}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_concurrency extends AbstractTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS = 5000;
+    private static final int SECRETS = 50;
+
+    private CountingFileSystemSecretsLocker secretsLocker;
+    private ExecutorService executor;
+
+    @Before
+    public void before() throws IOException {
+        File directory = createLockerDirectory();
+
+        // Every secret has two files with the same contents, so the
+        // registered file can be replaced while the secret is being read.
+        for (int i = 0; i < SECRETS; i++) {
+            writeSecret(directory, fileName(i, 0), name(i));
+            writeSecret(directory, fileName(i, 1), name(i));
+        }
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrency_addGetContains() throws Exception {
+        stress();
+    }
+
+    @Test
+    public void testConcurrency_addGetContainsWithCaching() throws Exception {
+        secretsLocker.enableCaching(new SecretCachePolicy(SECRETS / 2, 1024, 1, TimeUnit.MINUTES));
+        stress();
+    }
+
+    private void stress() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(() -> {
+                barrier.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int reads = 0;
+
+                for (int i = 0; i < OPERATIONS; i++) {
+                    int secret = random.nextInt(SECRETS);
+                    String name = name(secret);
+
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            secretsLocker.add(name, fileName(secret, random.nextInt(2)));
+                            break;
+
+                        case 1:
+                            secretsLocker.contains(name);
+                            break;
+
+                        default:
+                            if (secretsLocker.contains(name)) {
+                                assertEquals(name, secretsLocker.get(name));
+                                reads++;
+                            }
+                    }
+                }
+
+                return reads;
+            }));
+        }
+
+        int reads = 0;
+
+        for (Future<Integer> result : results)
+            reads += result.get(1, TimeUnit.MINUTES);
+
+        assertTrue(reads > 0);
+
+        for (int i = 0; i < SECRETS; i++) {
+            secretsLocker.add(name(i), fileName(i, 0));
+            assertTrue(secretsLocker.contains(name(i)));
+            assertEquals(name(i), secretsLocker.get(name(i)));
+        }
+    }
+
+    private static String name(final int secret) {
+        return "Secret" + secret;
+    }
+
+    private static String fileName(
+            final int secret,
+            final int copy) {
+
+        return name(secret) + "-" + copy + ".txt";
+    }
+}
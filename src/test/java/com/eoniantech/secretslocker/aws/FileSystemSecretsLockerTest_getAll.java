@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.BatchResult;
+import com.eoniantech.secretslocker.PropertiesBatchResult;
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link FileSystemSecretsLocker} getAll and
+ * getAllAsProperties methods.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_getAll extends AbstractTest {
+
+    private static final int SECRETS = 16;
+
+    private File directory;
+    private CountingFileSystemSecretsLocker secretsLocker;
+    private List<String> names;
+
+    @Before
+    public void before() throws IOException {
+        directory = createLockerDirectory();
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        names = new ArrayList<>();
+
+        for (int i = 0; i < SECRETS; i++) {
+            writeSecret(directory, "secret" + i + ".txt", "key" + i + "=value" + i + "\nshared=" + i);
+            secretsLocker.add("Secret" + i, "secret" + i + ".txt");
+            names.add("Secret" + i);
+        }
+    }
+
+    @Test
+    public void testGetAll() {
+        BatchResult<String> result = secretsLocker.getAll(names);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(names, new ArrayList<>(result.values().keySet()));
+        assertEquals("key3=value3\nshared=3", result.get("Secret3"));
+        assertEquals(SECRETS, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testGetAll_failuresDoNotAbortTheBatch() throws IOException {
+        File missing = writeSecret(directory, "missing.txt", "missing");
+        secretsLocker.add("Missing", "missing.txt");
+        assertTrue(missing.delete());
+
+        List<String> batch = new ArrayList<>(names);
+        batch.add(2, "Unknown");
+        batch.add(5, "Missing");
+
+        BatchResult<String> result = secretsLocker.getAll(batch);
+
+        assertFalse(result.isSuccessful());
+        assertEquals(SECRETS, result.values().size());
+        assertEquals(Arrays.asList("Unknown", "Missing"), new ArrayList<>(result.failures().keySet()));
+        assertTrue(result.failures().get("Unknown") instanceof SecretsLockerException);
+        assertTrue(result.failures().get("Missing") instanceof SecretsLockerException);
+    }
+
+    @Test
+    public void testGetAll_boundedConcurrency() {
+        secretsLocker.setDecryptDelayMillis(50);
+        secretsLocker.setBatchConcurrency(4);
+
+        assertTrue(secretsLocker.getAll(names).isSuccessful());
+        assertTrue(secretsLocker.maxDecryptionsInFlight() <= 4);
+        assertTrue(secretsLocker.maxDecryptionsInFlight() > 1);
+    }
+
+    @Test
+    public void testGetAll_parallel() {
+        secretsLocker.setDecryptDelayMillis(200);
+        secretsLocker.setBatchConcurrency(SECRETS);
+
+        long start = System.nanoTime();
+        assertTrue(secretsLocker.getAll(names).isSuccessful());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < SECRETS * 200 / 2);
+    }
+
+    @Test
+    public void testGetAll_duplicateNames() {
+        BatchResult<String> result = secretsLocker.getAll(Arrays.asList("Secret1", "Secret1", "Secret2"));
+
+        assertEquals(2, result.values().size());
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testGetAll_empty() {
+        BatchResult<String> result = secretsLocker.getAll(Collections.<String>emptyList());
+
+        assertTrue(result.isSuccessful());
+        assertTrue(result.values().isEmpty());
+    }
+
+    @Test
+    public void testGetAllAsProperties() {
+        PropertiesBatchResult result = secretsLocker.getAllAsProperties(names);
+        Properties merged = result.merged();
+
+        assertTrue(result.isSuccessful());
+        assertEquals("value3", result.get("Secret3").getProperty("key3"));
+        assertEquals("value0", merged.getProperty("key0"));
+        assertEquals("value15", merged.getProperty("key15"));
+        assertEquals(String.valueOf(SECRETS - 1), merged.getProperty("shared"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAll_null() {
+        secretsLocker.getAll(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAll_emptyName() {
+        secretsLocker.getAll(Arrays.asList("Secret1", " "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetBatchConcurrency_zero() {
+        secretsLocker.setBatchConcurrency(0);
+    }
+}
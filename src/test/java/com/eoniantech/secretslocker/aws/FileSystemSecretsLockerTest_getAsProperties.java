@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link FileSystemSecretsLocker} getAsProperties method.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_getAsProperties extends AbstractTest {
+
+    private File directory;
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        directory = createLockerDirectory();
+        writeSecret(directory, "db.properties", "user=admin\npassword=p\u00e4ssw\u00f6rd\n");
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.add("Database", "db.properties");
+    }
+
+    @Test
+    public void testGetAsProperties() {
+        Properties properties = secretsLocker.getAsProperties("Database");
+
+        assertEquals("admin", properties.getProperty("user"));
+        assertEquals("p\u00e4ssw\u00f6rd", properties.getProperty("password"));
+    }
+
+    @Test
+    public void testGetAsProperties_parsedOncePerVersion() throws IOException {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        Properties first = secretsLocker.getAsProperties("Database");
+        assertSame(first, secretsLocker.getAsProperties("Database"));
+        assertSame(first, secretsLocker.getAsPropertiesAsync("Database").join());
+
+        writeSecret(directory, "db.properties", "user=other\n");
+        Properties changed = secretsLocker.getAsProperties("Database");
+
+        assertNotSame(first, changed);
+        assertEquals("other", changed.getProperty("user"));
+    }
+
+    @Test
+    public void testGetAsProperties_invalidatedWithValue() {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        Properties first = secretsLocker.getAsProperties("Database");
+        secretsLocker.invalidate("Database");
+
+        assertNotSame(first, secretsLocker.getAsProperties("Database"));
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testGetAsProperties_notCachedWithoutCaching() {
+        assertNotSame(
+                secretsLocker.getAsProperties("Database"),
+                secretsLocker.getAsProperties("Database"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAsProperties_setProperty() {
+        secretsLocker.getAsProperties("Database").setProperty("user", "root");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAsProperties_put() {
+        secretsLocker.getAsProperties("Database").put("user", "root");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAsProperties_remove() {
+        secretsLocker.getAsProperties("Database").remove("user");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAsProperties_entrySet() {
+        secretsLocker.getAsProperties("Database").entrySet().iterator().next().setValue("root");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAsProperties_keySet() {
+        secretsLocker.getAsProperties("Database").keySet().clear();
+    }
+}
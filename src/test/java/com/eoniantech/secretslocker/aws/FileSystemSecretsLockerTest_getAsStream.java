@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.util.IOUtils;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link FileSystemSecretsLocker} getAsStream method.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_getAsStream extends AbstractTest {
+
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        File directory = createLockerDirectory();
+        writeSecret(directory, "one.txt", "one");
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.add("One", "one.txt");
+    }
+
+    @Test
+    public void testGetAsStream() throws IOException {
+        try (InputStream inputStream = secretsLocker.getAsStream("One")) {
+            assertEquals("one", IOUtils.toString(inputStream));
+        }
+    }
+
+    @Test
+    public void testGetAsStream_notCached() throws IOException {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        secretsLocker.getAsStream("One").close();
+        secretsLocker.getAsStream("One").close();
+
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test(expected = SecretsLockerException.class)
+    public void testGetAsStream_notFound() {
+        secretsLocker.getAsStream("Unknown");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAsStream_null() {
+        secretsLocker.getAsStream(null);
+    }
+}
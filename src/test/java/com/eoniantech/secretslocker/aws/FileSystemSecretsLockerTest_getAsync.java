@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.LockerExecutors;
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link FileSystemSecretsLocker} getAsync and
+ * getAsPropertiesAsync methods.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_getAsync extends AbstractTest {
+
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        File directory = createLockerDirectory();
+        writeSecret(directory, "one.txt", "one");
+        writeSecret(directory, "properties.txt", "key=value\nother=thing\n");
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.add("One", "one.txt");
+        secretsLocker.add("Properties", "properties.txt");
+    }
+
+    @Test
+    public void testGetAsync() throws Exception {
+        assertEquals("one", secretsLocker.getAsync("One").get(1, TimeUnit.MINUTES));
+        assertEquals(1, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testGetAsync_cachedIsCompleted() throws Exception {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+        assertEquals("one", secretsLocker.getAsync("One").get(1, TimeUnit.MINUTES));
+
+        CompletableFuture<String> cached = secretsLocker.getAsync("One");
+
+        assertTrue(cached.isDone());
+        assertEquals("one", cached.get());
+        assertEquals(1, secretsLocker.decryptions());
+        assertEquals(1, secretsLocker.cacheHits());
+    }
+
+    @Test
+    public void testGetAsync_sharesDecryptionWithGet() throws Exception {
+        secretsLocker.setDecryptDelayMillis(200);
+
+        CompletableFuture<String> first = secretsLocker.getAsync("One");
+        CompletableFuture<String> second = secretsLocker.getAsync("One");
+
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals("one", first.get(1, TimeUnit.MINUTES));
+        assertEquals("one", second.get(1, TimeUnit.MINUTES));
+        assertEquals(1, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testGetAsync_runsOnExecutor() throws Exception {
+        ExecutorService executor = LockerExecutors.newDaemonThreadPool(1, "test-executor");
+
+        try {
+            secretsLocker.setExecutor(executor);
+            secretsLocker.setDecryptDelayMillis(200);
+
+            String thread = secretsLocker.getAsync("One")
+                    .thenApply(value -> Thread.currentThread().getName())
+                    .get(1, TimeUnit.MINUTES);
+
+            assertEquals("test-executor-1", thread);
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGetAsync_notFound() throws Exception {
+        try {
+            secretsLocker.getAsync("Unknown").get(1, TimeUnit.MINUTES);
+            fail("expected the secret not to be found");
+
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof SecretsLockerException);
+        }
+    }
+
+    @Test
+    public void testGetAsync_decryptionFails() throws Exception {
+        SecretsLockerException failure = new SecretsLockerException("failed");
+        secretsLocker.setDecryptFailure(failure);
+
+        try {
+            secretsLocker.getAsync("One").get(1, TimeUnit.MINUTES);
+            fail("expected the decryption to fail");
+
+        } catch (ExecutionException exception) {
+            assertSame(failure, exception.getCause());
+        }
+    }
+
+    @Test
+    public void testGetAsPropertiesAsync() throws Exception {
+        Properties properties = secretsLocker.getAsPropertiesAsync("Properties").get(1, TimeUnit.MINUTES);
+
+        assertEquals("value", properties.getProperty("key"));
+        assertEquals("thing", properties.getProperty("other"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAsync_null() {
+        secretsLocker.getAsync(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAsync_empty() {
+        secretsLocker.getAsync("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetExecutor_null() {
+        secretsLocker.setExecutor(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetDecryptionService_null() {
+        secretsLocker.setDecryptionService(null);
+    }
+}
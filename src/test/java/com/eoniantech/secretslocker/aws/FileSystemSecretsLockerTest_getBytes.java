@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link FileSystemSecretsLocker} getBytes and
+ * getByteBuffer methods, and for decoding secrets with the locker's charset.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_getBytes extends AbstractTest {
+
+    // Not valid UTF-8, so it does not survive a decode/encode round trip.
+    private static final byte[] BINARY = {(byte) 0x30, (byte) 0x82, (byte) 0xff, (byte) 0x00, (byte) 0xe9};
+
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        File directory = createLockerDirectory();
+        File file = new File(directory, "binary.p12");
+        Files.write(file.toPath(), BINARY);
+        file.deleteOnExit();
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.add("Binary", "binary.p12");
+    }
+
+    @Test
+    public void testGetBytes() {
+        assertArrayEquals(BINARY, secretsLocker.getBytes("Binary"));
+    }
+
+    @Test
+    public void testGetBytes_cached() {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        // Modifying the returned bytes does not modify the cached secret.
+        secretsLocker.getBytes("Binary")[0] = 0;
+
+        assertArrayEquals(BINARY, secretsLocker.getBytes("Binary"));
+        assertEquals(1, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testGetByteBuffer() {
+        ByteBuffer buffer = secretsLocker.getByteBuffer("Binary");
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        assertArrayEquals(BINARY, bytes);
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testGetByteBuffer_readOnly() {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+        secretsLocker.getByteBuffer("Binary").put(0, (byte) 0);
+    }
+
+    @Test
+    public void testGet_charset() {
+        assertEquals(StandardCharsets.UTF_8, secretsLocker.charset());
+        assertEquals(new String(BINARY, StandardCharsets.UTF_8), secretsLocker.get("Binary"));
+
+        secretsLocker.setCharset(StandardCharsets.ISO_8859_1);
+        assertEquals(new String(BINARY, StandardCharsets.ISO_8859_1), secretsLocker.get("Binary"));
+    }
+
+    @Test
+    public void testGet_charsetCached() {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+        assertEquals(new String(BINARY, StandardCharsets.UTF_8), secretsLocker.get("Binary"));
+
+        // The cached bytes are decoded again with the new charset.
+        secretsLocker.setCharset(StandardCharsets.ISO_8859_1);
+        assertEquals(new String(BINARY, StandardCharsets.ISO_8859_1), secretsLocker.get("Binary"));
+        assertArrayEquals(BINARY, secretsLocker.getBytes("Binary"));
+        assertEquals(1, secretsLocker.decryptions());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCharset_null() {
+        secretsLocker.setCharset(null);
+    }
+
+    @Test(expected = SecretsLockerException.class)
+    public void testGetBytes_notFound() {
+        secretsLocker.getBytes("Unknown");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetBytes_null() {
+        secretsLocker.getBytes(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetByteBuffer_empty() {
+        secretsLocker.getByteBuffer("");
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for refresh-ahead in the {@link FileSystemSecretsLocker}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_refreshAhead extends AbstractTest {
+
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        File directory = createLockerDirectory();
+        writeSecret(directory, "one.txt", "one");
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.add("One", "one.txt");
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 400, TimeUnit.MILLISECONDS));
+        secretsLocker.enableRefreshAhead(new RefreshPolicy(300, TimeUnit.MILLISECONDS, 1));
+    }
+
+    @After
+    public void after() {
+        secretsLocker.disableRefreshAhead();
+    }
+
+    @Test
+    public void testRefreshAhead_outsideWindow() throws Exception {
+        secretsLocker.enableRefreshAhead(new RefreshPolicy(10, TimeUnit.MILLISECONDS, 1));
+
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals("one", secretsLocker.get("One"));
+
+        Thread.sleep(100);
+        assertEquals(1, secretsLocker.decryptions());
+        assertEquals(0, secretsLocker.refreshSuccesses());
+    }
+
+    @Test
+    public void testRefreshAhead_insideWindow() throws Exception {
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        assertEquals("one", secretsLocker.get("One"));
+        awaitCount(1, secretsLocker::refreshSuccesses);
+        assertEquals(2, secretsLocker.decryptions());
+
+        // The refreshed value outlives the original time to live.
+        Thread.sleep(300);
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals(1, secretsLocker.cacheMisses());
+    }
+
+    @Test
+    public void testRefreshAhead_failure() throws Exception {
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        secretsLocker.setDecryptFailure(new SecretsLockerException("failed"));
+        assertEquals("one", secretsLocker.get("One"));
+        awaitCount(1, secretsLocker::refreshFailures);
+
+        // A failed refresh can be claimed again by the next read.
+        assertEquals("one", secretsLocker.get("One"));
+        awaitCount(2, secretsLocker::refreshFailures);
+        assertEquals(0, secretsLocker.refreshSuccesses());
+    }
+
+    @Test
+    public void testRefreshAhead_disabled() throws Exception {
+        secretsLocker.disableRefreshAhead();
+        assertFalse(secretsLocker.isRefreshAheadEnabled());
+
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+        assertEquals("one", secretsLocker.get("One"));
+
+        Thread.sleep(100);
+        assertEquals(1, secretsLocker.decryptions());
+        assertEquals(0, secretsLocker.refreshSuccesses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableRefreshAhead_null() {
+        secretsLocker.enableRefreshAhead(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRefreshPolicy_zeroThreads() {
+        new RefreshPolicy(1, TimeUnit.SECONDS, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRefreshPolicy_zeroWindow() {
+        new RefreshPolicy(0, TimeUnit.SECONDS, 1);
+    }
+
+    private static void awaitCount(
+            final long expected,
+            final LongSupplier count) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (count.getAsLong() < expected && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(expected, count.getAsLong());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for coalescing concurrent calls to the
+ * {@link FileSystemSecretsLocker} get method.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_singleFlight extends AbstractTest {
+
+    private static final int THREADS = 64;
+    private static final String[] NAMES = {"One", "Two", "Three", "Four"};
+
+    private CountingFileSystemSecretsLocker secretsLocker;
+    private ExecutorService executor;
+
+    @Before
+    public void before() throws IOException {
+        File directory = createLockerDirectory();
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+
+        for (String name : NAMES) {
+            writeSecret(directory, name + ".txt", name.toLowerCase());
+            secretsLocker.add(name, name + ".txt");
+        }
+
+        secretsLocker.setDecryptDelayMillis(200);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSingleFlight_oneDecryption() throws Exception {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        for (Future<String> result : getConcurrently("One"))
+            assertEquals("one", result.get());
+
+        assertEquals(1, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testSingleFlight_oneDecryptionPerName() throws Exception {
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 1, TimeUnit.MINUTES));
+
+        List<Future<String>> results = getConcurrently(NAMES);
+
+        for (int i = 0; i < THREADS; i++)
+            assertEquals(NAMES[i % NAMES.length].toLowerCase(), results.get(i).get());
+
+        assertEquals(NAMES.length, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testSingleFlight_withoutCaching() throws Exception {
+        for (Future<String> result : getConcurrently("One"))
+            assertEquals("one", result.get());
+
+        assertEquals(1, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testSingleFlight_exceptionIsShared() throws Exception {
+        SecretsLockerException failure = new SecretsLockerException("failed");
+        secretsLocker.setDecryptFailure(failure);
+
+        for (Future<String> result : getConcurrently("One")) {
+            try {
+                result.get();
+                fail("expected the decryption to fail");
+
+            } catch (ExecutionException exception) {
+                assertSame(failure, exception.getCause());
+            }
+        }
+
+        assertEquals(1, secretsLocker.decryptions());
+    }
+
+    private List<Future<String>> getConcurrently(final String... names) {
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<String>> results = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            String name = names[i % names.length];
+
+            results.add(executor.submit(() -> {
+                barrier.await();
+                return secretsLocker.get(name);
+            }));
+        }
+
+        return results;
+    }
+}
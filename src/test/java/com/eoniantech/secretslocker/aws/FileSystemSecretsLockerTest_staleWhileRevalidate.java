@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.SecretsLocker.SecretsLockerException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for serving expired secrets while they are revalidated in the
+ * {@link FileSystemSecretsLocker}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_staleWhileRevalidate extends AbstractTest {
+
+    private File directory;
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        directory = createLockerDirectory();
+        writeSecret(directory, "one.txt", "one");
+
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.add("One", "one.txt");
+        secretsLocker.enableCaching(new SecretCachePolicy(10, 1024, 100, TimeUnit.MILLISECONDS));
+        secretsLocker.enableStaleWhileRevalidate(
+                new StalePolicy(10, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS, 2, 20, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testStale_servedWhenDecryptionFails() throws Exception {
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        secretsLocker.setDecryptFailure(new SecretsLockerException("failed"));
+
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals(1, secretsLocker.staleHits());
+
+        // The revalidation is retried in the background.
+        awaitDecryptions(4);
+    }
+
+    @Test
+    public void testStale_servedWhenDecryptionIsSlow() throws Exception {
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        secretsLocker.setDecryptDelayMillis(300);
+
+        long start = System.nanoTime();
+        assertEquals("one", secretsLocker.get("One"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 250);
+        assertEquals(1, secretsLocker.staleHits());
+
+        // Once revalidated, the secret is served from the cache.
+        awaitDecryptions(2);
+        Thread.sleep(50);
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testStale_revalidatedWithinDeadline() throws Exception {
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        assertEquals("one", secretsLocker.get("One"));
+        assertEquals(0, secretsLocker.staleHits());
+        assertEquals(2, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testStale_servedAsync() throws Exception {
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        secretsLocker.setDecryptFailure(new SecretsLockerException("failed"));
+
+        assertEquals("one", secretsLocker.getAsync("One").get(1, TimeUnit.MINUTES));
+        assertEquals(1, secretsLocker.staleHits());
+    }
+
+    @Test(expected = SecretsLockerException.class)
+    public void testStale_notServedAfterGracePeriod() throws Exception {
+        secretsLocker.enableStaleWhileRevalidate(
+                new StalePolicy(50, TimeUnit.MILLISECONDS, 50, TimeUnit.MILLISECONDS));
+
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(200);
+
+        secretsLocker.setDecryptFailure(new SecretsLockerException("failed"));
+        secretsLocker.get("One");
+    }
+
+    @Test(expected = SecretsLockerException.class)
+    public void testStale_notServedWhenFileChanged() throws Exception {
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        writeSecret(directory, "one.txt", "changed");
+        secretsLocker.setDecryptFailure(new SecretsLockerException("failed"));
+        secretsLocker.get("One");
+    }
+
+    @Test(expected = SecretsLockerException.class)
+    public void testStale_disabled() throws Exception {
+        secretsLocker.disableStaleWhileRevalidate();
+        assertFalse(secretsLocker.isStaleWhileRevalidateEnabled());
+
+        assertEquals("one", secretsLocker.get("One"));
+        Thread.sleep(150);
+
+        secretsLocker.setDecryptFailure(new SecretsLockerException("failed"));
+        secretsLocker.get("One");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableStaleWhileRevalidate_null() {
+        secretsLocker.enableStaleWhileRevalidate(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStalePolicy_negativeDeadline() {
+        new StalePolicy(1, TimeUnit.MINUTES, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStalePolicy_zeroGracePeriod() {
+        new StalePolicy(0, TimeUnit.MINUTES, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private void awaitDecryptions(final int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (secretsLocker.decryptions() < expected && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(expected, secretsLocker.decryptions());
+    }
+}
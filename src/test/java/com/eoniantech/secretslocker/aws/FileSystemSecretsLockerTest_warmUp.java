@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.WarmUpReport;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Before;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.writeSecret;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link FileSystemSecretsLocker} preload and warm-up
+ * methods.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class FileSystemSecretsLockerTest_warmUp extends AbstractTest {
+
+    private static final int SECRETS = 8;
+
+    private File directory;
+    private CountingFileSystemSecretsLocker secretsLocker;
+
+    @Before
+    public void before() throws IOException {
+        directory = createLockerDirectory();
+        secretsLocker = new CountingFileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.enableCaching(new SecretCachePolicy(SECRETS, 1024, 1, TimeUnit.MINUTES));
+
+        for (int i = 0; i < SECRETS; i++) {
+            writeSecret(directory, "secret" + i + ".txt", "secret" + i);
+            secretsLocker.add("Secret" + i, "secret" + i + ".txt");
+        }
+    }
+
+    @Test
+    public void testPreload() {
+        WarmUpReport report = secretsLocker.preload();
+
+        assertTrue(report.isSuccessful());
+        assertEquals(SECRETS, report.values().size());
+        assertEquals(SECRETS, secretsLocker.decryptions());
+
+        for (int i = 0; i < SECRETS; i++)
+            assertEquals("secret" + i, secretsLocker.get("Secret" + i));
+
+        assertEquals(SECRETS, secretsLocker.decryptions());
+        assertEquals(SECRETS, secretsLocker.cacheHits());
+    }
+
+    @Test
+    public void testPreload_timings() {
+        secretsLocker.setDecryptDelayMillis(50);
+        WarmUpReport report = secretsLocker.preload();
+
+        for (Duration timing : report.values().values())
+            assertTrue(timing.toMillis() >= 50);
+
+        assertTrue(report.elapsed().toMillis() >= 50);
+    }
+
+    @Test
+    public void testPreload_failuresAreReported() throws IOException {
+        File missing = writeSecret(directory, "missing.txt", "missing");
+        secretsLocker.add("Missing", "missing.txt");
+        assertTrue(missing.delete());
+
+        WarmUpReport report = secretsLocker.preload();
+
+        assertFalse(report.isSuccessful());
+        assertEquals(SECRETS, report.values().size());
+        assertTrue(report.failures().containsKey("Missing"));
+    }
+
+    @Test
+    public void testWarmUp_deadline() throws Exception {
+        secretsLocker.setDecryptDelayMillis(500);
+
+        long start = System.nanoTime();
+        WarmUpReport report = secretsLocker.warmUp(Duration.ofMillis(100));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 450);
+        assertEquals(SECRETS, report.failures().size());
+
+        for (Throwable failure : report.failures().values())
+            assertTrue(failure instanceof TimeoutException);
+
+        // The secrets continue to decrypt, and are cached, in the background.
+        secretsLocker.setDecryptDelayMillis(0);
+        assertTrue(secretsLocker.getAllAsync(report.failures().keySet()).get(1, TimeUnit.MINUTES).isSuccessful());
+        assertEquals(SECRETS, secretsLocker.decryptions());
+    }
+
+    @Test
+    public void testWarmUpAsync_readiness() throws Exception {
+        secretsLocker.setDecryptDelayMillis(200);
+        assertFalse(secretsLocker.isReady());
+
+        CompletableFuture<WarmUpReport> warmUp = secretsLocker.warmUpAsync(null);
+
+        assertFalse(secretsLocker.awaitReady(Duration.ofMillis(10)));
+        assertTrue(secretsLocker.awaitReady(Duration.ofMinutes(1)));
+        assertTrue(secretsLocker.isReady());
+        assertSame(warmUp.get(), secretsLocker.readiness().get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWarmUp_nullDeadline() {
+        secretsLocker.warmUp(null);
+    }
+}
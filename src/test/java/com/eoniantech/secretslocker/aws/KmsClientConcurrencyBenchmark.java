@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the decryption throughput of many threads against the size of
+ * the KMS connection pool of a {@link KmsDecryptionService} from
+ * {@link KmsDecryptionService#builder()}. Each decryption makes one Decrypt
+ * call to an in-process KMS stand-in with a simulated latency, through the
+ * real KMS client, so no AWS access is required. Not run by the build; run
+ * the main method with the number of threads, the latency in milliseconds and
+ * the pool sizes as optional arguments, e.g. {@code 200 20 1 10 50 100 200}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class KmsClientConcurrencyBenchmark {
+
+    private static final int DEFAULT_THREADS = 200;
+    private static final long DEFAULT_LATENCY_MILLIS = 20;
+    private static final int[] DEFAULT_POOL_SIZES = {1, 5, 10, 25, 50, 100, 200};
+    private static final long WARM_UP_MILLIS = 1000;
+    private static final long RUN_MILLIS = 3000;
+
+    private KmsClientConcurrencyBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of threads, the latency in milliseconds, then
+     * the pool sizes. Default to 200, 20 and 1, 5, 10, 25, 50, 100 and 200.
+     * @throws IOException If the KMS stand-in can not be started.
+     * @throws Exception If a decryption fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        long latencyMillis = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_LATENCY_MILLIS;
+        int[] poolSizes = DEFAULT_POOL_SIZES;
+
+        if (args.length > 2) {
+            poolSizes = new int[args.length - 2];
+
+            for (int i = 2; i < args.length; i++)
+                poolSizes[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        try (LocalKms localKms = new LocalKms(latencyMillis)) {
+            String encryptedValue
+                    = new KmsEncryptionService(
+                            localKms.masterKeyProvider())
+                            .encryptValue("secret");
+
+            System.out.println(String.format(
+                    "%d processors, %d threads, %d ms KMS latency, %d ms per run",
+                    Runtime.getRuntime().availableProcessors(),
+                    threads,
+                    latencyMillis,
+                    RUN_MILLIS));
+
+            System.out.println(String.format("%10s %14s %14s %14s", "pool size", "decrypts/s", "mean ms", "max in flight"));
+
+            for (int poolSize : poolSizes) {
+                KmsDecryptionService decryptionService
+                        = KmsDecryptionService
+                                .builder()
+                                .withRegion(LocalKms.REGION)
+                                .withEndpoint(localKms.endpoint())
+                                .withCredentials(LocalKms.credentials())
+                                .withMaxConnections(poolSize)
+                                .withTcpKeepAlive(true)
+                                .build();
+
+                run(decryptionService, encryptedValue, threads, WARM_UP_MILLIS);
+                localKms.resetCounters();
+
+                long start = System.nanoTime();
+                long decryptions = run(decryptionService, encryptedValue, threads, RUN_MILLIS);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                System.out.println(String.format(
+                        "%10d %14.0f %14.1f %14d",
+                        poolSize,
+                        decryptions / seconds,
+                        threads * seconds * 1000 / decryptions,
+                        localKms.maxInFlight()));
+            }
+        }
+    }
+
+    /**
+     * Decrypts on every thread until the time is up. Decryptions under way,
+     * or waiting for a connection, when it is up are completed and counted,
+     * so the caller divides by the time the method actually took.
+     *
+     * @return The number of decryptions completed by all threads.
+     */
+    private static long run(
+            final KmsDecryptionService decryptionService,
+            final String encryptedValue,
+            final int threads,
+            final long millis) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        LongAdder decryptions = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        List<Future<?>> workers = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++)
+            workers.add(executor.submit(() -> {
+                start.await();
+
+                while (System.nanoTime() < deadline) {
+                    decryptionService.decryptValue(encryptedValue);
+                    decryptions.increment();
+                }
+
+                return null;
+            }));
+
+        start.countDown();
+
+        try {
+            for (Future<?> worker : workers)
+                worker.get();
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return decryptions.sum();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.encryptionsdk.exception.AwsCryptoException;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link KmsDecryptionService#builder()}. Calls a local KMS
+ * stand-in through real KMS clients, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_builder extends AbstractTest {
+
+    private LocalKms localKms;
+    private String encryptedValue;
+
+    @Before
+    public void before() throws IOException {
+        localKms = new LocalKms(0);
+
+        encryptedValue
+                = new KmsEncryptionService(
+                        localKms.masterKeyProvider())
+                        .encryptValue(SECRET_FILE_CONTENTS);
+
+        localKms.resetCounters();
+    }
+
+    @After
+    public void after() {
+        localKms.close();
+    }
+
+    @Test
+    public void testBuild() {
+        KmsDecryptionService decryptionService = builder().build();
+
+        assertNotSame(KmsDecryptionService.instance(), decryptionService);
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+        assertEquals(1, localKms.calls());
+        assertTrue(decryptionService.regionHealth().containsKey(LocalKms.REGION));
+    }
+
+    @Test
+    public void testClientConfiguration() {
+        ClientConfiguration clientConfiguration
+                = KmsDecryptionService
+                        .builder()
+                        .withMaxConnections(200)
+                        .withConnectionTtl(5, TimeUnit.MINUTES)
+                        .withConnectionTimeout(2, TimeUnit.SECONDS)
+                        .withSocketTimeout(3, TimeUnit.SECONDS)
+                        .withRequestTimeout(4, TimeUnit.SECONDS)
+                        .withRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY)
+                        .withTcpKeepAlive(true)
+                        .clientConfiguration();
+
+        assertEquals(200, clientConfiguration.getMaxConnections());
+        assertEquals(TimeUnit.MINUTES.toMillis(5), clientConfiguration.getConnectionTTL());
+        assertEquals(2000, clientConfiguration.getConnectionTimeout());
+        assertEquals(3000, clientConfiguration.getSocketTimeout());
+        assertEquals(4000, clientConfiguration.getRequestTimeout());
+        assertSame(PredefinedRetryPolicies.NO_RETRY_POLICY, clientConfiguration.getRetryPolicy());
+        assertTrue(clientConfiguration.useTcpKeepAlive());
+    }
+
+    @Test
+    public void testMaxConnectionsLimitsConcurrentCalls() throws Exception {
+        localKms.setLatencyMillis(50);
+        KmsDecryptionService decryptionService = builder().withMaxConnections(2).build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> decryptions = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 16; i++)
+                decryptions.add(executor.submit(() -> decryptionService.decryptValue(encryptedValue)));
+
+            for (Future<String> decryption : decryptions)
+                assertEquals(SECRET_FILE_CONTENTS, decryption.get());
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(16, localKms.calls());
+        assertTrue(localKms.maxInFlight() <= 2);
+    }
+
+    @Test
+    public void testSocketTimeout() {
+        localKms.setLatencyMillis(2000);
+
+        KmsDecryptionService decryptionService
+                = builder()
+                        .withSocketTimeout(100, TimeUnit.MILLISECONDS)
+                        .withMaxErrorRetry(1)
+                        .build();
+
+        long start = System.nanoTime();
+
+        try {
+            decryptionService.decryptValue(encryptedValue);
+            fail();
+
+        } catch (AwsCryptoException exception) {
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+            assertEquals(2, localKms.calls());
+        }
+    }
+
+    @Test
+    public void testSecretsLockerWithBuiltService() throws IOException {
+        File directory = Files.createTempDirectory("secrets-locker").toFile();
+        directory.deleteOnExit();
+
+        File file = new File(directory, "secret.txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), SECRET_FILE_CONTENTS.getBytes(StandardCharsets.UTF_8));
+
+        File encryptedFile = new KmsEncryptionService(localKms.masterKeyProvider()).encryptFile(file);
+        encryptedFile.deleteOnExit();
+
+        FileSystemSecretsLocker secretsLocker = new FileSystemSecretsLocker(directory.getAbsolutePath());
+        secretsLocker.setDecryptionService(builder().withMaxConnections(4).build());
+        secretsLocker.add("Secret", encryptedFile.getName());
+
+        assertEquals(SECRET_FILE_CONTENTS, secretsLocker.get("Secret"));
+        assertEquals(2, localKms.calls());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithRegion_invalid() {
+        KmsDecryptionService.builder().withRegion("us-middle-1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithMaxConnections_zero() {
+        KmsDecryptionService.builder().withMaxConnections(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithSocketTimeout_negative() {
+        KmsDecryptionService.builder().withSocketTimeout(-1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithConnectionTtl_nullUnit() {
+        KmsDecryptionService.builder().withConnectionTtl(1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithRetryPolicy_null() {
+        KmsDecryptionService.builder().withRetryPolicy(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithEndpoint_empty() {
+        KmsDecryptionService.builder().withEndpoint("");
+    }
+
+    private KmsDecryptionService.Builder builder() {
+        return KmsDecryptionService
+                .builder()
+                .withRegion(LocalKms.REGION)
+                .withEndpoint(localKms.endpoint())
+                .withCredentials(LocalKms.credentials());
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.encryptionsdk.exception.AwsCryptoException;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} concurrency limiting, and
+ * the {@link AdaptiveConcurrencyLimiter} behind it. Calls a local KMS
+ * stand-in through real KMS clients, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_concurrencyLimiting extends AbstractTest {
+
+    private LocalKms localKms;
+    private String encryptedValue;
+
+    @Before
+    public void before() throws IOException {
+        localKms = new LocalKms(0);
+
+        encryptedValue
+                = new KmsEncryptionService(
+                        localKms.masterKeyProvider())
+                        .encryptValue(SECRET_FILE_CONTENTS);
+
+        localKms.resetCounters();
+    }
+
+    @After
+    public void after() {
+        localKms.close();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        KmsDecryptionService decryptionService = decryptionService();
+
+        assertFalse(decryptionService.isConcurrencyLimitingEnabled());
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+        assertEquals(0, decryptionService.concurrencyMetrics().limit());
+        assertEquals(0, decryptionService.concurrencyMetrics().inFlight());
+    }
+
+    @Test
+    public void testEnableAndDisable() {
+        KmsDecryptionService decryptionService = decryptionService();
+
+        decryptionService.enableConcurrencyLimiting(new ConcurrencyLimitPolicy(4, 8));
+        assertTrue(decryptionService.isConcurrencyLimitingEnabled());
+        assertEquals(4, decryptionService.concurrencyMetrics().limit());
+
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+        assertEquals(1, localKms.calls());
+        assertEquals(0, decryptionService.concurrencyMetrics().inFlight());
+
+        decryptionService.disableConcurrencyLimiting();
+        assertFalse(decryptionService.isConcurrencyLimitingEnabled());
+        assertEquals(0, decryptionService.concurrencyMetrics().limit());
+    }
+
+    @Test
+    public void testLimitsConcurrentCalls() throws Exception {
+        localKms.setLatencyMillis(50);
+
+        KmsDecryptionService decryptionService = decryptionService();
+        decryptionService.enableConcurrencyLimiting(new ConcurrencyLimitPolicy(2, 2));
+
+        AtomicInteger maxInFlight = new AtomicInteger();
+        localKms.setOnCall(() -> maxInFlight.accumulateAndGet(
+                decryptionService.concurrencyMetrics().inFlight(),
+                Math::max));
+
+        assertEquals(16, decryptConcurrently(decryptionService, 8, 16));
+        assertEquals(16, localKms.calls());
+        assertTrue(maxInFlight.get() > 0);
+        assertTrue(maxInFlight.get() <= 2);
+        assertTrue(localKms.maxInFlight() <= 2);
+    }
+
+    @Test
+    public void testBacksOffWhenThrottled() throws Exception {
+        localKms.setLatencyMillis(20);
+        localKms.setQuota(2);
+
+        KmsDecryptionService decryptionService = decryptionService();
+        decryptionService.enableConcurrencyLimiting(new ConcurrencyLimitPolicy(16, 32));
+
+        decryptConcurrently(decryptionService, 16, 32);
+
+        ConcurrencyMetrics metrics = decryptionService.concurrencyMetrics();
+
+        assertTrue(localKms.throttles() > 0);
+        assertEquals(localKms.throttles(), metrics.throttles());
+        assertTrue(metrics.limit() < 16);
+        assertEquals(0, metrics.inFlight());
+        assertEquals(0, metrics.queueDepth());
+    }
+
+    @Test
+    public void testLimitGrowsWhileHealthy() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setPolicy(new ConcurrencyLimitPolicy(1, 10));
+
+        limiter.call(() -> null);
+        assertEquals(2, limiter.metrics().limit());
+
+        // The limit only grows while at least half of it is in use, so a
+        // single call at a time takes it no further than 3.
+        for (int i = 0; i < 10; i++)
+            limiter.call(() -> null);
+
+        assertEquals(3, limiter.metrics().limit());
+    }
+
+    @Test
+    public void testLimitHoldsWhileSlow() {
+        AtomicLong clock = new AtomicLong();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(clock::get);
+        limiter.setPolicy(new ConcurrencyLimitPolicy(1, 10, 0.5, 100, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < 3; i++)
+            limiter.call(() -> clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(101)));
+
+        assertEquals(1, limiter.metrics().limit());
+    }
+
+    @Test
+    public void testLimitHoldsOnFailure() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setPolicy(new ConcurrencyLimitPolicy(1, 10));
+
+        try {
+            limiter.call(() -> {
+                throw new AwsCryptoException();
+            });
+            fail();
+
+        } catch (AwsCryptoException exception) {
+            assertEquals(1, limiter.metrics().limit());
+            assertEquals(0, limiter.metrics().inFlight());
+        }
+    }
+
+    @Test
+    public void testThrottleMultipliesLimitByBackoffRatio() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setPolicy(new ConcurrencyLimitPolicy(8, 10));
+
+        limiter.onThrottled();
+        assertEquals(4, limiter.metrics().limit());
+
+        limiter.onThrottled();
+        limiter.onThrottled();
+        limiter.onThrottled();
+        assertEquals(1, limiter.metrics().limit());
+        assertEquals(4, limiter.metrics().throttles());
+
+        limiter.setPolicy(new ConcurrencyLimitPolicy(8, 10));
+        assertEquals(8, limiter.metrics().limit());
+    }
+
+    @Test
+    public void testQueueIsFirstComeFirstServed() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setPolicy(new ConcurrencyLimitPolicy(1, 1));
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(start(() -> limiter.call(() -> {
+            holding.countDown();
+            await(release);
+            return null;
+        })));
+
+        holding.await();
+
+        for (int i = 1; i <= 3; i++) {
+            int caller = i;
+            threads.add(start(() -> limiter.call(() -> order.add(caller))));
+            awaitQueueDepth(limiter, i);
+        }
+
+        assertEquals(1, limiter.metrics().inFlight());
+        release.countDown();
+
+        for (Thread thread : threads)
+            thread.join(5000);
+
+        assertEquals(Arrays.asList(1, 2, 3), order);
+        assertEquals(0, limiter.metrics().queueDepth());
+    }
+
+    @Test
+    public void testDisableReleasesWaitingCalls() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setPolicy(new ConcurrencyLimitPolicy(1, 1));
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch waited = new CountDownLatch(1);
+
+        Thread holder = start(() -> limiter.call(() -> {
+            holding.countDown();
+            await(release);
+            return null;
+        }));
+
+        holding.await();
+        start(() -> limiter.call(() -> {
+            waited.countDown();
+            return null;
+        }));
+        awaitQueueDepth(limiter, 1);
+
+        limiter.setPolicy(null);
+
+        assertTrue(waited.await(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.metrics().queueDepth());
+
+        release.countDown();
+        holder.join(5000);
+    }
+
+    @Test
+    public void testInterruptedWhileWaiting() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setPolicy(new ConcurrencyLimitPolicy(1, 1));
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<RuntimeException> thrown = new AtomicReference<>();
+
+        Thread holder = start(() -> limiter.call(() -> {
+            holding.countDown();
+            await(release);
+            return null;
+        }));
+
+        holding.await();
+
+        Thread waiter = start(() -> {
+            try {
+                limiter.call(() -> null);
+
+            } catch (RuntimeException exception) {
+                thrown.set(exception);
+            }
+        });
+
+        awaitQueueDepth(limiter, 1);
+        waiter.interrupt();
+        waiter.join(5000);
+
+        assertTrue(thrown.get() instanceof AbortedException);
+        assertEquals(0, limiter.metrics().queueDepth());
+        assertEquals(1, limiter.metrics().inFlight());
+
+        release.countDown();
+        holder.join(5000);
+        assertEquals(0, limiter.metrics().inFlight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableConcurrencyLimiting_null() {
+        decryptionService().enableConcurrencyLimiting(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrencyLimitPolicy_zeroInitialLimit() {
+        new ConcurrencyLimitPolicy(0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrencyLimitPolicy_maxLimitLessThanInitialLimit() {
+        new ConcurrencyLimitPolicy(10, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrencyLimitPolicy_backoffRatioOfOne() {
+        new ConcurrencyLimitPolicy(1, 10, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrencyLimitPolicy_zeroHealthyLatency() {
+        new ConcurrencyLimitPolicy(1, 10, 0.5, 0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrencyLimitPolicy_nullHealthyLatencyUnit() {
+        new ConcurrencyLimitPolicy(1, 10, 0.5, 1, null);
+    }
+
+    private KmsDecryptionService decryptionService() {
+        return KmsDecryptionService
+                .builder()
+                .withRegion(LocalKms.REGION)
+                .withEndpoint(localKms.endpoint())
+                .withCredentials(LocalKms.credentials())
+                .build();
+    }
+
+    /**
+     * @return The number of decryptions that succeeded.
+     */
+    private int decryptConcurrently(
+            final KmsDecryptionService decryptionService,
+            final int threads,
+            final int decryptions) throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        int succeeded = 0;
+
+        try {
+            for (int i = 0; i < decryptions; i++)
+                results.add(executor.submit(() -> decryptionService.decryptValue(encryptedValue)));
+
+            for (Future<String> result : results) {
+                try {
+                    if (SECRET_FILE_CONTENTS.equals(result.get()))
+                        succeeded++;
+
+                } catch (ExecutionException exception) {
+                    // Throttled beyond the client's retries.
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return succeeded;
+    }
+
+    private static Thread start(final Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQueueDepth(
+            final AdaptiveConcurrencyLimiter limiter,
+            final int queueDepth) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (limiter.metrics().queueDepth() < queueDepth && System.nanoTime() < deadline)
+            Thread.sleep(1);
+
+        assertEquals(queueDepth, limiter.metrics().queueDepth());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for data key caching in the {@link KmsDecryptionService}. Uses an
+ * in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_dataKeyCaching extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+    private static File encryptedFile;
+    private static File otherEncryptedFile;
+
+    private KmsDecryptionService decryptionService;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        masterKey
+                = LocalMasterKeys
+                        .masterKey();
+
+        encryptedFile
+                = LocalMasterKeys
+                        .encryptToFile(
+                                masterKey,
+                                SECRET_FILE_CONTENTS);
+
+        otherEncryptedFile
+                = LocalMasterKeys
+                        .encryptToFile(
+                                masterKey,
+                                SECRET_FILE_CONTENTS);
+    }
+
+    @Before
+    public void before() {
+        decryptionService
+                = new KmsDecryptionService(
+                        masterKey);
+    }
+
+    @Test
+    public void testDataKeyCaching_disabledByDefault() {
+        assertFalse(decryptionService.isDataKeyCachingEnabled());
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptFile(encryptedFile));
+        assertEquals(0, decryptionService.dataKeyCacheHits());
+        assertEquals(0, decryptionService.dataKeyCacheMisses());
+    }
+
+    @Test
+    public void testDataKeyCaching_sameDataKeyIsCached() {
+        decryptionService.enableDataKeyCaching(
+                new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        assertTrue(decryptionService.isDataKeyCachingEnabled());
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptFile(encryptedFile));
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptFile(encryptedFile));
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptFile(encryptedFile));
+        assertEquals(2, decryptionService.dataKeyCacheHits());
+        assertEquals(1, decryptionService.dataKeyCacheMisses());
+    }
+
+    @Test
+    public void testDataKeyCaching_differentDataKeysAreMisses() {
+        decryptionService.enableDataKeyCaching(
+                new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptFile(encryptedFile));
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptFile(otherEncryptedFile));
+        assertEquals(0, decryptionService.dataKeyCacheHits());
+        assertEquals(2, decryptionService.dataKeyCacheMisses());
+    }
+
+    @Test
+    public void testDataKeyCaching_disable() {
+        decryptionService.enableDataKeyCaching(
+                new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        decryptionService.decryptFile(encryptedFile);
+        decryptionService.disableDataKeyCaching();
+
+        assertFalse(decryptionService.isDataKeyCachingEnabled());
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptFile(encryptedFile));
+        assertEquals(0, decryptionService.dataKeyCacheHits());
+        assertEquals(0, decryptionService.dataKeyCacheMisses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDataKeyCaching_nullPolicy() {
+        decryptionService.enableDataKeyCaching(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDataKeyCachePolicy_zeroCapacity() {
+        new DataKeyCachePolicy(0, 1, TimeUnit.MINUTES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDataKeyCachePolicy_zeroMaxAge() {
+        new DataKeyCachePolicy(10, 0, TimeUnit.MINUTES);
+    }
+}
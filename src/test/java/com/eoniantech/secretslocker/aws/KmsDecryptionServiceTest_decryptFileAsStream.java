@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.amazonaws.util.IOUtils;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.DecryptionService.DecryptionException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} decryptFileAsStream and
+ * decryptStream methods. Uses an in-process master key, so no AWS access is
+ * required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_decryptFileAsStream extends AbstractTest {
+
+    private static final int PLAINTEXT_SIZE = 3 * 1024 * 1024 + 17;
+
+    private static JceMasterKey masterKey;
+    private static byte[] plaintext;
+    private static File encryptedFile;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        masterKey = LocalMasterKeys.masterKey();
+        plaintext = new byte[PLAINTEXT_SIZE];
+        new Random(42).nextBytes(plaintext);
+        encryptedFile = LocalMasterKeys.encryptToFile(masterKey, plaintext);
+    }
+
+    @Test
+    public void testDecryptFileAsStream() throws IOException {
+        try (InputStream inputStream = new KmsDecryptionService(masterKey).decryptFileAsStream(encryptedFile)) {
+            assertArrayEquals(plaintext, IOUtils.toByteArray(inputStream));
+        }
+    }
+
+    @Test
+    public void testDecryptStream() throws IOException {
+        InputStream encryptedStream = new ByteArrayInputStream(Files.readAllBytes(encryptedFile.toPath()));
+
+        try (InputStream inputStream = new KmsDecryptionService(masterKey).decryptStream(encryptedStream)) {
+            assertArrayEquals(plaintext, IOUtils.toByteArray(inputStream));
+        }
+    }
+
+    @Test
+    public void testDecryptStream_tampered() throws IOException {
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        ciphertext[ciphertext.length / 2] ^= 1;
+
+        try (InputStream inputStream
+                = new KmsDecryptionService(masterKey).decryptStream(new ByteArrayInputStream(ciphertext))) {
+
+            IOUtils.toByteArray(inputStream);
+            fail("expected the decryption to fail");
+
+        } catch (RuntimeException | IOException exception) {
+            // Expected, the tampered frame does not authenticate.
+        }
+    }
+
+    @Test(expected = DecryptionException.class)
+    public void testDecryptFileAsStream_missingFile() {
+        new KmsDecryptionService(masterKey)
+                .decryptFileAsStream(new File(encryptedFile.getParentFile(), "missing.encrypted"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptFileAsStream_null() {
+        new KmsDecryptionService(masterKey).decryptFileAsStream(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptStream_null() {
+        new KmsDecryptionService(masterKey).decryptStream(null);
+    }
+}
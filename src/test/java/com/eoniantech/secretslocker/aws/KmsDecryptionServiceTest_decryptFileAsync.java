@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.DecryptionService.DecryptionException;
+import com.eoniantech.secretslocker.LockerExecutors;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} decryptFileAsync method.
+ * Uses an in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_decryptFileAsync extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+    private static File encryptedFile;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        masterKey
+                = LocalMasterKeys
+                        .masterKey();
+
+        encryptedFile
+                = LocalMasterKeys
+                        .encryptToFile(
+                                masterKey,
+                                SECRET_FILE_CONTENTS);
+    }
+
+    @Test
+    public void testDecryptFileAsync() throws Exception {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+
+        assertEquals(
+                SECRET_FILE_CONTENTS,
+                decryptionService
+                        .decryptFileAsync(encryptedFile, LockerExecutors.defaultExecutor())
+                        .get(1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testDecryptFileAsync_missingFile() throws Exception {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+
+        try {
+            decryptionService
+                    .decryptFileAsync(new File(encryptedFile.getParentFile(), "missing.encrypted"), LockerExecutors.defaultExecutor())
+                    .get(1, TimeUnit.MINUTES);
+
+            fail("expected the decryption to fail");
+
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof DecryptionException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptFileAsync_nullFile() {
+        new KmsDecryptionService(masterKey).decryptFileAsync(null, LockerExecutors.defaultExecutor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptFileAsync_nullExecutor() {
+        new KmsDecryptionService(masterKey).decryptFileAsync(encryptedFile, null);
+    }
+}
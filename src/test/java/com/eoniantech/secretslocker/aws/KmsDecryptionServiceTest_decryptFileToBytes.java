@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.DecryptionService.DecryptionException;
+import com.eoniantech.secretslocker.LockerExecutors;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} decryptFileToBytes methods,
+ * and for decoding plaintext with the service's charset. Uses an in-process
+ * master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_decryptFileToBytes extends AbstractTest {
+
+    // Not valid UTF-8, so it does not survive a decode/encode round trip.
+    private static final byte[] BINARY = {(byte) 0x30, (byte) 0x82, (byte) 0xff, (byte) 0x00, (byte) 0xe9};
+
+    private static JceMasterKey masterKey;
+    private static File encryptedFile;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        masterKey
+                = LocalMasterKeys
+                        .masterKey();
+
+        encryptedFile
+                = LocalMasterKeys
+                        .encryptToFile(
+                                masterKey,
+                                BINARY);
+    }
+
+    @Test
+    public void testDecryptFileToBytes() {
+        assertArrayEquals(
+                BINARY,
+                new KmsDecryptionService(masterKey).decryptFileToBytes(encryptedFile));
+    }
+
+    @Test
+    public void testDecryptFileToBytesAsync() throws Exception {
+        assertArrayEquals(
+                BINARY,
+                new KmsDecryptionService(masterKey)
+                        .decryptFileToBytesAsync(encryptedFile, LockerExecutors.defaultExecutor())
+                        .get(1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testDecryptFile_charset() {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        assertEquals(StandardCharsets.UTF_8, decryptionService.charset());
+        assertEquals(new String(BINARY, StandardCharsets.UTF_8), decryptionService.decryptFile(encryptedFile));
+
+        decryptionService.setCharset(StandardCharsets.ISO_8859_1);
+        assertEquals(new String(BINARY, StandardCharsets.ISO_8859_1), decryptionService.decryptFile(encryptedFile));
+    }
+
+    @Test(expected = DecryptionException.class)
+    public void testDecryptFileToBytes_missingFile() {
+        new KmsDecryptionService(masterKey).decryptFileToBytes(new File(encryptedFile.getParentFile(), "missing.encrypted"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptFileToBytes_nullFile() {
+        new KmsDecryptionService(masterKey).decryptFileToBytes(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCharset_null() {
+        new KmsDecryptionService(masterKey).setCharset(null);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.DecryptionService.DecryptionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static com.eoniantech.secretslocker.aws.CountingFileSystemSecretsLocker.createLockerDirectory;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} decryptFile(File, File)
+ * method. Uses an in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_decryptFileToFile extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+    private static byte[] plaintext;
+    private static File encryptedFile;
+
+    private File directory;
+    private File decryptedFile;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        masterKey = LocalMasterKeys.masterKey();
+
+        plaintext = new byte[100_003];
+        new Random(19).nextBytes(plaintext);
+
+        encryptedFile = LocalMasterKeys.encryptToFile(masterKey, plaintext);
+    }
+
+    @Before
+    public void before() throws IOException {
+        directory = createLockerDirectory();
+        decryptedFile = new File(directory, "decrypted.bin");
+        decryptedFile.deleteOnExit();
+    }
+
+    @Test
+    public void testDecryptFile() throws IOException {
+        new KmsDecryptionService(masterKey).decryptFile(encryptedFile, decryptedFile);
+
+        assertArrayEquals(plaintext, Files.readAllBytes(decryptedFile.toPath()));
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void testDecryptFile_replacesExistingFile() throws IOException {
+        Files.write(decryptedFile.toPath(), new byte[plaintext.length * 2]);
+
+        new KmsDecryptionService(masterKey).decryptFile(encryptedFile, decryptedFile);
+
+        assertArrayEquals(plaintext, Files.readAllBytes(decryptedFile.toPath()));
+    }
+
+    @Test
+    public void testDecryptFile_nioFileIo() throws IOException {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        decryptionService.enableNioFileIo(new FileIoPolicy(4096, false, true));
+
+        decryptionService.decryptFile(encryptedFile, decryptedFile);
+
+        assertArrayEquals(plaintext, Files.readAllBytes(decryptedFile.toPath()));
+    }
+
+    @Test
+    public void testDecryptFile_tamperedFileLeavesTargetUnchanged() throws IOException {
+        byte[] existing = {1, 2, 3};
+        Files.write(decryptedFile.toPath(), existing);
+
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        ciphertext[ciphertext.length - 1] ^= 1;
+
+        File tamperedFile = new File(directory, "tampered.encrypted");
+        tamperedFile.deleteOnExit();
+        Files.write(tamperedFile.toPath(), ciphertext);
+
+        try {
+            new KmsDecryptionService(masterKey).decryptFile(tamperedFile, decryptedFile);
+            fail("expected the decryption to fail");
+
+        } catch (RuntimeException exception) {
+            // expected.
+        }
+
+        assertArrayEquals(existing, Files.readAllBytes(decryptedFile.toPath()));
+        assertEquals(2, directory.list().length);
+    }
+
+    @Test(expected = DecryptionException.class)
+    public void testDecryptFile_missingFile() {
+        new KmsDecryptionService(masterKey).decryptFile(new File(directory, "missing.encrypted"), decryptedFile);
+    }
+
+    @Test(expected = DecryptionException.class)
+    public void testDecryptFile_missingDirectory() {
+        new KmsDecryptionService(masterKey).decryptFile(encryptedFile, new File(new File(directory, "missing"), "decrypted.bin"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptFile_nullEncryptedFile() {
+        new KmsDecryptionService(masterKey).decryptFile(null, decryptedFile);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptFile_nullDecryptedFile() {
+        new KmsDecryptionService(masterKey).decryptFile(encryptedFile, (File) null);
+    }
+}
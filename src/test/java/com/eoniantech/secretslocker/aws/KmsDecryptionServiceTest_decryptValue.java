@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.DecryptionService.DecryptionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} decryptValue method. Uses an
+ * in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_decryptValue extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+    private static String encryptedValue;
+
+    @BeforeClass
+    public static void beforeClass() {
+        masterKey = LocalMasterKeys.masterKey();
+        encryptedValue = new KmsEncryptionService(masterKey).encryptValue(SECRET_FILE_CONTENTS);
+    }
+
+    @Test
+    public void testDecryptValue() {
+        assertEquals(SECRET_FILE_CONTENTS, new KmsDecryptionService(masterKey).decryptValue(encryptedValue));
+    }
+
+    @Test
+    public void testDecryptValue_surroundingWhitespace() {
+        assertEquals(SECRET_FILE_CONTENTS, new KmsDecryptionService(masterKey).decryptValue(" " + encryptedValue + "\n"));
+    }
+
+    @Test
+    public void testDecryptValue_dataKeyCaching() {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        decryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertEquals(1, decryptionService.dataKeyCacheMisses());
+        assertEquals(1, decryptionService.dataKeyCacheHits());
+    }
+
+    @Test(expected = DecryptionException.class)
+    public void testDecryptValue_notBase64() {
+        new KmsDecryptionService(masterKey).decryptValue("not base64!");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDecryptValue_otherMasterKey() {
+        new KmsDecryptionService(LocalMasterKeys.masterKey()).decryptValue(encryptedValue);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptValue_null() {
+        new KmsDecryptionService(masterKey).decryptValue(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecryptValue_empty() {
+        new KmsDecryptionService(masterKey).decryptValue(" ");
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.amazonaws.encryptionsdk.multi.MultipleProviderFactory;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} hedging and circuit
+ * breakers. Uses in-process master keys that stand in for KMS keys in two
+ * regions, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_hedging extends AbstractTest {
+
+    private static final String US_EAST_1 = "us-east-1";
+    private static final String US_WEST_2 = "us-west-2";
+    private static final long OPEN_DURATION_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private SimulatedRegions regions;
+    private String encryptedValue;
+    private AtomicLong clock;
+    private RegionLatencyTracker tracker;
+    private KmsDecryptionService decryptionService;
+
+    @Before
+    public void before() {
+        regions = new SimulatedRegions(US_EAST_1, US_WEST_2);
+
+        encryptedValue
+                = new KmsEncryptionService(
+                        MultipleProviderFactory.buildMultiProvider(
+                                JceMasterKey.class,
+                                regions.keys()))
+                        .encryptValue(SECRET_FILE_CONTENTS);
+
+        clock = new AtomicLong();
+        tracker = new RegionLatencyTracker(US_EAST_1, clock::get);
+
+        decryptionService
+                = new KmsDecryptionService(
+                        new RegionAwareMasterKeyProvider<>(
+                                regions,
+                                tracker));
+
+        decryptionService.setCircuitBreakerPolicy(
+                new CircuitBreakerPolicy(1, OPEN_DURATION_NANOS, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testSlowRegionIsHedged() {
+        regions.latencyMillis.put(US_EAST_1, 5000L);
+        decryptionService.enableHedging(new HedgingPolicy(95, 10, 20, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, decryptionService.hedgedRequests());
+        assertEquals(1, regions.calls(US_EAST_1));
+        assertEquals(1, regions.calls(US_WEST_2));
+        // The cancelled call is not recorded as a failure.
+        assertFalse(decryptionService.regionHealth().containsKey(US_EAST_1));
+    }
+
+    @Test
+    public void testFastRegionIsNotHedged() {
+        decryptionService.enableHedging(new HedgingPolicy(95, 1, 1, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 5; i++)
+            assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertEquals(0, decryptionService.hedgedRequests());
+        assertEquals(5, regions.calls(US_EAST_1) + regions.calls(US_WEST_2));
+    }
+
+    @Test
+    public void testFailedRegionFailsOverWithoutWaitingForTheDelay() {
+        regions.failing.add(US_EAST_1);
+        decryptionService.enableHedging(new HedgingPolicy(95, 1, 1, TimeUnit.MINUTES));
+
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertEquals(0, decryptionService.hedgedRequests());
+        assertEquals(1, regions.calls(US_WEST_2));
+    }
+
+    @Test
+    public void testOpenCircuitIsSkippedAndNotHedgedTo() {
+        regions.failing.add(US_EAST_1);
+        decryptionService.decryptValue(encryptedValue);
+
+        RegionHealth health = decryptionService.regionHealth().get(US_EAST_1);
+        assertTrue(health.isCircuitOpen());
+        assertFalse(health.isHealthy());
+
+        // The error rate has long decayed, but the circuit is still open.
+        clock.addAndGet(OPEN_DURATION_NANOS / 2);
+        regions.latencyMillis.put(US_WEST_2, 100L);
+        decryptionService.enableHedging(new HedgingPolicy(95, 1, 1, TimeUnit.MILLISECONDS));
+
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertEquals(1, regions.calls(US_EAST_1));
+        assertEquals(0, decryptionService.hedgedRequests());
+    }
+
+    @Test
+    public void testOpenCircuitIsCalledAsLastResort() {
+        regions.failing.add(US_EAST_1);
+        decryptionService.decryptValue(encryptedValue);
+
+        regions.failing.clear();
+        regions.failing.add(US_WEST_2);
+
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertEquals(2, regions.calls(US_EAST_1));
+        assertFalse(decryptionService.regionHealth().get(US_EAST_1).isCircuitOpen());
+    }
+
+    @Test
+    public void testOpenCircuitAllowsOneTrialAfterOpenDuration() {
+        tracker.recordFailure(US_EAST_1);
+        assertFalse(tracker.tryAcquire(US_EAST_1));
+
+        clock.addAndGet(OPEN_DURATION_NANOS);
+        assertTrue(tracker.tryAcquire(US_EAST_1));
+        assertFalse(tracker.tryAcquire(US_EAST_1));
+
+        tracker.recordFailure(US_EAST_1);
+        clock.addAndGet(OPEN_DURATION_NANOS - 1);
+        assertFalse(tracker.tryAcquire(US_EAST_1));
+
+        clock.addAndGet(1);
+        assertTrue(tracker.tryAcquire(US_EAST_1));
+
+        tracker.recordSuccess(US_EAST_1, 1);
+        assertTrue(tracker.tryAcquire(US_EAST_1));
+        assertTrue(tracker.tryAcquire(US_EAST_1));
+    }
+
+    @Test
+    public void testRecoveredRegionClosesItsCircuit() {
+        regions.failing.add(US_EAST_1);
+        decryptionService.decryptValue(encryptedValue);
+        regions.failing.clear();
+
+        clock.addAndGet(OPEN_DURATION_NANOS);
+        decryptionService.decryptValue(encryptedValue);
+
+        RegionHealth health = decryptionService.regionHealth().get(US_EAST_1);
+        assertEquals(2, regions.calls(US_EAST_1));
+        assertFalse(health.isCircuitOpen());
+        assertTrue(health.isHealthy());
+    }
+
+    @Test
+    public void testLatencyPercentile() {
+        assertEquals(-1, tracker.latencyPercentileNanos(US_EAST_1, 50));
+
+        for (int i = 1; i <= 20; i++)
+            tracker.recordSuccess(US_EAST_1, i);
+
+        assertEquals(10, tracker.latencyPercentileNanos(US_EAST_1, 50));
+        assertEquals(19, tracker.latencyPercentileNanos(US_EAST_1, 95));
+
+        for (int i = 0; i < RegionLatencyTracker.LATENCY_SAMPLES; i++)
+            tracker.recordSuccess(US_EAST_1, 1000);
+
+        assertEquals(1000, tracker.latencyPercentileNanos(US_EAST_1, 1));
+    }
+
+    @Test
+    public void testHedgeIsSkippedWithoutAFreeThread() {
+        regions.latencyMillis.put(US_EAST_1, 200L);
+        KmsDecryptionService boundedDecryptionService = boundedDecryptionService(1);
+        boundedDecryptionService.enableHedging(new HedgingPolicy(95, 10, 20, TimeUnit.MILLISECONDS));
+
+        assertEquals(SECRET_FILE_CONTENTS, boundedDecryptionService.decryptValue(encryptedValue));
+
+        assertEquals(0, boundedDecryptionService.hedgedRequests());
+        assertEquals(1, regions.calls(US_EAST_1));
+        assertEquals(0, regions.calls(US_WEST_2));
+    }
+
+    @Test
+    public void testSkippedHedgeRegionIsStillFailedOverTo() {
+        regions.latencyMillis.put(US_EAST_1, 200L);
+        regions.failing.add(US_EAST_1);
+        KmsDecryptionService boundedDecryptionService = boundedDecryptionService(1);
+        boundedDecryptionService.enableHedging(new HedgingPolicy(95, 10, 20, TimeUnit.MILLISECONDS));
+
+        assertEquals(SECRET_FILE_CONTENTS, boundedDecryptionService.decryptValue(encryptedValue));
+
+        assertEquals(0, boundedDecryptionService.hedgedRequests());
+        assertEquals(1, regions.calls(US_WEST_2));
+    }
+
+    @Test
+    public void testShutdown() {
+        regions.latencyMillis.put(US_EAST_1, 50L);
+        decryptionService.enableHedging(new HedgingPolicy(95, 10, 20, TimeUnit.MILLISECONDS));
+        decryptionService.shutdown();
+
+        assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertEquals(0, decryptionService.hedgedRequests());
+        assertEquals(1, regions.calls(US_EAST_1));
+    }
+
+    @Test
+    public void testEnableHedging() {
+        assertFalse(decryptionService.isHedgingEnabled());
+
+        decryptionService.enableHedging(new HedgingPolicy());
+        assertTrue(decryptionService.isHedgingEnabled());
+
+        decryptionService.disableHedging();
+        assertFalse(decryptionService.isHedgingEnabled());
+    }
+
+    @Test
+    public void testEnableHedging_withoutKms() {
+        KmsDecryptionService localDecryptionService = new KmsDecryptionService(LocalMasterKeys.masterKey());
+        localDecryptionService.enableHedging(new HedgingPolicy());
+
+        assertFalse(localDecryptionService.isHedgingEnabled());
+        assertEquals(0, localDecryptionService.hedgedRequests());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableHedging_nullPolicy() {
+        decryptionService.enableHedging(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCircuitBreakerPolicy_nullPolicy() {
+        decryptionService.setCircuitBreakerPolicy(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHedgingPolicy_percentileOutOfRange() {
+        new HedgingPolicy(100, 10, 500, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHedgingPolicy_maximumBelowMinimum() {
+        new HedgingPolicy(95, 500, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCircuitBreakerPolicy_zeroThreshold() {
+        new CircuitBreakerPolicy(0, 30, TimeUnit.SECONDS);
+    }
+
+    private KmsDecryptionService boundedDecryptionService(final int maxThreads) {
+        return new KmsDecryptionService(
+                new RegionAwareMasterKeyProvider<>(
+                        regions,
+                        new RegionLatencyTracker(US_EAST_1),
+                        maxThreads));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.DecryptionService.DecryptionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for decrypting files to files through {@link FileChannel}s with
+ * the {@link KmsDecryptionService}. Uses an in-process master key, so no AWS
+ * access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_nioFileIo extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+    private static byte[] plaintext;
+    private static File encryptedFile;
+
+    private File decryptedFile;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        masterKey = LocalMasterKeys.masterKey();
+
+        // Not a multiple of the buffer sizes below, or of the frame size.
+        plaintext = new byte[100_003];
+        new Random(17).nextBytes(plaintext);
+
+        encryptedFile = LocalMasterKeys.encryptToFile(masterKey, plaintext);
+    }
+
+    @Before
+    public void before() throws IOException {
+        decryptedFile = File.createTempFile("decrypted", ".bin");
+        decryptedFile.deleteOnExit();
+
+        // Longer than the plaintext, so the file must be truncated.
+        Files.write(decryptedFile.toPath(), new byte[plaintext.length * 2]);
+    }
+
+    @Test
+    public void testDecryptFile_streams() throws IOException {
+        assertRoundTrip(new KmsDecryptionService(masterKey));
+    }
+
+    @Test
+    public void testDecryptFile_default() throws IOException {
+        assertRoundTrip(new FileIoPolicy());
+    }
+
+    @Test
+    public void testDecryptFile_heapBuffers() throws IOException {
+        assertRoundTrip(new FileIoPolicy(4096, false, false));
+    }
+
+    @Test
+    public void testDecryptFile_smallBuffers() throws IOException {
+        assertRoundTrip(new FileIoPolicy(7, true, true));
+    }
+
+    @Test(expected = DecryptionException.class)
+    public void testDecryptFile_missingFile() {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        decryptionService.enableNioFileIo(new FileIoPolicy());
+
+        decryptionService.decryptFile(
+                new File(encryptedFile.getParentFile(), "missing.encrypted").getAbsolutePath(),
+                decryptedFile.getAbsolutePath());
+    }
+
+    @Test
+    public void testNioFileIo_enableDisable() {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        assertFalse(decryptionService.isNioFileIoEnabled());
+
+        decryptionService.enableNioFileIo(new FileIoPolicy());
+        assertTrue(decryptionService.isNioFileIoEnabled());
+
+        decryptionService.disableNioFileIo();
+        assertFalse(decryptionService.isNioFileIoEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableNioFileIo_null() {
+        new KmsDecryptionService(masterKey).enableNioFileIo(null);
+    }
+
+    private void assertRoundTrip(final FileIoPolicy policy) throws IOException {
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        decryptionService.enableNioFileIo(policy);
+
+        assertRoundTrip(decryptionService);
+    }
+
+    private void assertRoundTrip(final KmsDecryptionService decryptionService) throws IOException {
+        decryptionService.decryptFile(
+                encryptedFile.getAbsolutePath(),
+                decryptedFile.getAbsolutePath());
+
+        assertArrayEquals(plaintext, Files.readAllBytes(decryptedFile.toPath()));
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.AwsCrypto;
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.DefaultCryptoMaterialsManager;
+import com.amazonaws.encryptionsdk.ParsedCiphertext;
+import com.amazonaws.encryptionsdk.exception.BadCiphertextException;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for parallel decryption in the {@link KmsDecryptionService}. Uses
+ * an in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_parallelDecryption extends AbstractTest {
+
+    private static final int FRAME_SIZE = 1024;
+
+    private static JceMasterKey masterKey;
+    private static byte[] plaintext;
+
+    private KmsEncryptionService encryptionService;
+    private KmsDecryptionService decryptionService;
+
+    @BeforeClass
+    public static void beforeClass() {
+        masterKey = LocalMasterKeys.masterKey();
+
+        plaintext = new byte[100 * FRAME_SIZE + 123];
+        new Random(21).nextBytes(plaintext);
+    }
+
+    @Before
+    public void before() {
+        encryptionService = new KmsEncryptionService(masterKey);
+        encryptionService.setFrameSize(FRAME_SIZE);
+
+        decryptionService = new KmsDecryptionService(masterKey);
+        decryptionService.enableParallelDecryption(new ParallelDecryptionPolicy(4, 0, 4 * FRAME_SIZE));
+    }
+
+    @After
+    public void after() {
+        decryptionService.disableParallelDecryption();
+    }
+
+    @Test
+    public void testDecryptFileToBytes_everySuite() throws IOException {
+        for (CryptoAlgorithm algorithmSuite : CryptoAlgorithm.values()) {
+            encryptionService.setAlgorithmSuite(algorithmSuite);
+
+            assertArrayEquals(algorithmSuite.toString(), plaintext, decryptionService.decryptFileToBytes(encrypt(plaintext)));
+        }
+    }
+
+    @Test
+    public void testSdkVersionIsSupported() {
+        assertTrue(
+                "parallel decryption is pinned to AWS Encryption SDK " + ParallelFrameDecryptor.SUPPORTED_SDK_VERSION,
+                ParallelFrameDecryptor.isSupported());
+    }
+
+    @Test
+    public void testDecryptToBytes_matchesSdkForEverySuite() throws IOException {
+        ParallelFrameDecryptor decryptor = new ParallelFrameDecryptor(new ParallelDecryptionPolicy(4, 0, 4 * FRAME_SIZE));
+
+        try {
+            for (CryptoAlgorithm algorithmSuite : CryptoAlgorithm.values()) {
+                AwsCrypto awsCrypto = new AwsCrypto();
+                awsCrypto.setEncryptionAlgorithm(algorithmSuite);
+                awsCrypto.setEncryptionFrameSize(FRAME_SIZE);
+
+                byte[] ciphertext = awsCrypto.encryptData(masterKey, plaintext).getResult();
+                byte[] expected = awsCrypto.decryptData(masterKey, ciphertext).getResult();
+
+                File encryptedFile = File.createTempFile("sdk", ".encrypted");
+                encryptedFile.deleteOnExit();
+                Files.write(encryptedFile.toPath(), ciphertext);
+
+                try (FileChannel encryptedChannel = FileChannel.open(encryptedFile.toPath(), StandardOpenOption.READ)) {
+                    byte[] actual = decryptor.decryptToBytes(encryptedChannel, new DefaultCryptoMaterialsManager(masterKey));
+
+                    assertNotNull(algorithmSuite.toString(), actual);
+                    assertArrayEquals(algorithmSuite.toString(), expected, actual);
+                }
+            }
+
+        } finally {
+            decryptor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReplacePolicyWhileDecrypting() throws Exception {
+        File encryptedFile = encrypt(plaintext);
+        AtomicBoolean done = new AtomicBoolean();
+
+        Thread toggler = new Thread(() -> {
+            while (!done.get()) {
+                decryptionService.enableParallelDecryption(new ParallelDecryptionPolicy(2, 0, FRAME_SIZE));
+                decryptionService.disableParallelDecryption();
+            }
+        });
+
+        toggler.start();
+
+        try {
+            for (int i = 0; i < 50; i++)
+                assertArrayEquals(plaintext, decryptionService.decryptFileToBytes(encryptedFile));
+
+        } finally {
+            done.set(true);
+            toggler.join();
+        }
+    }
+
+    @Test
+    public void testDecryptFileToFile() throws IOException {
+        File decryptedFile = File.createTempFile("decrypted", ".bin");
+        decryptedFile.deleteOnExit();
+
+        decryptionService.decryptFile(encrypt(plaintext), decryptedFile);
+
+        assertArrayEquals(plaintext, Files.readAllBytes(decryptedFile.toPath()));
+    }
+
+    @Test
+    public void testDecryptFileToBytes_frameSizes() throws IOException {
+        for (int frameSize : new int[] {1, 100, 4096, 1 << 20}) {
+            encryptionService.setFrameSize(frameSize);
+
+            assertArrayEquals(String.valueOf(frameSize), plaintext, decryptionService.decryptFileToBytes(encrypt(plaintext)));
+        }
+    }
+
+    @Test
+    public void testDecryptFileToBytes_wholeFrames() throws IOException {
+        byte[] wholeFrames = Arrays.copyOf(plaintext, 10 * FRAME_SIZE);
+
+        assertArrayEquals(wholeFrames, decryptionService.decryptFileToBytes(encrypt(wholeFrames)));
+    }
+
+    @Test
+    public void testDecryptFileToBytes_unframed() throws IOException {
+        encryptionService.setFrameSize(0);
+
+        assertArrayEquals(plaintext, decryptionService.decryptFileToBytes(encrypt(plaintext)));
+    }
+
+    @Test
+    public void testDecryptFileToBytes_belowMinimumSize() throws IOException {
+        decryptionService.enableParallelDecryption(new ParallelDecryptionPolicy(4, Long.MAX_VALUE, FRAME_SIZE));
+
+        assertArrayEquals(plaintext, decryptionService.decryptFileToBytes(encrypt(plaintext)));
+    }
+
+    @Test
+    public void testDecryptFileToBytes_sharesCachedDataKey() throws IOException {
+        decryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+        File encryptedFile = encrypt(plaintext);
+
+        decryptionService.decryptFileToBytes(encryptedFile);
+        decryptionService.decryptFileToBytes(encryptedFile);
+
+        assertEquals(1, decryptionService.dataKeyCacheMisses());
+        assertEquals(1, decryptionService.dataKeyCacheHits());
+    }
+
+    @Test(expected = BadCiphertextException.class)
+    public void testDecryptFileToBytes_tamperedFrame() throws IOException {
+        encryptionService.setAlgorithmSuite(CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA256);
+        File encryptedFile = encrypt(plaintext);
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        ciphertext[headerLength(ciphertext) + 50 * (4 + 12 + FRAME_SIZE + 16) + 100] ^= 1;
+        Files.write(encryptedFile.toPath(), ciphertext);
+
+        decryptionService.decryptFileToBytes(encryptedFile);
+    }
+
+    @Test(expected = BadCiphertextException.class)
+    public void testDecryptFileToBytes_tamperedHeader() throws IOException {
+        File encryptedFile = encrypt(plaintext);
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        ciphertext[headerLength(ciphertext) - 20] ^= 1;
+        Files.write(encryptedFile.toPath(), ciphertext);
+
+        decryptionService.decryptFileToBytes(encryptedFile);
+    }
+
+    @Test(expected = BadCiphertextException.class)
+    public void testDecryptFileToBytes_tamperedSignature() throws IOException {
+        encryptionService.setAlgorithmSuite(CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA384_ECDSA_P384);
+        File encryptedFile = encrypt(plaintext);
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        ciphertext[ciphertext.length - 10] ^= 1;
+        Files.write(encryptedFile.toPath(), ciphertext);
+
+        decryptionService.decryptFileToBytes(encryptedFile);
+    }
+
+    @Test(expected = BadCiphertextException.class)
+    public void testDecryptFileToBytes_truncated() throws IOException {
+        encryptionService.setAlgorithmSuite(CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA256);
+        File encryptedFile = encrypt(plaintext);
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        Files.write(encryptedFile.toPath(), Arrays.copyOf(ciphertext, ciphertext.length - FRAME_SIZE));
+
+        decryptionService.decryptFileToBytes(encryptedFile);
+    }
+
+    @Test(expected = BadCiphertextException.class)
+    public void testDecryptFileToBytes_trailingBytes() throws IOException {
+        File encryptedFile = encrypt(plaintext);
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        Files.write(encryptedFile.toPath(), Arrays.copyOf(ciphertext, ciphertext.length + 1));
+
+        decryptionService.decryptFileToBytes(encryptedFile);
+    }
+
+    @Test(expected = BadCiphertextException.class)
+    public void testDecryptFileToBytes_reorderedFrames() throws IOException {
+        encryptionService.setAlgorithmSuite(CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA256);
+        File encryptedFile = encrypt(plaintext);
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        int frameLength = 4 + 12 + FRAME_SIZE + 16;
+        int first = headerLength(ciphertext);
+        byte[] frame = Arrays.copyOfRange(ciphertext, first, first + frameLength);
+        System.arraycopy(ciphertext, first + frameLength, ciphertext, first, frameLength);
+        System.arraycopy(frame, 0, ciphertext, first + frameLength, frameLength);
+        Files.write(encryptedFile.toPath(), ciphertext);
+
+        decryptionService.decryptFileToBytes(encryptedFile);
+    }
+
+    @Test
+    public void testDecryptFileToFile_tamperedLeavesNoFile() throws IOException {
+        File encryptedFile = encrypt(plaintext);
+        byte[] ciphertext = Files.readAllBytes(encryptedFile.toPath());
+        ciphertext[ciphertext.length - 20] ^= 1;
+        Files.write(encryptedFile.toPath(), ciphertext);
+
+        File decryptedFile = new File(encryptedFile.getAbsolutePath() + ".decrypted");
+        decryptedFile.deleteOnExit();
+
+        try {
+            decryptionService.decryptFile(encryptedFile, decryptedFile);
+            fail();
+
+        } catch (BadCiphertextException exception) {
+            assertFalse(decryptedFile.exists());
+        }
+    }
+
+    @Test
+    public void testDisableParallelDecryption() throws IOException {
+        assertTrue(decryptionService.isParallelDecryptionEnabled());
+
+        decryptionService.disableParallelDecryption();
+
+        assertFalse(decryptionService.isParallelDecryptionEnabled());
+        assertArrayEquals(plaintext, decryptionService.decryptFileToBytes(encrypt(plaintext)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableParallelDecryption_null() {
+        decryptionService.enableParallelDecryption(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelDecryptionPolicy_zeroParallelism() {
+        new ParallelDecryptionPolicy(0);
+    }
+
+    private File encrypt(final byte[] contents) throws IOException {
+        File file = File.createTempFile("plaintext", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents);
+
+        File encryptedFile = encryptionService.encryptFile(file);
+        encryptedFile.deleteOnExit();
+        return encryptedFile;
+    }
+
+    private static int headerLength(final byte[] ciphertext) {
+        return new ParsedCiphertext(ciphertext).getOffset();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.exception.AwsCryptoException;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.amazonaws.encryptionsdk.multi.MultipleProviderFactory;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsDecryptionService} region selection. Uses
+ * in-process master keys that stand in for KMS keys in three regions, so no
+ * AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsDecryptionServiceTest_regionSelection extends AbstractTest {
+
+    private static final String US_EAST_1 = "us-east-1";
+    private static final String US_WEST_2 = "us-west-2";
+    private static final String EU_WEST_1 = "eu-west-1";
+
+    private SimulatedRegions regions;
+    private String encryptedValue;
+
+    @Before
+    public void before() {
+        regions = new SimulatedRegions(US_EAST_1, US_WEST_2, EU_WEST_1);
+
+        encryptedValue
+                = new KmsEncryptionService(
+                        MultipleProviderFactory.buildMultiProvider(
+                                JceMasterKey.class,
+                                regions.keys()))
+                        .encryptValue(SECRET_FILE_CONTENTS);
+    }
+
+    @Test
+    public void testMeasuresEveryRegionThenPrefersTheFastest() {
+        regions.latencyMillis.put(US_EAST_1, 40L);
+        regions.latencyMillis.put(US_WEST_2, 2L);
+        regions.latencyMillis.put(EU_WEST_1, 80L);
+
+        KmsDecryptionService decryptionService = decryptionService(null);
+
+        for (int i = 0; i < 6; i++)
+            assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        assertEquals(1, regions.calls(US_EAST_1));
+        assertEquals(4, regions.calls(US_WEST_2));
+        assertEquals(1, regions.calls(EU_WEST_1));
+        assertEquals(Arrays.asList(US_WEST_2, US_EAST_1, EU_WEST_1), new ArrayList<>(decryptionService.regionHealth().keySet()));
+    }
+
+    @Test
+    public void testPreferredRegionIsMeasuredFirst() {
+        KmsDecryptionService decryptionService = decryptionService(EU_WEST_1);
+
+        decryptionService.decryptValue(encryptedValue);
+
+        assertEquals(0, regions.calls(US_EAST_1));
+        assertEquals(1, regions.calls(EU_WEST_1));
+    }
+
+    @Test
+    public void testFailsOverAndSkipsUnhealthyRegion() {
+        regions.failing.add(US_EAST_1);
+        KmsDecryptionService decryptionService = decryptionService(US_EAST_1);
+
+        for (int i = 0; i < 3; i++)
+            assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+
+        RegionHealth health = decryptionService.regionHealth().get(US_EAST_1);
+
+        assertEquals(1, regions.calls(US_EAST_1));
+        assertFalse(health.isHealthy());
+        assertEquals(1.0, health.errorRate(), 0.01);
+        assertEquals(US_EAST_1, new ArrayList<>(decryptionService.regionHealth().keySet()).get(2));
+    }
+
+    @Test
+    public void testUnhealthyRegionRecovers() {
+        AtomicLong clock = new AtomicLong();
+        regions.failing.add(US_EAST_1);
+
+        RegionLatencyTracker tracker = new RegionLatencyTracker(US_EAST_1, clock::get);
+        KmsDecryptionService decryptionService
+                = new KmsDecryptionService(
+                        new RegionAwareMasterKeyProvider<>(
+                                regions,
+                                tracker));
+
+        decryptionService.decryptValue(encryptedValue);
+        regions.failing.clear();
+
+        clock.addAndGet(2 * RegionLatencyTracker.ERROR_RATE_HALF_LIFE_NANOS);
+        assertTrue(decryptionService.regionHealth().get(US_EAST_1).isHealthy());
+
+        decryptionService.decryptValue(encryptedValue);
+
+        assertEquals(2, regions.calls(US_EAST_1));
+        assertTrue(decryptionService.regionHealth().get(US_EAST_1).errorRate() < RegionLatencyTracker.UNHEALTHY_ERROR_RATE);
+    }
+
+    @Test(expected = AwsCryptoException.class)
+    public void testEveryRegionFails() {
+        regions.failing.addAll(Arrays.asList(US_EAST_1, US_WEST_2, EU_WEST_1));
+
+        decryptionService(null).decryptValue(encryptedValue);
+    }
+
+    @Test
+    public void testRegionHealth_emptyWithoutKms() {
+        assertTrue(new KmsDecryptionService(LocalMasterKeys.masterKey()).regionHealth().isEmpty());
+    }
+
+    private KmsDecryptionService decryptionService(final String preferredRegion) {
+        return new KmsDecryptionService(
+                new RegionAwareMasterKeyProvider<>(
+                        regions,
+                        new RegionLatencyTracker(preferredRegion)));
+    }
+}
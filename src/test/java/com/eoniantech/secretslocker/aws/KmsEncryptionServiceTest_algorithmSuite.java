@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.AwsCrypto;
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.ParsedCiphertext;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.amazonaws.encryptionsdk.model.ContentType;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsEncryptionService} algorithm suite and frame
+ * size. Uses an in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsEncryptionServiceTest_algorithmSuite extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+    private static byte[] plaintext;
+
+    private KmsEncryptionService encryptionService;
+    private KmsDecryptionService decryptionService;
+
+    @BeforeClass
+    public static void beforeClass() {
+        masterKey = LocalMasterKeys.masterKey();
+
+        plaintext = new byte[10_001];
+        new Random(20).nextBytes(plaintext);
+    }
+
+    @Before
+    public void before() {
+        encryptionService = new KmsEncryptionService(masterKey);
+        decryptionService = new KmsDecryptionService(masterKey);
+    }
+
+    @Test
+    public void testDefaults() {
+        assertEquals(AwsCrypto.getDefaultCryptoAlgorithm(), encryptionService.algorithmSuite());
+        assertEquals(AwsCrypto.getDefaultFrameSize(), encryptionService.frameSize());
+        assertEquals(AwsCrypto.getDefaultCryptoAlgorithm(), header(encryptionService.encryptValue(SECRET_FILE_CONTENTS)).getCryptoAlgoId());
+    }
+
+    @Test
+    public void testSetAlgorithmSuite_everySuite() {
+        for (CryptoAlgorithm algorithmSuite : CryptoAlgorithm.values()) {
+            encryptionService.setAlgorithmSuite(algorithmSuite);
+            String encryptedValue = encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+
+            assertEquals(algorithmSuite, encryptionService.algorithmSuite());
+            assertEquals(algorithmSuite, header(encryptedValue).getCryptoAlgoId());
+            assertEquals(SECRET_FILE_CONTENTS, decryptionService.decryptValue(encryptedValue));
+        }
+    }
+
+    @Test
+    public void testSetFrameSize() throws IOException {
+        encryptionService.setFrameSize(1024);
+        File encryptedFile = encryptFile();
+
+        assertEquals(1024, encryptionService.frameSize());
+        assertEquals(1024, header(Files.readAllBytes(encryptedFile.toPath())).getFrameLength());
+        assertArrayEquals(plaintext, decryptionService.decryptFileToBytes(encryptedFile));
+    }
+
+    @Test
+    public void testSetFrameSize_unframed() throws IOException {
+        encryptionService.setFrameSize(0);
+        File encryptedFile = encryptFile();
+
+        assertEquals(ContentType.SINGLEBLOCK, header(Files.readAllBytes(encryptedFile.toPath())).getContentType());
+        assertArrayEquals(plaintext, decryptionService.decryptFileToBytes(encryptedFile));
+    }
+
+    @Test
+    public void testSetFrameSize_keepsAlgorithmSuite() {
+        encryptionService.setAlgorithmSuite(CryptoAlgorithm.ALG_AES_128_GCM_IV12_TAG16_HKDF_SHA256);
+        encryptionService.setFrameSize(2048);
+
+        assertEquals(CryptoAlgorithm.ALG_AES_128_GCM_IV12_TAG16_HKDF_SHA256, encryptionService.algorithmSuite());
+        assertEquals(2048, encryptionService.frameSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetAlgorithmSuite_null() {
+        encryptionService.setAlgorithmSuite(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetFrameSize_negative() {
+        encryptionService.setFrameSize(-1);
+    }
+
+    private File encryptFile() throws IOException {
+        File file = File.createTempFile("plaintext", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), plaintext);
+
+        File encryptedFile = encryptionService.encryptFile(file);
+        encryptedFile.deleteOnExit();
+        return encryptedFile;
+    }
+
+    private static ParsedCiphertext header(final String encryptedValue) {
+        return header(Base64.getDecoder().decode(encryptedValue));
+    }
+
+    private static ParsedCiphertext header(final byte[] message) {
+        return new ParsedCiphertext(message);
+    }
+}
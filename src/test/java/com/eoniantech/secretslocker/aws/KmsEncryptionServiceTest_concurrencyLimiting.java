@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.encryptionsdk.kms.KmsMasterKeyProvider;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.EncryptionService.EncryptionException;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsEncryptionService} concurrency limiting. Calls
+ * a local KMS stand-in through real KMS clients, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsEncryptionServiceTest_concurrencyLimiting extends AbstractTest {
+
+    private LocalKms localKms;
+    private KmsEncryptionService encryptionService;
+
+    @Before
+    public void before() throws IOException {
+        localKms = new LocalKms(0);
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter
+                = new AdaptiveConcurrencyLimiter();
+
+        KmsMasterKeyProvider masterKeyProvider
+                = KmsMasterKeyProvider
+                        .builder()
+                        .withCustomClientFactory(
+                                new KmsClientFactory(
+                                        new ClientConfiguration().withMaxErrorRetry(0),
+                                        LocalKms.credentials(),
+                                        localKms.endpoint(),
+                                        concurrencyLimiter))
+                        .withKeysForEncryption(LocalKms.KEY_ARN)
+                        .build();
+
+        encryptionService
+                = new KmsEncryptionService(
+                        masterKeyProvider,
+                        concurrencyLimiter);
+    }
+
+    @After
+    public void after() {
+        localKms.close();
+    }
+
+    @Test
+    public void testEnableAndDisable() {
+        assertFalse(encryptionService.isConcurrencyLimitingEnabled());
+
+        encryptionService.enableConcurrencyLimiting(new ConcurrencyLimitPolicy(4, 8));
+        assertTrue(encryptionService.isConcurrencyLimitingEnabled());
+
+        String encryptedValue = encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+
+        assertEquals(SECRET_FILE_CONTENTS, new KmsDecryptionService(localKms.masterKeyProvider()).decryptValue(encryptedValue));
+        assertEquals(4, encryptionService.concurrencyMetrics().limit());
+        assertEquals(0, encryptionService.concurrencyMetrics().inFlight());
+
+        encryptionService.disableConcurrencyLimiting();
+        assertFalse(encryptionService.isConcurrencyLimitingEnabled());
+        assertEquals(0, encryptionService.concurrencyMetrics().limit());
+    }
+
+    @Test
+    public void testThrottledGenerateDataKeyBacksOff() {
+        localKms.setQuota(0);
+        encryptionService.enableConcurrencyLimiting(new ConcurrencyLimitPolicy(8, 16));
+
+        try {
+            encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+            fail();
+
+        } catch (EncryptionException exception) {
+            ConcurrencyMetrics metrics = encryptionService.concurrencyMetrics();
+
+            assertEquals(1, metrics.throttles());
+            assertEquals(4, metrics.limit());
+            assertEquals(0, metrics.inFlight());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableConcurrencyLimiting_null() {
+        encryptionService.enableConcurrencyLimiting(null);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.EncryptionService.EncryptionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsEncryptionService} constructors and factory
+ * methods. The account ID lookup is replaced with a counting resolver, so no
+ * AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsEncryptionServiceTest_constructor extends AbstractTest {
+
+    private static final String ALIAS = "alias/some-alias";
+    private static final String ACCOUNT = "111122223333";
+    private static final String[] REGIONS = {"us-east-1", "us-west-2"};
+
+    private AtomicInteger lookups;
+
+    @Before
+    public void before() {
+        lookups = new AtomicInteger();
+    }
+
+    @Test
+    public void testConstructor_noAccountLookup() {
+        new KmsEncryptionService(ALIAS, countingResolver(0), REGIONS);
+
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void testResolveKeysAsync_lookupOnce() throws Exception {
+        KmsEncryptionService encryptionService
+                = new KmsEncryptionService(ALIAS, countingResolver(100), REGIONS);
+
+        List<CompletableFuture<Void>> resolutions = new ArrayList<>();
+
+        for (int i = 0; i < 16; i++)
+            resolutions.add(encryptionService.resolveKeysAsync());
+
+        for (CompletableFuture<Void> resolution : resolutions)
+            resolution.get(1, TimeUnit.MINUTES);
+
+        encryptionService.resolveKeysAsync().get(1, TimeUnit.MINUTES);
+
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testResolveKeysAsync_failureIsNotCached() throws Exception {
+        IllegalStateException failure = new IllegalStateException("no credentials");
+
+        KmsEncryptionService encryptionService
+                = new KmsEncryptionService(
+                        ALIAS,
+                        () -> {
+                            if (lookups.incrementAndGet() == 1)
+                                throw failure;
+
+                            return ACCOUNT;
+                        },
+                        REGIONS);
+
+        try {
+            encryptionService.resolveKeysAsync().get(1, TimeUnit.MINUTES);
+            fail("expected the first resolution to fail");
+
+        } catch (ExecutionException exception) {
+            assertSame(failure, exception.getCause());
+        }
+
+        encryptionService.resolveKeysAsync().get(1, TimeUnit.MINUTES);
+
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testEncryptValue_resolutionFailure() {
+        IllegalStateException failure = new IllegalStateException("no credentials");
+
+        KmsEncryptionService encryptionService
+                = new KmsEncryptionService(
+                        ALIAS,
+                        () -> {
+                            throw failure;
+                        },
+                        REGIONS);
+
+        try {
+            encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+            fail("expected the encryption to fail");
+
+        } catch (EncryptionException exception) {
+            assertSame(failure, exception.getCause());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_nullAlias() {
+        new KmsEncryptionService(null, countingResolver(0), REGIONS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_invalidRegion() {
+        new KmsEncryptionService(ALIAS, countingResolver(0), "us-east-1", "not-a-region");
+    }
+
+    @Test
+    public void testWithAccountId() {
+        KmsEncryptionService encryptionService
+                = KmsEncryptionService.withAccountId(ACCOUNT, ALIAS, REGIONS);
+
+        assertTrue(encryptionService.resolveKeysAsync().isDone());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithAccountId_nullAccountId() {
+        KmsEncryptionService.withAccountId(null, ALIAS, REGIONS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithAccountId_blankAlias() {
+        KmsEncryptionService.withAccountId(ACCOUNT, "  ", REGIONS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithAccountId_emptyRegions() {
+        KmsEncryptionService.withAccountId(ACCOUNT, ALIAS);
+    }
+
+    @Test
+    public void testWithKeyArns() {
+        KmsEncryptionService encryptionService
+                = KmsEncryptionService.withKeyArns(
+                        "arn:aws:kms:us-east-1:111122223333:alias/some-alias",
+                        "arn:aws:kms:us-west-2:111122223333:key/1234abcd-12ab-34cd-56ef-1234567890ab");
+
+        assertTrue(encryptionService.resolveKeysAsync().isDone());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithKeyArns_null() {
+        KmsEncryptionService.withKeyArns((String[]) null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithKeyArns_empty() {
+        KmsEncryptionService.withKeyArns();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithKeyArns_notAnArn() {
+        KmsEncryptionService.withKeyArns("alias/some-alias");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithKeyArns_invalidRegion() {
+        KmsEncryptionService.withKeyArns("arn:aws:kms:not-a-region:111122223333:alias/some-alias");
+    }
+
+    private Supplier<String> countingResolver(final long delayMillis) {
+        return () -> {
+            lookups.incrementAndGet();
+
+            try {
+                Thread.sleep(delayMillis);
+
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+
+            return ACCOUNT;
+        };
+    }
+}
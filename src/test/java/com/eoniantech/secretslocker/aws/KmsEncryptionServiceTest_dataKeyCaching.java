@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.EncryptionReport;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for data key caching in the {@link KmsEncryptionService}. Uses
+ * an in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsEncryptionServiceTest_dataKeyCaching extends AbstractTest {
+
+    private static final int FILES = 10;
+    private static final int FILE_SIZE = 100;
+
+    private static JceMasterKey masterKey;
+
+    private KmsEncryptionService encryptionService;
+    private List<File> files;
+
+    @BeforeClass
+    public static void beforeClass() {
+        masterKey = LocalMasterKeys.masterKey();
+    }
+
+    @Before
+    public void before() throws IOException {
+        Path directory = Files.createTempDirectory("caching");
+        directory.toFile().deleteOnExit();
+
+        files = new ArrayList<>();
+
+        for (int i = 0; i < FILES; i++) {
+            File file = directory.resolve("secret" + i + ".txt").toFile();
+            file.deleteOnExit();
+            new File(file.getAbsolutePath() + ".encrypted").deleteOnExit();
+
+            byte[] contents = new byte[FILE_SIZE];
+            contents[0] = (byte) i;
+            Files.write(file.toPath(), contents);
+            files.add(file);
+        }
+
+        encryptionService = new KmsEncryptionService(masterKey);
+    }
+
+    @Test
+    public void testDataKeyCaching_disabledByDefault() {
+        encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+
+        assertFalse(encryptionService.isDataKeyCachingEnabled());
+        assertEquals(0, encryptionService.dataKeyCacheHits());
+        assertEquals(0, encryptionService.dataKeyCacheMisses());
+    }
+
+    @Test
+    public void testDataKeyCaching_files() {
+        encryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        for (File file : files)
+            encryptionService.encryptFile(file);
+
+        assertEquals(1, encryptionService.dataKeyCacheMisses());
+        assertEquals(FILES - 1, encryptionService.dataKeyCacheHits());
+    }
+
+    @Test
+    public void testDataKeyCaching_nioFiles() {
+        encryptionService.enableNioFileIo(new FileIoPolicy(4096, false, false));
+        encryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        for (File file : files)
+            encryptionService.encryptFile(file);
+
+        assertEquals(1, encryptionService.dataKeyCacheMisses());
+        assertEquals(FILES - 1, encryptionService.dataKeyCacheHits());
+    }
+
+    @Test
+    public void testDataKeyCaching_batchSharesDecryptionKeys() throws IOException {
+        encryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        // Cache the data key first, so the parallel encryptions can not race
+        // each other to a miss and each encrypt with a data key of their own.
+        encryptionService.encryptFile(files.get(0));
+        EncryptionReport report = encryptionService.encryptAll(files);
+
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        decryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+
+        for (File file : files)
+            assertArrayEquals(
+                    Files.readAllBytes(file.toPath()),
+                    decryptionService.decryptFileToBytes(report.get(file.getAbsolutePath())));
+
+        assertEquals(1, decryptionService.dataKeyCacheMisses());
+        assertEquals(FILES - 1, decryptionService.dataKeyCacheHits());
+    }
+
+    @Test
+    public void testDataKeyCaching_messageUseLimit() {
+        encryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES, 3, Long.MAX_VALUE));
+
+        for (int i = 0; i < 10; i++)
+            encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+
+        // A new data key for messages 1, 4, 7 and 10.
+        assertEquals(4, encryptionService.dataKeyCacheMisses());
+    }
+
+    @Test
+    public void testDataKeyCaching_byteUseLimit() {
+        encryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES, 100, 2 * FILE_SIZE + FILE_SIZE / 2));
+
+        for (File file : files)
+            encryptionService.encryptFile(file);
+
+        // Each data key encrypts two files before the third would exceed the limit.
+        assertEquals(FILES / 2, encryptionService.dataKeyCacheMisses());
+    }
+
+    @Test
+    public void testDataKeyCaching_disable() {
+        encryptionService.enableDataKeyCaching(new DataKeyCachePolicy(10, 1, TimeUnit.MINUTES));
+        encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+        assertTrue(encryptionService.isDataKeyCachingEnabled());
+
+        encryptionService.disableDataKeyCaching();
+        String encryptedValue = encryptionService.encryptValue(SECRET_FILE_CONTENTS);
+
+        assertFalse(encryptionService.isDataKeyCachingEnabled());
+        assertEquals(0, encryptionService.dataKeyCacheMisses());
+        assertEquals(SECRET_FILE_CONTENTS, new KmsDecryptionService(masterKey).decryptValue(encryptedValue));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableDataKeyCaching_null() {
+        encryptionService.enableDataKeyCaching(null);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import com.eoniantech.secretslocker.EncryptionReport;
+import com.eoniantech.secretslocker.LockerExecutors;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsEncryptionService} encryptAll and
+ * encryptDirectory methods. Uses an in-process master key, so no AWS access
+ * is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsEncryptionServiceTest_encryptAll extends AbstractTest {
+
+    private static final int FILES = 20;
+
+    private static JceMasterKey masterKey;
+
+    private Path directory;
+    private KmsEncryptionService encryptionService;
+
+    @BeforeClass
+    public static void beforeClass() {
+        masterKey = LocalMasterKeys.masterKey();
+    }
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("encrypt");
+        directory.toFile().deleteOnExit();
+
+        encryptionService = new KmsEncryptionService(masterKey);
+        encryptionService.setBatchConcurrency(4);
+    }
+
+    @Test
+    public void testEncryptAll() throws IOException {
+        List<File> files = new ArrayList<>();
+
+        for (int i = 0; i < FILES; i++)
+            files.add(write("secret" + i + ".txt", "secret " + i));
+
+        EncryptionReport report = encryptionService.encryptAll(files);
+
+        assertTrue(report.isSuccessful());
+        assertEquals(FILES, report.values().size());
+        assertEquals(bytes(files), report.bytes());
+        assertTrue(report.filesPerSecond() > 0);
+
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+
+        for (int i = 0; i < FILES; i++) {
+            File encryptedFile = report.get(files.get(i).getAbsolutePath());
+            encryptedFile.deleteOnExit();
+
+            assertEquals(files.get(i).getAbsolutePath() + ".encrypted", encryptedFile.getAbsolutePath());
+            assertEquals("secret " + i, decryptionService.decryptFile(encryptedFile.getAbsolutePath()));
+        }
+    }
+
+    @Test
+    public void testEncryptAllAsync_coldKeysOnBusyExecutor() throws Exception {
+        int poolSize = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        AtomicInteger resolutions = new AtomicInteger();
+
+        KmsEncryptionService coldService
+                = new KmsEncryptionService(
+                        () -> {
+                            resolutions.incrementAndGet();
+                            return masterKey;
+                        },
+                        new AdaptiveConcurrencyLimiter());
+
+        coldService.setBatchConcurrency(2 * poolSize);
+
+        List<File> files = new ArrayList<>();
+
+        for (int i = 0; i < 2 * poolSize; i++)
+            files.add(write("secret" + i + ".txt", "secret " + i));
+
+        // Keep every thread of the default executor busy while the batch
+        // starts, so the batch's encryptions queue up ahead of anything the
+        // first of them submits.
+        CountDownLatch busy = new CountDownLatch(1);
+
+        for (int i = 0; i < poolSize; i++)
+            LockerExecutors.defaultExecutor().execute(() -> {
+                try {
+                    busy.await();
+
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+        CompletableFuture<EncryptionReport> batch = coldService.encryptAllAsync(files);
+        busy.countDown();
+
+        EncryptionReport report = batch.get(30, TimeUnit.SECONDS);
+
+        for (File encryptedFile : report.values().values())
+            encryptedFile.deleteOnExit();
+
+        assertTrue(report.isSuccessful());
+        assertEquals(files.size(), report.values().size());
+        assertEquals(1, resolutions.get());
+    }
+
+    @Test
+    public void testEncryptAll_failureDoesNotAbortBatch() throws IOException {
+        File file = write("secret.txt", SECRET_FILE_CONTENTS);
+        File missing = directory.resolve("missing.txt").toFile();
+
+        EncryptionReport report = encryptionService.encryptAll(Arrays.asList(missing, file));
+        report.get(file.getAbsolutePath()).deleteOnExit();
+
+        assertFalse(report.isSuccessful());
+        assertEquals(Collections.singletonList(file.getAbsolutePath()), new ArrayList<>(report.values().keySet()));
+        assertTrue(report.failures().get(missing.getAbsolutePath()) instanceof IllegalArgumentException);
+        assertEquals(file.length(), report.bytes());
+    }
+
+    @Test
+    public void testEncryptAll_empty() {
+        EncryptionReport report = encryptionService.encryptAll(Collections.emptyList());
+
+        assertTrue(report.isSuccessful());
+        assertTrue(report.values().isEmpty());
+        assertEquals(0, report.bytes());
+    }
+
+    @Test
+    public void testEncryptAll_duplicates() throws IOException {
+        File file = write("secret.txt", SECRET_FILE_CONTENTS);
+
+        EncryptionReport report = encryptionService.encryptAll(Arrays.asList(file, file));
+        report.get(file.getAbsolutePath()).deleteOnExit();
+
+        assertEquals(1, report.values().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncryptAll_null() {
+        encryptionService.encryptAll(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncryptAll_nullFile() {
+        encryptionService.encryptAll(Arrays.asList((File) null));
+    }
+
+    @Test
+    public void testEncryptDirectory_glob() throws IOException {
+        File one = write("one.properties", "one=1");
+        File two = write("nested/two.properties", "two=2");
+        write("readme.txt", "not a secret");
+
+        EncryptionReport top = encryptionService.encryptDirectory(directory, "*.properties");
+        top.get(one.getAbsolutePath()).deleteOnExit();
+
+        assertEquals(Collections.singleton(one.getAbsolutePath()), top.values().keySet());
+
+        EncryptionReport nested = encryptionService.encryptDirectory(directory, "**/*.properties");
+        nested.get(two.getAbsolutePath()).deleteOnExit();
+
+        assertEquals(Collections.singleton(two.getAbsolutePath()), nested.values().keySet());
+    }
+
+    @Test
+    public void testEncryptDirectory_skipsEncryptedFiles() throws IOException {
+        File file = write("secret.txt", SECRET_FILE_CONTENTS);
+
+        EncryptionReport first = encryptionService.encryptDirectory(directory, "*");
+        first.get(file.getAbsolutePath()).deleteOnExit();
+
+        EncryptionReport second = encryptionService.encryptDirectory(directory, "*");
+
+        assertEquals(Collections.singleton(file.getAbsolutePath()), second.values().keySet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncryptDirectory_notADirectory() throws IOException {
+        encryptionService.encryptDirectory(write("secret.txt", SECRET_FILE_CONTENTS).toPath(), "*");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncryptDirectory_nullGlob() {
+        encryptionService.encryptDirectory(directory, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetBatchConcurrency_zero() {
+        encryptionService.setBatchConcurrency(0);
+    }
+
+    private File write(
+            final String fileName,
+            final String contents) throws IOException {
+
+        File file = directory.resolve(fileName).toFile();
+        file.getParentFile().mkdirs();
+        file.getParentFile().deleteOnExit();
+        file.deleteOnExit();
+
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static long bytes(final List<File> files) {
+        long bytes = 0;
+
+        for (File file : files)
+            bytes += file.length();
+
+        return bytes;
+    }
+}
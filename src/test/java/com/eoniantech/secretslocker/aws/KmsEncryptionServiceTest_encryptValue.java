@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link KmsEncryptionService} encryptValue method. Uses an
+ * in-process master key, so no AWS access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsEncryptionServiceTest_encryptValue extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+
+    @BeforeClass
+    public static void beforeClass() {
+        masterKey = LocalMasterKeys.masterKey();
+    }
+
+    @Test
+    public void testEncryptValue() {
+        String encryptedValue = new KmsEncryptionService(masterKey).encryptValue(SECRET_FILE_CONTENTS);
+
+        assertNotEquals(SECRET_FILE_CONTENTS, encryptedValue);
+        assertNotNull(Base64.getDecoder().decode(encryptedValue));
+        assertEquals(SECRET_FILE_CONTENTS, new KmsDecryptionService(masterKey).decryptValue(encryptedValue));
+    }
+
+    @Test
+    public void testEncryptValue_unicode() {
+        String value = "p\u00e4ssw\u00f6rd \u2603";
+        String encryptedValue = new KmsEncryptionService(masterKey).encryptValue(value);
+
+        assertEquals(value, new KmsDecryptionService(masterKey).decryptValue(encryptedValue));
+    }
+
+    @Test
+    public void testEncryptValue_newDataKeyEachTime() {
+        KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+
+        assertNotEquals(
+                encryptionService.encryptValue(SECRET_FILE_CONTENTS),
+                encryptionService.encryptValue(SECRET_FILE_CONTENTS));
+    }
+
+    @Test
+    public void testEncryptValue_concurrent() throws Exception {
+        KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+
+            for (int i = 0; i < 200; i++) {
+                String value = "value" + i;
+                results.add(executor.submit(() -> encryptionService.encryptValue(value)));
+            }
+
+            for (int i = 0; i < results.size(); i++)
+                assertEquals("value" + i, decryptionService.decryptValue(results.get(i).get(1, TimeUnit.MINUTES)));
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncryptValue_null() {
+        new KmsEncryptionService(masterKey).encryptValue(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncryptValue_empty() {
+        new KmsEncryptionService(masterKey).encryptValue("");
+    }
+}
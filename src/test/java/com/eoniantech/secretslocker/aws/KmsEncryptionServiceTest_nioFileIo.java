@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import com.eoniantech.secretslocker.AbstractTest;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for encrypting files through {@link FileChannel}s with the
+ * {@link KmsEncryptionService}. Uses an in-process master key, so no AWS
+ * access is required.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public class KmsEncryptionServiceTest_nioFileIo extends AbstractTest {
+
+    private static JceMasterKey masterKey;
+    private static byte[] plaintext;
+
+    private File file;
+
+    @BeforeClass
+    public static void beforeClass() {
+        masterKey = LocalMasterKeys.masterKey();
+
+        // Not a multiple of the buffer sizes below, or of the frame size.
+        plaintext = new byte[100_003];
+        new Random(13).nextBytes(plaintext);
+    }
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("plaintext", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), plaintext);
+    }
+
+    @Test
+    public void testEncryptFile_default() throws IOException {
+        assertRoundTrip(new FileIoPolicy());
+    }
+
+    @Test
+    public void testEncryptFile_heapBuffers() throws IOException {
+        assertRoundTrip(new FileIoPolicy(4096, false, false));
+    }
+
+    @Test
+    public void testEncryptFile_directBuffers() throws IOException {
+        assertRoundTrip(new FileIoPolicy(4096, true, false));
+    }
+
+    @Test
+    public void testEncryptFile_smallBuffers() throws IOException {
+        assertRoundTrip(new FileIoPolicy(7, true, true));
+    }
+
+    @Test
+    public void testNioFileIo_enableDisable() {
+        KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+        assertFalse(encryptionService.isNioFileIoEnabled());
+
+        encryptionService.enableNioFileIo(new FileIoPolicy());
+        assertTrue(encryptionService.isNioFileIoEnabled());
+
+        encryptionService.disableNioFileIo();
+        assertFalse(encryptionService.isNioFileIoEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableNioFileIo_null() {
+        new KmsEncryptionService(masterKey).enableNioFileIo(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFileIoPolicy_bufferSize() {
+        new FileIoPolicy(0, true, true);
+    }
+
+    @Test
+    public void testMappedReads_windows() throws IOException {
+        // A window smaller than the file, and not a multiple of it.
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                InputStream inputStream = FileChannels.newInputStream(channel, new FileIoPolicy(4096, true, true), 1000)) {
+
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            FileChannels.copy(inputStream, read, new FileIoPolicy(333, false, false));
+
+            assertArrayEquals(plaintext, read.toByteArray());
+        }
+    }
+
+    private void assertRoundTrip(final FileIoPolicy policy) {
+        KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+        encryptionService.enableNioFileIo(policy);
+
+        File encryptedFile = encryptionService.encryptFile(file);
+        encryptedFile.deleteOnExit();
+
+        assertArrayEquals(plaintext, new KmsDecryptionService(masterKey).decryptFileToBytes(encryptedFile));
+    }
+}
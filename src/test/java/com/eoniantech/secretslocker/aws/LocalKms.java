@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.encryptionsdk.kms.KmsMasterKeyProvider;
+import com.amazonaws.services.kms.AWSKMSClientBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP stand-in for KMS. Answers the GenerateDataKey, Encrypt and
+ * Decrypt operations of the TrentService JSON protocol, after a simulated
+ * latency, so the real KMS client, connection pool and retries can be
+ * exercised without AWS access. Calls over an optional limit of concurrent
+ * calls are throttled, standing in for the KMS request quota. A "ciphertext" blob is the key ID and the
+ * plaintext, so it offers no protection at all.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class LocalKms implements AutoCloseable {
+
+    static final String REGION = "us-east-1";
+    static final String KEY_ARN = "arn:aws:kms:" + REGION + ":123456789012:key/local";
+
+    private static final String CONTENT_TYPE = "application/x-amz-json-1.1";
+    private static final String TARGET_PREFIX = "TrentService.";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong calls = new AtomicLong();
+    private final ExecutorService executor;
+    private final HttpServer server;
+    private final AtomicLong throttles = new AtomicLong();
+    private volatile long latencyMillis;
+    private volatile int quota = Integer.MAX_VALUE;
+    private volatile Runnable onCall = () -> { };
+
+    /**
+     * Constructor. Starts the server on a free loopback port.
+     *
+     * @param latencyMillis How long each call takes.
+     * @throws IOException If the server can not be started.
+     */
+    LocalKms(final long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-kms");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    String endpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    void setLatencyMillis(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param quota The number of concurrent calls from which calls are
+     * throttled.
+     */
+    void setQuota(final int quota) {
+        this.quota = quota;
+    }
+
+    /**
+     * @param onCall Run while each call is being served, before it is
+     * answered.
+     */
+    void setOnCall(final Runnable onCall) {
+        this.onCall = onCall;
+    }
+
+    long throttles() {
+        return throttles.get();
+    }
+
+    long calls() {
+        return calls.get();
+    }
+
+    int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    void resetCounters() {
+        calls.set(0);
+        maxInFlight.set(inFlight.get());
+    }
+
+    static AWSCredentialsProvider credentials() {
+        return new AWSStaticCredentialsProvider(new BasicAWSCredentials("local", "local"));
+    }
+
+    /**
+     * @return A master key provider that encrypts under {@link #KEY_ARN}
+     * with this stand-in.
+     */
+    KmsMasterKeyProvider masterKeyProvider() {
+        return KmsMasterKeyProvider
+                .builder()
+                .withCustomClientFactory(region -> AWSKMSClientBuilder
+                        .standard()
+                        .withEndpointConfiguration(new EndpointConfiguration(endpoint(), region))
+                        .withCredentials(credentials())
+                        .build())
+                .withKeysForEncryption(KEY_ARN)
+                .build();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        calls.incrementAndGet();
+
+        int status;
+        ObjectNode response = objectMapper.createObjectNode();
+
+        try {
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                status = process(exchange, inputStream, current, response);
+
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+
+            } finally {
+                // Leave the count before answering, so that a caller that
+                // already has its response is never counted with the next.
+                inFlight.decrementAndGet();
+            }
+
+            respond(exchange, status, response);
+
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private int process(
+            final HttpExchange exchange,
+            final InputStream inputStream,
+            final int current,
+            final ObjectNode response) throws IOException, InterruptedException {
+
+        JsonNode request = objectMapper.readTree(inputStream);
+        String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+
+        if (current > quota) {
+            throttles.incrementAndGet();
+            response.put("__type", "ThrottlingException")
+                    .put("message", "Rate exceeded");
+            return 400;
+        }
+
+        onCall.run();
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+
+        switch (target == null ? "" : target.substring(TARGET_PREFIX.length())) {
+            case "GenerateDataKey":
+                byte[] dataKey = new byte[request.get("NumberOfBytes").asInt()];
+                random.nextBytes(dataKey);
+                response.put("KeyId", request.get("KeyId").asText());
+                response.put("Plaintext", dataKey);
+                response.put("CiphertextBlob", blob(request.get("KeyId").asText(), dataKey));
+                return 200;
+
+            case "Encrypt":
+                response.put("KeyId", request.get("KeyId").asText());
+                response.put("CiphertextBlob", blob(request.get("KeyId").asText(), request.get("Plaintext").binaryValue()));
+                return 200;
+
+            case "Decrypt":
+                ByteBuffer blob = ByteBuffer.wrap(request.get("CiphertextBlob").binaryValue());
+                byte[] keyId = new byte[blob.getShort()];
+                blob.get(keyId);
+                response.put("KeyId", new String(keyId, StandardCharsets.UTF_8));
+                response.put("Plaintext", Arrays.copyOfRange(blob.array(), blob.position(), blob.limit()));
+                return 200;
+
+            default:
+                response.put("__type", "UnknownOperationException")
+                        .put("message", String.valueOf(target));
+                return 400;
+        }
+    }
+
+    private void respond(
+            final HttpExchange exchange,
+            final int status,
+            final JsonNode body) throws IOException {
+
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static byte[] blob(final String keyId, final byte[] plaintext) {
+        byte[] keyIdBytes = keyId.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer
+                .allocate(2 + keyIdBytes.length + plaintext.length)
+                .putShort((short) keyIdBytes.length)
+                .put(keyIdBytes)
+                .put(plaintext)
+                .array();
+    }
+}
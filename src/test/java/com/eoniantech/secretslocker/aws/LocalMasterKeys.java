@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.AwsCrypto;
+import com.amazonaws.encryptionsdk.CryptoOutputStream;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Test utility that provides in-process master keys, so that encryption and
+ * decryption can be tested without AWS credentials or network access.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class LocalMasterKeys {
+
+    private static final String PROVIDER_ID = "secrets-locker-test";
+    private static final String KEY_ID = "local";
+    private static final String WRAPPING_ALGORITHM = "AES/GCM/NoPadding";
+
+    private LocalMasterKeys() {
+    }
+
+    /**
+     * @return A new master key backed by a random AES-256 key.
+     */
+    static JceMasterKey masterKey() {
+        return masterKey(
+                PROVIDER_ID,
+                KEY_ID);
+    }
+
+    /**
+     * @param providerId The provider ID, e.g., aws-kms to stand in for a KMS
+     * key.
+     * @param keyId The key ID, e.g., a KMS key ARN.
+     * @return A new master key backed by a random AES-256 key.
+     */
+    static JceMasterKey masterKey(
+            final String providerId,
+            final String keyId) {
+
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+
+        return JceMasterKey.getInstance(
+                new SecretKeySpec(keyBytes, "AES"),
+                providerId,
+                keyId,
+                WRAPPING_ALGORITHM);
+    }
+
+    /**
+     * Encrypts plaintext into a temporary file that is deleted on exit.
+     *
+     * @param masterKey The master key to encrypt with.
+     * @param plaintext The plaintext.
+     * @return The encrypted file.
+     * @throws IOException If the file can not be written.
+     */
+    static File encryptToFile(
+            final JceMasterKey masterKey,
+            final String plaintext) throws IOException {
+
+        return encryptToFile(
+                masterKey,
+                plaintext.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypts plaintext into a temporary file that is deleted on exit.
+     *
+     * @param masterKey The master key to encrypt with.
+     * @param plaintext The plaintext.
+     * @return The encrypted file.
+     * @throws IOException If the file can not be written.
+     */
+    static File encryptToFile(
+            final JceMasterKey masterKey,
+            final byte[] plaintext) throws IOException {
+
+        File encryptedFile
+                = File.createTempFile(
+                        "secret",
+                        ".encrypted");
+
+        encryptedFile.deleteOnExit();
+
+        try (FileOutputStream fileOutputStream
+                = new FileOutputStream(encryptedFile);
+
+                CryptoOutputStream<?> encryptingStream
+                        = new AwsCrypto()
+                                .createEncryptingStream(
+                                        masterKey,
+                                        fileOutputStream)) {
+
+            encryptingStream.write(plaintext);
+        }
+
+        return encryptedFile;
+    }
+}
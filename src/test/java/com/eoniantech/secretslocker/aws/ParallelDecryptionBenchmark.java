@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Measures decrypting a file to a file one frame after another, against
+ * decrypting its frames in parallel, for files from 1 MB up to 1 GB, with an
+ * algorithm suite with a trailing signature and one without. Data keys are
+ * decrypted with an in-process master key, so no AWS access is required. Not
+ * run by the build; run the main method with the file sizes in MB as optional
+ * arguments, e.g. {@code 1 16 128 1024}.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class ParallelDecryptionBenchmark {
+
+    private static final int[] DEFAULT_SIZES_MB = {1, 16, 128};
+    private static final int MB = 1 << 20;
+    private static final int RUNS = 3;
+
+    private static final CryptoAlgorithm[] ALGORITHM_SUITES = {
+        CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA256,
+        CryptoAlgorithm.ALG_AES_256_GCM_IV12_TAG16_HKDF_SHA384_ECDSA_P384
+    };
+
+    private ParallelDecryptionBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The file sizes in MB. Defaults to 1, 16 and 128.
+     * @throws IOException If the files can not be written.
+     */
+    public static void main(final String[] args) throws IOException {
+        int[] sizes = new int[args.length];
+
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Integer.parseInt(args[i]);
+
+        if (sizes.length == 0)
+            sizes = DEFAULT_SIZES_MB;
+
+        JceMasterKey masterKey = LocalMasterKeys.masterKey();
+
+        KmsDecryptionService sequential = new KmsDecryptionService(masterKey);
+        KmsDecryptionService parallel = new KmsDecryptionService(masterKey);
+
+        ParallelDecryptionPolicy policy
+                = new ParallelDecryptionPolicy(
+                        Runtime.getRuntime().availableProcessors(),
+                        0,
+                        ParallelDecryptionPolicy.DEFAULT_TASK_SIZE);
+
+        parallel.enableParallelDecryption(policy);
+
+        System.out.println(String.format(
+                "%d processors, %d threads, %d byte frames, best of %d runs",
+                Runtime.getRuntime().availableProcessors(),
+                policy.parallelism(),
+                new KmsEncryptionService(masterKey).frameSize(),
+                RUNS));
+
+        for (CryptoAlgorithm algorithmSuite : ALGORITHM_SUITES) {
+            KmsEncryptionService encryptionService = new KmsEncryptionService(masterKey);
+            encryptionService.setAlgorithmSuite(algorithmSuite);
+
+            System.out.println();
+            System.out.println(algorithmSuite);
+            System.out.println(String.format("%10s %14s %14s %10s", "size", "sequential ms", "parallel ms", "speedup"));
+
+            for (int size : sizes) {
+                File file = plaintextFile((long) size * MB);
+                File encryptedFile = encryptionService.encryptFile(file);
+                encryptedFile.deleteOnExit();
+                file.delete();
+
+                File decryptedFile = File.createTempFile("parallel-decryption-benchmark", ".decrypted");
+                decryptedFile.deleteOnExit();
+
+                // Warm up both paths before measuring either.
+                sequential.decryptFile(encryptedFile, decryptedFile);
+                parallel.decryptFile(encryptedFile, decryptedFile);
+
+                long sequentialNanos = best(sequential, encryptedFile, decryptedFile);
+                long parallelNanos = best(parallel, encryptedFile, decryptedFile);
+
+                System.out.println(String.format(
+                        "%7d MB %14.1f %14.1f %9.2fx",
+                        size,
+                        sequentialNanos / 1e6,
+                        parallelNanos / 1e6,
+                        (double) sequentialNanos / parallelNanos));
+
+                encryptedFile.delete();
+                decryptedFile.delete();
+            }
+        }
+
+        parallel.disableParallelDecryption();
+    }
+
+    private static long best(
+            final KmsDecryptionService decryptionService,
+            final File encryptedFile,
+            final File decryptedFile) {
+
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            decryptionService.decryptFile(encryptedFile, decryptedFile);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best;
+    }
+
+    private static File plaintextFile(final long size) throws IOException {
+        File file = File.createTempFile("parallel-decryption-benchmark", ".bin");
+        file.deleteOnExit();
+
+        Random random = new Random(size);
+        byte[] chunk = new byte[MB];
+
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                random.nextBytes(chunk);
+                outputStream.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+
+        return file;
+    }
+}
@@ -53,4 +53,24 @@ public class S3SecretsLockerTest_get extends AbstractTest {
     public void testGet_emptyWithSpaces() {
         secretsLocker.get("    ");
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAsync_null() {
+        secretsLocker.getAsync(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAsync_empty() {
+        secretsLocker.getAsync("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAsStream_null() {
+        secretsLocker.getAsStream(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAsStream_empty() {
+        secretsLocker.getAsStream("");
+    }
 }    
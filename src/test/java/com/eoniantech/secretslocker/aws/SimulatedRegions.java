@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.CryptoAlgorithm;
+import com.amazonaws.encryptionsdk.DataKey;
+import com.amazonaws.encryptionsdk.EncryptedDataKey;
+import com.amazonaws.encryptionsdk.MasterKeyProvider;
+import com.amazonaws.encryptionsdk.MasterKeyRequest;
+import com.amazonaws.encryptionsdk.exception.CannotUnwrapDataKeyException;
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Master key provider with a key per region, standing in for KMS. Each call
+ * sleeps for the region's latency, or fails if the region is down. Keys have
+ * the KMS provider ID and a key ARN in their region, so
+ * {@link RegionAwareMasterKeyProvider} groups them by region.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+final class SimulatedRegions
+        extends MasterKeyProvider<JceMasterKey> {
+
+    final Map<String, Long> latencyMillis = new ConcurrentHashMap<>();
+    final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, JceMasterKey> keys = new LinkedHashMap<>();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    SimulatedRegions(final String... regions) {
+        for (String region : regions)
+            keys.put(
+                    region,
+                    LocalMasterKeys.masterKey(
+                            RegionAwareMasterKeyProvider.KMS_PROVIDER_ID,
+                            "arn:aws:kms:" + region + ":123456789012:alias/secrets"));
+    }
+
+    List<JceMasterKey> keys() {
+        return new ArrayList<>(keys.values());
+    }
+
+    int calls(final String region) {
+        AtomicInteger count = calls.get(region);
+        return (count == null) ? 0 : count.get();
+    }
+
+    @Override
+    public String getDefaultProviderId() {
+        return RegionAwareMasterKeyProvider.KMS_PROVIDER_ID;
+    }
+
+    @Override
+    public JceMasterKey getMasterKey(
+            final String provider,
+            final String keyId) {
+
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<JceMasterKey> getMasterKeysForEncryption(
+            final MasterKeyRequest request) {
+
+        return keys();
+    }
+
+    @Override
+    public DataKey<JceMasterKey> decryptDataKey(
+            final CryptoAlgorithm algorithm,
+            final Collection<? extends EncryptedDataKey> encryptedDataKeys,
+            final Map<String, String> encryptionContext) {
+
+        String region = RegionAwareMasterKeyProvider.regionOf(encryptedDataKeys.iterator().next());
+        calls.computeIfAbsent(region, key -> new AtomicInteger()).incrementAndGet();
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMillis.getOrDefault(region, 0L));
+
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new CannotUnwrapDataKeyException("interrupted: " + region, exception);
+        }
+
+        if (failing.contains(region))
+            throw new CannotUnwrapDataKeyException("region is down: " + region);
+
+        return keys.get(region).decryptDataKey(algorithm, encryptedDataKeys, encryptionContext);
+    }
+}
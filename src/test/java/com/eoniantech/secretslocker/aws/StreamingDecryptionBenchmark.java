@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Eonian Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eoniantech.secretslocker.aws;
+
+import com.amazonaws.encryptionsdk.jce.JceMasterKey;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+
+/**
+ * Compares the peak heap used to decrypt a large secret into a String with
+ * {@link KmsDecryptionService#decryptFile(File)} against reading it through
+ * {@link KmsDecryptionService#decryptFileAsStream(File)} with a small buffer.
+ * Uses an in-process master key, so no AWS access is required. Not run by the
+ * build; run the main method with, e.g., -Xmx512m.
+ *
+ * @author Michael Andrews <Michael.Andrews@eoniantech.com>
+ * @since 1.3
+ */
+public final class StreamingDecryptionBenchmark {
+
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int[] SIZES_MB = {1, 5, 20};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private StreamingDecryptionBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Not used.
+     * @throws IOException If the encrypted files can not be written or read.
+     */
+    public static void main(final String[] args) throws IOException {
+        JceMasterKey masterKey = LocalMasterKeys.masterKey();
+        KmsDecryptionService decryptionService = new KmsDecryptionService(masterKey);
+
+        System.out.println(String.format("%8s %20s %20s", "size", "decryptFile peak", "stream peak")
+                + " (heap above the post-GC baseline)");
+
+        for (int sizeMb : SIZES_MB) {
+            byte[] plaintext = new byte[sizeMb * MEGABYTE];
+            Arrays.fill(plaintext, (byte) 'x');
+
+            File encryptedFile = LocalMasterKeys.encryptToFile(masterKey, plaintext);
+            plaintext = null;
+
+            // Warm up both paths before measuring.
+            decryptionService.decryptFile(encryptedFile);
+            drain(decryptionService, encryptedFile);
+
+            long baseline = resetPeaks();
+            String secret = decryptionService.decryptFile(encryptedFile);
+            long stringPeak = peakHeapUsed() - baseline;
+            secret = null;
+
+            baseline = resetPeaks();
+            long streamed = drain(decryptionService, encryptedFile);
+            long streamPeak = peakHeapUsed() - baseline;
+
+            System.out.println(String.format(
+                    "%6d MB %17d MB %17d MB (%d bytes streamed)",
+                    sizeMb,
+                    stringPeak / MEGABYTE,
+                    streamPeak / MEGABYTE,
+                    streamed));
+
+            encryptedFile.delete();
+        }
+    }
+
+    private static long drain(
+            final KmsDecryptionService decryptionService,
+            final File encryptedFile) throws IOException {
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+
+        try (InputStream inputStream = decryptionService.decryptFileAsStream(encryptedFile)) {
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1)
+                total += read;
+        }
+
+        return total;
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of the heap pools.
+     *
+     * @return The heap used after collecting garbage.
+     */
+    static long resetPeaks() {
+        System.gc();
+        long used = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+
+        return used;
+    }
+
+    static long peakHeapUsed() {
+        long peak = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+
+        return peak;
+    }
+}